@@ -0,0 +1,99 @@
+package com.boydti.fawe.bench;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compare a JMH json result with a stored baseline<br>
+ * - Benchmarks are matched by name and params<br>
+ * - The change is relative to the baseline, positive being faster (for both throughput and average time modes)<br>
+ * Usage: BaselineComparer &lt;baseline.json&gt; &lt;result.json&gt;
+ */
+public class BaselineComparer {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: BaselineComparer <baseline.json> <result.json>");
+            return;
+        }
+        File baselineFile = new File(args[0]);
+        if (!baselineFile.exists()) {
+            System.out.println("No baseline at " + baselineFile + " (run jmhSaveBaseline first)");
+            return;
+        }
+        Map<String, Result> baseline = read(baselineFile);
+        Map<String, Result> current = read(new File(args[1]));
+        System.out.println(String.format("%-80s %14s %14s %9s", "Benchmark", "Baseline", "Current", "Change"));
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            String key = entry.getKey();
+            Result now = entry.getValue();
+            Result then = baseline.get(key);
+            if (then == null) {
+                System.out.println(String.format("%-80s %14s %14.3f %9s  %s", key, "-", now.score, "new", now.unit));
+                continue;
+            }
+            double change = (now.score - then.score) / then.score;
+            if (!now.higherIsBetter()) {
+                change = -change;
+            }
+            String flag = Math.abs(now.score - then.score) <= Math.max(now.error, then.error) ? "" : change > 0 ? "  +" : "  -";
+            System.out.println(String.format("%-80s %14.3f %14.3f %+8.1f%%  %s%s", key, then.score, now.score, change * 100, now.unit, flag));
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.println(String.format("%-80s %14.3f %14s %9s", key, baseline.get(key).score, "-", "missing"));
+            }
+        }
+    }
+
+    private static Map<String, Result> read(File file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        try (Reader reader = new FileReader(file)) {
+            JsonArray array = new JsonParser().parse(reader).getAsJsonArray();
+            for (JsonElement element : array) {
+                JsonObject benchmark = element.getAsJsonObject();
+                StringBuilder key = new StringBuilder(benchmark.get("benchmark").getAsString());
+                if (benchmark.has("params")) {
+                    // Sorted so the key doesn't depend on the param order
+                    Map<String, String> params = new TreeMap<>();
+                    for (Map.Entry<String, JsonElement> param : benchmark.getAsJsonObject("params").entrySet()) {
+                        params.put(param.getKey(), param.getValue().getAsString());
+                    }
+                    key.append(params);
+                }
+                JsonObject metric = benchmark.getAsJsonObject("primaryMetric");
+                double error = metric.get("scoreError").isJsonPrimitive() ? metric.get("scoreError").getAsDouble() : 0;
+                results.put(key.toString(), new Result(benchmark.get("mode").getAsString(), metric.get("score").getAsDouble(),
+                        Double.isNaN(error) ? 0 : error, metric.get("scoreUnit").getAsString()));
+            }
+        }
+        return results;
+    }
+
+    private static final class Result {
+        private final String mode;
+        private final double score;
+        private final double error;
+        private final String unit;
+
+        private Result(String mode, double score, double error, String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+
+        private boolean higherIsBetter() {
+            return mode.equals("thrpt");
+        }
+    }
+}
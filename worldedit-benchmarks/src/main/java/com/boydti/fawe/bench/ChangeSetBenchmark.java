@@ -0,0 +1,65 @@
+package com.boydti.fawe.bench;
+
+import com.boydti.fawe.HeadlessPlatform;
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.changeset.MemoryOptimizedHistory;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FaweStreamChangeSet.add (via MemoryOptimizedHistory) at each compression level<br>
+ * - Blocks are added in x, z, y order, as a cuboid edit would
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChangeSetBenchmark {
+
+    private static final int CHANGES = 1 << 16;
+
+    @Param({"0", "1", "4", "8"})
+    public int compression;
+
+    private MemoryOptimizedHistory changeSet;
+    private int from;
+    private int to;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        Settings.IMP.HISTORY.COMPRESSION_LEVEL = compression;
+        HeadlessPlatform.register();
+        from = BlockTypes.AIR.getInternalId();
+        to = BlockTypes.STONE.getInternalId();
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        changeSet = new MemoryOptimizedHistory("benchmark");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHANGES)
+    public boolean add() {
+        MemoryOptimizedHistory changeSet = this.changeSet;
+        for (int i = 0; i < CHANGES; i++) {
+            changeSet.add(i & 63, i >> 12, (i >> 6) & 63, from, to);
+        }
+        return changeSet.flush();
+    }
+}
@@ -0,0 +1,61 @@
+package com.boydti.fawe.bench;
+
+import com.boydti.fawe.object.FaweOutputStream;
+import com.boydti.fawe.object.io.FastByteArrayOutputStream;
+import com.boydti.fawe.util.MainUtil;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MainUtil.getCompressedOS at each history compression level<br>
+ * - The input looks like a change set: small position deltas and a few block ids
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final int SIZE = 1 << 22;
+
+    @Param({"0", "1", "4", "9"})
+    public int amount;
+
+    private byte[] input;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        input = new byte[SIZE];
+        Random random = new Random(0);
+        for (int i = 0; i < SIZE; i += 8) {
+            input[i] = 1;
+            input[i + 2] = (byte) random.nextInt(2);
+            input[i + 4] = (byte) random.nextInt(4);
+            input[i + 6] = 1;
+        }
+    }
+
+    @Benchmark
+    public int compress() throws IOException {
+        FastByteArrayOutputStream output = new FastByteArrayOutputStream(SIZE);
+        try (FaweOutputStream out = MainUtil.getCompressedOS(output, amount)) {
+            out.write(input);
+        }
+        return output.getSize();
+    }
+}
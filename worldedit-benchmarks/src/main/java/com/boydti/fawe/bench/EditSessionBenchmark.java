@@ -0,0 +1,78 @@
+package com.boydti.fawe.bench;
+
+import com.boydti.fawe.HeadlessPlatform;
+import com.boydti.fawe.object.FaweLimit;
+import com.boydti.fawe.object.RegionWrapper;
+import com.boydti.fawe.object.changeset.FaweChangeSet;
+import com.boydti.fawe.object.changeset.MemoryOptimizedHistory;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.function.pattern.RandomPattern;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.world.NullWorld;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * EditSession.setBlocks on a cuboid, against a HeadlessQueue<br>
+ * - Each invocation uses a new EditSession (and queue), so chunks are never reused between invocations
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EditSessionBenchmark {
+
+    /**
+     * The width of the cuboid (the height is capped at 256)
+     */
+    @Param({"64", "128"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean history;
+
+    private CuboidRegion region;
+    private RandomPattern pattern;
+    private EditSession session;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        HeadlessPlatform.register();
+        region = new CuboidRegion(new Vector(0, 0, 0), new Vector(size - 1, Math.min(size, 256) - 1, size - 1));
+        pattern = new RandomPattern();
+        pattern.add(BlockTypes.STONE.getDefaultState(), 1);
+        pattern.add(BlockTypes.DIRT.getDefaultState(), 1);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        FaweChangeSet changeSet = history ? new MemoryOptimizedHistory("benchmark") : null;
+        session = new EditSession("benchmark", NullWorld.getInstance(), new HeadlessQueue(), null, FaweLimit.MAX, changeSet,
+                (RegionWrapper[]) null, false, !history, false, false, null, null, null);
+    }
+
+    @Benchmark
+    public int setBlock() {
+        return session.setBlocks(region, BlockTypes.STONE.getDefaultState());
+    }
+
+    @Benchmark
+    public int setPattern() {
+        return session.setBlocks(region, pattern);
+    }
+}
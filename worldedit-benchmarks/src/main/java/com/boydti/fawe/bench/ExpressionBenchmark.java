@@ -0,0 +1,60 @@
+package com.boydti.fawe.bench;
+
+import com.sk89q.worldedit.internal.expression.Expression;
+import com.sk89q.worldedit.internal.expression.ExpressionException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Expression.evaluate over a 16x16x16 area, as //generate would
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionBenchmark {
+
+    @Param({
+            "x*x+y*y+z*z<0.8",
+            "sin(x*5)*cos(z*5)>y",
+            "a=abs(x);b=abs(z);a<0.5&&b<0.5||y>0",
+    })
+    public String expression;
+
+    private Expression compiled;
+
+    @Setup(Level.Trial)
+    public void setup() throws ExpressionException {
+        compiled = Expression.compile(expression, "x", "y", "z");
+        compiled.optimize();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4096)
+    public double evaluate() throws ExpressionException {
+        double sum = 0;
+        Expression compiled = this.compiled;
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    sum += compiled.evaluate((x - 8) / 8d, (y - 8) / 8d, (z - 8) / 8d);
+                }
+            }
+        }
+        return sum;
+    }
+}
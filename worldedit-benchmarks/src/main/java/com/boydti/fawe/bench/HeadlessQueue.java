@@ -0,0 +1,133 @@
+package com.boydti.fawe.bench;
+
+import com.boydti.fawe.example.IntFaweChunk;
+import com.boydti.fawe.example.MappedFaweQueue;
+import com.boydti.fawe.object.FaweChunk;
+import com.boydti.fawe.object.FawePlayer;
+import com.boydti.fawe.object.collection.PalettedSection;
+import com.boydti.fawe.util.MainUtil;
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.worldedit.world.biome.BaseBiome;
+import java.io.File;
+
+/**
+ * A MappedFaweQueue without a world<br>
+ * - Queued chunks are discarded when dispatched
+ * - Reads return air
+ */
+public class HeadlessQueue extends MappedFaweQueue<Object, Object, Object, Object> {
+
+    public HeadlessQueue() {
+        super("benchmark");
+    }
+
+    @Override
+    public Object getImpWorld() {
+        return null;
+    }
+
+    @Override
+    public boolean regenerateChunk(Object world, int x, int z, BaseBiome biome, Long seed) {
+        return false;
+    }
+
+    @Override
+    public FaweChunk getFaweChunk(int x, int z) {
+        return new HeadlessChunk(this, x, z);
+    }
+
+    @Override
+    public Object loadChunk(Object world, int x, int z, boolean generate) {
+        return null;
+    }
+
+    @Override
+    public Object getSections(Object chunk) {
+        return null;
+    }
+
+    @Override
+    public Object getCachedSections(Object world, int cx, int cz) {
+        return null;
+    }
+
+    @Override
+    public Object getCachedChunk(Object world, int cx, int cz) {
+        return null;
+    }
+
+    @Override
+    public int getCombinedId4Data(Object section, int x, int y, int z) {
+        return 0;
+    }
+
+    @Override
+    public int getBiome(Object chunk, int x, int z) {
+        return 0;
+    }
+
+    @Override
+    public CompoundTag getTileEntity(Object chunk, int x, int y, int z) {
+        return null;
+    }
+
+    @Override
+    public int getSkyLight(Object sections, int x, int y, int z) {
+        return 15;
+    }
+
+    @Override
+    public int getEmmittedLight(Object sections, int x, int y, int z) {
+        return 0;
+    }
+
+    @Override
+    public void sendBlockUpdate(FaweChunk chunk, FawePlayer... players) {
+    }
+
+    @Override
+    public void sendChunk(FaweChunk chunk) {
+    }
+
+    @Override
+    public void sendChunk(int x, int z, int bitMask) {
+    }
+
+    @Override
+    public File getSaveFolder() {
+        return null;
+    }
+
+    @Override
+    public boolean hasSky() {
+        return true;
+    }
+
+    public static class HeadlessChunk extends IntFaweChunk<Object, HeadlessQueue> {
+        public HeadlessChunk(HeadlessQueue parent, int x, int z) {
+            super(parent, x, z);
+        }
+
+        public HeadlessChunk(HeadlessQueue parent, int x, int z, int[][] ids, PalettedSection[] palettes, short[] count, short[] air, byte[] heightMap) {
+            super(parent, x, z, ids, palettes, count, air, heightMap);
+        }
+
+        @Override
+        public Object getNewChunk() {
+            return null;
+        }
+
+        @Override
+        public IntFaweChunk<Object, HeadlessQueue> copy(boolean shallow) {
+            if (shallow) {
+                return new HeadlessChunk(getParent(), getX(), getZ(), ids, palettes, count, air, heightMap);
+            }
+            return new HeadlessChunk(getParent(), getX(), getZ(), (int[][]) MainUtil.copyNd(ids), PalettedSection.copy(palettes), count.clone(), air.clone(), heightMap.clone());
+        }
+
+        @Override
+        public FaweChunk call() {
+            return this;
+        }
+    }
+}
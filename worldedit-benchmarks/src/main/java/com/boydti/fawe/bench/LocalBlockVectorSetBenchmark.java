@@ -0,0 +1,86 @@
+package com.boydti.fawe.bench;
+
+import com.boydti.fawe.object.collection.LocalBlockVectorSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LocalBlockVectorSet add / contains / forEach, for positions within a brush sized area
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalBlockVectorSetBenchmark {
+
+    private static final int POSITIONS = 1 << 16;
+
+    private int[] positions;
+    private LocalBlockVectorSet filled;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        positions = new int[POSITIONS * 3];
+        Random random = new Random(0);
+        for (int i = 0; i < positions.length; i += 3) {
+            positions[i] = random.nextInt(256) - 128;
+            positions[i + 1] = random.nextInt(256);
+            positions[i + 2] = random.nextInt(256) - 128;
+        }
+        filled = new LocalBlockVectorSet();
+        for (int i = 0; i < positions.length; i += 3) {
+            filled.add(positions[i], positions[i + 1], positions[i + 2]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public LocalBlockVectorSet add() {
+        LocalBlockVectorSet set = new LocalBlockVectorSet();
+        int[] positions = this.positions;
+        for (int i = 0; i < positions.length; i += 3) {
+            set.add(positions[i], positions[i + 1], positions[i + 2]);
+        }
+        return set;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public int contains() {
+        int count = 0;
+        int[] positions = this.positions;
+        for (int i = 0; i < positions.length; i += 3) {
+            if (filled.contains(positions[i] + 1, positions[i + 1], positions[i + 2])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public long forEach() {
+        long[] sum = new long[1];
+        filled.forEach(new LocalBlockVectorSet.BlockVectorSetVisitor() {
+            @Override
+            public void run(int x, int y, int z, int index) {
+                sum[0] += x + y + z;
+            }
+        });
+        return sum[0];
+    }
+}
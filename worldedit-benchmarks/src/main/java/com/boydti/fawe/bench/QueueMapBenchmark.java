@@ -0,0 +1,186 @@
+package com.boydti.fawe.bench;
+
+import com.boydti.fawe.HeadlessPlatform;
+import com.boydti.fawe.example.ConcurrentFaweQueueMap;
+import com.boydti.fawe.example.DefaultFaweQueueMap;
+import com.boydti.fawe.example.IFaweQueueMap;
+import com.boydti.fawe.example.WeakFaweQueueMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Compares the IFaweQueueMap implementations<br>
+ * - writeOnly01 compares every map with one writer (the default and weak maps aren't thread safe)<br>
+ * - writeOnly runs the concurrent map with 2, 4, 8 and 16 writer threads (JMH can't take the thread count as a @Param)<br>
+ * - dispatch runs 1, 3 and 15 writers against one reader taking chunks to dispatch (concurrent map)<br>
+ * - Each writer has its own chunks, as edits from different threads don't usually overlap
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueMapBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class AnyMap {
+        @Param({"default", "weak", "concurrent"})
+        public String map;
+
+        private IFaweQueueMap queueMap;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            HeadlessPlatform.register();
+            HeadlessQueue queue = new HeadlessQueue();
+            switch (map) {
+                case "weak":
+                    queueMap = new WeakFaweQueueMap(queue);
+                    break;
+                case "concurrent":
+                    queueMap = new ConcurrentFaweQueueMap(queue);
+                    break;
+                default:
+                    queueMap = new DefaultFaweQueueMap(queue);
+                    break;
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ConcurrentMap {
+        private IFaweQueueMap queueMap;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            HeadlessPlatform.register();
+            queueMap = new ConcurrentFaweQueueMap(new HeadlessQueue());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        /**
+         * The width (in chunks) of the area each writer writes to
+         */
+        @Param({"32"})
+        public int radius;
+
+        private int offset;
+        private int x, z;
+
+        @Setup(Level.Trial)
+        public void setupTrial(ThreadParams thread) {
+            offset = thread.getThreadIndex() * radius;
+        }
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            x = ThreadLocalRandom.current().nextInt(1 << 16);
+            z = ThreadLocalRandom.current().nextInt(1 << 16);
+        }
+    }
+
+    /**
+     * Writers walk through blocks, mostly staying in the same chunk (like most edits)
+     */
+    private static int write(IFaweQueueMap queueMap, Writer writer) {
+        int bx = writer.x++;
+        int bz = writer.z;
+        if ((bx & 255) == 0) {
+            writer.z++;
+        }
+        int cx = writer.offset + (bx >> 4) % writer.radius;
+        int cz = (bz >> 4) % writer.radius;
+        queueMap.getFaweChunk(cx, cz).setBlock(bx & 15, bx & 255, bz & 15, 1);
+        return cx + cz;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int writeOnly01(AnyMap state, Writer writer) {
+        return write(state.queueMap, writer);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public int writeOnly02(ConcurrentMap state, Writer writer) {
+        return write(state.queueMap, writer);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int writeOnly04(ConcurrentMap state, Writer writer) {
+        return write(state.queueMap, writer);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int writeOnly08(ConcurrentMap state, Writer writer) {
+        return write(state.queueMap, writer);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int writeOnly16(ConcurrentMap state, Writer writer) {
+        return write(state.queueMap, writer);
+    }
+
+    @Benchmark
+    @Group("dispatch01")
+    @GroupThreads(1)
+    public int dispatch01Writers(ConcurrentMap state, Writer writer) {
+        return write(state.queueMap, writer);
+    }
+
+    @Benchmark
+    @Group("dispatch01")
+    @GroupThreads(1)
+    public boolean dispatch01Reader(ConcurrentMap state) {
+        return state.queueMap.next(1, 1);
+    }
+
+    @Benchmark
+    @Group("dispatch03")
+    @GroupThreads(3)
+    public int dispatch03Writers(ConcurrentMap state, Writer writer) {
+        return write(state.queueMap, writer);
+    }
+
+    @Benchmark
+    @Group("dispatch03")
+    @GroupThreads(1)
+    public boolean dispatch03Reader(ConcurrentMap state) {
+        return state.queueMap.next(1, 1);
+    }
+
+    @Benchmark
+    @Group("dispatch15")
+    @GroupThreads(15)
+    public int dispatch15Writers(ConcurrentMap state, Writer writer) {
+        return write(state.queueMap, writer);
+    }
+
+    @Benchmark
+    @Group("dispatch15")
+    @GroupThreads(1)
+    public boolean dispatch15Reader(ConcurrentMap state) {
+        return state.queueMap.next(1, 1);
+    }
+}
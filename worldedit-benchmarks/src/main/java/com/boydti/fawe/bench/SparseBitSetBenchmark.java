@@ -0,0 +1,86 @@
+package com.boydti.fawe.bench;
+
+import com.boydti.fawe.object.collection.SparseBitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SparseBitSet set / get / iteration<br>
+ * - dense: every bit in a range, sparse: random bits over the whole int range
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SparseBitSetBenchmark {
+
+    private static final int BITS = 1 << 16;
+
+    @Param({"dense", "sparse"})
+    public String distribution;
+
+    private int[] indexes;
+    private SparseBitSet filled;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        indexes = new int[BITS];
+        Random random = new Random(0);
+        for (int i = 0; i < BITS; i++) {
+            indexes[i] = distribution.equals("dense") ? i : random.nextInt(Integer.MAX_VALUE);
+        }
+        filled = new SparseBitSet();
+        for (int index : indexes) {
+            filled.set(index);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BITS)
+    public SparseBitSet set() {
+        SparseBitSet set = new SparseBitSet();
+        for (int index : indexes) {
+            set.set(index);
+        }
+        return set;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BITS)
+    public int get() {
+        int count = 0;
+        SparseBitSet set = filled;
+        for (int index : indexes) {
+            if (set.get(index)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BITS)
+    public int nextSetBit() {
+        int count = 0;
+        SparseBitSet set = filled;
+        for (int index = set.nextSetBit(0); index != -1; index = set.nextSetBit(index + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -70,6 +70,8 @@ public final class Spigot_v1_13_R2 extends CachedBukkitAdapter implements Bukkit
     private final Field nbtListTagListField;
     private final Method nbtCreateTagMethod;
     private Method chunkSetTypeMethod;
+    private Field chunkHeightMapField;
+    private Method heightMapUpdateMethod;
 
     static {
         // A simple test
@@ -95,6 +97,17 @@ public Spigot_v1_13_R2() throws NoSuchFieldException, NoSuchMethodException {
         }catch(NoSuchMethodException e) {
         	chunkSetTypeMethod = Chunk.class.getMethod("a", BlockPosition.class, IBlockData.class, boolean.class);
         }
+
+        // Heightmaps are updated once per section by setBlocks (without them only the per block path is used)
+        try {
+            chunkHeightMapField = Chunk.class.getDeclaredField("heightMap");
+            chunkHeightMapField.setAccessible(true);
+            heightMapUpdateMethod = HeightMap.class.getDeclaredMethod("a", int.class, int.class, int.class, IBlockData.class);
+            heightMapUpdateMethod.setAccessible(true);
+        } catch (NoSuchFieldException | NoSuchMethodException e) {
+            chunkHeightMapField = null;
+            heightMapUpdateMethod = null;
+        }
     }
 
     private int[] idbToStateOrdinal;
@@ -302,6 +315,100 @@ public boolean setBlock(org.bukkit.Chunk chunk, int x, int y, int z, BlockStateH
         return true;
     }
 
+    // By state ordinal
+    private IBlockData[] ordinalToIbd;
+    // By state ordinal, if the state has to go through setBlock (tile entities and light sources)
+    private boolean[] ordinalToSlow;
+
+    private void initOrdinals() {
+        if (ordinalToIbd != null) return;
+        BlockState[] states = BlockTypes.states;
+        IBlockData[] ibds = new IBlockData[states.length];
+        boolean[] slow = new boolean[states.length];
+        for (int i = 0; i < states.length; i++) {
+            BlockMaterial_1_13 material = (BlockMaterial_1_13) states[i].getMaterial();
+            ibds[i] = material.getState();
+            slow[i] = material.hasContainer() || material.getLightValue() > 0;
+        }
+        ordinalToSlow = slow;
+        ordinalToIbd = ibds;
+    }
+
+    @Override
+    public boolean setBlocks(org.bukkit.Chunk chunk, int layer, int[] blocks, boolean update) {
+        if (heightMapUpdateMethod == null) return false;
+        initOrdinals();
+        init();
+        Chunk nmsChunk = ((CraftChunk) chunk).getHandle();
+        World nmsWorld = nmsChunk.getWorld();
+        ChunkSection[] sections = nmsChunk.getSections();
+        ChunkSection section = sections[layer];
+        Collection<HeightMap> heightMaps;
+        try {
+            heightMaps = ((Map<?, HeightMap>) chunkHeightMapField.get(nmsChunk)).values();
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+            return false;
+        }
+        int by = layer << 4;
+        int bx = chunk.getX() << 4;
+        int bz = chunk.getZ() << 4;
+        // The blocks which change the heightmap, updated in order once the section is written
+        int[] heightChanges = null;
+        int heightChangeCount = 0;
+        for (int index = 0; index < 4096; index++) {
+            int combined = blocks[index];
+            if (combined == 0) continue;
+            BlockState state = BlockState.getFromInternalId(combined);
+            int ordinal = state.getOrdinal();
+            if (ordinalToSlow[ordinal]) continue;
+            IBlockData blockData = ordinalToIbd[ordinal];
+            int x = index & 15;
+            int y = index >> 8;
+            int z = (index >> 4) & 15;
+            IBlockData existing;
+            if (section == null) {
+                if (blockData.isAir()) {
+                    blocks[index] = 0;
+                    continue;
+                }
+                sections[layer] = section = new ChunkSection(by, nmsWorld.worldProvider.g());
+                existing = ordinalToIbd[BlockTypes.AIR.getDefaultState().getOrdinal()];
+            } else {
+                existing = section.getType(x, y, z);
+            }
+            if (existing != blockData) {
+                if (ordinalToSlow[idbToStateOrdinal[Block.REGISTRY_ID.getId(existing)]]) continue;
+                section.setType(x, y, z, blockData);
+                if (existing.e() != blockData.e() || existing.getMaterial().f() != blockData.getMaterial().f()) {
+                    if (heightChanges == null) heightChanges = new int[4096];
+                    heightChanges[heightChangeCount++] = index;
+                }
+                if (update) {
+                    nmsWorld.getMinecraftWorld().notify(new BlockPosition(bx + x, by + y, bz + z), existing, blockData, 0);
+                }
+            }
+            blocks[index] = 0;
+        }
+        // In the same (ascending y) order as setting each block would, so the result is the same
+        try {
+            for (int i = 0; i < heightChangeCount; i++) {
+                int index = heightChanges[i];
+                int x = index & 15;
+                int y = index >> 8;
+                int z = (index >> 4) & 15;
+                IBlockData blockData = section.getType(x, y, z);
+                for (HeightMap heightMap : heightMaps) {
+                    heightMapUpdateMethod.invoke(heightMap, x, by + y, z, blockData);
+                }
+            }
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            logger.warning("Error when updating heightmap!");
+            e.printStackTrace();
+        }
+        return true;
+    }
+
     @Override
     public BaseEntity getEntity(org.bukkit.entity.Entity entity) {
         checkNotNull(entity);
@@ -7,6 +7,7 @@
 import com.boydti.fawe.object.FaweChunk;
 import com.boydti.fawe.object.FaweQueue;
 import com.boydti.fawe.object.RunnableVal2;
+import com.boydti.fawe.object.collection.PalettedSection;
 import com.boydti.fawe.util.MainUtil;
 import com.boydti.fawe.util.ReflectionUtils;
 import com.sk89q.jnbt.CompoundTag;
@@ -54,14 +55,18 @@ public BukkitChunk_All(FaweQueue parent, int x, int z, int[][] ids, short[] coun
         super(parent, x, z, ids, count, air, heightMap);
     }
 
+    public BukkitChunk_All(FaweQueue parent, int x, int z, int[][] ids, PalettedSection[] palettes, short[] count, short[] air, byte[] heightMap) {
+        super(parent, x, z, ids, palettes, count, air, heightMap);
+    }
+
     @Override
     public IntFaweChunk copy(boolean shallow) {
         BukkitChunk_All copy;
         if (shallow) {
-            copy = new BukkitChunk_All(getParent(), getX(), getZ(), ids, count, air, heightMap);
+            copy = new BukkitChunk_All(getParent(), getX(), getZ(), ids, palettes, count, air, heightMap);
             copy.biomes = biomes;
         } else {
-            copy = new BukkitChunk_All(getParent(), getX(), getZ(), (int[][]) MainUtil.copyNd(ids), count.clone(), air.clone(), heightMap.clone());
+            copy = new BukkitChunk_All(getParent(), getX(), getZ(), (int[][]) MainUtil.copyNd(ids), PalettedSection.copy(palettes), count.clone(), air.clone(), heightMap.clone());
             copy.biomes = biomes != null ? biomes.clone() : null;
         }
         copy.chunk = chunk;
@@ -76,6 +81,8 @@ public Chunk getNewChunk() {
     private int layer = -1;
     private int index;
     private boolean place = true;
+    // The blocks of each section left after the adapter set the rest in bulk
+    private int[][] remaining;
 
     @Override
     public void start() {
@@ -96,11 +103,12 @@ public FaweChunk call() {
         int recommended = 25 + Settings.IMP.QUEUE.EXTRA_TIME_MS;
         boolean more = true;
         final BukkitQueue_All parent = getParent();
+        parent.getPrefetcher().invalidate(getX(), getZ());
         BukkitImplAdapter adapter = BukkitQueue_0.getAdapter();
         final Chunk chunk = getChunk();
         Object[] disableResult = parent.disableLighting(chunk);
         final World world = chunk.getWorld();
-        int[][] sections = getCombinedIdArrays();
+        int[][] sections = ids;
         final int bx = getX() << 4;
         final int bz = getZ() << 4;
         boolean update = adapter != null ? adapter.isChunkInUse(chunk) : true;
@@ -210,10 +218,26 @@ public FaweChunk call() {
                 if (changes == 0) {
                     continue;
                 }
-                final int[] newArray = sections[layer];
-                if (newArray == null) {
+                // Paletted sections are read in place, not expanded
+                int[] sectionArray = sections[layer];
+                PalettedSection sectionPalette = sectionArray == null ? palettes[layer] : null;
+                if (sectionArray == null && (sectionPalette == null || (sectionPalette.isSingleValue() && sectionPalette.getPalette(0) == 0))) {
                     continue;
                 }
+                if (place && index == 0 && adapter != null && (remaining == null || remaining[layer] == null)) {
+                    // Let the adapter write what it can of the section in one pass
+                    int[] buffer = sectionArray != null ? sectionArray.clone() : sectionPalette.toArray(new int[4096]);
+                    if (adapter.setBlocks(chunk, layer, buffer, update)) {
+                        if (remaining == null) remaining = new int[sections.length][];
+                        remaining[layer] = buffer;
+                    }
+                }
+                if (remaining != null && remaining[layer] != null) {
+                    sectionArray = remaining[layer];
+                    sectionPalette = null;
+                }
+                final int[] newArray = sectionArray;
+                final PalettedSection palette = sectionPalette;
                 final byte[] cacheX = FaweCache.CACHE_X[layer];
                 final short[] cacheY = FaweCache.CACHE_Y[layer];
                 final byte[] cacheZ = FaweCache.CACHE_Z[layer];
@@ -228,7 +252,7 @@ public FaweChunk call() {
                         for (int z = 0; z < 16; z++) {
                             int zz = bz + z;
                             for (int x = 0; x < 16; x++, index++) {
-                                int combined = newArray[index];
+                                int combined = newArray != null ? newArray[index] : palette.get(index);
                                 if (combined == 0) continue;
                                 int xx = bx + x;
 
@@ -276,7 +300,7 @@ public FaweChunk call() {
                 } else {
                     for (;index < 4096; index++) {
                         int j = place ? index : 4095 - index;
-                        int combined = newArray[j];
+                        int combined = newArray != null ? newArray[j] : palette.get(j);
                         BlockTypes type = BlockTypes.getFromStateId(combined);
                         if (type == BlockTypes.__RESERVED__) continue;
                         switch (type) {
@@ -74,16 +74,15 @@ public byte[] getBiomeArray() {
     @Nullable
     @Override
     public int[] getIdArray(int layer) {
-        int[] nextLayer = next.ids[layer];
-        if (nextLayer == null) return null;
-        int[] ids = Arrays.copyOf(nextLayer, nextLayer.length);
+        if (!next.hasSection(layer)) return null;
+        int[] ids = new int[4096];
         int index = 0;
         int by = layer << 4;
         for (int y = 0; y < 16; y++) {
             int yy = by + y;
             for (int z = 0; z < 16; z++) {
                 for (int x = 0; x < 16; x++, index++) {
-                    if (ids[index] != 0) {
+                    if (next.getSectionCombinedId(layer, index) != 0) {
                         ids[index] = getBlockCombinedId(x, yy, z);
                     }
                 }
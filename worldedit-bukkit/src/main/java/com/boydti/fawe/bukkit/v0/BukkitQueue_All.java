@@ -37,6 +37,8 @@ public class BukkitQueue_All extends BukkitQueue_0<ChunkSnapshot, ChunkSnapshot,
             .weakValues()
             .makeMap();
 
+    private final ChunkPrefetcher prefetcher = new ChunkPrefetcher(this);
+
     public BukkitQueue_All(com.sk89q.worldedit.world.World world) {
         super(world);
         Settings.IMP.QUEUE.PARALLEL_THREADS = 1;
@@ -70,6 +72,20 @@ public void onLoad(Chunk chunk) {
         return super.queueChunkLoad(cx, cz);
     }
 
+    @Override
+    public void prefetch(int minCX, int minCZ, int maxCX, int maxCZ) {
+        prefetcher.prefetch(minCX, minCZ, maxCX, maxCZ);
+    }
+
+    @Override
+    public void unpin(int minCX, int minCZ, int maxCX, int maxCZ) {
+        prefetcher.unpin(minCX, minCZ, maxCX, maxCZ);
+    }
+
+    public ChunkPrefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
     @Override
     public Relighter getRelighter() {
         return NullRelighter.INSTANCE;
@@ -247,6 +263,8 @@ public ChunkSnapshot getCachedChunk(World world, int cx, int cz) {
         long pair = MathMan.pairInt(cx, cz);
         ChunkSnapshot cached = chunkCache.get(pair);
         if (cached != null) return cached;
+        cached = prefetcher.get(cx, cz);
+        if (cached != null) return cached;
         if (world.isChunkLoaded(cx, cz)) {
             Long originalKeep = keepLoaded.get(pair);
             keepLoaded.put(pair, Long.MAX_VALUE);
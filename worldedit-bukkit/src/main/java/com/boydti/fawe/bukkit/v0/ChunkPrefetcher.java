@@ -0,0 +1,269 @@
+package com.boydti.fawe.bukkit.v0;
+
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.util.MainUtil;
+import com.boydti.fawe.util.MathMan;
+import com.boydti.fawe.util.TaskManager;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+
+/**
+ * Captures the chunk snapshots an operation is about to read, ahead of time<br>
+ * - Requested chunks are captured on the main thread in batches, using up to {@link Settings.QUEUE#PREFETCH_TIME_MS} each tick<br>
+ * - Each request pins a window of at most {@link Settings.QUEUE#PREFETCH_CHUNKS} chunks ahead of the last chunk read from it, and unpins those behind it<br>
+ * - Unpinned snapshots are evicted least recently used first, reads of chunks outside the window use the normal path<br>
+ * - Chunks which aren't loaded are only captured if they already exist (nothing is generated)<br>
+ * - A chunk's snapshot is dropped when the queue changes the chunk
+ */
+public class ChunkPrefetcher {
+
+    private final BukkitQueue_All queue;
+
+    // Access ordered, so the first snapshot is the least recently read
+    private final LinkedHashMap<Long, ChunkSnapshot> snapshots = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<Long, Integer> pins = new HashMap<>();
+    private final ArrayDeque<Long> pending = new ArrayDeque<>();
+    private final ArrayList<Window> windows = new ArrayList<>();
+    private boolean scheduled;
+
+    /**
+     * The chunks of a request, indexed by z then x (the order regions are read in chunk by chunk, see CuboidRegion#iterator)<br>
+     * - Pins [min, max) of the indices
+     */
+    private static final class Window {
+        private final int minCX, minCZ, maxCX, maxCZ;
+        private final long width;
+        private final long size;
+        private long min, max;
+
+        private Window(int minCX, int minCZ, int maxCX, int maxCZ) {
+            this.minCX = minCX;
+            this.minCZ = minCZ;
+            this.maxCX = maxCX;
+            this.maxCZ = maxCZ;
+            this.width = (long) maxCX - minCX + 1;
+            this.size = ((long) maxCZ - minCZ + 1) * width;
+        }
+
+        private boolean is(int minCX, int minCZ, int maxCX, int maxCZ) {
+            return this.minCX == minCX && this.minCZ == minCZ && this.maxCX == maxCX && this.maxCZ == maxCZ;
+        }
+
+        private boolean contains(int cx, int cz) {
+            return cx >= minCX && cx <= maxCX && cz >= minCZ && cz <= maxCZ;
+        }
+
+        private long index(int cx, int cz) {
+            return (cz - minCZ) * width + (cx - minCX);
+        }
+
+        private long pair(long index) {
+            return MathMan.pairInt((int) (minCX + index % width), (int) (minCZ + index / width));
+        }
+    }
+
+    public ChunkPrefetcher(BukkitQueue_All queue) {
+        this.queue = queue;
+    }
+
+    /**
+     * Pin the first chunks in a range, and start capturing those not yet captured
+     *
+     * @param minCX
+     * @param minCZ
+     * @param maxCX
+     * @param maxCZ
+     */
+    public void prefetch(int minCX, int minCZ, int maxCX, int maxCZ) {
+        if (minCX > maxCX || minCZ > maxCZ) {
+            return;
+        }
+        synchronized (this) {
+            Window window = new Window(minCX, minCZ, maxCX, maxCZ);
+            windows.add(window);
+            move(window, 0, Math.min(window.size, Math.max(1, Settings.IMP.QUEUE.PREFETCH_CHUNKS)));
+            if (pending.isEmpty() || scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        TaskManager.IMP.task(this::capture);
+    }
+
+    /**
+     * Unpin the chunks of a range (see {@link #prefetch(int, int, int, int)})
+     *
+     * @param minCX
+     * @param minCZ
+     * @param maxCX
+     * @param maxCZ
+     */
+    public synchronized void unpin(int minCX, int minCZ, int maxCX, int maxCZ) {
+        for (int i = 0; i < windows.size(); i++) {
+            Window window = windows.get(i);
+            if (window.is(minCX, minCZ, maxCX, maxCZ)) {
+                windows.remove(i);
+                move(window, 0, 0);
+                break;
+            }
+        }
+        trim();
+    }
+
+    /**
+     * Move the pinned indices of a window, pinning (and queuing) those which are new and unpinning those left behind
+     *
+     * @param window
+     * @param min
+     * @param max
+     */
+    private void move(Window window, long min, long max) {
+        for (long i = window.min; i < window.max; i++) {
+            if (i < min || i >= max) {
+                long pair = window.pair(i);
+                Integer count = pins.get(pair);
+                if (count == null) {
+                    continue;
+                }
+                if (count > 1) {
+                    pins.put(pair, count - 1);
+                } else {
+                    pins.remove(pair);
+                }
+            }
+        }
+        for (long i = min; i < max; i++) {
+            if (i < window.min || i >= window.max) {
+                long pair = window.pair(i);
+                Integer count = pins.put(pair, pins.getOrDefault(pair, 0) + 1);
+                if (count == null && !snapshots.containsKey(pair)) {
+                    pending.add(pair);
+                }
+            }
+        }
+        window.min = min;
+        window.max = max;
+    }
+
+    /**
+     * Slide the windows containing a chunk which is being read, so they pin the chunks after it
+     *
+     * @param cx
+     * @param cz
+     */
+    private void advance(int cx, int cz) {
+        if (windows.isEmpty()) {
+            return;
+        }
+        int limit = Math.max(1, Settings.IMP.QUEUE.PREFETCH_CHUNKS);
+        boolean queued = false;
+        for (Window window : windows) {
+            if (!window.contains(cx, cz)) {
+                continue;
+            }
+            long index = window.index(cx, cz);
+            // Keep the previous row (up to half the limit), for parallel edits reading slightly out of order
+            long behind = Math.min(window.width, limit >> 1);
+            long min = Math.max(0, index - behind);
+            long max = Math.min(window.size, min + limit);
+            if (min != window.min || max != window.max) {
+                move(window, min, max);
+                queued = true;
+            }
+        }
+        if (queued) {
+            trim();
+            if (!pending.isEmpty() && !scheduled) {
+                scheduled = true;
+                TaskManager.IMP.task(this::capture);
+            }
+        }
+    }
+
+    /**
+     * @param cx
+     * @param cz
+     * @return the captured snapshot, or null
+     */
+    public synchronized ChunkSnapshot get(int cx, int cz) {
+        advance(cx, cz);
+        return snapshots.get(MathMan.pairInt(cx, cz));
+    }
+
+    /**
+     * Drop the snapshot of a chunk which has changed
+     *
+     * @param cx
+     * @param cz
+     */
+    public synchronized void invalidate(int cx, int cz) {
+        snapshots.remove(MathMan.pairInt(cx, cz));
+    }
+
+    // Main thread
+    private void capture() {
+        try {
+            World world = queue.getWorld();
+            long start = System.currentTimeMillis();
+            long budget = Math.max(1, Settings.IMP.QUEUE.PREFETCH_TIME_MS);
+            while (System.currentTimeMillis() - start < budget) {
+                long pair;
+                synchronized (this) {
+                    Long next = pending.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    pair = next;
+                    // Released before it was captured
+                    if (!pins.containsKey(pair) || snapshots.containsKey(pair)) {
+                        continue;
+                    }
+                }
+                int cx = MathMan.unpairIntX(pair);
+                int cz = MathMan.unpairIntY(pair);
+                // Don't generate chunks, those are left to the normal read path
+                if (!world.isChunkLoaded(cx, cz) && !world.loadChunk(cx, cz, false)) {
+                    continue;
+                }
+                Chunk chunk = world.getChunkAt(cx, cz);
+                ChunkSnapshot snapshot = chunk.getChunkSnapshot(false, true, false);
+                synchronized (this) {
+                    snapshots.put(pair, snapshot);
+                    trim();
+                }
+            }
+        } catch (Throwable e) {
+            MainUtil.handleError(e);
+            synchronized (this) {
+                pending.clear();
+            }
+        }
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                scheduled = false;
+                return;
+            }
+        }
+        TaskManager.IMP.task(this::capture);
+    }
+
+    private void trim() {
+        int limit = Settings.IMP.QUEUE.PREFETCH_CHUNKS;
+        if (snapshots.size() <= limit) {
+            return;
+        }
+        Iterator<Map.Entry<Long, ChunkSnapshot>> iter = snapshots.entrySet().iterator();
+        while (iter.hasNext() && snapshots.size() > limit) {
+            if (!pins.containsKey(iter.next().getKey())) {
+                iter.remove();
+            }
+        }
+    }
+}
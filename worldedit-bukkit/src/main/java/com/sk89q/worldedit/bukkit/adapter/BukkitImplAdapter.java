@@ -72,6 +72,22 @@
 
     boolean setBlock(Chunk chunk, int x, int y, int z, BlockStateHolder state, boolean update);
 
+    /**
+     * Set the blocks of a chunk section in one pass.
+     *
+     * <p>Blocks which need more than a plain write (e.g. tile entities or
+     * light sources) are left in the array for {@link #setBlock} to set.</p>
+     *
+     * @param chunk the chunk
+     * @param layer the section index (y >> 4)
+     * @param blocks the 4096 combined ids of the section, 0 for unchanged; the blocks which were set are changed to 0
+     * @param update true to send the changes to players
+     * @return false if not supported, in which case the array is not changed
+     */
+    default boolean setBlocks(Chunk chunk, int layer, int[] blocks, boolean update) {
+        return false;
+    }
+
     boolean isChunkInUse(Chunk chunk);
 
     /**
@@ -210,6 +210,7 @@ public enum BBC {
     VISITOR_BLOCK("%s0 blocks affected", "WorldEdit.Visitor"),
     VISITOR_ENTITY("%s0 entities affected", "WorldEdit.Visitor"),
     VISITOR_FLAT("%s0 columns affected", "WorldEdit.Visitor"),
+    VISITOR_CHUNK("%s0/%s1 chunks affected", "WorldEdit.Visitor"),
 
     SELECTOR_FUZZY_POS1("Region set and expanded from %s0 %s1.", "WorldEdit.Selector"),
     SELECTOR_FUZZY_POS2("Added expansion of %s0 %s1.", "WorldEdit.Selector"),
@@ -54,6 +54,8 @@ public class Settings extends Config {
     @Create
     public LIGHTING LIGHTING;
     @Create
+    public ANVIL ANVIL;
+    @Create
     public TICK_LIMITER TICK_LIMITER;
     @Create
     public WEB WEB;
@@ -207,6 +209,19 @@ public static class HISTORY {
                 " - Must be in the range [64, 33554432]",
         })
         public int BUFFER_SIZE = 531441;
+        @Comment({
+                "Store block changes on disk compressed per chunk, with an index:",
+                " - Region restricted undo, inspect and rollback only read the chunks they need",
+                " - History in the old format can still be read",
+        })
+        public boolean CHUNK_INDEX = true;
+        @Comment({
+                "With `chunk-index`, buffer each chunk's block changes in columns (position, old block, new block):",
+                " - The chunks are compressed on background threads, so edits spend less time recording history",
+                " - Usually compresses better than writing each change as it happens",
+                " - Older versions can't read history written this way",
+        })
+        public boolean CHUNK_COLUMNS = true;
 
 
         @Comment({
@@ -247,6 +262,13 @@ public static class HISTORY {
                 " - Reduces history size by ~10%",
         })
         public boolean SMALL_EDITS = false;
+        @Comment({
+                "The most memory (in MB) history can use across all players, when not using disk:",
+                " - Over this, the history of players who edited least recently is moved to disk in the background",
+                " - History moved to disk is deleted with the player's history, or on restart",
+                " - Set to -1 for no limit",
+        })
+        public int MEMORY_LIMIT_MB = 512;
     }
 
     @Comment("This relates to how FAWE places chunks")
@@ -291,6 +313,16 @@ public static class QUEUE {
         })
         public int PRELOAD_CHUNKS = 32;
 
+        @Comment({
+                "How many chunks read ahead of an operation (e.g. //count, //distr) are kept",
+                " - Per operation, chunks it has moved past are released",
+                " - Higher values use more memory (a chunk is ~100KB)",
+        })
+        public int PREFETCH_CHUNKS = 256;
+
+        @Comment("Time (ms) per tick spent reading chunks ahead of an operation")
+        public int PREFETCH_TIME_MS = 10;
+
         @Comment({
                 "Discard edits which have been idle for a certain amount of time (ms)",
                 " - E.g. A plugin creates an EditSession but never does anything with it",
@@ -298,6 +330,36 @@ public static class QUEUE {
         })
         public int DISCARD_AFTER_MS = 60000;
 
+        @Comment({
+                "How the time for placing chunks is shared between edits:",
+                " - fair = Each player (and the console) gets an equal share, smaller edits go first",
+                " - fifo = The oldest edit is placed until it finishes (legacy behavior)"
+        })
+        public String SCHEDULER = "fair";
+
+        @Comment({
+                "Edits which have waited longer than this (ms) are placed before their fair share",
+                " - Only applies to the `fair` scheduler",
+                " - Set to -1 to disable"
+        })
+        public int TARGET_LATENCY_MS = 250;
+
+        @Comment({
+                "Store queued chunks in a map with many locks instead of one",
+                " - Reduces contention between async edits and chunk placement",
+                " - Not used when `prevent-crashes` is enabled"
+        })
+        public boolean CONCURRENT_MAP = true;
+
+        @Comment({
+                "How many threads large region operations (e.g. //set, //replace) are split between",
+                " - Each thread edits whole chunk columns",
+                " - Only used for edits without limits, while `concurrent-map` is enabled",
+                " - Masks and patterns which aren't thread safe (e.g. expressions) still use one thread",
+                " - 1 = disabled"
+        })
+        public int REGION_THREADS = 1;
+
         public static class PROGRESS {
             @Comment({"Display constant titles about the progress of a user's edit",
                     " - false = disabled",
@@ -364,6 +426,29 @@ public static class EXPERIMENTAL {
                 " - PERM: fawe.freebuild.<plugin>"
         })
         public boolean FREEBUILD = false;
+
+        @Comment({
+                "[SAFE] Compile an expression (e.g. for //generate or a mask) after it's evaluated this many times",
+                " - Requires Rhino (the same library as CraftScripts)",
+                " - Set to 0 to compile expressions straight away",
+                " - Set to -1 to always interpret expressions",
+        })
+        public int COMPILE_EXPRESSIONS = 1024;
+
+        @Comment({
+                "[SAFE] The most blocks to send a player for each brush visualization",
+                " - Only blocks which changed since the last visualization are sent",
+                " - Chunks over the limit are sent on the next interval",
+                " - Set to -1 for no limit",
+        })
+        public int VISUALIZATION_BLOCKS = 4096;
+
+        @Comment({
+                "[SAFE] Cache the block properties read from the server on startup (in `registry.bin`)",
+                " - Later startups with the same server version and blocks read the cache instead",
+                " - The cache is rebuilt if the server version or blocks change",
+        })
+        public boolean REGISTRY_SNAPSHOT = true;
     }
 
     public static class WEB {
@@ -434,6 +519,13 @@ public static class CLIPBOARD {
         public int COMPRESSION_LEVEL = 1;
         @Comment("Number of days to keep history on disk before deleting it")
         public int DELETE_AFTER_DAYS = 1;
+        @Comment({
+                "The memory (in MB) shared by clipboards loaded from schematic files",
+                " - A file is only loaded once, even when several players load it",
+                " - The least recently used clipboards are moved to disk, then dropped",
+                " - 0 = Don't share loaded clipboards",
+        })
+        public int CACHE_SIZE_MB = 256;
     }
 
     public static class LIGHTING {
@@ -451,6 +543,35 @@ public static class LIGHTING {
         public int MODE = 1;
         @Comment({"If existing lighting should be removed before relighting"})
         public boolean REMOVE_FIRST = false;
+        @Comment({
+                "Print how long each relight took to console",
+                " - Block light is relit on several threads, in groups of 4x4 chunks"
+        })
+        public boolean STATISTICS = false;
+    }
+
+    @Comment({
+            "Settings for filtering region files (e.g. `//anvil replaceall`)",
+            " - Region files are read (in order, on one thread), chunks decoded, filtered, then re-encoded and written",
+            " - Each stage has its own threads and a bounded queue, so a slow stage stops the others getting ahead",
+    })
+    public static class ANVIL {
+        @Comment("Threads decompressing and parsing chunks")
+        public int DECODE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        @Comment("Threads running the filter on chunks")
+        public int FILTER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+        @Comment("Threads compressing modified chunks and saving region files")
+        public int WRITE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        @Comment("The maximum number of region files being filtered at once")
+        public int MAX_FILES = 4;
+        @Comment("Compressed chunks waiting to be decoded")
+        public int READ_QUEUE = 512;
+        @Comment("Decoded chunks waiting to be filtered")
+        public int DECODE_QUEUE = 128;
+        @Comment("Filtered chunks waiting to be written")
+        public int WRITE_QUEUE = 128;
+        @Comment("Print the throughput of each stage to console when finished")
+        public boolean STATISTICS = true;
     }
 
     public void reload(File file) {
@@ -0,0 +1,283 @@
+package com.boydti.fawe.database;
+
+import com.boydti.fawe.util.MathMan;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An in memory spatial index of edit bounds (a multi level grid)<br>
+ * - Each edit is stored at the smallest level where it covers at most 2x2 cells<br>
+ * - Level 0 cells are a chunk wide, each level above is 4x wider<br>
+ * - A lookup only visits the cells which overlap the query at each level in use<br>
+ * <br>
+ * Not thread safe, the RollbackDatabase only uses it from its own task
+ */
+public class EditIndex {
+
+    private static final int MIN_SHIFT = 4;
+    private static final int LEVELS = 14;
+
+    private final Long2ObjectOpenHashMap<int[]>[] buckets;
+    private final Map<UUID, Int2ObjectOpenHashMap<Integer>> slots = new HashMap<>();
+
+    private UUID[] players = new UUID[1024];
+    private int[] ids = new int[1024];
+    private int[] bounds = new int[1024 * 6];
+    private int[] times = new int[1024];
+    private int[] marks = new int[1024];
+    private int[] free = new int[16];
+    private int freeSize;
+    private int used;
+    private int size;
+    private int mark;
+
+    public EditIndex() {
+        this.buckets = new Long2ObjectOpenHashMap[LEVELS];
+        for (int i = 0; i < LEVELS; i++) {
+            buckets[i] = new Long2ObjectOpenHashMap<>();
+        }
+    }
+
+    private static int getShift(int level) {
+        return MIN_SHIFT + (level << 1);
+    }
+
+    private static int getLevel(int x1, int z1, int x2, int z2) {
+        for (int level = 0; level < LEVELS - 1; level++) {
+            int shift = getShift(level);
+            if ((x2 >> shift) - (x1 >> shift) <= 1 && (z2 >> shift) - (z1 >> shift) <= 1) {
+                return level;
+            }
+        }
+        return LEVELS - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Add an edit, replacing any edit with the same player and id
+     */
+    public void add(UUID player, int id, int x1, int y1, int z1, int x2, int y2, int z2, int time) {
+        remove(player, id);
+        int slot;
+        if (freeSize != 0) {
+            slot = free[--freeSize];
+        } else {
+            slot = used++;
+            if (slot == ids.length) {
+                int newSize = slot << 1;
+                players = Arrays.copyOf(players, newSize);
+                ids = Arrays.copyOf(ids, newSize);
+                bounds = Arrays.copyOf(bounds, newSize * 6);
+                times = Arrays.copyOf(times, newSize);
+                marks = Arrays.copyOf(marks, newSize);
+            }
+        }
+        Int2ObjectOpenHashMap<Integer> playerSlots = slots.get(player);
+        if (playerSlots == null) {
+            slots.put(player, playerSlots = new Int2ObjectOpenHashMap<>());
+        } else {
+            // Share one UUID instance between all of a player's edits
+            player = players[playerSlots.values().iterator().next()];
+        }
+        playerSlots.put(id, (Integer) slot);
+        players[slot] = player;
+        ids[slot] = id;
+        times[slot] = time;
+        int i = slot * 6;
+        bounds[i] = Math.min(x1, x2);
+        bounds[i + 1] = Math.min(y1, y2);
+        bounds[i + 2] = Math.min(z1, z2);
+        bounds[i + 3] = Math.max(x1, x2);
+        bounds[i + 4] = Math.max(y1, y2);
+        bounds[i + 5] = Math.max(z1, z2);
+        size++;
+        link(slot, true);
+    }
+
+    /**
+     * Add or remove a slot from each cell it overlaps
+     */
+    private void link(int slot, boolean add) {
+        int i = slot * 6;
+        int x1 = bounds[i];
+        int z1 = bounds[i + 2];
+        int x2 = bounds[i + 3];
+        int z2 = bounds[i + 5];
+        int level = getLevel(x1, z1, x2, z2);
+        int shift = getShift(level);
+        Long2ObjectOpenHashMap<int[]> map = buckets[level];
+        for (int cx = x1 >> shift; cx <= x2 >> shift; cx++) {
+            for (int cz = z1 >> shift; cz <= z2 >> shift; cz++) {
+                long pair = MathMan.pairInt(cx, cz);
+                int[] bucket = map.get(pair);
+                if (add) {
+                    // bucket[0] is the number of slots
+                    if (bucket == null) {
+                        bucket = new int[4];
+                        map.put(pair, bucket);
+                    } else if (bucket[0] + 1 == bucket.length) {
+                        bucket = Arrays.copyOf(bucket, bucket.length << 1);
+                        map.put(pair, bucket);
+                    }
+                    bucket[++bucket[0]] = slot;
+                } else if (bucket != null) {
+                    int count = bucket[0];
+                    for (int j = 1; j <= count; j++) {
+                        if (bucket[j] == slot) {
+                            bucket[j] = bucket[count];
+                            bucket[0] = --count;
+                            break;
+                        }
+                    }
+                    if (count == 0) {
+                        map.remove(pair);
+                    }
+                }
+            }
+        }
+    }
+
+    private void remove(int slot) {
+        link(slot, false);
+        Int2ObjectOpenHashMap<Integer> playerSlots = slots.get(players[slot]);
+        if (playerSlots != null) {
+            playerSlots.remove(ids[slot]);
+            if (playerSlots.isEmpty()) {
+                slots.remove(players[slot]);
+            }
+        }
+        players[slot] = null;
+        if (freeSize == free.length) {
+            free = Arrays.copyOf(free, freeSize << 1);
+        }
+        free[freeSize++] = slot;
+        size--;
+    }
+
+    /**
+     * @param player
+     * @param id
+     * @return if the edit was indexed
+     */
+    public boolean remove(UUID player, int id) {
+        Int2ObjectOpenHashMap<Integer> playerSlots = slots.get(player);
+        if (playerSlots == null) {
+            return false;
+        }
+        Integer slot = playerSlots.get(id);
+        if (slot == null) {
+            return false;
+        }
+        remove(slot);
+        return true;
+    }
+
+    /**
+     * Remove edits older than a time
+     *
+     * @param time the time in seconds
+     * @return the number of edits removed
+     */
+    public int removeOlderThan(int time) {
+        int removed = 0;
+        for (int slot = 0; slot < used; slot++) {
+            if (players[slot] != null && times[slot] < time) {
+                remove(slot);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Find the edits whose bounds intersect a region
+     *
+     * @param player  the player, or null for any player
+     * @param minTime only edits after this time (seconds) are returned
+     * @param ascending if the result should be sorted oldest first
+     * @return the matching edits, sorted by time then id
+     */
+    public List<Edit> getEdits(int x1, int y1, int z1, int x2, int y2, int z2, int minTime, UUID player, boolean ascending) {
+        ArrayList<Edit> result = new ArrayList<>();
+        if (size == 0) {
+            return result;
+        }
+        if (++mark == 0) {
+            Arrays.fill(marks, 0);
+            mark = 1;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            Long2ObjectOpenHashMap<int[]> map = buckets[level];
+            if (map.isEmpty()) {
+                continue;
+            }
+            int shift = getShift(level);
+            int minCX = x1 >> shift;
+            int minCZ = z1 >> shift;
+            int maxCX = x2 >> shift;
+            int maxCZ = z2 >> shift;
+            long cells = ((long) maxCX - minCX + 1) * ((long) maxCZ - minCZ + 1);
+            if (cells > map.size()) {
+                for (int[] bucket : map.values()) {
+                    collect(bucket, x1, y1, z1, x2, y2, z2, minTime, player, result);
+                }
+            } else {
+                for (int cx = minCX; cx <= maxCX; cx++) {
+                    for (int cz = minCZ; cz <= maxCZ; cz++) {
+                        int[] bucket = map.get(MathMan.pairInt(cx, cz));
+                        if (bucket != null) {
+                            collect(bucket, x1, y1, z1, x2, y2, z2, minTime, player, result);
+                        }
+                    }
+                }
+            }
+        }
+        Comparator<Edit> order = new Comparator<Edit>() {
+            @Override
+            public int compare(Edit a, Edit b) {
+                int value = Integer.compare(a.time, b.time);
+                return value != 0 ? value : Integer.compare(a.id, b.id);
+            }
+        };
+        Collections.sort(result, ascending ? order : Collections.reverseOrder(order));
+        return result;
+    }
+
+    private void collect(int[] bucket, int x1, int y1, int z1, int x2, int y2, int z2, int minTime, UUID player, List<Edit> result) {
+        for (int j = 1, count = bucket[0]; j <= count; j++) {
+            int slot = bucket[j];
+            if (marks[slot] == mark) {
+                continue;
+            }
+            marks[slot] = mark;
+            int i = slot * 6;
+            if (bounds[i + 3] >= x1 && bounds[i] <= x2 && bounds[i + 4] >= y1 && bounds[i + 1] <= y2 && bounds[i + 5] >= z1 && bounds[i + 2] <= z2
+                    && times[slot] > minTime && (player == null || player.equals(players[slot]))) {
+                result.add(new Edit(players[slot], ids[slot], times[slot]));
+            }
+        }
+    }
+
+    public static final class Edit {
+        public final UUID player;
+        public final int id;
+        public final int time;
+
+        public Edit(UUID player, int id, int time) {
+            this.player = player;
+            this.id = id;
+            this.time = time;
+        }
+    }
+}
@@ -19,6 +19,7 @@
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
@@ -34,13 +35,15 @@ public class RollbackDatabase extends AsyncNotifyQueue {
     private String INSERT_EDIT;
     private String CREATE_TABLE;
     //    private String GET_EDITS_POINT;
-    private String GET_EDITS;
-    private String GET_EDITS_USER;
-    private String GET_EDITS_ASC;
-    private String GET_EDITS_USER_ASC;
-    private String DELETE_EDITS_USER;
     private String DELETE_EDIT_USER;
     private String PURGE;
+    private String GET_ALL;
+
+    /**
+     * Spatial index of every edit in the table, loaded on startup
+     */
+    private final EditIndex index = new EditIndex();
+    private static final int BATCH_SIZE = 1024;
 
     private ConcurrentLinkedQueue<RollbackOptimizedHistory> historyChanges = new ConcurrentLinkedQueue<>();
     private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
@@ -59,12 +62,8 @@ public RollbackDatabase(final World world) throws SQLException, ClassNotFoundExc
         INSERT_EDIT = "INSERT OR REPLACE INTO `" + prefix + "edits` (`player`,`id`,`x1`,`y1`,`z1`,`x2`,`y2`,`z2`,`time`) VALUES(?,?,?,?,?,?,?,?,?)";
         PURGE = "DELETE FROM `" + prefix + "edits` WHERE `time`<?";
 //        GET_EDITS_POINT = "SELECT `player`,`id` FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=?";
-        GET_EDITS = "SELECT `player`,`id` FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=? AND `time`>? ORDER BY `time` DESC, `id` DESC";
-        GET_EDITS_USER = "SELECT `player`,`id` FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=? AND `time`>? AND `player`=? ORDER BY `time` DESC, `id` DESC";
-        GET_EDITS_ASC = "SELECT `player`,`id` FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=? AND `time`>? ORDER BY `time` ASC, `id` ASC";
-        GET_EDITS_USER_ASC = "SELECT `player`,`id` FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=? AND `time`>? AND `player`=? ORDER BY `time` ASC, `id` ASC";
-        DELETE_EDITS_USER = "DELETE FROM `" + prefix + "edits` WHERE `x2`>=? AND `x1`<=? AND `y2`>=? AND `y1`<=? AND `z2`>=? AND `z1`<=? AND `time`>? AND `player`=?";
         DELETE_EDIT_USER = "DELETE FROM `" + prefix + "edits` WHERE `player`=? AND `id`=?";
+        GET_ALL = "SELECT `player`,`id`,`x1`,`y1`,`z1`,`x2`,`y2`,`z2`,`time` FROM `" + prefix + "edits`";
         init();
         purge((int) TimeUnit.DAYS.toMillis(Settings.IMP.HISTORY.DELETE_AFTER_DAYS));
     }
@@ -93,16 +92,43 @@ public void init() {
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        loadIndex();
+    }
+
+    private void loadIndex() {
+        synchronized (this) {
+            try (PreparedStatement stmt = connection.prepareStatement(GET_ALL)) {
+                ResultSet result = stmt.executeQuery();
+                while (result.next()) {
+                    UUID uuid = toUUID(result.getBytes(1));
+                    index.add(uuid, result.getInt(2), result.getInt(3), result.getInt(4) + 128, result.getInt(5), result.getInt(6), result.getInt(7) + 128, result.getInt(8), result.getInt(9));
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+    }
+
+    private static UUID toUUID(byte[] uuidBytes) {
+        ByteBuffer bb = ByteBuffer.wrap(uuidBytes);
+        long high = bb.getLong();
+        long low = bb.getLong();
+        return new UUID(high, low);
     }
 
     public void delete(final UUID uuid, final int id) {
         addTask(new Runnable() {
             @Override
             public void run() {
+                index.remove(uuid, id);
                 try (PreparedStatement stmt = connection.prepareStatement(DELETE_EDIT_USER)) {
-                    byte[] uuidBytes = ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
-                    stmt.setBytes(1, uuidBytes);
+                    stmt.setBytes(1, toBytes(uuid));
                     stmt.setInt(2, id);
+                    stmt.executeUpdate();
                 } catch (SQLException e) {
                     e.printStackTrace();
                 }
@@ -116,6 +142,7 @@ public void purge(int diff) {
         addTask(new Runnable() {
             @Override
             public void run() {
+                index.removeOlderThan(then);
                 try (PreparedStatement stmt = connection.prepareStatement(PURGE)) {
                     stmt.setInt(1, then);
                     stmt.executeUpdate();
@@ -126,55 +153,44 @@ public void run() {
         });
     }
 
+    /**
+     * Find the edits whose bounds intersect a region (using the in memory index)
+     *
+     * @param uuid      the player, or null for any player
+     * @param minTime   the minimum time in milliseconds
+     * @param pos1      the minimum point
+     * @param pos2      the maximum point
+     * @param onEach    run for each edit with history on disk
+     * @param whenDone  run after every edit has been visited
+     * @param delete    if the matching edits of the player should be removed from the database
+     * @param ascending if edits should be visited oldest first
+     */
     public void getPotentialEdits(final UUID uuid, final long minTime, final Vector pos1, final Vector pos2, final RunnableVal<DiskStorageHistory> onEach, final Runnable whenDone, final boolean delete, final boolean ascending) {
         final World world = FaweAPI.getWorld(this.worldName);
         addTask(new Runnable() {
             @Override
             public void run() {
-                String stmtStr = ascending ? (uuid == null ? GET_EDITS_ASC : GET_EDITS_USER_ASC) : (uuid == null ? GET_EDITS : GET_EDITS_USER);
-                try (PreparedStatement stmt = connection.prepareStatement(stmtStr)) {
-                    stmt.setInt(1, pos1.getBlockX());
-                    stmt.setInt(2, pos2.getBlockX());
-                    stmt.setByte(3, (byte) (pos1.getBlockY() - 128));
-                    stmt.setByte(4, (byte) (pos2.getBlockY() - 128));
-                    stmt.setInt(5, pos1.getBlockZ());
-                    stmt.setInt(6, pos2.getBlockZ());
-                    stmt.setInt(7, (int) (minTime / 1000));
-                    if (uuid != null) {
-                        byte[] uuidBytes = ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
-                        stmt.setBytes(8, uuidBytes);
-                    }
-                    ResultSet result = stmt.executeQuery();
-                    if (!result.next()) {
-                        TaskManager.IMP.taskNow(whenDone, false);
-                        return;
+                List<EditIndex.Edit> edits = index.getEdits(pos1.getBlockX(), pos1.getBlockY(), pos1.getBlockZ(), pos2.getBlockX(), pos2.getBlockY(), pos2.getBlockZ(), (int) (minTime / 1000), uuid, ascending);
+                for (EditIndex.Edit edit : edits) {
+                    DiskStorageHistory history = new DiskStorageHistory(world, edit.player, edit.id);
+                    if (history.getBDFile().exists()) {
+                        onEach.run(history);
                     }
-                    do {
-                        byte[] uuidBytes = result.getBytes(1);
-                        int index = result.getInt(2);
-                        ByteBuffer bb = ByteBuffer.wrap(uuidBytes);
-                        long high = bb.getLong();
-                        long low = bb.getLong();
-                        DiskStorageHistory history = new DiskStorageHistory(world, new UUID(high, low), index);
-                        if (history.getBDFile().exists()) {
-                            onEach.run(history);
-                        }
-                    } while (result.next());
-                    TaskManager.IMP.taskNow(whenDone, false);
-                } catch (SQLException e) {
-                    e.printStackTrace();
                 }
-                if (delete && uuid != null) {
-                    try (PreparedStatement stmt = connection.prepareStatement(DELETE_EDITS_USER)) {
-                        stmt.setInt(1, pos1.getBlockX());
-                        stmt.setInt(2, pos2.getBlockX());
-                        stmt.setByte(3, (byte) (pos1.getBlockY() - 128));
-                        stmt.setByte(4, (byte) (pos2.getBlockY() - 128));
-                        stmt.setInt(5, pos1.getBlockZ());
-                        stmt.setInt(6, pos2.getBlockZ());
-                        stmt.setInt(7, (int) (minTime / 1000));
-                        byte[] uuidBytes = ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
-                        stmt.setBytes(8, uuidBytes);
+                TaskManager.IMP.taskNow(whenDone, false);
+                if (delete && uuid != null && !edits.isEmpty()) {
+                    try (PreparedStatement stmt = connection.prepareStatement(DELETE_EDIT_USER)) {
+                        int batch = 0;
+                        for (EditIndex.Edit edit : edits) {
+                            index.remove(edit.player, edit.id);
+                            stmt.setBytes(1, toBytes(edit.player));
+                            stmt.setInt(2, edit.id);
+                            stmt.addBatch();
+                            if (++batch % BATCH_SIZE == 0) {
+                                stmt.executeBatch();
+                            }
+                        }
+                        stmt.executeBatch();
                     } catch (SQLException e) {
                         e.printStackTrace();
                     }
@@ -221,11 +237,12 @@ private boolean sendBatch() {
             }
 
             try (PreparedStatement stmt = connection.prepareStatement(INSERT_EDIT)) {
+                int batch = 0;
                 for (RollbackOptimizedHistory change : copy) {
                     // `player`,`id`,`x1`,`y1`,`z1`,`x2`,`y2`,`z2`,`time`
                     UUID uuid = change.getUUID();
-                    byte[] uuidBytes = ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
-                    stmt.setBytes(1, uuidBytes);
+                    index.add(uuid, change.getIndex(), change.getMinX(), change.getMinY(), change.getMinZ(), change.getMaxX(), change.getMaxY(), change.getMaxZ(), (int) (change.getTime() / 1000));
+                    stmt.setBytes(1, toBytes(uuid));
                     stmt.setInt(2, change.getIndex());
                     stmt.setInt(3, change.getMinX());
                     stmt.setByte(4, (byte) (change.getMinY() - 128));
@@ -234,9 +251,12 @@ private boolean sendBatch() {
                     stmt.setByte(7, (byte) (change.getMaxY() - 128));
                     stmt.setInt(8, change.getMaxZ());
                     stmt.setInt(9, (int) (change.getTime() / 1000));
-                    stmt.executeUpdate();
-                    stmt.clearParameters();
+                    stmt.addBatch();
+                    if (++batch % BATCH_SIZE == 0) {
+                        stmt.executeBatch();
+                    }
                 }
+                stmt.executeBatch();
             } catch (Exception e) {
                 e.printStackTrace();
             }
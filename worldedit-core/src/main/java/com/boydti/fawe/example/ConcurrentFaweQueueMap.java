@@ -0,0 +1,303 @@
+package com.boydti.fawe.example;
+
+import com.boydti.fawe.object.FaweChunk;
+import com.boydti.fawe.object.FaweQueue;
+import com.boydti.fawe.object.RunnableVal;
+import com.boydti.fawe.util.MathMan;
+import com.boydti.fawe.util.SetQueue;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A chunk map split into independently locked stripes<br>
+ * - Producer threads only contend when they write to chunks in the same stripe<br>
+ * - Each producer thread caches the last chunk it used (invalidated when chunks are dispatched)<br>
+ * - {@link #next(int, long)} removes chunks a few at a time and dispatches them without holding any lock
+ */
+public class ConcurrentFaweQueueMap implements IFaweQueueMap {
+
+    private static final int STRIPES = 64;
+    private static final int MASK = STRIPES - 1;
+
+    private final MappedFaweQueue parent;
+    private final Long2ObjectOpenHashMap<FaweChunk>[] stripes;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Incremented whenever chunks are removed, so stale thread local caches can be detected
+     */
+    private volatile int version;
+    /**
+     * The chunk a producer most recently switched to (skipped by {@link #next(int, long)} while the queue is inactive)
+     */
+    private volatile FaweChunk lastWrappedChunk;
+    /**
+     * While several producers are writing (see {@link #setParallel(boolean)}), the chunk each of them is using
+     */
+    private volatile boolean parallel;
+    private final Set<FaweChunk> pinned = Collections.newSetFromMap(new ConcurrentHashMap<FaweChunk, Boolean>());
+    private int pollIndex;
+
+    private final ThreadLocal<LastChunk> lastChunk = new ThreadLocal<LastChunk>() {
+        @Override
+        protected LastChunk initialValue() {
+            return new LastChunk();
+        }
+    };
+
+    private static final class LastChunk {
+        private int x = Integer.MIN_VALUE;
+        private int z = Integer.MIN_VALUE;
+        private int version;
+        private FaweChunk chunk;
+    }
+
+    public ConcurrentFaweQueueMap(MappedFaweQueue parent) {
+        this.parent = parent;
+        this.stripes = new Long2ObjectOpenHashMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Long2ObjectOpenHashMap<>();
+        }
+    }
+
+    private static int stripe(long pair) {
+        long h = pair * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 58) & MASK;
+    }
+
+    private void onAdd() {
+        int newSize = size.incrementAndGet();
+        if (parent.getProgressTask() != null) {
+            try {
+                parent.getProgressTask().run(FaweQueue.ProgressType.QUEUE, newSize);
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public Collection<FaweChunk> getFaweCunks() {
+        HashSet<FaweChunk> set = new HashSet<>(size());
+        for (Long2ObjectOpenHashMap<FaweChunk> stripe : stripes) {
+            synchronized (stripe) {
+                set.addAll(stripe.values());
+            }
+        }
+        return set;
+    }
+
+    @Override
+    public void forEachChunk(RunnableVal<FaweChunk> onEach) {
+        ArrayList<FaweChunk> snapshot = new ArrayList<>();
+        for (Long2ObjectOpenHashMap<FaweChunk> stripe : stripes) {
+            synchronized (stripe) {
+                snapshot.addAll(stripe.values());
+            }
+            for (FaweChunk chunk : snapshot) {
+                onEach.run(chunk);
+            }
+            snapshot.clear();
+        }
+    }
+
+    @Override
+    public FaweChunk getFaweChunk(int cx, int cz) {
+        LastChunk cache = lastChunk.get();
+        if (cache.x == cx && cache.z == cz && cache.version == version) {
+            return cache.chunk;
+        }
+        long pair = MathMan.pairInt(cx, cz);
+        Long2ObjectOpenHashMap<FaweChunk> stripe = stripes[stripe(pair)];
+        int currentVersion = version;
+        FaweChunk chunk;
+        synchronized (stripe) {
+            chunk = stripe.get(pair);
+        }
+        if (chunk == null) {
+            FaweChunk newChunk = parent.getFaweChunk(cx, cz);
+            synchronized (stripe) {
+                chunk = stripe.get(pair);
+                if (chunk == null) {
+                    stripe.put(pair, newChunk);
+                }
+            }
+            if (chunk == null) {
+                chunk = newChunk;
+                onAdd();
+            }
+        }
+        if (parallel) {
+            if (cache.chunk != null) {
+                pinned.remove(cache.chunk);
+            }
+            pinned.add(chunk);
+        }
+        cache.x = cx;
+        cache.z = cz;
+        cache.version = currentVersion;
+        cache.chunk = chunk;
+        lastWrappedChunk = chunk;
+        return chunk;
+    }
+
+    @Override
+    public FaweChunk getCachedFaweChunk(int cx, int cz) {
+        LastChunk cache = lastChunk.get();
+        if (cache.x == cx && cache.z == cz && cache.version == version) {
+            return cache.chunk;
+        }
+        long pair = MathMan.pairInt(cx, cz);
+        Long2ObjectOpenHashMap<FaweChunk> stripe = stripes[stripe(pair)];
+        synchronized (stripe) {
+            return stripe.get(pair);
+        }
+    }
+
+    @Override
+    public void add(FaweChunk chunk) {
+        long pair = MathMan.pairInt(chunk.getX(), chunk.getZ());
+        Long2ObjectOpenHashMap<FaweChunk> stripe = stripes[stripe(pair)];
+        FaweChunk previous;
+        synchronized (stripe) {
+            previous = stripe.get(pair);
+            if (previous == null) {
+                stripe.put(pair, chunk);
+            }
+        }
+        if (previous == null) {
+            onAdd();
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (Long2ObjectOpenHashMap<FaweChunk> stripe : stripes) {
+            synchronized (stripe) {
+                int removed = stripe.size();
+                stripe.clear();
+                size.addAndGet(-removed);
+            }
+        }
+        version++;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Keep the chunk each producer thread is using in the map until it moves on<br>
+     * - Only {@link #lastWrappedChunk} is kept otherwise, which is enough for a single producer
+     *
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+        if (!parallel) {
+            pinned.clear();
+        }
+    }
+
+    /**
+     * Remove up to `amount` chunks from the map
+     *
+     * @param buffer the removed chunks are added here
+     * @param amount
+     * @param skip   if the chunk a producer is using should be left in the map
+     * @return if any chunks were removed
+     */
+    private boolean poll(ArrayList<FaweChunk> buffer, int amount, boolean skip) {
+        int start = buffer.size();
+        FaweChunk lastWrapped = skip ? lastWrappedChunk : null;
+        boolean checkPinned = parallel;
+        for (int i = 0; i < STRIPES && buffer.size() - start < amount; i++) {
+            Long2ObjectOpenHashMap<FaweChunk> stripe = stripes[pollIndex = (pollIndex + 1) & MASK];
+            synchronized (stripe) {
+                if (stripe.isEmpty()) {
+                    continue;
+                }
+                ObjectIterator<Long2ObjectMap.Entry<FaweChunk>> iter = stripe.long2ObjectEntrySet().fastIterator();
+                while (iter.hasNext() && buffer.size() - start < amount) {
+                    FaweChunk chunk = iter.next().getValue();
+                    if (chunk == lastWrapped || (checkPinned && pinned.contains(chunk))) {
+                        continue;
+                    }
+                    iter.remove();
+                    size.decrementAndGet();
+                    buffer.add(chunk);
+                }
+            }
+        }
+        int polled = buffer.size() - start;
+        if (polled != 0) {
+            version++;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized boolean next(int amount, long time) {
+        try {
+            boolean skip = parent.getStage() == SetQueue.QueueStage.INACTIVE;
+            ArrayList<FaweChunk> buffer = new ArrayList<>(Math.max(amount, 16));
+            if (amount == 1) {
+                long start = System.currentTimeMillis();
+                do {
+                    if (!poll(buffer, 1, skip)) {
+                        break;
+                    }
+                    FaweChunk chunk = buffer.remove(0);
+                    parent.start(chunk);
+                    chunk.call();
+                    parent.end(chunk);
+                } while (System.currentTimeMillis() - start < time);
+            } else {
+                ExecutorCompletionService service = SetQueue.IMP.getCompleterService();
+                ForkJoinPool pool = SetQueue.IMP.getForkJoinPool();
+                poll(buffer, amount, skip);
+                for (FaweChunk chunk : buffer) {
+                    parent.start(chunk);
+                    service.submit(chunk);
+                }
+                if (buffer.size() == amount) {
+                    buffer.clear();
+                    long start = System.currentTimeMillis();
+                    while (System.currentTimeMillis() - start < time && poll(buffer, 1, skip)) {
+                        FaweChunk chunk = buffer.remove(0);
+                        parent.start(chunk);
+                        service.submit(chunk);
+                        Future future = service.poll(50, TimeUnit.MILLISECONDS);
+                        if (future != null) {
+                            FaweChunk fc = (FaweChunk) future.get();
+                            parent.end(fc);
+                        }
+                    }
+                }
+                pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                Future future;
+                while ((future = service.poll()) != null) {
+                    FaweChunk fc = (FaweChunk) future.get();
+                    parent.end(fc);
+                }
+            }
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+        return size() != 0;
+    }
+}
@@ -3,6 +3,7 @@
 import com.boydti.fawe.FaweCache;
 import com.boydti.fawe.object.FaweChunk;
 import com.boydti.fawe.object.FaweQueue;
+import com.boydti.fawe.object.collection.PalettedSection;
 import com.boydti.fawe.util.MathMan;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.worldedit.world.block.BlockTypes;
@@ -12,6 +13,10 @@
 public abstract class IntFaweChunk<T, V extends FaweQueue> extends FaweChunk<T> {
 
     public final int[][] ids;
+    /**
+     * Sections which have not been expanded into {@link #ids} (only one of ids[i] or palettes[i] is set)
+     */
+    public final PalettedSection[] palettes;
     public final short[] count;
     public final short[] air;
     public final byte[] heightMap;
@@ -24,8 +29,13 @@
     public T chunk;
 
     public IntFaweChunk(FaweQueue parent, int x, int z, int[][] ids, short[] count, short[] air, byte[] heightMap) {
+        this(parent, x, z, ids, new PalettedSection[ids.length], count, air, heightMap);
+    }
+
+    public IntFaweChunk(FaweQueue parent, int x, int z, int[][] ids, PalettedSection[] palettes, short[] count, short[] air, byte[] heightMap) {
         super(parent, x, z);
         this.ids = ids;
+        this.palettes = palettes;
         this.count = count;
         this.air = air;
         this.heightMap = heightMap;
@@ -41,6 +51,7 @@ public IntFaweChunk(FaweQueue parent, int x, int z, int[][] ids, short[] count,
     public IntFaweChunk(FaweQueue parent, int x, int z) {
         super(parent, x, z);
         this.ids = new int[HEIGHT >> 4][];
+        this.palettes = new PalettedSection[HEIGHT >> 4];
         this.count = new short[HEIGHT >> 4];
         this.air = new short[HEIGHT >> 4];
         this.heightMap = new byte[256];
@@ -105,7 +116,7 @@ public int getTotalAir() {
     public int getBitMask() {
         int bitMask = 0;
         for (int section = 0; section < ids.length; section++) {
-            if (ids[section] != null) {
+            if (ids[section] != null || palettes[section] != null) {
                 bitMask += 1 << section;
             }
         }
@@ -113,21 +124,71 @@ public int getBitMask() {
     }
 
     /**
-     * Get the raw data for a section
+     * Get the raw data for a section<br>
+     * - A paletted section is expanded, and stays expanded: the chunk then holds the returned array instead of the palette
+     * (use {@link #getPalettedSection(int)} or {@link #getSectionCombinedId(int, int)} to avoid this)<br>
+     * - The array is the chunk's own storage, so changing it changes the chunk
      *
      * @param i
      * @return
      */
     @Override
     public int[] getIdArray(final int i) {
-        return this.ids[i];
+        int[] array = this.ids[i];
+        if (array == null) {
+            PalettedSection palette = this.palettes[i];
+            if (palette != null) {
+                array = this.ids[i] = palette.toArray(null);
+                this.palettes[i] = null;
+            }
+        }
+        return array;
     }
 
     @Override
     public int[][] getCombinedIdArrays() {
+        for (int i = 0; i < palettes.length; i++) {
+            if (palettes[i] != null) {
+                getIdArray(i);
+            }
+        }
         return this.ids;
     }
 
+    /**
+     * Get a section which hasn't been expanded into an int[4096]
+     *
+     * @param i
+     * @return the section, or null if it's empty or expanded
+     */
+    public PalettedSection getPalettedSection(final int i) {
+        return this.palettes[i];
+    }
+
+    /**
+     * @param i
+     * @return if a section has any changes
+     */
+    public boolean hasSection(final int i) {
+        return this.ids[i] != null || this.palettes[i] != null;
+    }
+
+    /**
+     * Get a combined id from a section without expanding it
+     *
+     * @param i     the section
+     * @param index the index within the section (see FaweCache.CACHE_J)
+     * @return the combined id, or 0 if unchanged
+     */
+    public int getSectionCombinedId(final int i, final int index) {
+        int[] array = this.ids[i];
+        if (array != null) {
+            return array[index];
+        }
+        PalettedSection palette = this.palettes[i];
+        return palette != null ? palette.get(index) : 0;
+    }
+
     @Override
     public byte[] getBiomeArray() {
         return this.biomes;
@@ -135,12 +196,7 @@ public byte[] getBiomeArray() {
 
     @Override
     public int getBlockCombinedId(int x, int y, int z) {
-        short i = FaweCache.CACHE_I[y][z][x];
-        int[] array = getIdArray(i);
-        if (array == null) {
-            return 0;
-        }
-        return array[FaweCache.CACHE_J[y][z][x]];
+        return getSectionCombinedId(FaweCache.CACHE_I[y][z][x], FaweCache.CACHE_J[y][z][x]);
     }
 
     @Override
@@ -197,10 +253,18 @@ public void setBlock(int x, int y, int z, int combinedId) {
         final int i = FaweCache.CACHE_I[y][z][x];
         final int j = FaweCache.CACHE_J[y][z][x];
         int[] vs = this.ids[i];
-        if (vs == null) {
-            vs = this.ids[i] = new int[4096];
+        if (vs != null) {
+            vs[j] = combinedId;
+        } else {
+            PalettedSection palette = this.palettes[i];
+            if (palette == null) {
+                palette = this.palettes[i] = new PalettedSection(0);
+            }
+            if (!palette.set(j, combinedId)) {
+                vs = getIdArray(i);
+                vs[j] = combinedId;
+            }
         }
-        vs[j] = combinedId;
         this.count[i]++;
         switch (BlockTypes.getFromStateId(combinedId)) {
             case AIR:
@@ -214,6 +278,60 @@ public void setBlock(int x, int y, int z, int combinedId) {
         }
     }
 
+    @Override
+    public void fillCuboid(int x1, int x2, int y1, int y2, int z1, int z2, int combinedId) {
+        if (x1 != 0 || x2 != 15 || z1 != 0 || z2 != 15) {
+            super.fillCuboid(x1, x2, y1, y2, z1, z2, combinedId);
+            return;
+        }
+        boolean isAir;
+        switch (BlockTypes.getFromStateId(combinedId)) {
+            case AIR:
+            case CAVE_AIR:
+            case VOID_AIR:
+                isAir = true;
+                break;
+            default:
+                isAir = false;
+                break;
+        }
+        for (int layer = y1 >> 4; layer <= y2 >> 4; layer++) {
+            int minY = Math.max(y1, layer << 4);
+            int maxY = Math.min(y2, (layer << 4) + 15);
+            int from = (minY & 15) << 8;
+            int to = ((maxY & 15) + 1) << 8;
+            int amount = to - from;
+            int[] vs = this.ids[layer];
+            if (vs != null) {
+                Arrays.fill(vs, from, to, combinedId);
+            } else {
+                PalettedSection palette = this.palettes[layer];
+                if (amount == 4096) {
+                    this.palettes[layer] = new PalettedSection(combinedId);
+                } else {
+                    if (palette == null) {
+                        palette = this.palettes[layer] = new PalettedSection(0);
+                    }
+                    if (!palette.fill(from, to, combinedId)) {
+                        Arrays.fill(getIdArray(layer), from, to, combinedId);
+                    }
+                }
+            }
+            if (amount == 4096) {
+                this.count[layer] = 4096;
+                this.air[layer] = (short) (isAir ? 4096 : 0);
+            } else {
+                this.count[layer] += amount;
+                if (isAir) {
+                    this.air[layer] += amount;
+                }
+            }
+        }
+        if (!isAir) {
+            Arrays.fill(heightMap, (byte) y2);
+        }
+    }
+
     @Deprecated
     public void setBitMask(int ignore) {
         // Remove
@@ -21,6 +21,7 @@
 import com.sk89q.worldedit.world.block.BlockTypes;
 
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.UUID;
@@ -41,6 +42,8 @@
     public CHUNKSECTIONS lastChunkSections;
     public SECTION lastSection;
 
+    // Set while several threads are reading from this queue (see setParallel)
+    private ThreadLocal<SectionCache> parallelCache;
 
     private World weWorld;
     private String world;
@@ -71,13 +74,13 @@ public MappedFaweQueue(final World world) {
 
     public MappedFaweQueue(final String world) {
         this.world = world;
-        map = getSettings().PREVENT_CRASHES ? new WeakFaweQueueMap(this) : new DefaultFaweQueueMap(this);
+        map = createFaweQueueMap();
     }
 
     public MappedFaweQueue(final String world, IFaweQueueMap map) {
         this.world = world;
         if (map == null) {
-            map = getSettings().PREVENT_CRASHES ? new WeakFaweQueueMap(this) : new DefaultFaweQueueMap(this);
+            map = createFaweQueueMap();
         }
         this.map = map;
     }
@@ -86,11 +89,18 @@ public MappedFaweQueue(final World world, IFaweQueueMap map) {
         this.weWorld = world;
         if (world != null) this.world = Fawe.imp().getWorldName(world);
         if (map == null) {
-            map = getSettings().PREVENT_CRASHES ? new WeakFaweQueueMap(this) : new DefaultFaweQueueMap(this);
+            map = createFaweQueueMap();
         }
         this.map = map;
     }
 
+    private IFaweQueueMap createFaweQueueMap() {
+        if (getSettings().PREVENT_CRASHES) {
+            return new WeakFaweQueueMap(this);
+        }
+        return getSettings().QUEUE.CONCURRENT_MAP ? new ConcurrentFaweQueueMap(this) : new DefaultFaweQueueMap(this);
+    }
+
     @Override
     public int getMaxY() {
         return weWorld == null ? 255 : weWorld.getMaxY();
@@ -376,7 +386,7 @@ public void setChunk(FaweChunk chunk) {
     }
 
     public SECTION getCachedSection(CHUNKSECTIONS chunk, int cy) {
-        return (SECTION) lastChunkSections;
+        return (SECTION) chunk;
     }
 
     public abstract int getCombinedId4Data(SECTION section, int x, int y, int z);
@@ -444,6 +454,146 @@ public void run() {
         return false;
     }
 
+    /**
+     * Same as {@link #ensureChunkLoaded(int, int)}, but safe to call from several threads at once
+     *
+     * @param cx
+     * @param cz
+     * @return the chunk, or null if it couldn't be loaded in time
+     */
+    private CHUNK ensureChunkLoadedConcurrent(final int cx, final int cz) {
+        CHUNK chunk = getCachedChunk(getWorld(), cx, cz);
+        if (chunk != null) {
+            return chunk;
+        }
+        if (Fawe.isMainThread()) {
+            return loadChunk(getWorld(), cx, cz, true);
+        }
+        if (getSettings().HISTORY.CHUNK_WAIT_MS <= 0) {
+            return null;
+        }
+        return TaskManager.IMP.syncWhenFree(new RunnableVal<CHUNK>() {
+            @Override
+            public void run(CHUNK value) {
+                this.value = loadChunk(getWorld(), cx, cz, true);
+            }
+        }, getSettings().HISTORY.CHUNK_WAIT_MS);
+    }
+
+    /**
+     * Get the distinct states of a 16^3 section, as they would be read by {@link #getCombinedId4Data(int, int, int)}<br>
+     * - Lets an operation skip (or not test) a whole section, instead of reading each block through the extents<br>
+     * - Changes still in the queue are not included (the same as reading each block)<br>
+     * - Safe to call from several threads at once
+     *
+     * @param cx
+     * @param cy
+     * @param cz
+     * @return the sorted combined ids, or null if the chunk couldn't be loaded
+     */
+    public int[] getSectionStates(int cx, int cy, int cz) {
+        CHUNK chunk = ensureChunkLoadedConcurrent(cx, cz);
+        if (chunk == null) {
+            return null;
+        }
+        SECTION section = getCachedSection(getSections(chunk), cy);
+        if (section == null) {
+            return new int[] {BlockTypes.AIR.getInternalId()};
+        }
+        int bx = cx << 4;
+        int by = cy << 4;
+        int bz = cz << 4;
+        int[] states = new int[4096];
+        int index = 0;
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    states[index++] = getCombinedId4Data(section, bx + x, by + y, bz + z);
+                }
+            }
+        }
+        Arrays.sort(states);
+        int size = 1;
+        for (int i = 1; i < states.length; i++) {
+            if (states[i] != states[size - 1]) {
+                states[size++] = states[i];
+            }
+        }
+        return Arrays.copyOf(states, size);
+    }
+
+    /**
+     * Give each thread its own read cache (instead of the lastSection fields)<br>
+     * - Used while a region is being edited by several threads (see {@link com.boydti.fawe.object.visitor.ParallelChunkEdit})<br>
+     * - Applies to block, biome and tile reads, but not lighting<br>
+     * - Chunks the threads are writing to are left in the map until they are done with them
+     *
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        if (parallel) {
+            parallelCache = new ThreadLocal<SectionCache>() {
+                @Override
+                protected SectionCache initialValue() {
+                    return new SectionCache();
+                }
+            };
+        } else {
+            parallelCache = null;
+        }
+        if (map instanceof ConcurrentFaweQueueMap) {
+            ((ConcurrentFaweQueueMap) map).setParallel(parallel);
+        }
+    }
+
+    /**
+     * The read cache for one thread (see {@link #setParallel(boolean)})
+     */
+    private final class SectionCache {
+        private int chunkX = Integer.MIN_VALUE;
+        private int chunkZ = Integer.MIN_VALUE;
+        private int sectionY = Integer.MIN_VALUE;
+        private CHUNK chunk;
+        private CHUNKSECTIONS sections;
+        private SECTION section;
+
+        private CHUNK getChunk(int cx, int cz) {
+            if (cx != chunkX || cz != chunkZ) {
+                chunkX = cx;
+                chunkZ = cz;
+                sectionY = Integer.MIN_VALUE;
+                chunk = ensureChunkLoadedConcurrent(cx, cz);
+                sections = chunk != null ? getSections(chunk) : null;
+            }
+            return chunk;
+        }
+
+        private int getCombinedId4Data(int x, int y, int z) {
+            if (getChunk(x >> 4, z >> 4) == null) {
+                return BlockTypes.AIR.getInternalId();
+            }
+            int cy = y >> 4;
+            if (cy != sectionY) {
+                sectionY = cy;
+                section = getCachedSection(sections, cy);
+            }
+            if (section == null) {
+                return BlockTypes.AIR.getInternalId();
+            }
+            return MappedFaweQueue.this.getCombinedId4Data(section, x, y, z);
+        }
+
+        private int getBiomeId(int x, int z) {
+            CHUNK current = getChunk(x >> 4, z >> 4);
+            return current == null ? 0 : getBiome(current, x, z) & 0xFF;
+        }
+
+        private CompoundTag getTileEntity(int x, int y, int z) {
+            CHUNK current = getChunk(x >> 4, z >> 4);
+            return current == null ? null : MappedFaweQueue.this.getTileEntity(current, x, y, z);
+        }
+    }
+
     @Override
     public boolean hasBlock(int x, int y, int z) throws FaweException.FaweChunkLoadException {
         int cx = x >> 4;
@@ -711,6 +861,10 @@ public int getCachedCombinedId4Data(int x, int y, int z) throws FaweException.Fa
                 return combined;
             }
         }
+        ThreadLocal<SectionCache> parallel = parallelCache;
+        if (parallel != null) {
+            return parallel.get().getCombinedId4Data(x, y, z);
+        }
         int cy = y >> 4;
         if (cx != lastSectionX || cz != lastSectionZ) {
             lastSectionX = cx;
@@ -738,6 +892,10 @@ public int getCachedCombinedId4Data(int x, int y, int z) throws FaweException.Fa
 
     @Override
     public int getCombinedId4Data(int x, int y, int z) throws FaweException.FaweChunkLoadException {
+        ThreadLocal<SectionCache> parallel = parallelCache;
+        if (parallel != null) {
+            return parallel.get().getCombinedId4Data(x, y, z);
+        }
         int cx = x >> 4;
         int cz = z >> 4;
         int cy = y >> 4;
@@ -767,6 +925,10 @@ public int getCombinedId4Data(int x, int y, int z) throws FaweException.FaweChun
 
     @Override
     public int getBiomeId(int x, int z) throws FaweException.FaweChunkLoadException {
+        ThreadLocal<SectionCache> parallel = parallelCache;
+        if (parallel != null) {
+            return parallel.get().getBiomeId(x, z);
+        }
         int cx = x >> 4;
         int cz = z >> 4;
         lastSectionY = -1;
@@ -788,6 +950,10 @@ public int getBiomeId(int x, int z) throws FaweException.FaweChunkLoadException
 
     @Override
     public CompoundTag getTileEntity(int x, int y, int z) throws FaweException.FaweChunkLoadException {
+        ThreadLocal<SectionCache> parallel = parallelCache;
+        if (parallel != null) {
+            return parallel.get().getTileEntity(x, y, z);
+        }
         int cx = x >> 4;
         int cz = z >> 4;
         lastSectionY = -1;
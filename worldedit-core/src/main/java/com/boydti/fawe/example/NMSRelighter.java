@@ -1,27 +1,26 @@
 package com.boydti.fawe.example;
 
+import com.boydti.fawe.Fawe;
 import com.boydti.fawe.FaweCache;
 import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.object.FaweChunk;
 import com.boydti.fawe.object.FaweQueue;
-import com.boydti.fawe.object.IntegerTrio;
 import com.boydti.fawe.object.RunnableVal;
 import com.boydti.fawe.object.collection.BlockVectorSet;
+import com.boydti.fawe.object.collection.LongRingQueue;
 import com.boydti.fawe.util.MathMan;
 import com.boydti.fawe.util.TaskManager;
-import com.google.common.io.LineReader;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
-import java.io.*;
-import java.util.ArrayDeque;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -30,7 +29,6 @@ public class NMSRelighter implements Relighter {
     private final NMSMappedFaweQueue queue;
 
     private final Map<Long, RelightSkyEntry> skyToRelight;
-    private final Object present = new Object();
     private final Map<Long, Integer> chunksToSend;
     private final ConcurrentLinkedQueue<RelightSkyEntry> queuedSkyToRelight = new ConcurrentLinkedQueue<>();
 
@@ -41,11 +39,17 @@ public class NMSRelighter implements Relighter {
     private final int maxY;
     private volatile boolean relighting = false;
 
-    public final IntegerTrio mutableBlockPos = new IntegerTrio();
-
     private static final int DISPATCH_SIZE = 64;
+    // Block light is relit in groups of 4x4 chunks
+    private static final int GROUP_BITS = 2;
     private boolean removeFirst;
 
+    // Timings for the last relight (nanoseconds)
+    private volatile long skyLightTime;
+    private volatile long blockLightTime;
+    private volatile long sendTime;
+    private volatile int chunksSent;
+
     public NMSRelighter(NMSMappedFaweQueue queue) {
         this.queue = queue;
         this.skyToRelight = new Long2ObjectOpenHashMap<>();
@@ -150,130 +154,238 @@ public synchronized void removeLighting() {
         }
     }
 
+    /**
+     * Relight the queued blocks<br>
+     * - Chunks are split into groups of 4x4, which are relit in parallel<br>
+     * - Light never travels further than a chunk, so groups are run in 4 passes (by the parity of their x and z),
+     * leaving at least one untouched group between any two groups which are being relit at the same time<br>
+     * - The border of a group is relit by whichever pass reaches it first, and corrected by the next pass if needed
+     *
+     * @param map the queued blocks (cleared)
+     */
     public void updateBlockLight(Map<Long, long[][][]> map) {
-        int size = map.size();
-        if (size == 0) {
+        if (map.isEmpty()) {
             return;
         }
-        Queue<IntegerTrio> lightPropagationQueue = new ArrayDeque<>();
-        Queue<Object[]> lightRemovalQueue = new ArrayDeque<>();
-        Map<IntegerTrio, Object> visited = new HashMap<>();
-        Map<IntegerTrio, Object> removalVisited = new HashMap<>();
-
-        Iterator<Map.Entry<Long, long[][][]>> iter = map.entrySet().iterator();
-        while (iter.hasNext() && size-- > 0) {
-            Map.Entry<Long, long[][][]> entry = iter.next();
+        // Group the chunks, and load them (and their neighbours) on this thread first
+        Long2ObjectOpenHashMap<List<Map.Entry<Long, long[][][]>>> groups = new Long2ObjectOpenHashMap<>();
+        Set<Long> loaded = new HashSet<>();
+        for (Map.Entry<Long, long[][][]> entry : map.entrySet()) {
             long index = entry.getKey();
-            long[][][] blocks = entry.getValue();
             int chunkX = MathMan.unpairIntX(index);
             int chunkZ = MathMan.unpairIntY(index);
-            int bx = chunkX << 4;
-            int bz = chunkZ << 4;
-            for (int lz = 0; lz < blocks.length; lz++) {
-                long[][] m1 = blocks[lz];
-                if (m1 == null) continue;
-                for (int lx = 0; lx < m1.length; lx++) {
-                    long[] m2 = m1[lx];
-                    if (m2 == null) continue;
-                    for (int i = 0; i < m2.length; i++) {
-                        int yStart = i << 6;
-                        long value = m2[i];
-                        if (value != 0) {
-                            for (int j = 0; j < 64; j++) {
-                                if (((value >> j) & 1) == 1) {
-                                    int x = lx + bx;
-                                    int y = yStart + j;
-                                    int z = lz + bz;
-                                    int oldLevel = queue.getEmmittedLight(x, y, z);
-                                    int newLevel = queue.getBrightness(x, y, z);
-                                    if (oldLevel != newLevel) {
-                                        queue.setBlockLight(x, y, z, newLevel);
-                                        IntegerTrio node = new IntegerTrio(x, y, z);
-                                        if (newLevel < oldLevel) {
-                                            removalVisited.put(node, present);
-                                            lightRemovalQueue.add(new Object[]{node, oldLevel});
-                                        } else {
-                                            visited.put(node, present);
-                                            lightPropagationQueue.add(node);
-                                        }
-                                    }
-                                }
-                            }
-                        }
+            long groupIndex = MathMan.pairInt(chunkX >> GROUP_BITS, chunkZ >> GROUP_BITS);
+            List<Map.Entry<Long, long[][][]>> group = groups.get(groupIndex);
+            if (group == null) {
+                groups.put(groupIndex, group = new ArrayList<>());
+            }
+            group.add(new AbstractMap.SimpleImmutableEntry<>(index, entry.getValue()));
+            for (int x = chunkX - 1; x <= chunkX + 1; x++) {
+                for (int z = chunkZ - 1; z <= chunkZ + 1; z++) {
+                    if (loaded.add(MathMan.pairInt(x, z))) {
+                        queue.ensureChunkLoaded(x, z);
                     }
                 }
             }
-            iter.remove();
         }
+        map.clear();
+
+        List<List<Runnable>> passes = new ArrayList<>(4);
+        for (int i = 0; i < 4; i++) {
+            passes.add(new ArrayList<>());
+        }
+        for (Map.Entry<Long, List<Map.Entry<Long, long[][][]>>> entry : groups.entrySet()) {
+            long groupIndex = entry.getKey();
+            final List<Map.Entry<Long, long[][][]>> chunks = entry.getValue();
+            int pass = (MathMan.unpairIntX(groupIndex) & 1) | ((MathMan.unpairIntY(groupIndex) & 1) << 1);
+            passes.get(pass).add(new Runnable() {
+                @Override
+                public void run() {
+                    new BlockLightWorker().relight(chunks);
+                }
+            });
+        }
+        for (List<Runnable> pass : passes) {
+            if (pass.size() == 1) {
+                pass.get(0).run();
+            } else if (!pass.isEmpty()) {
+                TaskManager.IMP.parallel(pass);
+            }
+        }
+    }
 
-        while (!lightRemovalQueue.isEmpty()) {
-            Object[] val = lightRemovalQueue.poll();
-            IntegerTrio node = (IntegerTrio) val[0];
-            int lightLevel = (int) val[1];
+    /**
+     * @return a BFS node (26 bits x, 26 bits z, 8 bits y, 4 bits light level)
+     */
+    private static long pack(int x, int y, int z, int level) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | ((y & 0xFF) << 4) | (level & 15);
+    }
+
+    private static int unpackX(long node) {
+        return ((int) (node >> 38) << 6) >> 6;
+    }
+
+    private static int unpackZ(long node) {
+        return ((int) (node >> 12) << 6) >> 6;
+    }
+
+    private static int unpackY(long node) {
+        return (int) (node >> 4) & 0xFF;
+    }
 
-            this.computeRemoveBlockLight(node.x - 1, node.y, node.z, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
-            this.computeRemoveBlockLight(node.x + 1, node.y, node.z, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
-            if (node.y > 0) {
-                this.computeRemoveBlockLight(node.x, node.y - 1, node.z, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
+    private static int unpackLevel(long node) {
+        return (int) node & 15;
+    }
+
+    /**
+     * Relights one group of chunks<br>
+     * - Reads and writes sections directly (the queue's own section cache isn't thread safe)<br>
+     * - Chunks must already be loaded
+     */
+    private final class BlockLightWorker {
+        private final LongRingQueue removalQueue = new LongRingQueue();
+        private final LongRingQueue spreadQueue = new LongRingQueue();
+
+        private int lastChunkX = Integer.MIN_VALUE;
+        private int lastChunkZ = Integer.MIN_VALUE;
+        private int lastLayer = Integer.MIN_VALUE;
+        private Object sections;
+        private Object section;
+
+        private Object getSection(int x, int y, int z) {
+            int cx = x >> 4;
+            int cz = z >> 4;
+            if (cx != lastChunkX || cz != lastChunkZ) {
+                lastChunkX = cx;
+                lastChunkZ = cz;
+                lastLayer = Integer.MIN_VALUE;
+                sections = queue.getCachedSections(queue.getWorld(), cx, cz);
+            }
+            int layer = y >> 4;
+            if (layer != lastLayer) {
+                lastLayer = layer;
+                section = sections != null ? queue.getCachedSection(sections, layer) : null;
             }
-            if (node.y < 255) {
-                this.computeRemoveBlockLight(node.x, node.y + 1, node.z, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
+            return section;
+        }
+
+        private int getEmmittedLight(int x, int y, int z) {
+            Object current = getSection(x, y, z);
+            return current != null ? queue.getEmmittedLight(current, x, y, z) : 0;
+        }
+
+        private int getOpacity(int x, int y, int z) {
+            Object current = getSection(x, y, z);
+            return current != null ? queue.getOpacity(current, x, y, z) : 0;
+        }
+
+        private void setBlockLight(int x, int y, int z, int value) {
+            Object current = getSection(x, y, z);
+            if (current != null) {
+                queue.setBlockLight(current, x, y, z, value);
             }
-            this.computeRemoveBlockLight(node.x, node.y, node.z - 1, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
-            this.computeRemoveBlockLight(node.x, node.y, node.z + 1, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
         }
 
-        while (!lightPropagationQueue.isEmpty()) {
-            IntegerTrio node = lightPropagationQueue.poll();
-            int lightLevel = queue.getEmmittedLight(node.x, node.y, node.z);
-            if (lightLevel > 1) {
-                this.computeSpreadBlockLight(node.x - 1, node.y, node.z, lightLevel, lightPropagationQueue, visited);
-                this.computeSpreadBlockLight(node.x + 1, node.y, node.z, lightLevel, lightPropagationQueue, visited);
-                if (node.y > 0) {
-                    this.computeSpreadBlockLight(node.x, node.y - 1, node.z, lightLevel, lightPropagationQueue, visited);
+        public void relight(List<Map.Entry<Long, long[][][]>> chunks) {
+            for (Map.Entry<Long, long[][][]> entry : chunks) {
+                long index = entry.getKey();
+                long[][][] blocks = entry.getValue();
+                int bx = MathMan.unpairIntX(index) << 4;
+                int bz = MathMan.unpairIntY(index) << 4;
+                for (int lz = 0; lz < blocks.length; lz++) {
+                    long[][] m1 = blocks[lz];
+                    if (m1 == null) continue;
+                    for (int lx = 0; lx < m1.length; lx++) {
+                        long[] m2 = m1[lx];
+                        if (m2 == null) continue;
+                        for (int i = 0; i < m2.length; i++) {
+                            int yStart = i << 6;
+                            long value = m2[i];
+                            while (value != 0) {
+                                int j = Long.numberOfTrailingZeros(value);
+                                value &= value - 1;
+                                int x = lx + bx;
+                                int y = yStart + j;
+                                int z = lz + bz;
+                                Object current = getSection(x, y, z);
+                                if (current == null) continue;
+                                int oldLevel = queue.getEmmittedLight(current, x, y, z);
+                                int newLevel = queue.getBrightness(current, x, y, z);
+                                if (oldLevel != newLevel) {
+                                    queue.setBlockLight(current, x, y, z, newLevel);
+                                    if (newLevel < oldLevel) {
+                                        removalQueue.add(pack(x, y, z, oldLevel));
+                                    } else {
+                                        spreadQueue.add(pack(x, y, z, 0));
+                                    }
+                                }
+                            }
+                        }
+                    }
                 }
-                if (node.y < 255) {
-                    this.computeSpreadBlockLight(node.x, node.y + 1, node.z, lightLevel, lightPropagationQueue, visited);
+            }
+
+            while (!removalQueue.isEmpty()) {
+                long node = removalQueue.poll();
+                int x = unpackX(node);
+                int y = unpackY(node);
+                int z = unpackZ(node);
+                int lightLevel = unpackLevel(node);
+                computeRemoveBlockLight(x - 1, y, z, lightLevel);
+                computeRemoveBlockLight(x + 1, y, z, lightLevel);
+                if (y > 0) {
+                    computeRemoveBlockLight(x, y - 1, z, lightLevel);
                 }
-                this.computeSpreadBlockLight(node.x, node.y, node.z - 1, lightLevel, lightPropagationQueue, visited);
-                this.computeSpreadBlockLight(node.x, node.y, node.z + 1, lightLevel, lightPropagationQueue, visited);
+                if (y < 255) {
+                    computeRemoveBlockLight(x, y + 1, z, lightLevel);
+                }
+                computeRemoveBlockLight(x, y, z - 1, lightLevel);
+                computeRemoveBlockLight(x, y, z + 1, lightLevel);
             }
-        }
-    }
 
-    private void computeRemoveBlockLight(int x, int y, int z, int currentLight, Queue<Object[]> queue, Queue<IntegerTrio> spreadQueue, Map<IntegerTrio, Object> visited,
-                                         Map<IntegerTrio, Object> spreadVisited) {
-        int current = this.queue.getEmmittedLight(x, y, z);
-        if (current != 0 && current < currentLight) {
-            this.queue.setBlockLight(x, y, z, 0);
-            if (current > 1) {
-                if (!visited.containsKey(mutableBlockPos)) {
-                    IntegerTrio index = new IntegerTrio(x, y, z);
-                    visited.put(index, present);
-                    queue.add(new Object[]{index, current});
+            while (!spreadQueue.isEmpty()) {
+                long node = spreadQueue.poll();
+                int x = unpackX(node);
+                int y = unpackY(node);
+                int z = unpackZ(node);
+                int lightLevel = getEmmittedLight(x, y, z);
+                if (lightLevel > 1) {
+                    computeSpreadBlockLight(x - 1, y, z, lightLevel);
+                    computeSpreadBlockLight(x + 1, y, z, lightLevel);
+                    if (y > 0) {
+                        computeSpreadBlockLight(x, y - 1, z, lightLevel);
+                    }
+                    if (y < 255) {
+                        computeSpreadBlockLight(x, y + 1, z, lightLevel);
+                    }
+                    computeSpreadBlockLight(x, y, z - 1, lightLevel);
+                    computeSpreadBlockLight(x, y, z + 1, lightLevel);
                 }
             }
-        } else if (current >= currentLight) {
-            mutableBlockPos.set(x, y, z);
-            if (!spreadVisited.containsKey(mutableBlockPos)) {
-                IntegerTrio index = new IntegerTrio(x, y, z);
-                spreadVisited.put(index, present);
-                spreadQueue.add(index);
+        }
+
+        private void computeRemoveBlockLight(int x, int y, int z, int currentLight) {
+            int current = getEmmittedLight(x, y, z);
+            if (current != 0 && current < currentLight) {
+                // Zeroed before being queued, so it can't be queued twice
+                setBlockLight(x, y, z, 0);
+                if (current > 1) {
+                    removalQueue.add(pack(x, y, z, current));
+                }
+            } else if (current >= currentLight) {
+                spreadQueue.add(pack(x, y, z, 0));
             }
         }
-    }
 
-    private void computeSpreadBlockLight(int x, int y, int z, int currentLight, Queue<IntegerTrio> queue, Map<IntegerTrio, Object> visited) {
-        currentLight = currentLight - Math.max(1, this.queue.getOpacity(x, y, z));
-        if (currentLight > 0) {
-            int current = this.queue.getEmmittedLight(x, y, z);
-            if (current < currentLight) {
-                this.queue.setBlockLight(x, y, z, currentLight);
-                mutableBlockPos.set(x, y, z);
-                if (!visited.containsKey(mutableBlockPos)) {
-                    visited.put(new IntegerTrio(x, y, z), present);
+        private void computeSpreadBlockLight(int x, int y, int z, int currentLight) {
+            currentLight = currentLight - Math.max(1, getOpacity(x, y, z));
+            if (currentLight > 0) {
+                int current = getEmmittedLight(x, y, z);
+                // Light only increases here, so a block is only queued again if it got brighter
+                if (current < currentLight) {
+                    setBlockLight(x, y, z, currentLight);
                     if (currentLight > 1) {
-                        queue.add(new IntegerTrio(x, y, z));
+                        spreadQueue.add(pack(x, y, z, 0));
                     }
                 }
             }
@@ -283,6 +395,7 @@ private void computeSpreadBlockLight(int x, int y, int z, int currentLight, Queu
     public void fixLightingSafe(boolean sky) {
         if (isEmpty()) return;
         try {
+            long start = System.nanoTime();
             if (sky) {
                 fixSkyLighting();
             } else {
@@ -296,13 +409,43 @@ public void fixLightingSafe(boolean sky) {
                     }
                 }
             }
+            long skyEnd = System.nanoTime();
             fixBlockLighting();
-            sendChunks();
+            long blockEnd = System.nanoTime();
+            int sent = sendChunks();
+            long sendEnd = System.nanoTime();
+            skyLightTime = skyEnd - start;
+            blockLightTime = blockEnd - skyEnd;
+            sendTime = sendEnd - blockEnd;
+            chunksSent = sent;
+            if (Settings.IMP.LIGHTING.STATISTICS) {
+                Fawe.debug("Relit " + sent + " chunks: sky " + (skyLightTime / 1000000) + "ms, block " + (blockLightTime / 1000000) + "ms, sending " + (sendTime / 1000000) + "ms");
+            }
         } catch (Throwable e) {
             e.printStackTrace();
         }
     }
 
+    @Override
+    public long getSkyLightTime() {
+        return skyLightTime;
+    }
+
+    @Override
+    public long getBlockLightTime() {
+        return blockLightTime;
+    }
+
+    @Override
+    public long getSendTime() {
+        return sendTime;
+    }
+
+    @Override
+    public int getChunksSent() {
+        return chunksSent;
+    }
+
     public void fixBlockLighting() {
         synchronized (lightQueue) {
             while (!lightLock.compareAndSet(false, true));
@@ -314,7 +457,13 @@ public void fixBlockLighting() {
         }
     }
 
-    public synchronized void sendChunks() {
+    /**
+     * Send the relit chunks to players
+     *
+     * @return the number of chunks sent
+     */
+    public synchronized int sendChunks() {
+        final int size = chunksToSend.size();
         RunnableVal<Object> runnable = new RunnableVal<Object>() {
             @Override
             public void run(Object value) {
@@ -335,6 +484,7 @@ public void run(Object value) {
         } else {
             TaskManager.IMP.sync(runnable);
         }
+        return size;
     }
 
     private boolean isTransparent(int x, int y, int z) {
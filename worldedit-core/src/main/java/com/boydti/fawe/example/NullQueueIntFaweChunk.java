@@ -1,6 +1,7 @@
 package com.boydti.fawe.example;
 
 import com.boydti.fawe.object.FaweChunk;
+import com.boydti.fawe.object.collection.PalettedSection;
 import com.boydti.fawe.util.MainUtil;
 
 public class NullQueueIntFaweChunk extends IntFaweChunk {
@@ -13,6 +14,10 @@ public NullQueueIntFaweChunk(int x, int z, int[][] ids, short[] count, short[] a
         super(null, x, z, ids, count, air, heightMap);
     }
 
+    public NullQueueIntFaweChunk(int x, int z, int[][] ids, PalettedSection[] palettes, short[] count, short[] air, byte[] heightMap) {
+        super(null, x, z, ids, palettes, count, air, heightMap);
+    }
+
     @Override
     public Object getNewChunk() {
         return null;
@@ -21,9 +26,9 @@ public Object getNewChunk() {
     @Override
     public IntFaweChunk copy(boolean shallow) {
         if (shallow) {
-            return new NullQueueIntFaweChunk(getX(), getZ(), ids, count, air, heightMap);
+            return new NullQueueIntFaweChunk(getX(), getZ(), ids, palettes, count, air, heightMap);
         } else {
-            return new NullQueueIntFaweChunk(getX(), getZ(), (int[][]) MainUtil.copyNd(ids), count.clone(), air.clone(), heightMap.clone());
+            return new NullQueueIntFaweChunk(getX(), getZ(), (int[][]) MainUtil.copyNd(ids), PalettedSection.copy(palettes), count.clone(), air.clone(), heightMap.clone());
         }
     }
 
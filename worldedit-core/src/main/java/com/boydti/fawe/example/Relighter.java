@@ -22,6 +22,34 @@ default void removeAndRelight(boolean sky) {
 
     boolean isEmpty();
 
+    /**
+     * @return how long the last relight spent on sky light (nanoseconds)
+     */
+    default long getSkyLightTime() {
+        return 0;
+    }
+
+    /**
+     * @return how long the last relight spent on block light (nanoseconds)
+     */
+    default long getBlockLightTime() {
+        return 0;
+    }
+
+    /**
+     * @return how long the last relight spent sending chunks (nanoseconds)
+     */
+    default long getSendTime() {
+        return 0;
+    }
+
+    /**
+     * @return how many chunks the last relight sent
+     */
+    default int getChunksSent() {
+        return 0;
+    }
+
     public static class SkipReason {
         public static final byte NONE = 0;
         public static final byte AIR = 1;
@@ -2,6 +2,7 @@
 
 import com.boydti.fawe.object.FaweChunk;
 import com.boydti.fawe.object.FaweQueue;
+import com.boydti.fawe.object.collection.PalettedSection;
 import com.boydti.fawe.util.MainUtil;
 
 public class SimpleIntFaweChunk extends IntFaweChunk {
@@ -14,6 +15,10 @@ public SimpleIntFaweChunk(FaweQueue parent, int x, int z, int[][] ids, short[] c
         super(parent, x, z, ids, count, air, heightMap);
     }
 
+    public SimpleIntFaweChunk(FaweQueue parent, int x, int z, int[][] ids, PalettedSection[] palettes, short[] count, short[] air, byte[] heightMap) {
+        super(parent, x, z, ids, palettes, count, air, heightMap);
+    }
+
     @Override
     public Object getNewChunk() {
         return this;
@@ -23,10 +28,10 @@ public Object getNewChunk() {
     public IntFaweChunk copy(boolean shallow) {
         SimpleIntFaweChunk copy;
         if (shallow) {
-            copy = new SimpleIntFaweChunk(getParent(), getX(), getZ(), ids, count, air, heightMap);
+            copy = new SimpleIntFaweChunk(getParent(), getX(), getZ(), ids, palettes, count, air, heightMap);
             copy.biomes = biomes;
         } else {
-            copy = new SimpleIntFaweChunk(getParent(), getX(), getZ(), (int[][]) MainUtil.copyNd(ids), count.clone(), air.clone(), heightMap.clone());
+            copy = new SimpleIntFaweChunk(getParent(), getX(), getZ(), (int[][]) MainUtil.copyNd(ids), PalettedSection.copy(palettes), count.clone(), air.clone(), heightMap.clone());
             copy.biomes = biomes != null ? biomes.clone() : null;
         }
         return copy;
@@ -46,6 +46,9 @@
 
 // TODO FIXME
 public class HeightMapMCAGenerator extends MCAWriter implements StreamChange, Drawable, VirtualWorld {
+    // Columns per side of a tile when smoothing in parallel
+    private static final int SMOOTH_TILE_SIZE = 256;
+
     private final MutableBlockVector mutable = new MutableBlockVector();
 
     private final ThreadLocal<int[]> indexStore = new ThreadLocal<int[]>() {
@@ -395,10 +398,9 @@ public void smooth(Vector2D min, Vector2D max, int radius, int iterations) {
         int tableLength = (maxZ - minZ + 1);
         int smoothArea = tableWidth * tableLength;
 
-        long[] copy = new long[smoothArea];
         char[] layers = new char[smoothArea];
+        char[] averages = new char[smoothArea];
 
-        SummedAreaTable table = new SummedAreaTable(copy, layers, tableWidth, radius);
         for (int j = 0; j < iterations; j++) {
 
             { // Copy to table
@@ -416,17 +418,14 @@ public void smooth(Vector2D min, Vector2D max, int radius, int iterations) {
                     }
                 }
             }
-            // Process table
-            table.processSummedAreaTable();
-            { // Copy from table
+            averageLayers(layers, averages, tableWidth, tableLength, radius);
+            { // Copy from averages
                 int localIndex = 0;
                 int zIndex = (minZ * getWidth());
-                for (int z = minZ, localZ = 0; z <= maxZ; z++, localZ++, zIndex += getWidth()) {
+                for (int z = minZ; z <= maxZ; z++, zIndex += getWidth()) {
                     int index = zIndex + minX;
-                    for (int x = minX, localX = 0; x <= maxX; x++, localX++, index++, localIndex++) {
-                        int y = heights[index] & 0xFF;
-                        int newHeight = table.average(localX, localZ, localIndex);
-                        setLayerHeight(index, newHeight);
+                    for (int x = minX; x <= maxX; x++, index++, localIndex++) {
+                        setLayerHeight(index, averages[localIndex]);
                     }
                 }
             }
@@ -487,13 +486,12 @@ private void smooth(BufferedImage img, Mask mask, boolean white, int radius, int
         int[] floor = this.floor.get();
         byte[] heights = this.heights.get();
 
-        long[] copy = new long[heights.length];
         char[] layers = new char[heights.length];
+        char[] averages = new char[heights.length];
 
         this.floor.record(() -> HeightMapMCAGenerator.this.heights.record(() -> {
             int width = getWidth();
             int length = getLength();
-            SummedAreaTable table = new SummedAreaTable(copy, layers, width, radius);
             for (int j = 0; j < iterations; j++) {
                 for (int i = 0; i < heights.length; i++) {
                     int combined = floor[i];
@@ -504,13 +502,13 @@ private void smooth(BufferedImage img, Mask mask, boolean white, int radius, int
                     }
                 }
                 int index = 0;
-                table.processSummedAreaTable();
+                averageLayers(layers, averages, width, length, radius);
                 if (img != null) {
                     for (int z = 0; z < getLength(); z++) {
                         for (int x = 0; x < getWidth(); x++, index++) {
                             int height = img.getRGB(x, z) & 0xFF;
                             if (height == 255 || height > 0 && !white && PseudoRandom.random.nextInt(256) <= height) {
-                                int newHeight = table.average(x, z, index);
+                                int newHeight = averages[index];
                                 setLayerHeightRaw(index, newHeight);
                             }
                         }
@@ -523,7 +521,7 @@ private void smooth(BufferedImage img, Mask mask, boolean white, int radius, int
                             mutable.mutX(x);
                             mutable.mutY(y);
                             if (mask.test(mutable)) {
-                                int newHeight = table.average(x, z, index);
+                                int newHeight = averages[index];
                                 setLayerHeightRaw(index, newHeight);
                             }
                         }
@@ -531,7 +529,7 @@ private void smooth(BufferedImage img, Mask mask, boolean white, int radius, int
                 } else {
                     for (int z = 0; z < getLength(); z++) {
                         for (int x = 0; x < getWidth(); x++, index++) {
-                            int newHeight = table.average(x, z, index);
+                            int newHeight = averages[index];
                             setLayerHeightRaw(index, newHeight);
                         }
                     }
@@ -540,6 +538,51 @@ private void smooth(BufferedImage img, Mask mask, boolean white, int radius, int
         }));
     }
 
+    /**
+     * Average the layer heights (8 per block) in the square of radius around each column<br>
+     * - The area is split into tiles, each averaged in parallel with its own summed area table<br>
+     * - A tile's table includes a halo of radius columns, so the averages match a table over the whole area
+     *
+     * @param layers  the layer heights
+     * @param averages where to put the averages
+     * @param width
+     * @param length
+     * @param radius
+     */
+    private void averageLayers(char[] layers, char[] averages, int width, int length, int radius) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int tileZ = 0; tileZ < length; tileZ += SMOOTH_TILE_SIZE) {
+            for (int tileX = 0; tileX < width; tileX += SMOOTH_TILE_SIZE) {
+                int minX = tileX;
+                int minZ = tileZ;
+                int maxX = Math.min(width - 1, tileX + SMOOTH_TILE_SIZE - 1);
+                int maxZ = Math.min(length - 1, tileZ + SMOOTH_TILE_SIZE - 1);
+                tasks.add(() -> {
+                    int haloMinX = Math.max(0, minX - radius);
+                    int haloMinZ = Math.max(0, minZ - radius);
+                    int haloMaxX = Math.min(width - 1, maxX + radius);
+                    int haloMaxZ = Math.min(length - 1, maxZ + radius);
+                    int haloWidth = haloMaxX - haloMinX + 1;
+                    char[] tile = new char[haloWidth * (haloMaxZ - haloMinZ + 1)];
+                    for (int z = haloMinZ, localIndex = 0; z <= haloMaxZ; z++, localIndex += haloWidth) {
+                        System.arraycopy(layers, z * width + haloMinX, tile, localIndex, haloWidth);
+                    }
+                    SummedAreaTable table = new SummedAreaTable(new long[tile.length], tile, haloWidth, radius);
+                    table.processSummedAreaTable();
+                    for (int z = minZ; z <= maxZ; z++) {
+                        int localZ = z - haloMinZ;
+                        int index = z * width + minX;
+                        int localIndex = localZ * haloWidth + minX - haloMinX;
+                        for (int x = minX; x <= maxX; x++, index++, localIndex++) {
+                            averages[index] = (char) table.average(x - haloMinX, localZ, localIndex);
+                        }
+                    }
+                });
+            }
+        }
+        TaskManager.IMP.parallel(tasks);
+    }
+
     public void setHeight(BufferedImage img) {
         int index = 0;
         for (int z = 0; z < getLength(); z++) {
@@ -11,6 +11,7 @@
 import com.boydti.fawe.util.MathMan;
 import com.boydti.fawe.util.ReflectionUtils;
 import com.sk89q.jnbt.*;
+import com.sk89q.worldedit.world.block.BlockTypes;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -21,6 +22,7 @@ public class MCAChunk extends FaweChunk<Void> {
 
 //    ids: byte[16][4096]
 //    data: byte[16][2048]
+//    sections: MCASection[16] (1.13 palette sections, instead of ids/data)
 //    skylight: byte[16][2048]
 //    blocklight: byte[16][2048]
 //    entities: Map<Short, CompoundTag>
@@ -32,6 +34,7 @@ public class MCAChunk extends FaweChunk<Void> {
 
     public byte[][] ids;
     public byte[][] data;
+    public MCASection[] sections;
     public byte[][] skyLight;
     public byte[][] blockLight;
     public byte[] biomes;
@@ -40,6 +43,11 @@ public class MCAChunk extends FaweChunk<Void> {
     private long inhabitedTime;
     private long lastUpdate;
     private int[] heightMap;
+    // 1.13 only
+    private int dataVersion;
+    private String status;
+    private CompoundTag heightMaps;
+    private boolean intBiomes;
 
     private int modified;
     private boolean deleted;
@@ -48,6 +56,7 @@ public MCAChunk(FaweQueue queue, int x, int z) {
         super(queue, x, z);
         this.ids = new byte[16][];
         this.data = new byte[16][];
+        this.sections = new MCASection[16];
         this.skyLight = new byte[16][];
         this.blockLight = new byte[16][];
         this.biomes = new byte[256];
@@ -63,6 +72,7 @@ public MCAChunk(MCAChunk parent, boolean shallow) {
         if (shallow) {
             this.ids = parent.ids;
             this.data = parent.data;
+            this.sections = parent.sections;
             this.skyLight = parent.skyLight;
             this.blockLight = parent.blockLight;
             this.biomes = parent.biomes;
@@ -71,11 +81,21 @@ public MCAChunk(MCAChunk parent, boolean shallow) {
             this.inhabitedTime = parent.inhabitedTime;
             this.lastUpdate = parent.lastUpdate;
             this.heightMap = parent.heightMap;
+            this.dataVersion = parent.dataVersion;
+            this.status = parent.status;
+            this.heightMaps = parent.heightMaps;
+            this.intBiomes = parent.intBiomes;
             this.modified = parent.modified;
             this.deleted = parent.deleted;
         } else {
             this.ids = (byte[][]) MainUtil.copyNd(parent.ids);
             this.data = (byte[][]) MainUtil.copyNd(parent.data);
+            this.sections = new MCASection[parent.sections.length];
+            for (int layer = 0; layer < sections.length; layer++) {
+                if (parent.sections[layer] != null) {
+                    sections[layer] = parent.sections[layer].copy();
+                }
+            }
             this.skyLight = (byte[][]) MainUtil.copyNd(parent.skyLight);
             this.blockLight = (byte[][]) MainUtil.copyNd(parent.blockLight);
             this.biomes = parent.biomes.clone();
@@ -83,7 +103,11 @@ public MCAChunk(MCAChunk parent, boolean shallow) {
             this.entities = new HashMap<>(parent.entities);
             this.inhabitedTime = parent.inhabitedTime;
             this.lastUpdate = parent.lastUpdate;
-            this.heightMap = parent.heightMap.clone();
+            this.heightMap = parent.heightMap != null ? parent.heightMap.clone() : null;
+            this.dataVersion = parent.dataVersion;
+            this.status = parent.status;
+            this.heightMaps = parent.heightMaps;
+            this.intBiomes = parent.intBiomes;
             this.modified = parent.modified;
             this.deleted = parent.deleted;
         }
@@ -111,31 +135,55 @@ public void write(NBTOutputStream out) throws IOException {
                 }
                 out.writeNamedTag("InhabitedTime", inhabitedTime);
                 out.writeNamedTag("LastUpdate", lastUpdate);
+                if (status != null) {
+                    out.writeNamedTag("Status", status);
+                }
                 if (biomes != null) {
-                    out.writeNamedTag("Biomes", biomes);
+                    if (intBiomes) {
+                        int[] biomeIds = new int[biomes.length];
+                        for (int i = 0; i < biomes.length; i++) {
+                            biomeIds[i] = biomes[i] & 0xFF;
+                        }
+                        out.writeNamedTag("Biomes", biomeIds);
+                    } else {
+                        out.writeNamedTag("Biomes", biomes);
+                    }
+                }
+                if (heightMap != null) {
+                    out.writeNamedTag("HeightMap", heightMap);
+                }
+                if (heightMaps != null) {
+                    out.writeNamedTag("Heightmaps", heightMaps);
                 }
-                out.writeNamedTag("HeightMap", heightMap);
                 out.writeNamedTagName("Sections", NBTConstants.TYPE_LIST);
                 nbtOut.getOutputStream().writeByte(NBTConstants.TYPE_COMPOUND);
                 int len = 0;
                 for (int layer = 0; layer < ids.length; layer++) {
-                    if (ids[layer] != null) len++;
+                    if (doesSectionExist(layer)) len++;
                 }
                 nbtOut.getOutputStream().writeInt(len);
                 for (int layer = 0; layer < ids.length; layer++) {
+                    MCASection section = sections[layer];
                     byte[] idLayer = ids[layer];
-                    if (idLayer == null) {
+                    if (section == null && idLayer == null) {
                         continue;
                     }
                     out.writeNamedTag("Y", (byte) layer);
                     out.writeNamedTag("BlockLight", blockLight[layer]);
                     out.writeNamedTag("SkyLight", skyLight[layer]);
-                    out.writeNamedTag("Blocks", idLayer);
-                    out.writeNamedTag("Data", data[layer]);
+                    if (section != null) {
+                        section.write(out);
+                    } else {
+                        out.writeNamedTag("Blocks", idLayer);
+                        out.writeNamedTag("Data", data[layer]);
+                    }
                     out.writeEndTag();
                 }
             }
         });
+        if (dataVersion != 0) {
+            nbtOut.writeNamedTag("DataVersion", dataVersion);
+        }
         nbtOut.writeEndTag();
     }
 
@@ -395,7 +443,7 @@ public void copyFrom(MCAChunk other, int minY, int maxY, int offsetY) {
 
     public int getMinLayer() {
         for (int layer = 0; layer < ids.length; layer++) {
-            if (ids[layer] != null) {
+            if (doesSectionExist(layer)) {
                 return layer;
             }
         }
@@ -404,7 +452,7 @@ public int getMinLayer() {
 
     public int getMaxLayer() {
         for (int layer = ids.length - 1; layer >= 0; layer--) {
-            if (ids[layer] != null) {
+            if (doesSectionExist(layer)) {
                 return layer;
             }
         }
@@ -460,6 +508,7 @@ public MCAChunk(NBTInputStream nis, FaweQueue parent, int x, int z, boolean read
         super(parent, x, z);
         ids = new byte[16][];
         data = new byte[16][];
+        sections = new MCASection[16];
         skyLight = new byte[16][];
         blockLight = new byte[16][];
         NBTStreamer streamer = new NBTStreamer(nis);
@@ -479,8 +528,20 @@ public void accept(Integer index, Long value) {
             @Override
             public void accept(Integer index, CompoundTag tag) {
                 int layer = tag.getByte("Y");
-                ids[layer] = tag.getByteArray("Blocks");
-                data[layer] = tag.getByteArray("Data");
+                if (layer < 0 || layer >= 16) {
+                    return;
+                }
+                if (tag.containsKey("Palette")) {
+                    if (!tag.containsKey("BlockStates")) {
+                        return;
+                    }
+                    sections[layer] = new MCASection(tag);
+                } else if (tag.containsKey("Blocks")) {
+                    ids[layer] = tag.getByteArray("Blocks");
+                    data[layer] = tag.getByteArray("Data");
+                } else {
+                    return;
+                }
                 skyLight[layer] = tag.getByteArray("SkyLight");
                 blockLight[layer] = tag.getByteArray("BlockLight");
             }
@@ -506,10 +567,38 @@ public void accept(Integer index, CompoundTag entityTag) {
                 entities.put(new UUID(most, least), entityTag);
             }
         });
-        streamer.addReader(".Level.Biomes", new BiConsumer<Integer, byte[]>() {
+        streamer.addReader(".Level.Biomes", new BiConsumer<Integer, Object>() {
+            @Override
+            public void accept(Integer index, Object value) {
+                if (value instanceof int[]) {
+                    // 1.13 stores biomes as ints
+                    int[] biomeIds = (int[]) value;
+                    biomes = new byte[biomeIds.length];
+                    for (int i = 0; i < biomeIds.length; i++) {
+                        biomes[i] = (byte) biomeIds[i];
+                    }
+                    intBiomes = true;
+                } else {
+                    biomes = (byte[]) value;
+                }
+            }
+        });
+        streamer.addReader(".DataVersion", new BiConsumer<Integer, Integer>() {
+            @Override
+            public void accept(Integer index, Integer value) {
+                dataVersion = value;
+            }
+        });
+        streamer.addReader(".Level.Status", new BiConsumer<Integer, String>() {
             @Override
-            public void accept(Integer index, byte[] value) {
-                biomes = value;
+            public void accept(Integer index, String value) {
+                status = value;
+            }
+        });
+        streamer.addReader(".Level.Heightmaps", new BiConsumer<Integer, Map<String, Tag>>() {
+            @Override
+            public void accept(Integer index, Map<String, Tag> value) {
+                heightMaps = new CompoundTag(value);
             }
         });
         streamer.addReader(".Level.HeightMap", new BiConsumer<Integer, int[]>() {
@@ -545,6 +634,10 @@ public long filterBlocks(MutableMCABackedBaseBlock mutableBlock, MCAFilter filte
         for (int layer = 0; layer < ids.length; layer++) {
             if (doesSectionExist(layer)) {
                 mutableBlock.setArrays(layer);
+                if (mutableBlock.getSection() != null && filter.appliesPalette()) {
+                    mutableBlock.filterPalette(filter, result);
+                    continue;
+                }
                 int yStart = layer << 4;
                 int yEnd = yStart + 15;
                 for (int y = yStart, y0 = (yStart & 15); y <= yEnd; y++, y0++) {
@@ -596,7 +689,7 @@ public final void setModified() {
     public int getBitMask() {
         int bitMask = 0;
         for (int section = 0; section < ids.length; section++) {
-            if (ids[section] != null) {
+            if (doesSectionExist(section)) {
                 bitMask += 1 << section;
             }
         }
@@ -648,7 +741,22 @@ public CompoundTag getTile(int x, int y, int z) {
     }
 
     public boolean doesSectionExist(int cy) {
-        return ids[cy] != null;
+        return ids[cy] != null || sections[cy] != null;
+    }
+
+    /**
+     * @return if this chunk is stored in the 1.13 palette format
+     */
+    public boolean isPaletted() {
+        if (dataVersion != 0) {
+            return true;
+        }
+        for (MCASection section : sections) {
+            if (section != null) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
@@ -658,6 +766,10 @@ public FaweChunk<Void> copy(boolean shallow) {
 
     @Override
     public int getBlockCombinedId(int x, int y, int z) {
+        MCASection section = sections[y >> 4];
+        if (section != null) {
+            return section.getCombinedId(((y & 15) << 8) | ((z & 15) << 4) | (x & 15));
+        }
         // TODO FIXME
         return 0;
 //        int layer = y >> 4;
@@ -787,6 +899,18 @@ public void setBlockUnsafe(byte[] idsLayer, byte[] dataLayer, int index, byte id
 
     @Override
     public void setBlock(int x, int y, int z, int combinedId) {
+        int layer = y >> 4;
+        MCASection section = sections[layer];
+        if (section == null && ids[layer] == null && isPaletted()) {
+            section = sections[layer] = new MCASection(BlockTypes.AIR.getInternalId());
+            this.skyLight[layer] = new byte[2048];
+            this.blockLight[layer] = new byte[2048];
+        }
+        if (section != null) {
+            setModified();
+            section.setCombinedId(((y & 15) << 8) | ((z & 15) << 4) | (x & 15), combinedId);
+            return;
+        }
         // TODO FIXME
 //        setModified();
 //        int layer = y >> 4;
@@ -55,6 +55,8 @@ public class MCAFile {
     private boolean deleted;
     private final int X, Z;
     private final Int2ObjectOpenHashMap<MCAChunk> chunks = new Int2ObjectOpenHashMap<>();
+    // Modified chunks which have been compressed and released from the cache (guarded by chunks)
+    private final Int2ObjectOpenHashMap<byte[]> encoded = new Int2ObjectOpenHashMap<>();
 
     final ThreadLocal<byte[]> byteStore1 = new ThreadLocal<byte[]>() {
         @Override
@@ -107,6 +109,7 @@ public void clear() {
         }
         synchronized (chunks) {
             chunks.clear();
+            encoded.clear();
         }
         locations = null;
         IterableThreadLocal.clean(byteStore1);
@@ -198,13 +201,32 @@ public MCAChunk getChunk(int cx, int cz) throws IOException {
     }
 
     public MCAChunk readChunk(int cx, int cz) throws IOException {
-        int i = ((cx & 31) << 2) + ((cz & 31) << 7);
-        int offset = (((locations[i] & 0xFF) << 16) + ((locations[i + 1] & 0xFF) << 8) + ((locations[i + 2] & 0xFF))) << 12;
-        int size = (locations[i + 3] & 0xFF) << 12;
-        if (offset == 0) {
-            return null;
+        int pair = MathMan.pair((short) (cx & 31), (short) (cz & 31));
+        byte[] data;
+        synchronized (chunks) {
+            data = encoded.get(pair);
         }
-        NBTInputStream nis = getChunkIS(offset);
+        if (data == null) {
+            int offset = getOffset(cx, cz);
+            if (offset == 0) {
+                return null;
+            }
+            data = getChunkCompressedBytes(offset);
+        }
+        return decodeChunk(cx, cz, data);
+    }
+
+    /**
+     * Parse and cache a chunk
+     *
+     * @param cx
+     * @param cz
+     * @param data the compressed chunk (see {@link #getChunkCompressedBytes(int)})
+     * @return the chunk
+     * @throws IOException
+     */
+    public MCAChunk decodeChunk(int cx, int cz, byte[] data) throws IOException {
+        NBTInputStream nis = getChunkIS(data);
         MCAChunk chunk = new MCAChunk(nis, queue, cx, cz, false);
         nis.close();
         int pair = MathMan.pair((short) (cx & 31), (short) (cz & 31));
@@ -214,6 +236,46 @@ public MCAChunk readChunk(int cx, int cz) throws IOException {
         return chunk;
     }
 
+    /**
+     * Release a chunk from the cache<br>
+     * - A modified chunk is compressed and kept until the file is flushed<br>
+     * - A deleted chunk stays cached, so the flush knows to remove it<br>
+     *
+     * @param chunk
+     * @return the compressed size, or 0 if nothing was compressed
+     */
+    public int encodeChunk(MCAChunk chunk) throws Exception {
+        if (chunk.isDeleted()) {
+            return 0;
+        }
+        int pair = MathMan.pair((short) (chunk.getX() & 31), (short) (chunk.getZ() & 31));
+        if (!chunk.isModified()) {
+            synchronized (chunks) {
+                if (chunks.get(pair) == chunk) {
+                    chunks.remove(pair);
+                }
+            }
+            return 0;
+        }
+        chunk.setLastUpdate(System.currentTimeMillis());
+        byte[] compressed = toBytes(chunk);
+        synchronized (chunks) {
+            encoded.put(pair, compressed);
+            if (chunks.get(pair) == chunk) {
+                chunks.remove(pair);
+            }
+        }
+        return compressed.length;
+    }
+
+    private boolean isChunkModified(int cx, int cz) {
+        int pair = MathMan.pair((short) (cx & 31), (short) (cz & 31));
+        synchronized (chunks) {
+            MCAChunk cached = chunks.get(pair);
+            return (cached != null && cached.isModified()) || encoded.containsKey(pair);
+        }
+    }
+
     /**
      * CX, CZ, OFFSET, SIZE
      *
@@ -319,9 +381,8 @@ public byte[] getChunkCompressedBytes(int offset) throws IOException {
         }
     }
 
-    private NBTInputStream getChunkIS(int offset) throws IOException {
+    private NBTInputStream getChunkIS(byte[] data) throws IOException {
         try {
-            byte[] data = getChunkCompressedBytes(offset);
             FastByteArrayInputStream bais = new FastByteArrayInputStream(data);
             InflaterInputStream iis = new InflaterInputStream(bais, new Inflater(), 1);
             fieldBuf2.set(iis, byteStore2.get());
@@ -399,6 +460,13 @@ private byte[] toBytes(MCAChunk chunk) throws Exception {
     private byte[] getChunkBytes(int cx, int cz) throws Exception {
         MCAChunk mca = getCachedChunk(cx, cz);
         if (mca == null) {
+            int pair = MathMan.pair((short) (cx & 31), (short) (cz & 31));
+            synchronized (chunks) {
+                byte[] data = encoded.get(pair);
+                if (data != null) {
+                    return data;
+                }
+            }
             int offset = getOffset(cx, cz);
             if (offset == 0) {
                 return null;
@@ -462,6 +530,9 @@ public boolean isModified() {
             return true;
         }
         synchronized (chunks) {
+            if (!encoded.isEmpty()) {
+                return true;
+            }
             for (Int2ObjectMap.Entry<MCAChunk> entry : chunks.int2ObjectEntrySet()) {
                 MCAChunk chunk = entry.getValue();
                 if (chunk.isModified() || chunk.isDeleted()) {
@@ -503,6 +574,23 @@ public void flush(ForkJoinPool pool) {
             // Get the current time for the chunk timestamp
             long now = System.currentTimeMillis();
 
+            // Chunks which were already compressed when released from the cache
+            synchronized (chunks) {
+                for (Int2ObjectMap.Entry<byte[]> entry : encoded.int2ObjectEntrySet()) {
+                    int pair = entry.getIntKey();
+                    MCAChunk cached = chunks.get(pair);
+                    if (cached != null && cached.isDeleted()) {
+                        continue;
+                    }
+                    modified = true;
+                    if (getOffset(MathMan.unpairX(pair), MathMan.unpairY(pair)) == 0) {
+                        append.put(pair, entry.getValue());
+                    } else {
+                        compressedMap.put(pair, entry.getValue());
+                    }
+                }
+            }
+
             // Load the chunks into the append or compressed map
             for (MCAChunk chunk : getCachedChunks()) {
                 if (chunk.isModified() || chunk.isDeleted()) {
@@ -582,7 +670,7 @@ public void run(Integer cx, Integer cz, Integer offset, Integer size) {
                             MCAChunk cached = getCachedChunk(cx, cz);
                             // If the previous offset marks the current write position (start) then we only write the header
                             if (offset == start) {
-                                if (cached == null || !cached.isModified()) {
+                                if (!isChunkModified(cx, cz)) {
                                     writeHeader(raf, cx, cz, start >> 12, size >> 12, true);
                                     start += size;
                                     written = start + size;
@@ -619,8 +707,7 @@ public void run(Integer cx, Integer cz, Integer offset, Integer size) {
                                 short nextCXZ = MathMan.unpairX(nextLoc);
                                 int nextCX = MathMan.unpairShortX(nextCXZ);
                                 int nextCZ = MathMan.unpairShortY(nextCXZ);
-                                MCAChunk cached = getCachedChunk(nextCX, nextCZ);
-                                if (cached == null || !cached.isModified()) {
+                                if (!isChunkModified(nextCX, nextCZ)) {
                                     byte[] nextBytes = getChunkCompressedBytes(nextOffset2);
                                     relocate.put(MathMan.pair((short) (nextCX & 31), (short) (nextCZ & 31)), nextBytes);
                                 }
@@ -86,6 +86,30 @@ public MCAChunk applyChunk(MCAChunk chunk, T cache) {
     public void applyBlock(int x, int y, int z, BaseBlock block, T cache) {
     }
 
+    /**
+     * Check whether 1.13 sections should be filtered by palette entry, instead of by block<br>
+     * - {@link #applyPalette} is then called once for each block type in a section, rather than applyBlock for each block<br>
+     * - Only for filters which don't need a block's position or NBT<br>
+     *
+     * @return
+     */
+    public boolean appliesPalette() {
+        return false;
+    }
+
+    /**
+     * Make changes to every block of a type in a section here<br>
+     * - Changing the block (e.g. block.setBlock(...)) changes every block using the palette entry<br>
+     * - The block has no position or NBT<br>
+     *
+     * @param section
+     * @param paletteIndex
+     * @param blocks the number of blocks using the palette entry
+     * @param block
+     */
+    public void applyPalette(MCASection section, int paletteIndex, int blocks, BaseBlock block, T cache) {
+    }
+
     /**
      * Do something with the MCAChunk after block filtering<br>
      *
@@ -96,6 +120,17 @@ public void applyBlock(int x, int y, int z, BaseBlock block, T cache) {
     public void finishChunk(MCAChunk chunk, T cache) {
     }
 
+    /**
+     * Check whether every filtered chunk must stay loaded until {@link #finishFile(MCAFile, Object)}<br>
+     * - By default, chunks are compressed (if modified) and released once filtered<br>
+     * - Return true if finishFile uses {@link MCAFile#forEachCachedChunk(com.boydti.fawe.object.RunnableVal)}<br>
+     *
+     * @return
+     */
+    public boolean requiresChunkCache() {
+        return false;
+    }
+
     /**
      * Do something with the MCAFile after block filtering<br>
      *
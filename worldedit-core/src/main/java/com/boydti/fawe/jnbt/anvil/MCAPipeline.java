@@ -0,0 +1,491 @@
+package com.boydti.fawe.jnbt.anvil;
+
+import com.boydti.fawe.Fawe;
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.RunnableVal2;
+import com.boydti.fawe.object.RunnableVal4;
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Filters region files as a pipeline of stages, each with its own threads and a bounded queue:<br>
+ * - read: the traversing thread opens each file (in order) and reads the compressed chunks<br>
+ * - decode: decompress and parse each chunk<br>
+ * - filter: apply the {@link MCAFilter} to the chunk and its blocks<br>
+ * - write: compress modified chunks and release them, then save each file once all its chunks are done<br>
+ * A full queue blocks the stage before it, and only {@link Settings.ANVIL#MAX_FILES} files are open at once,
+ * so the number of loaded chunks stays bounded regardless of the world size
+ */
+public class MCAPipeline<G, T extends MCAFilter<G>> {
+
+    private final MCAQueue queue;
+    private final T filter;
+    private final ForkJoinPool pool;
+    private final boolean releaseChunks;
+
+    private final Semaphore files;
+    private final int maxFiles;
+    private final BlockingQueue<ChunkTask> decodeQueue;
+    private final BlockingQueue<ChunkTask> filterQueue;
+    private final BlockingQueue<ChunkTask> writeQueue;
+
+    private final AtomicInteger resident = new AtomicInteger();
+    private final AtomicInteger peakResident = new AtomicInteger();
+
+    private final Stage read = new Stage("read", 1);
+    private final Stage decode;
+    private final Stage filterStage;
+    private final Stage write;
+    private long start;
+    private long elapsed;
+
+    private static final ChunkTask POISON = new ChunkTask(null, 0, 0, null);
+
+    // Only used by the pipeline's own threads, which exit when it finishes
+    private static final ThreadLocal<MutableMCABackedBaseBlock> BLOCK_STORE = new ThreadLocal<MutableMCABackedBaseBlock>() {
+        @Override
+        protected MutableMCABackedBaseBlock initialValue() {
+            return new MutableMCABackedBaseBlock();
+        }
+    };
+
+    public MCAPipeline(MCAQueue queue, T filter, ForkJoinPool pool) {
+        Settings.ANVIL settings = Settings.IMP.ANVIL;
+        this.queue = queue;
+        this.filter = filter;
+        this.pool = pool;
+        this.releaseChunks = !filter.requiresChunkCache();
+        this.maxFiles = Math.max(1, settings.MAX_FILES);
+        this.files = new Semaphore(maxFiles);
+        this.decodeQueue = new ArrayBlockingQueue<>(Math.max(1, settings.READ_QUEUE));
+        this.filterQueue = new ArrayBlockingQueue<>(Math.max(1, settings.DECODE_QUEUE));
+        this.writeQueue = new ArrayBlockingQueue<>(Math.max(1, settings.WRITE_QUEUE));
+        this.decode = new Stage("decode", Math.max(1, settings.DECODE_THREADS));
+        this.filterStage = new Stage("filter", Math.max(1, settings.FILTER_THREADS));
+        this.write = new Stage("write", Math.max(1, settings.WRITE_THREADS));
+    }
+
+    /**
+     * Run the pipeline over the files provided by the traverser (blocks until every file is saved)
+     *
+     * @param root
+     * @param traverser
+     */
+    public void run(Path root, RunnableVal2<Path, RunnableVal2<Path, BasicFileAttributes>> traverser) {
+        start = System.nanoTime();
+        List<Thread> decodeThreads = startThreads(decode, decodeQueue, this::decode);
+        List<Thread> filterThreads = startThreads(filterStage, filterQueue, this::filter);
+        List<Thread> writeThreads = startThreads(write, writeQueue, this::write);
+        try {
+            traverser.run(root, new RunnableVal2<Path, BasicFileAttributes>() {
+                @Override
+                public void run(Path path, BasicFileAttributes attr) {
+                    readFile(path, attr);
+                }
+            });
+            // Wait for the files in progress
+            files.acquireUninterruptibly(maxFiles);
+            files.release(maxFiles);
+        } finally {
+            // Each stage finishes its queue before the next stage is stopped
+            shutdown(decodeThreads, decodeQueue);
+            shutdown(filterThreads, filterQueue);
+            shutdown(writeThreads, writeQueue);
+            elapsed = System.nanoTime() - start;
+        }
+        if (Settings.IMP.ANVIL.STATISTICS) {
+            Fawe.debug(toString());
+        }
+    }
+
+    private interface Worker {
+        void run(ChunkTask task) throws Exception;
+    }
+
+    private List<Thread> startThreads(Stage stage, BlockingQueue<ChunkTask> input, Worker worker) {
+        List<Thread> threads = new ArrayList<>(stage.threads);
+        for (int i = 0; i < stage.threads; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (true) {
+                        ChunkTask task;
+                        try {
+                            task = input.take();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        if (task == POISON) {
+                            return;
+                        }
+                        long startTask = System.nanoTime();
+                        try {
+                            worker.run(task);
+                        } catch (Throwable e) {
+                            e.printStackTrace();
+                        }
+                        stage.busy.addAndGet(System.nanoTime() - startTask);
+                    }
+                }
+            }, "FAWE-Anvil-" + stage.name + "-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+        return threads;
+    }
+
+    private void shutdown(List<Thread> threads, BlockingQueue<ChunkTask> input) {
+        for (int i = 0; i < threads.size(); i++) {
+            put(input, POISON);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void put(BlockingQueue<ChunkTask> queue, ChunkTask task) {
+        while (true) {
+            try {
+                queue.put(task);
+                return;
+            } catch (InterruptedException ignore) {
+            }
+        }
+    }
+
+    private void readFile(Path path, BasicFileAttributes attr) {
+        try {
+            String name = path.getFileName().toString();
+            if (!name.endsWith(".mca") && !name.endsWith(".mcapm")) {
+                return;
+            }
+            if (!filter.appliesFile(path, attr)) {
+                return;
+            }
+            String[] split = name.split("\\.");
+            final int mcaX = Integer.parseInt(split[1]);
+            final int mcaZ = Integer.parseInt(split[2]);
+            if (!filter.appliesFile(mcaX, mcaZ)) {
+                return;
+            }
+            files.acquireUninterruptibly();
+            File file = path.toFile();
+            final MCAFile original = new MCAFile(queue, file);
+            final MCAFile finalFile;
+            try {
+                finalFile = filter.applyFile(original);
+            } catch (Throwable e) {
+                files.release();
+                throw e;
+            }
+            if (finalFile == null || finalFile.isDeleted()) {
+                try {
+                    if (original.isDeleted()) {
+                        try {
+                            original.close(pool);
+                            file.delete();
+                        } catch (Throwable ignore) {
+                            ignore.printStackTrace();
+                        }
+                    }
+                    pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                    original.close(pool);
+                    if (original.isDeleted()) {
+                        file.delete();
+                    }
+                } finally {
+                    files.release();
+                }
+                return;
+            }
+            final FileTask fileTask = new FileTask(original, finalFile, file);
+            try {
+                finalFile.init();
+                final int cbx = mcaX << 5;
+                final int cbz = mcaZ << 5;
+                finalFile.forEachSortedChunk(new RunnableVal4<Integer, Integer, Integer, Integer>() {
+                    @Override
+                    public void run(Integer rcx, Integer rcz, Integer offset, Integer size) {
+                        int cx = cbx + rcx;
+                        int cz = cbz + rcz;
+                        try {
+                            if (!filter.appliesChunk(cx, cz)) {
+                                return;
+                            }
+                            MCAChunk cached = finalFile.getCachedChunk(cx, cz);
+                            if (cached != null) {
+                                // Already loaded by the filter, skip decoding
+                                fileTask.pending.incrementAndGet();
+                                ChunkTask task = new ChunkTask(fileTask, cx, cz, null);
+                                task.chunk = cached;
+                                put(filterQueue, task);
+                                return;
+                            }
+                            long startChunk = System.nanoTime();
+                            byte[] data = finalFile.getChunkCompressedBytes(offset);
+                            read.add(startChunk, data.length);
+                            fileTask.pending.incrementAndGet();
+                            put(decodeQueue, new ChunkTask(fileTask, cx, cz, data));
+                        } catch (Throwable e) {
+                            e.printStackTrace();
+                        }
+                    }
+                });
+            } finally {
+                // Release the reader's hold on the file
+                if (fileTask.pending.decrementAndGet() == 0) {
+                    finish(fileTask);
+                }
+            }
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void decode(ChunkTask task) {
+        try {
+            task.chunk = task.file.finalFile.decodeChunk(task.cx, task.cz, task.data);
+        } catch (Throwable e) {
+            e.printStackTrace();
+            complete(task);
+            return;
+        }
+        decode.count.incrementAndGet();
+        decode.bytes.addAndGet(task.data.length);
+        task.data = null;
+        int count = resident.incrementAndGet();
+        int peak;
+        while (count > (peak = peakResident.get()) && !peakResident.compareAndSet(peak, count)) ;
+        task.decoded = true;
+        put(filterQueue, task);
+    }
+
+    private void filter(ChunkTask task) {
+        MCAChunk chunk = task.chunk;
+        try {
+            final G value = filter.get();
+            chunk = filter.applyChunk(chunk, value);
+            if (chunk != null) {
+                final MutableMCABackedBaseBlock mutableBlock = BLOCK_STORE.get();
+                mutableBlock.setChunk(chunk);
+                int bx = task.cx << 4;
+                int bz = task.cz << 4;
+                for (int layer = 0; layer < 16; layer++) {
+                    if (chunk.doesSectionExist(layer)) {
+                        mutableBlock.setArrays(layer);
+                        if (mutableBlock.getSection() != null && filter.appliesPalette()) {
+                            mutableBlock.filterPalette(filter, value);
+                            continue;
+                        }
+                        int yStart = layer << 4;
+                        int index = 0;
+                        for (int y = yStart; y < yStart + 16; y++) {
+                            mutableBlock.setY(y);
+                            for (int z = bz; z < bz + 16; z++) {
+                                mutableBlock.setZ(z);
+                                for (int x = bx; x < bx + 16; x++, index++) {
+                                    mutableBlock.setX(x);
+                                    mutableBlock.setIndex(index);
+                                    filter.applyBlock(x, y, z, mutableBlock, value);
+                                }
+                            }
+                        }
+                    }
+                }
+                filter.finishChunk(chunk, value);
+            }
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+        filterStage.count.incrementAndGet();
+        put(writeQueue, task);
+    }
+
+    private void write(ChunkTask task) throws Exception {
+        MCAChunk chunk = task.chunk;
+        try {
+            if (task.decoded) {
+                if (releaseChunks && !chunk.isDeleted()) {
+                    resident.decrementAndGet();
+                    write.bytes.addAndGet(task.file.finalFile.encodeChunk(chunk));
+                } else {
+                    // Released when the file is closed
+                    task.file.retained.incrementAndGet();
+                }
+            }
+            write.count.incrementAndGet();
+        } finally {
+            complete(task);
+        }
+    }
+
+    private void complete(ChunkTask task) {
+        FileTask fileTask = task.file;
+        if (fileTask != null && fileTask.pending.decrementAndGet() == 0) {
+            finish(fileTask);
+        }
+    }
+
+    /**
+     * Called once every chunk in a file has been written
+     */
+    private void finish(FileTask fileTask) {
+        try {
+            pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            filter.finishFile(fileTask.finalFile, filter.get());
+            fileTask.original.close(pool);
+            if (fileTask.original.isDeleted()) {
+                fileTask.file.delete();
+            }
+        } catch (Throwable e) {
+            e.printStackTrace();
+        } finally {
+            resident.addAndGet(-fileTask.retained.get());
+            files.release();
+        }
+    }
+
+    public Stage getRead() {
+        return read;
+    }
+
+    public Stage getDecode() {
+        return decode;
+    }
+
+    public Stage getFilter() {
+        return filterStage;
+    }
+
+    public Stage getWrite() {
+        return write;
+    }
+
+    /**
+     * @return the most chunks which were loaded at once
+     */
+    public int getPeakResidentChunks() {
+        return peakResident.get();
+    }
+
+    /**
+     * @return the total time in nanoseconds
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Filtered in ").append(TimeUnit.NANOSECONDS.toMillis(elapsed)).append("ms (peak ").append(peakResident.get()).append(" loaded chunks)");
+        for (Stage stage : new Stage[]{read, decode, filterStage, write}) {
+            builder.append("\n - ").append(stage.toString(elapsed));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The work done by one stage of the pipeline
+     */
+    public static final class Stage {
+        private final String name;
+        private final int threads;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong busy = new AtomicLong();
+
+        private Stage(String name, int threads) {
+            this.name = name;
+            this.threads = threads;
+        }
+
+        private void add(long start, int size) {
+            count.incrementAndGet();
+            bytes.addAndGet(size);
+            busy.addAndGet(System.nanoTime() - start);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * @return the number of chunks processed
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return the compressed bytes read or written
+         */
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        /**
+         * @return the total time in nanoseconds spent working, across all threads
+         */
+        public long getBusy() {
+            return busy.get();
+        }
+
+        private String toString(long elapsed) {
+            double seconds = Math.max(1, elapsed) / 1e9;
+            double utilization = 100d * busy.get() / ((double) Math.max(1, elapsed) * threads);
+            return String.format("%s (%d threads): %d chunks, %.1f MiB, %.0f chunks/s, %.0f%% busy",
+                    name, threads, count.get(), bytes.get() / 1048576d, count.get() / seconds, utilization);
+        }
+    }
+
+    private static final class FileTask {
+        private final MCAFile original;
+        private final MCAFile finalFile;
+        private final File file;
+        // Starts at 1 while the reader is still adding chunks
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicInteger retained = new AtomicInteger();
+
+        private FileTask(MCAFile original, MCAFile finalFile, File file) {
+            this.original = original;
+            this.finalFile = finalFile;
+            this.file = file;
+        }
+    }
+
+    private static final class ChunkTask {
+        private final FileTask file;
+        private final int cx;
+        private final int cz;
+        private byte[] data;
+        private MCAChunk chunk;
+        private boolean decoded;
+
+        private ChunkTask(FileTask file, int cx, int cz, byte[] data) {
+            this.file = file;
+            this.cx = cx;
+            this.cz = cz;
+            this.data = data;
+        }
+    }
+}
@@ -12,7 +12,6 @@
 import com.boydti.fawe.object.FaweQueue;
 import com.boydti.fawe.object.RegionWrapper;
 import com.boydti.fawe.object.RunnableVal2;
-import com.boydti.fawe.object.RunnableVal4;
 import com.boydti.fawe.object.collection.IterableThreadLocal;
 import com.boydti.fawe.util.MainUtil;
 import com.sk89q.jnbt.CompoundTag;
@@ -30,6 +29,7 @@
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
@@ -39,6 +39,7 @@ public class MCAQueue extends NMSMappedFaweQueue<FaweQueue, FaweChunk, FaweChunk
     private NMSMappedFaweQueue parentNMS;
     private final boolean hasSky;
     private final File saveFolder;
+    private volatile MCAPipeline lastPipeline;
     private final ThreadLocal<MutableMCABackedBaseBlock> blockStore = new ThreadLocal<MutableMCABackedBaseBlock>() {
         @Override
         protected MutableMCABackedBaseBlock initialValue() {
@@ -325,8 +326,8 @@ public <G, T extends MCAFilter<G>> T filterCopy(final T filter, RegionWrapper re
 
     public <G, T extends MCAFilter<G>> T filterCopy(final T filter, RegionWrapper region, IAnvilHistory task) {
         DelegateMCAFilter<G> delegate = new DelegateMCAFilter<G>(filter) {
-            MCAFile original;
-            MCAFile copy;
+            // Several files may be filtered at once, keyed by the file being filtered
+            final Map<File, MCAFile> originals = new ConcurrentHashMap<>();
             ForkJoinPool pool;
 
             @Override
@@ -336,8 +337,7 @@ public void withPool(ForkJoinPool pool, MCAQueue queue) {
 
             @Override
             public MCAFile applyFile(MCAFile original) {
-                this.original = original;
-                this.original.clear();
+                original.clear();
                 File file = original.getFile();
                 file.setWritable(true);
                 File copyDest = new File(file.getParentFile(), file.getName() + "-copy");
@@ -348,7 +348,7 @@ public MCAFile applyFile(MCAFile original) {
                         e.printStackTrace();
                     }
                 }, true, false);
-                this.copy = new MCAFile(original.getParent(), copyDest);
+                MCAFile copy = new MCAFile(original.getParent(), copyDest);
                 MCAFile result = filter.applyFile(copy);
                 if (result == null) {
                     performCopy(original, copy, region, task, pool);
@@ -357,11 +357,15 @@ public MCAFile applyFile(MCAFile original) {
                     copy.clear();
                     if (copyDest.exists() && !copyDest.delete()) copyDest.deleteOnExit();
                 }
+                if (result != null) {
+                    originals.put(result.getFile(), original);
+                }
                 return result;
             }
 
             @Override
             public void finishFile(MCAFile newRegion, G cache) {
+                MCAFile original = originals.remove(newRegion.getFile());
                 performCopy(original, newRegion, region, task, pool);
             }
         };
@@ -410,6 +414,8 @@ public MCAChunk applyChunk(MCAChunk chunk, G value) {
                     int bz = chunk.getZ() << 4;
                     int tx = bx + 15;
                     int tz = bz + 15;
+                    // The palette can only be filtered for sections wholly inside the region
+                    boolean palette = filter.appliesPalette() && bx >= region.minX && tx <= region.maxX && bz >= region.minZ && tz <= region.maxZ;
                     bx = Math.max(bx, region.minX);
                     bz = Math.max(bz, region.minZ);
                     tx = Math.min(tx, region.maxX);
@@ -421,6 +427,10 @@ public MCAChunk applyChunk(MCAChunk chunk, G value) {
                             mutableBlock.setArrays(layer);
                             int yStart = layer << 4;
                             int yEnd = yStart + 15;
+                            if (palette && mutableBlock.getSection() != null && yStart >= region.minY && yEnd <= region.maxY) {
+                                mutableBlock.filterPalette(filter, value);
+                                continue;
+                            }
                             yStart = Math.max(yStart, region.minY);
                             yEnd = Math.min(yEnd, region.maxY);
                             for (int y = yStart, y0 = (yStart & 15); y <= yEnd; y++, y0++) {
@@ -486,112 +496,13 @@ public <G, T extends MCAFilter<G>> T createRegion(final T filter, final RegionWr
         return filter;
     }
 
-    private <G, T extends MCAFilter<G>> RunnableVal2<Path, BasicFileAttributes> filterFunction(final T filter, ForkJoinPool pool) {
-        return new RunnableVal2<Path, BasicFileAttributes>() {
-            @Override
-            public void run(Path path, BasicFileAttributes attr) {
-                try {
-                    String name = path.getFileName().toString();
-                    if (!name.endsWith(".mca") && !name.endsWith(".mcapm")) {
-                        return;
-                    }
-                    if (!filter.appliesFile(path, attr)) {
-                        return;
-                    }
-                    String[] split = name.split("\\.");
-                    final int mcaX = Integer.parseInt(split[1]);
-                    final int mcaZ = Integer.parseInt(split[2]);
-                    if (filter.appliesFile(mcaX, mcaZ)) {
-                        File file = path.toFile();
-                        final MCAFile original = new MCAFile(MCAQueue.this, file);
-                        final MCAFile finalFile = filter.applyFile(original);
-                        if (finalFile != null && !finalFile.isDeleted()) {
-                            finalFile.init();
-                            // May not do anything, but seems to lead to smaller lag spikes
-                            final int cbx = mcaX << 5;
-                            final int cbz = mcaZ << 5;
-
-                            finalFile.forEachSortedChunk(new RunnableVal4<Integer, Integer, Integer, Integer>() {
-                                @Override
-                                public void run(final Integer rcx, final Integer rcz, Integer offset, Integer size) {
-                                    pool.submit(new Runnable() {
-                                        @Override
-                                        public void run() {
-                                            try {
-                                                int cx = cbx + rcx;
-                                                int cz = cbz + rcz;
-                                                if (filter.appliesChunk(cx, cz)) {
-                                                    MCAChunk chunk = finalFile.getChunk(cx, cz);
-                                                    try {
-                                                        final G value = filter.get();
-                                                        chunk = filter.applyChunk(chunk, value);
-                                                        if (chunk != null) {
-                                                            final MutableMCABackedBaseBlock mutableBlock = blockStore.get();
-                                                            mutableBlock.setChunk(chunk);
-                                                            int bx = cx << 4;
-                                                            int bz = cz << 4;
-                                                            for (int layer = 0; layer < 16; layer++) {
-                                                                if (chunk.doesSectionExist(layer)) {
-                                                                    mutableBlock.setArrays(layer);
-                                                                    int yStart = layer << 4;
-                                                                    int index = 0;
-                                                                    for (int y = yStart; y < yStart + 16; y++) {
-                                                                        mutableBlock.setY(y);
-                                                                        for (int z = bz; z < bz + 16; z++) {
-                                                                            mutableBlock.setZ(z);
-                                                                            for (int x = bx; x < bx + 16; x++, index++) {
-                                                                                mutableBlock.setX(x);
-                                                                                mutableBlock.setIndex(index);
-                                                                                filter.applyBlock(x, y, z, mutableBlock, value);
-                                                                            }
-                                                                        }
-                                                                    }
-                                                                }
-                                                            }
-                                                            filter.finishChunk(chunk, value);
-                                                        }
-                                                    } catch (Throwable e) {
-                                                        e.printStackTrace();
-                                                    }
-                                                }
-                                            } catch (Throwable e) {
-                                                e.printStackTrace();
-                                            }
-                                        }
-                                    });
-                                }
-                            });
-                            pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-                            filter.finishFile(finalFile, filter.get());
-                        } else {
-                            if (original.isDeleted()) {
-                                try {
-                                    original.close(pool);
-                                    file.delete();
-                                } catch (Throwable ignore) {
-                                    ignore.printStackTrace();
-                                }
-                            }
-                            pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-                        }
-                        original.close(pool);
-                        if (original.isDeleted()) {
-                            file.delete();
-                        }
-                    }
-                } catch (Throwable ignore) {
-                    ignore.printStackTrace();
-                }
-            }
-        };
-    }
-
     private <G, T extends MCAFilter<G>> T filterWorld(final T filter, RunnableVal2<Path, RunnableVal2<Path, BasicFileAttributes>> traverser) {
         File folder = getSaveFolder();
         final ForkJoinPool pool = new ForkJoinPool();
         filter.withPool(pool, this);
-        RunnableVal2<Path, BasicFileAttributes> task = filterFunction(filter, pool);
-        traverser.run(folder.toPath(), task);
+        MCAPipeline<G, T> pipeline = new MCAPipeline<>(this, filter, pool);
+        lastPipeline = pipeline;
+        pipeline.run(folder.toPath(), traverser);
         pool.shutdown();
         try {
             pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
@@ -601,6 +512,13 @@ private <G, T extends MCAFilter<G>> T filterWorld(final T filter, RunnableVal2<P
         return filter;
     }
 
+    /**
+     * @return the stages of the last filter run, or null
+     */
+    public MCAPipeline getLastPipeline() {
+        return lastPipeline;
+    }
+
     public <G, T extends MCAFilter<G>> T filterWorld(final T filter) {
         return filterWorld(filter, new RunnableVal2<Path, RunnableVal2<Path, BasicFileAttributes>>() {
             @Override
@@ -0,0 +1,357 @@
+package com.boydti.fawe.jnbt.anvil;
+
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.jnbt.ListTag;
+import com.sk89q.jnbt.NBTOutputStream;
+import com.sk89q.jnbt.StringTag;
+import com.sk89q.jnbt.Tag;
+import com.sk89q.worldedit.registry.state.Property;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A 1.13 chunk section (BlockStates + Palette), kept in its stored form until it's used<br>
+ * - The palette is converted to internal ids the first time a block is read<br>
+ * - Blocks are read from the packed longs, which are only unpacked once a single block is set<br>
+ * - {@link #setPalette(int, int)} changes every block using a palette entry, without touching the indexes<br>
+ * - An unmodified section is written back as the original palette and longs<br>
+ * Not thread safe (a chunk is only filtered by one thread at a time)
+ */
+public class MCASection {
+
+    private static final int SIZE = 4096;
+
+    // The stored palette (null for a new section)
+    private List<Tag> paletteTags;
+    // The stored (or last written) block states
+    private long[] blockStates;
+    private int bits;
+
+    // Internal ids for each palette entry, the ids they were read as (null until used)
+    // and the stored tags of entries this server doesn't know about (read as air)
+    private int[] palette;
+    private int[] decoded;
+    private Tag[] entryTags;
+    private int paletteSize;
+
+    // Unpacked palette indexes (null until a block is set)
+    private char[] indexes;
+    private boolean paletteModified;
+
+    public MCASection(CompoundTag tag) {
+        this.paletteTags = tag.getList("Palette");
+        this.blockStates = tag.getLongArray("BlockStates");
+        this.paletteSize = paletteTags.size();
+        this.bits = getBits(paletteSize);
+    }
+
+    /**
+     * A section filled with a single block
+     *
+     * @param combinedId
+     */
+    public MCASection(int combinedId) {
+        this.palette = new int[]{combinedId};
+        this.decoded = new int[]{-1};
+        this.entryTags = new Tag[1];
+        this.paletteSize = 1;
+        this.bits = 4;
+        this.indexes = new char[SIZE];
+        this.paletteModified = true;
+    }
+
+    private MCASection(MCASection other) {
+        this.paletteTags = other.paletteTags;
+        this.blockStates = other.blockStates;
+        this.bits = other.bits;
+        this.palette = other.palette != null ? other.palette.clone() : null;
+        this.decoded = other.decoded != null ? other.decoded.clone() : null;
+        this.entryTags = other.entryTags != null ? other.entryTags.clone() : null;
+        this.paletteSize = other.paletteSize;
+        this.indexes = other.indexes != null ? other.indexes.clone() : null;
+        this.paletteModified = other.paletteModified;
+    }
+
+    public MCASection copy() {
+        return new MCASection(this);
+    }
+
+    private static int getBits(int paletteSize) {
+        return Math.max(4, 32 - Integer.numberOfLeadingZeros(Math.max(1, paletteSize - 1)));
+    }
+
+    /**
+     * @return if the section needs to be re-encoded
+     */
+    public boolean isModified() {
+        return paletteModified || indexes != null;
+    }
+
+    public int getPaletteSize() {
+        return paletteSize;
+    }
+
+    private void loadPalette() {
+        if (palette != null) {
+            return;
+        }
+        int[] ids = new int[Math.max(4, paletteSize)];
+        entryTags = new Tag[ids.length];
+        for (int i = 0; i < paletteSize; i++) {
+            Tag tag = paletteTags.get(i);
+            int id = toInternalId((CompoundTag) tag);
+            if (id == -1) {
+                id = BlockTypes.AIR.getInternalId();
+                entryTags[i] = tag;
+            }
+            ids[i] = id;
+        }
+        decoded = ids.clone();
+        palette = ids;
+    }
+
+    /**
+     * @param paletteIndex
+     * @return the internal id of a palette entry
+     */
+    public int getPalette(int paletteIndex) {
+        loadPalette();
+        return palette[paletteIndex];
+    }
+
+    /**
+     * Change the block for a palette entry (i.e. every position using it)
+     *
+     * @param paletteIndex
+     * @param combinedId
+     */
+    public void setPalette(int paletteIndex, int combinedId) {
+        loadPalette();
+        if (palette[paletteIndex] != combinedId) {
+            palette[paletteIndex] = combinedId;
+            paletteModified = true;
+        }
+    }
+
+    /**
+     * @param index the position (y << 8 | z << 4 | x)
+     * @return the palette entry for a position
+     */
+    public int getPaletteIndex(int index) {
+        if (indexes != null) {
+            return indexes[index];
+        }
+        int bitIndex = index * bits;
+        int i = bitIndex >> 6;
+        int offset = bitIndex & 63;
+        long value = blockStates[i] >>> offset;
+        if (offset + bits > 64) {
+            value |= blockStates[i + 1] << (64 - offset);
+        }
+        return (int) value & ((1 << bits) - 1);
+    }
+
+    /**
+     * @return the number of blocks using each palette entry
+     */
+    public int[] getPaletteCounts() {
+        int[] counts = new int[paletteSize];
+        for (int i = 0; i < SIZE; i++) {
+            counts[getPaletteIndex(i)]++;
+        }
+        return counts;
+    }
+
+    /**
+     * @param index the position (y << 8 | z << 4 | x)
+     * @return the internal id at a position
+     */
+    public int getCombinedId(int index) {
+        return getPalette(getPaletteIndex(index));
+    }
+
+    /**
+     * Set the block at a position (unpacks the indexes)
+     *
+     * @param index the position (y << 8 | z << 4 | x)
+     * @param combinedId
+     */
+    public void setCombinedId(int index, int combinedId) {
+        loadPalette();
+        if (indexes == null) {
+            char[] unpacked = new char[SIZE];
+            for (int i = 0; i < SIZE; i++) {
+                unpacked[i] = (char) getPaletteIndex(i);
+            }
+            indexes = unpacked;
+        }
+        int paletteIndex = indexOf(combinedId);
+        if (paletteIndex == -1) {
+            paletteIndex = paletteSize++;
+            if (paletteIndex == palette.length) {
+                palette = Arrays.copyOf(palette, paletteIndex << 1);
+                decoded = Arrays.copyOf(decoded, paletteIndex << 1);
+                entryTags = Arrays.copyOf(entryTags, paletteIndex << 1);
+            }
+            palette[paletteIndex] = combinedId;
+            decoded[paletteIndex] = -1;
+            entryTags[paletteIndex] = null;
+            paletteModified = true;
+        }
+        indexes[index] = (char) paletteIndex;
+    }
+
+    private int indexOf(int combinedId) {
+        for (int i = 0; i < paletteSize; i++) {
+            if (palette[i] == combinedId && !isStored(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param paletteIndex
+     * @return if a palette entry is an unchanged block this server doesn't know about (so must never be merged)
+     */
+    private boolean isStored(int paletteIndex) {
+        return entryTags[paletteIndex] != null && palette[paletteIndex] == decoded[paletteIndex];
+    }
+
+    /**
+     * Write the Palette and BlockStates tags
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void write(NBTOutputStream out) throws IOException {
+        if (!isModified()) {
+            out.writeNamedTag("Palette", new ListTag(CompoundTag.class, paletteTags));
+            out.writeNamedTag("BlockStates", blockStates);
+            return;
+        }
+        // Merge palette entries which now hold the same block (an unknown block is read as air, but isn't air)
+        char[] remap = new char[paletteSize];
+        boolean merged = false;
+        int size = 0;
+        for (int i = 0; i < paletteSize; i++) {
+            int existing = -1;
+            if (!isStored(i)) {
+                for (int j = 0; j < size; j++) {
+                    if (palette[j] == palette[i] && !isStored(j)) {
+                        existing = j;
+                        break;
+                    }
+                }
+            }
+            if (existing == -1) {
+                existing = size++;
+                palette[existing] = palette[i];
+                decoded[existing] = decoded[i];
+                entryTags[existing] = entryTags[i];
+            } else {
+                merged = true;
+            }
+            remap[i] = (char) existing;
+        }
+        if (merged) {
+            char[] unpacked = new char[SIZE];
+            for (int i = 0; i < SIZE; i++) {
+                unpacked[i] = remap[getPaletteIndex(i)];
+            }
+            indexes = unpacked;
+        }
+        paletteSize = size;
+
+        List<Tag> tags = new ArrayList<>(paletteSize);
+        for (int i = 0; i < paletteSize; i++) {
+            if (isStored(i)) {
+                // Keep the stored entry of a block this server doesn't know about
+                tags.add(entryTags[i]);
+            } else {
+                tags.add(toPaletteTag(palette[i]));
+            }
+        }
+        if (indexes != null) {
+            bits = getBits(paletteSize);
+            blockStates = pack(indexes, bits);
+        }
+        out.writeNamedTag("Palette", new ListTag(CompoundTag.class, tags));
+        out.writeNamedTag("BlockStates", blockStates);
+        // What was written is now the stored form
+        paletteTags = tags;
+        palette = null;
+        decoded = null;
+        entryTags = null;
+        indexes = null;
+        paletteModified = false;
+    }
+
+    private static long[] pack(char[] indexes, int bits) {
+        long[] packed = new long[(SIZE * bits) >> 6];
+        for (int index = 0, bitIndex = 0; index < SIZE; index++, bitIndex += bits) {
+            long value = indexes[index];
+            int i = bitIndex >> 6;
+            int offset = bitIndex & 63;
+            packed[i] |= value << offset;
+            if (offset + bits > 64) {
+                packed[i + 1] |= value >>> (64 - offset);
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * @param entry
+     * @return the internal id of a palette entry, or -1 if this server doesn't know the block
+     */
+    private static int toInternalId(CompoundTag entry) {
+        try {
+            BlockTypes type = BlockTypes.get(entry.getString("Name"));
+            if (type == null) {
+                return -1;
+            }
+            Tag propertiesTag = entry.getValue().get("Properties");
+            if (!(propertiesTag instanceof CompoundTag)) {
+                return type.getInternalId();
+            }
+            Map<String, Tag> properties = ((CompoundTag) propertiesTag).getValue();
+            if (properties.isEmpty()) {
+                return type.getInternalId();
+            }
+            StringBuilder state = new StringBuilder(type.getId()).append('[');
+            boolean first = true;
+            for (Map.Entry<String, Tag> property : properties.entrySet()) {
+                if (!first) {
+                    state.append(',');
+                }
+                first = false;
+                state.append(property.getKey()).append('=').append(((StringTag) property.getValue()).getValue());
+            }
+            return BlockState.get(type, state.append(']').toString()).getInternalId();
+        } catch (Throwable ignore) {
+            return -1;
+        }
+    }
+
+    private static CompoundTag toPaletteTag(int combinedId) {
+        BlockState state = BlockState.getFromInternalId(combinedId);
+        Map<String, Tag> map = new HashMap<>();
+        map.put("Name", new StringTag(state.getBlockType().getId()));
+        Map<Property<?>, Object> states = state.getStates();
+        if (!states.isEmpty()) {
+            Map<String, Tag> properties = new HashMap<>();
+            for (Map.Entry<Property<?>, Object> entry : states.entrySet()) {
+                properties.put(entry.getKey().getName(), new StringTag(entry.getValue().toString().toLowerCase()));
+            }
+            map.put("Properties", new CompoundTag(properties));
+        }
+        return new CompoundTag(map);
+    }
+}
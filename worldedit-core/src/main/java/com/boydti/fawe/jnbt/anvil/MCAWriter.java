@@ -6,7 +6,8 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.Deflater;
 
 public abstract class MCAWriter {
@@ -69,13 +70,19 @@ public final int getArea() {
 
     public abstract MCAChunk write(MCAChunk input, int startX, int endX, int startZ, int endZ);
 
+    /**
+     * Generate and write the region files<br>
+     * - Chunks are generated and compressed in parallel<br>
+     * - A region file is written as soon as its last chunk is done, while later regions are still generating<br>
+     * - Only a few regions are in progress at once, to bound the memory held by compressed chunks
+     *
+     * @throws IOException
+     */
     public void generate() throws IOException {
         if (!folder.exists()) {
             folder.mkdirs();
         }
         final ForkJoinPool pool = new ForkJoinPool();
-        int bcx = 0;
-        int bcz = 0;
         int tcx = (width - 1) >> 4;
         int tcz = (length - 1) >> 4;
         final ThreadLocal<MCAChunk> chunkStore = new ThreadLocal<MCAChunk>() {
@@ -105,22 +112,22 @@ protected Deflater initialValue() {
                 return deflater;
             }
         };
-        byte[] fileBuf = new byte[1 << 16];
+        final ThreadLocal<byte[]> fileStore = new ThreadLocal<byte[]>() {
+            @Override
+            protected byte[] initialValue() {
+                return new byte[1 << 16];
+            }
+        };
+        final int maxRegions = pool.getParallelism() + 1;
+        final Semaphore regions = new Semaphore(maxRegions);
         int mcaXMin = 0;
         int mcaZMin = 0;
         int mcaXMax = mcaXMin + ((width - 1) >> 9);
         int mcaZMax = mcaZMin + ((length - 1) >> 9);
 
-        for (int mcaZ = mcaXMin; mcaZ <= mcaZMax; mcaZ++) {
+        for (int mcaZ = mcaZMin; mcaZ <= mcaZMax; mcaZ++) {
             for (int mcaX = mcaXMin; mcaX <= mcaXMax; mcaX++) {
-                final int fmcaX = mcaX;
-                final int fmcaZ = mcaZ;
-                File file = new File(folder, "r." + (mcaX + (getOffsetX() >> 9)) + "." + (mcaZ + (getOffsetZ() >> 9)) + ".mca");
-                if (!file.exists()) {
-                    file.createNewFile();
-                }
-                final BufferedRandomAccessFile raf = new BufferedRandomAccessFile(file, "rw", fileBuf);
-                final byte[] header = new byte[4096];
+                final File file = new File(folder, "r." + (mcaX + (getOffsetX() >> 9)) + "." + (mcaZ + (getOffsetZ() >> 9)) + ".mca");
                 final byte[][] compressed = new byte[1024][];
                 int bx = mcaX << 9;
                 int bz = mcaZ << 9;
@@ -128,6 +135,33 @@ protected Deflater initialValue() {
                 int ecx = Math.min(scx + 31, tcx);
                 int scz = bz >> 4;
                 int ecz = Math.min(scz + 31, tcz);
+                int count = 0;
+                for (int cz = scz; cz <= ecz; cz++) {
+                    for (int cx = scx; cx <= ecx; cx++) {
+                        if (shouldWrite(cx, cz)) {
+                            count++;
+                        }
+                    }
+                }
+                regions.acquireUninterruptibly();
+                final Runnable writeTask = new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            writeRegion(file, compressed, fileStore.get());
+                        } catch (Throwable e) {
+                            e.printStackTrace();
+                        } finally {
+                            regions.release();
+                        }
+                    }
+                };
+                if (count == 0) {
+                    pool.submit(writeTask);
+                    continue;
+                }
+                // The last chunk of the region to finish writes the file
+                final AtomicInteger remaining = new AtomicInteger(count);
                 for (int cz = scz; cz <= ecz; cz++) {
                     final int csz = cz << 4;
                     final int cez = Math.min(csz + 15, length - 1);
@@ -150,72 +184,71 @@ public void run() {
                                             // Compress
                                             byte[] bytes = chunk.toBytes(byteStore1.get());
                                             byte[] compressedBytes = MainUtil.compress(bytes, byteStore2.get(), deflateStore.get());
-                                            int blocks = (compressed.length + 4095) >> 12;
                                             compressed[((fcx & 31)) + ((fcz & 31) << 5)] = compressedBytes.clone();
                                         }
                                     } catch (Throwable e) {
                                         e.printStackTrace();
+                                    } finally {
+                                        if (remaining.decrementAndGet() == 0) {
+                                            writeTask.run();
+                                        }
                                     }
                                 }
                             });
                         }
                     }
                 }
-                pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-                pool.submit(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            int totalLength = 8192;
-                            for (int i = 0; i < compressed.length; i++) {
-                                byte[] compressedBytes = compressed[i];
-                                if (compressedBytes != null) {
-                                    int blocks = ((4095 + compressedBytes.length + 5) / 4096) * 4096;
-                                    totalLength += blocks;
-                                }
-                            }
-                            raf.setLength(totalLength);
-                            int offset = 8192;
-                            for (int i = 0; i < compressed.length; i++) {
-                                byte[] compressedBytes = compressed[i];
-                                if (compressedBytes != null) {
-                                    // Set header
-                                    int index = i << 2;
-                                    int offsetMedium = offset >> 12;
-                                    int blocks = ((4095 + compressedBytes.length + 5) / 4096);
-                                    header[index] = (byte) (offsetMedium >> 16);
-                                    header[index + 1] = (byte) ((offsetMedium >> 8));
-                                    header[index + 2] = (byte) ((offsetMedium >> 0));
-                                    header[index + 3] = (byte) (blocks);
-                                    // Write bytes
-                                    int cx = (fmcaX << 5) + (i & 31);
-                                    int cz = (fmcaZ << 5) + (i >> 5);
-                                    raf.seek(offset);
-                                    raf.writeInt(compressedBytes.length + 1);
-                                    raf.write(2);
-                                    raf.write(compressedBytes);
-                                    offset += blocks * 4096;
-                                }
-                            }
-                            raf.seek(0);
-                            raf.write(header);
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        } finally {
-                            try {
-                                raf.close();
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
-                        }
-                    }
-                });
             }
         }
-        pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        // Wait for every region to be written
+        regions.acquireUninterruptibly(maxRegions);
         pool.shutdown();
         IterableThreadLocal.clean(byteStore1);
         IterableThreadLocal.clean(byteStore2);
         IterableThreadLocal.clean(deflateStore);
+        IterableThreadLocal.clean(fileStore);
+    }
+
+    private void writeRegion(File file, byte[][] compressed, byte[] fileBuf) throws IOException {
+        if (!file.exists()) {
+            file.createNewFile();
+        }
+        final byte[] header = new byte[4096];
+        BufferedRandomAccessFile raf = new BufferedRandomAccessFile(file, "rw", fileBuf);
+        try {
+            int totalLength = 8192;
+            for (int i = 0; i < compressed.length; i++) {
+                byte[] compressedBytes = compressed[i];
+                if (compressedBytes != null) {
+                    int blocks = ((4095 + compressedBytes.length + 5) / 4096) * 4096;
+                    totalLength += blocks;
+                }
+            }
+            raf.setLength(totalLength);
+            int offset = 8192;
+            for (int i = 0; i < compressed.length; i++) {
+                byte[] compressedBytes = compressed[i];
+                if (compressedBytes != null) {
+                    // Set header
+                    int index = i << 2;
+                    int offsetMedium = offset >> 12;
+                    int blocks = ((4095 + compressedBytes.length + 5) / 4096);
+                    header[index] = (byte) (offsetMedium >> 16);
+                    header[index + 1] = (byte) ((offsetMedium >> 8));
+                    header[index + 2] = (byte) ((offsetMedium >> 0));
+                    header[index + 3] = (byte) (blocks);
+                    // Write bytes
+                    raf.seek(offset);
+                    raf.writeInt(compressedBytes.length + 1);
+                    raf.write(2);
+                    raf.write(compressedBytes);
+                    offset += blocks * 4096;
+                }
+            }
+            raf.seek(0);
+            raf.write(header);
+        } finally {
+            raf.close();
+        }
     }
 }
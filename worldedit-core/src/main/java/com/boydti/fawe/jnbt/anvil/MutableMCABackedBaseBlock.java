@@ -3,18 +3,25 @@
 import com.boydti.fawe.FaweCache;
 import com.sk89q.jnbt.CompoundTag;
 import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.blocks.BlockMaterial;
 import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockStateHolder;
+import com.sk89q.worldedit.world.block.BlockTypes;
 import javax.annotation.Nullable;
 
 /**
- * I'm aware this isn't OOP, but object creation is expensive
+ * I'm aware this isn't OOP, but object creation is expensive<br>
+ * - For 1.13 sections, the block is read from (and set in) the section palette<br>
+ * - When filtering a palette ({@link #filterPalette(MCAFilter, Object)}), the block is a palette entry rather than a position
  */
 public class MutableMCABackedBaseBlock extends BaseBlock {
 
     private MCAChunk chunk;
     private byte[] data;
     private byte[] ids;
+    private MCASection section;
     private int index;
+    private int paletteIndex = -1;
     private int x;
     private int y;
     private int z;
@@ -30,6 +37,35 @@ public void setChunk(MCAChunk chunk) {
     public void setArrays(int layer) {
         ids = chunk.ids[layer];
         data = chunk.data[layer];
+        section = chunk.sections[layer];
+        paletteIndex = -1;
+    }
+
+    /**
+     * Call {@link MCAFilter#applyPalette} for each palette entry in use in the current (1.13) section
+     *
+     * @param filter
+     * @param cache
+     */
+    public <T> void filterPalette(MCAFilter<T> filter, T cache) {
+        int[] counts = section.getPaletteCounts();
+        try {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    paletteIndex = i;
+                    filter.applyPalette(section, i, counts[i], this, cache);
+                }
+            }
+        } finally {
+            paletteIndex = -1;
+        }
+    }
+
+    /**
+     * @return the 1.13 section being filtered, or null for a legacy section
+     */
+    public MCASection getSection() {
+        return section;
     }
 
     public MCAChunk getChunk() {
@@ -52,6 +88,74 @@ public void setIndex(int index) {
         this.index = index;
     }
 
+    private int getSectionId() {
+        if (paletteIndex != -1) {
+            return section.getPalette(paletteIndex);
+        }
+        return section.getCombinedId(index);
+    }
+
+    @Override
+    public int getInternalId() {
+        if (section != null) {
+            return getSectionId();
+        }
+        return super.getInternalId();
+    }
+
+    @Override
+    public BlockTypes getBlockType() {
+        if (section != null) {
+            return BlockTypes.getFromStateId(getSectionId());
+        }
+        return super.getBlockType();
+    }
+
+    @Override
+    public int getOrdinal() {
+        if (section != null) {
+            return BlockState.getFromInternalId(getSectionId()).getOrdinal();
+        }
+        return super.getOrdinal();
+    }
+
+    @Override
+    public BlockMaterial getMaterial() {
+        return getBlockType().getMaterial();
+    }
+
+    /**
+     * @return the palette entry of this block, shared by every block in the section of the same type
+     */
+    public int getPaletteIndex() {
+        if (paletteIndex != -1) {
+            return paletteIndex;
+        }
+        return section.getPaletteIndex(index);
+    }
+
+    /**
+     * Set this block (1.13 sections)<br>
+     * - For a palette entry, every block using it is changed
+     *
+     * @param combinedId
+     */
+    public void setCombinedId(int combinedId) {
+        if (paletteIndex != -1) {
+            if (section.getPalette(paletteIndex) != combinedId) {
+                section.setPalette(paletteIndex, combinedId);
+                chunk.setModified();
+            }
+        } else if (section.getCombinedId(index) != combinedId) {
+            section.setCombinedId(index, combinedId);
+            chunk.setModified();
+        }
+    }
+
+    public void setBlock(BlockStateHolder block) {
+        setCombinedId(block.getInternalId());
+    }
+
     // TODO FIXME update to latest
 
 //    @Override
@@ -76,6 +180,9 @@ public void setIndex(int index) {
     @Nullable
     @Override
     public CompoundTag getNbtData() {
+        if (paletteIndex != -1) {
+            return null;
+        }
         return chunk.getTile(x, y, z);
     }
 
@@ -98,6 +205,9 @@ public CompoundTag getNbtData() {
 
     @Override
     public void setNbtData(@Nullable CompoundTag nbtData) {
+        if (paletteIndex != -1) {
+            throw new UnsupportedOperationException("A palette entry has no position");
+        }
         chunk.setTile(x, y, z, nbtData);
         chunk.setModified();
     }
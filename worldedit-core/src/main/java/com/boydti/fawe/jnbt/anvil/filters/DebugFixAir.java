@@ -66,6 +66,11 @@ public MCAChunk applyChunk(MCAChunk chunk, MutableLong cache) {
         return null;
     }
 
+    @Override
+    public boolean requiresChunkCache() {
+        return true;
+    }
+
     @Override
     public void finishFile(MCAFile file, MutableLong cache) {
         Fawe.debug(" - apply " + file.getFile());
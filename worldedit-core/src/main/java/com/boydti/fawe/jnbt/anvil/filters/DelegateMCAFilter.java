@@ -4,6 +4,7 @@
 import com.boydti.fawe.jnbt.anvil.MCAFile;
 import com.boydti.fawe.jnbt.anvil.MCAFilter;
 import com.boydti.fawe.jnbt.anvil.MCAQueue;
+import com.boydti.fawe.jnbt.anvil.MCASection;
 import com.sk89q.worldedit.blocks.BaseBlock;
 import com.sk89q.worldedit.world.block.BlockState;
 import java.nio.file.Path;
@@ -50,11 +51,26 @@ public void applyBlock(int x, int y, int z, BaseBlock block, T cache) {
         filter.applyBlock(x, y, z, block, cache);
     }
 
+    @Override
+    public boolean appliesPalette() {
+        return filter.appliesPalette();
+    }
+
+    @Override
+    public void applyPalette(MCASection section, int paletteIndex, int blocks, BaseBlock block, T cache) {
+        filter.applyPalette(section, paletteIndex, blocks, block, cache);
+    }
+
     @Override
     public void finishChunk(MCAChunk chunk, T cache) {
         filter.finishChunk(chunk, cache);
     }
 
+    @Override
+    public boolean requiresChunkCache() {
+        return filter.requiresChunkCache();
+    }
+
     @Override
     public void finishFile(MCAFile file, T cache) {
         filter.finishFile(file, cache);
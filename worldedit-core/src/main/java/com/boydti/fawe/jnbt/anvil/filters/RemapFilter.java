@@ -4,10 +4,12 @@
 import com.boydti.fawe.jnbt.anvil.MCAChunk;
 import com.boydti.fawe.jnbt.anvil.MCAFile;
 import com.boydti.fawe.jnbt.anvil.MCAFilterCounter;
+import com.boydti.fawe.jnbt.anvil.MCASection;
 import com.boydti.fawe.jnbt.anvil.MutableMCABackedBaseBlock;
 import com.boydti.fawe.object.clipboard.remap.ClipboardRemapper;
 import com.boydti.fawe.object.collection.BlockVectorSet;
 import com.boydti.fawe.object.number.MutableLong;
+import com.boydti.fawe.util.MathMan;
 import com.boydti.fawe.util.ReflectionUtils;
 import com.sk89q.jnbt.ByteTag;
 import com.sk89q.jnbt.CompoundTag;
@@ -15,18 +17,22 @@
 import com.sk89q.jnbt.Tag;
 import com.sk89q.worldedit.blocks.BaseBlock;
 import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockStateHolder;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 // TODO FIXME
 public class RemapFilter extends MCAFilterCounter {
     private final ClipboardRemapper remapper;
     private final ClipboardRemapper.RemapPlatform from;
-    private boolean skipRemap;
+    // The files (by region) not to remap, as several files are filtered at once
+    private final Set<Long> skipRemap = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
     private List<CompoundTag> portals = Collections.synchronizedList(new ArrayList<>());
     private BlockVectorSet pLocs = new BlockVectorSet();
     private int dimension;
@@ -44,13 +50,18 @@ public RemapFilter(ClipboardRemapper.RemapPlatform from, ClipboardRemapper.Remap
     @Override
     public MCAFile applyFile(MCAFile mca) {
         File file = mca.getFile();
-        this.skipRemap = file.getName().endsWith(".mcapm");
+        long pair = MathMan.pairInt(mca.getX(), mca.getZ());
+        if (file.getName().endsWith(".mcapm")) {
+            skipRemap.add(pair);
+        } else {
+            skipRemap.remove(pair);
+        }
         return super.applyFile(mca);
     }
 
     @Override
     public MCAChunk applyChunk(MCAChunk chunk, MutableLong cache) {
-        if (skipRemap) return null;
+        if (skipRemap.contains(MathMan.pairInt(chunk.getX() >> 5, chunk.getZ() >> 5))) return null;
         return super.applyChunk(chunk, cache);
     }
 
@@ -62,6 +73,21 @@ public void setDimension(int dimension) {
         this.dimension = dimension;
     }
 
+    @Override
+    public boolean appliesPalette() {
+        // The portal, piston and light fixes below need positions, and are only done for legacy sections
+        return true;
+    }
+
+    @Override
+    public void applyPalette(MCASection section, int paletteIndex, int blocks, BaseBlock block, MutableLong cache) {
+        BlockStateHolder result = remapper.remap(block);
+        if (result != block) {
+            ((MutableMCABackedBaseBlock) block).setBlock(result);
+            cache.add(blocks);
+        }
+    }
+
     @Override
     public void applyBlock(int x, int y, int z, BaseBlock block, MutableLong cache) {
 //        int id = block.getId();
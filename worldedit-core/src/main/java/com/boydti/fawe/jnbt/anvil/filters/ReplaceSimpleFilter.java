@@ -1,6 +1,7 @@
 package com.boydti.fawe.jnbt.anvil.filters;
 
 import com.boydti.fawe.jnbt.anvil.MCAFilterCounter;
+import com.boydti.fawe.jnbt.anvil.MCASection;
 import com.boydti.fawe.object.mask.FaweBlockMatcher;
 import com.boydti.fawe.object.number.MutableLong;
 import com.sk89q.worldedit.blocks.BaseBlock;
@@ -22,4 +23,17 @@ public void applyBlock(int x, int y, int z, BaseBlock block, MutableLong count)
             count.increment();
         }
     }
+
+    @Override
+    public boolean appliesPalette() {
+        return true;
+    }
+
+    @Override
+    public void applyPalette(MCASection section, int paletteIndex, int blocks, BaseBlock block, MutableLong count) {
+        if (from.apply(block)) {
+            to.apply(block);
+            count.add(blocks);
+        }
+    }
 }
@@ -6,6 +6,7 @@
 import com.boydti.fawe.config.BBC;
 import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.object.brush.visualization.VirtualWorld;
+import com.boydti.fawe.object.changeset.HistoryManager;
 import com.boydti.fawe.object.clipboard.DiskOptimizedClipboard;
 import com.boydti.fawe.object.exception.FaweException;
 import com.boydti.fawe.object.task.SimpleAsyncNotifyQueue;
@@ -643,6 +644,9 @@ public void unregister() {
             session.clearHistory();
             session.unregisterTools(getPlayer());
         }
+        if (session != null) {
+            HistoryManager.IMP.remove(session);
+        }
         Fawe.get().unregister(getName());
     }
 
@@ -159,6 +159,29 @@ default boolean supports(Capability capability) {
 
     default void optimize() {}
 
+    /**
+     * Start reading the chunks an operation is about to read, in the background<br>
+     * - Only a window of chunks around the last one read is kept, until {@link #unpin(int, int, int, int)} is called with the same range<br>
+     * - The window moves along x then z, so chunks should be read one at a time in that order (like CuboidRegion#iterator)<br>
+     * - Only a hint, the operation should read the chunks as usual
+     *
+     * @param minCX
+     * @param minCZ
+     * @param maxCX
+     * @param maxCZ
+     */
+    default void prefetch(int minCX, int minCZ, int maxCX, int maxCZ) {}
+
+    /**
+     * Allow chunks from {@link #prefetch(int, int, int, int)} to be discarded
+     *
+     * @param minCX
+     * @param minCZ
+     * @param maxCX
+     * @param maxCZ
+     */
+    default void unpin(int minCX, int minCZ, int maxCX, int maxCZ) {}
+
     default int setBlocks(CuboidRegion cuboid, int combinedId) {
         RegionWrapper current = new RegionWrapper(cuboid.getMinimumPoint(), cuboid.getMaximumPoint());
         final int minY = cuboid.getMinimumY();
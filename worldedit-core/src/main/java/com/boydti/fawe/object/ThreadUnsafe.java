@@ -0,0 +1,10 @@
+package com.boydti.fawe.object;
+
+/**
+ * A mask, pattern or function which can't be used by several threads at once<br>
+ * - E.g. it keeps state between calls (a mutable position, an expression) or reads blocks other than the one being tested<br>
+ * - Region operations using one will stay on a single thread (see {@link com.boydti.fawe.object.visitor.ParallelChunkEdit})<br>
+ * - A {@link com.boydti.fawe.object.mask.ResettableMask} or {@link com.boydti.fawe.object.pattern.ResettablePattern} is treated the same way
+ */
+public interface ThreadUnsafe {
+}
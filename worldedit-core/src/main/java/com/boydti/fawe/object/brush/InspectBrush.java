@@ -6,6 +6,7 @@
 import com.boydti.fawe.database.DBHandler;
 import com.boydti.fawe.database.RollbackDatabase;
 import com.boydti.fawe.object.FawePlayer;
+import com.boydti.fawe.object.RegionWrapper;
 import com.boydti.fawe.object.RunnableVal;
 import com.boydti.fawe.object.change.MutableFullBlockChange;
 import com.boydti.fawe.object.changeset.DiskStorageHistory;
@@ -19,6 +20,7 @@
 import com.sk89q.worldedit.entity.Player;
 import com.sk89q.worldedit.extension.platform.Actor;
 import com.sk89q.worldedit.extension.platform.Platform;
+import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.util.Location;
 import com.sk89q.worldedit.world.World;
 import com.sk89q.worldedit.world.block.BlockState;
@@ -80,7 +82,8 @@ public boolean perform(final Player player, LocalSession session, boolean rightC
             @Override
             public void run(DiskStorageHistory value) {
                 try {
-                    Iterator<MutableFullBlockChange> iter = value.getFullBlockIterator(null, 0, false);
+                    Region[] regions = new Region[]{new RegionWrapper(x, x, y, y, z, z)};
+                    Iterator<MutableFullBlockChange> iter = value.getFullBlockIterator(regions, null, 0, false);
                     while (iter.hasNext()) {
                         MutableFullBlockChange change = iter.next();
                         if (change.x != x || change.y != y || change.z != z) {
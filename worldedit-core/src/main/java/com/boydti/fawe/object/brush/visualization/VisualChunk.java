@@ -132,6 +132,14 @@ public void setBlock(int x, int y, int z, int combinedId) {
         }
     }
 
+    /**
+     * @param previous what was visualized in this chunk before
+     * @return the blocks of this chunk which aren't the same in previous
+     */
+    public VisualChunk diff(VisualChunk previous) {
+        return new VisualChunk(getX(), getZ(), SparseBitSet.andNot(add, previous.add), SparseBitSet.andNot(remove, previous.remove));
+    }
+
     public void unset(int x, int y, int z) {
         int index = getIndex(x, y, z);
         remove.clear(index);
@@ -18,7 +18,9 @@
 import com.sk89q.worldedit.world.block.BlockStateHolder;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import javax.annotation.Nullable;
 
 public class VisualExtent extends AbstractDelegateExtent {
 
@@ -104,9 +106,76 @@ public void run(int localX, int y, int localZ, int combined) {
         }
     }
 
-    public void visualize(FawePlayer players) {
-        for (VisualChunk chunk : chunks.values()) {
-            queue.sendBlockUpdate(chunk, players);
+    /**
+     * Show this visualization to players who were shown the previous one<br>
+     * - Each chunk is sent as one update, with only the blocks that changed (and the real blocks where the previous one no longer is)<br>
+     * - Once the budget is used, the remaining chunks are left as the players were shown them, and this extent keeps the previous chunk
+     *
+     * @param previous what the players were shown (or null)
+     * @param budget   the most blocks to send, or -1 for no limit
+     * @param players
+     * @return if every chunk was sent
+     */
+    public boolean update(@Nullable VisualExtent previous, int budget, FawePlayer... players) {
+        LongArrayList pairs = new LongArrayList(chunks.size());
+        for (long pair : chunks.keySet()) {
+            pairs.add(pair);
         }
+        if (previous != null) {
+            for (long pair : previous.chunks.keySet()) {
+                if (!chunks.containsKey(pair)) {
+                    pairs.add(pair);
+                }
+            }
+        }
+        int sent = 0;
+        boolean complete = true;
+        for (int i = 0; i < pairs.size(); i++) {
+            long pair = pairs.getLong(i);
+            int cx = MathMan.unpairIntX(pair);
+            int cz = MathMan.unpairIntY(pair);
+            final VisualChunk chunk = chunks.get(pair);
+            final VisualChunk previousChunk = previous != null ? previous.chunks.get(pair) : null;
+            final IntFaweChunk newChunk = new NullQueueIntFaweChunk(cx, cz);
+            final int bx = cx << 4;
+            final int bz = cz << 4;
+            if (previousChunk != null) {
+                previousChunk.forEachQueuedBlock(new FaweChunkVisitor() {
+                    @Override
+                    public void run(int localX, int y, int localZ, int combined) {
+                        if (chunk == null || chunk.getBlockCombinedId(localX, y, localZ) == 0) {
+                            combined = queue.getCombinedId4Data(bx + localX, y, bz + localZ, 0);
+                            newChunk.setBlock(localX, y, localZ, combined);
+                        }
+                    }
+                });
+            }
+            if (chunk != null) {
+                VisualChunk changed = previousChunk != null ? chunk.diff(previousChunk) : chunk;
+                changed.forEachQueuedBlock(new FaweChunkVisitor() {
+                    @Override
+                    public void run(int localX, int y, int localZ, int combined) {
+                        newChunk.setBlock(localX, y, localZ, combined);
+                    }
+                });
+            }
+            int count = newChunk.getTotalCount();
+            if (count == 0) {
+                continue;
+            }
+            if (budget >= 0 && sent != 0 && sent + count > budget) {
+                // Players still see the previous chunk
+                complete = false;
+                if (previousChunk != null) {
+                    chunks.put(pair, previousChunk);
+                } else {
+                    chunks.remove(pair);
+                }
+                continue;
+            }
+            sent += count;
+            queue.sendBlockUpdate(newChunk, players);
+        }
+        return complete;
     }
 }
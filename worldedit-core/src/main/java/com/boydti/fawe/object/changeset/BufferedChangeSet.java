@@ -0,0 +1,129 @@
+package com.boydti.fawe.object.changeset;
+
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.worldedit.extent.inventory.BlockBag;
+import com.sk89q.worldedit.history.change.Change;
+import com.sk89q.worldedit.world.World;
+import com.sk89q.worldedit.world.biome.BaseBiome;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Buffers block changes for one thread, and adds them to a shared change set in bulk<br>
+ * - {@link #flush()} locks the parent once for everything buffered so far<br>
+ * - Tiles, entities and biomes are rare, so they are added to the parent straight away<br>
+ * - Not thread safe (use one per thread)
+ */
+public class BufferedChangeSet extends FaweChangeSet {
+
+    private final FaweChangeSet parent;
+    // x, y, z, from, to
+    private int[] changes = new int[5 * 4096];
+    private int size;
+
+    public BufferedChangeSet(FaweChangeSet parent) {
+        super(parent.getWorldName());
+        this.parent = parent;
+        this.waitingCombined = parent.waitingCombined;
+        this.waitingAsync = parent.waitingAsync;
+    }
+
+    public FaweChangeSet getParent() {
+        return parent;
+    }
+
+    @Override
+    public World getWorld() {
+        return parent.getWorld();
+    }
+
+    @Override
+    public void add(int x, int y, int z, int combinedFrom, int combinedTo) {
+        int index = size;
+        if (index == changes.length) {
+            changes = Arrays.copyOf(changes, index << 1);
+        }
+        int[] arr = changes;
+        arr[index] = x;
+        arr[index + 1] = y;
+        arr[index + 2] = z;
+        arr[index + 3] = combinedFrom;
+        arr[index + 4] = combinedTo;
+        size = index + 5;
+    }
+
+    /**
+     * Add the buffered block changes to the parent
+     *
+     * @return true
+     */
+    @Override
+    public boolean flush() {
+        if (size == 0) {
+            return true;
+        }
+        int[] arr = changes;
+        synchronized (parent) {
+            for (int i = 0; i < size; i += 5) {
+                parent.add(arr[i], arr[i + 1], arr[i + 2], arr[i + 3], arr[i + 4]);
+            }
+        }
+        size = 0;
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        return flush();
+    }
+
+    @Override
+    public void addTileCreate(CompoundTag tag) {
+        synchronized (parent) {
+            parent.addTileCreate(tag);
+        }
+    }
+
+    @Override
+    public void addTileRemove(CompoundTag tag) {
+        synchronized (parent) {
+            parent.addTileRemove(tag);
+        }
+    }
+
+    @Override
+    public void addEntityRemove(CompoundTag tag) {
+        synchronized (parent) {
+            parent.addEntityRemove(tag);
+        }
+    }
+
+    @Override
+    public void addEntityCreate(CompoundTag tag) {
+        synchronized (parent) {
+            parent.addEntityCreate(tag);
+        }
+    }
+
+    @Override
+    public void addBiomeChange(int x, int z, BaseBiome from, BaseBiome to) {
+        synchronized (parent) {
+            parent.addBiomeChange(x, z, from, to);
+        }
+    }
+
+    @Override
+    public Iterator<Change> getIterator(BlockBag blockBag, int mode, boolean redo) {
+        return parent.getIterator(blockBag, mode, redo);
+    }
+
+    @Override
+    public Iterator<Change> getIterator(boolean redo) {
+        return parent.getIterator(redo);
+    }
+
+    @Override
+    public int size() {
+        return parent.size() + size / 5;
+    }
+}
@@ -5,10 +5,13 @@
 import com.boydti.fawe.database.DBHandler;
 import com.boydti.fawe.database.RollbackDatabase;
 import com.boydti.fawe.object.*;
+import com.boydti.fawe.object.change.MutableBlockChange;
+import com.boydti.fawe.object.change.MutableFullBlockChange;
 import com.boydti.fawe.util.MainUtil;
 import com.sk89q.jnbt.NBTInputStream;
 import com.sk89q.jnbt.NBTOutputStream;
 import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.extent.inventory.BlockBag;
 import com.sk89q.worldedit.regions.Region;
 import com.sk89q.worldedit.world.World;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
@@ -18,6 +21,8 @@
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.UUID;
 
@@ -46,8 +51,11 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
      * 
      * [contents]...
      * { short rel x, short rel z, unsigned byte y, short combinedFrom, short combinedTo }
+     *
+     * Or if `chunk-index` is enabled, see IndexedBlockFile
      */
     private FaweOutputStream osBD;
+    private volatile IndexedBlockFile.Writer bdWriter;
     // biome
     private FaweOutputStream osBIO;
     // NBT From
@@ -61,6 +69,11 @@ public class DiskStorageHistory extends FaweStreamChangeSet {
 
     private int index;
 
+    /**
+     * Only changes in chunks intersecting these regions are read (if the history is indexed)
+     */
+    private Region[] regionFilter;
+
     public DiskStorageHistory(World world, UUID uuid) {
         super(world);
         init(uuid, Fawe.imp().getWorldName(world));
@@ -128,6 +141,7 @@ public void delete() {
 
     public void deleteFiles() {
         bdFile.delete();
+        bioFile.delete();
         nbtfFile.delete();
         nbttFile.delete();
         entfFile.delete();
@@ -136,7 +150,13 @@ public void deleteFiles() {
 
     public void undo(FawePlayer fp, Region[] regions) {
         EditSession session = toEditSession(fp, regions);
-        session.undo(session);
+        Region[] previous = regionFilter;
+        regionFilter = regions;
+        try {
+            session.undo(session);
+        } finally {
+            regionFilter = previous;
+        }
         deleteFiles();
     }
 
@@ -146,7 +166,13 @@ public void undo(FawePlayer fp) {
 
     public void redo(FawePlayer fp, Region[] regions) {
         EditSession session = toEditSession(fp, regions);
-        session.redo(session);
+        Region[] previous = regionFilter;
+        regionFilter = regions;
+        try {
+            session.redo(session);
+        } finally {
+            regionFilter = previous;
+        }
     }
 
     public void redo(FawePlayer fp) {
@@ -165,11 +191,33 @@ public int getIndex() {
         return index;
     }
 
+    /**
+     * Restrict which block changes are read from an indexed history<br>
+     * - Chunks outside the regions are skipped without being decompressed<br>
+     * - Changes in intersecting chunks may still be outside the regions
+     *
+     * @param regions the regions, or null for all changes
+     */
+    public void setRegionFilter(Region[] regions) {
+        this.regionFilter = regions;
+    }
+
+    public Region[] getRegionFilter() {
+        return regionFilter;
+    }
+
+    /**
+     * @return if the block changes on disk use the chunk indexed format
+     */
+    public boolean isIndexed() {
+        return bdWriter != null || IndexedBlockFile.isIndexed(bdFile);
+    }
+
     @Override
     public boolean flush() {
         super.flush();
         synchronized (this) {
-            boolean flushed = osBD != null || osBIO != null || osNBTF != null || osNBTT != null && osENTCF != null || osENTCT != null;
+            boolean flushed = osBD != null || bdWriter != null || osBIO != null || osNBTF != null || osNBTT != null && osENTCF != null || osENTCT != null;
             try {
                 if (osBD != null) osBD.flush();
                 if (osBIO != null) osBIO.flush();
@@ -188,12 +236,16 @@ public boolean flush() {
     public boolean close() {
         super.close();
         synchronized (this) {
-            boolean flushed = osBD != null || osBIO != null || osNBTF != null || osNBTT != null && osENTCF != null || osENTCT != null;
+            boolean flushed = osBD != null || bdWriter != null || osBIO != null || osNBTF != null || osNBTT != null && osENTCF != null || osENTCT != null;
             try {
                 if (osBD != null) {
                     osBD.close();
                     osBD = null;
                 }
+                if (bdWriter != null) {
+                    bdWriter.close();
+                    bdWriter = null;
+                }
                 if (osBIO != null) {
                     osBIO.close();
                     osBIO = null;
@@ -221,6 +273,30 @@ public boolean close() {
         }
     }
 
+    /**
+     * Write compressed streams to this history's files (see {@link MemoryOptimizedHistory#toDisk(File, UUID, int)})
+     */
+    void write(byte[][] blocks, byte[][] biomes, byte[][] entityCreate, byte[][] entityRemove, byte[][] tileCreate, byte[][] tileRemove) throws IOException {
+        write(blocks, bdFile);
+        write(biomes, bioFile);
+        write(entityCreate, enttFile);
+        write(entityRemove, entfFile);
+        write(tileCreate, nbttFile);
+        write(tileRemove, nbtfFile);
+    }
+
+    private void write(byte[][] data, File file) throws IOException {
+        if (data == null) {
+            return;
+        }
+        file.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (byte[] array : data) {
+                out.write(array);
+            }
+        }
+    }
+
     @Override
     public int getCompressedSize() {
         return bdFile.exists() ? (int) bdFile.length() : 0;
@@ -269,6 +345,31 @@ public FaweOutputStream getBlockOS(int x, int y, int z) throws IOException {
         }
     }
 
+    public IndexedBlockFile.Writer getBlockWriter(int x, int y, int z) throws IOException {
+        if (bdWriter != null) {
+            return bdWriter;
+        }
+        synchronized (this) {
+            if (bdWriter != null) {
+                return bdWriter;
+            }
+            bdFile.getParentFile().mkdirs();
+            bdFile.createNewFile();
+            IndexedBlockFile.Writer writer = new IndexedBlockFile.Writer(bdFile, getCompression(), isStoreRedo(), Settings.IMP.HISTORY.CHUNK_COLUMNS);
+            writeHeader(writer.getHeaderOS(), x, y, z);
+            return bdWriter = writer;
+        }
+    }
+
+    @Override
+    protected void writeBlock(int x, int y, int z, int combinedFrom, int combinedTo) throws IOException {
+        if (bdWriter != null || (osBD == null && Settings.IMP.HISTORY.CHUNK_INDEX)) {
+            getBlockWriter(x, y, z).add(x, y, z, combinedFrom, combinedTo);
+        } else {
+            super.writeBlock(x, y, z, combinedFrom, combinedTo);
+        }
+    }
+
     @Override
     public FaweOutputStream getBiomeOS() throws IOException {
         if (osBIO != null) {
@@ -326,9 +427,13 @@ public NBTOutputStream getTileRemoveOS() throws IOException {
         return osNBTF;
     }
 
+    /**
+     * @return the block changes in the old (single stream) format, or null if the history is indexed
+     * @throws IOException
+     */
     @Override
     public FaweInputStream getBlockIS() throws IOException {
-        if (!bdFile.exists()) {
+        if (!bdFile.exists() || IndexedBlockFile.isIndexed(bdFile)) {
             return null;
         }
         FaweInputStream is = MainUtil.getCompressedIS(new FileInputStream(bdFile));
@@ -377,7 +482,172 @@ public NBTInputStream getTileRemoveIS() throws IOException {
         return new NBTInputStream(MainUtil.getCompressedIS(new FileInputStream(nbtfFile)));
     }
 
+    @Override
+    public Iterator<MutableBlockChange> getBlockIterator(final boolean dir) throws IOException {
+        if (!IndexedBlockFile.isIndexed(bdFile)) {
+            return super.getBlockIterator(dir);
+        }
+        final IndexedBlockFile.Reader.Cursor cursor = new IndexedBlockFile.Reader(bdFile).cursor(regionFilter);
+        final MutableBlockChange change = new MutableBlockChange(0, 0, 0, 0);
+        return new Iterator<MutableBlockChange>() {
+            private MutableBlockChange last = read();
+
+            public MutableBlockChange read() {
+                try {
+                    if (cursor.next()) {
+                        change.x = cursor.x;
+                        change.y = cursor.y;
+                        change.z = cursor.z;
+                        change.combinedId = dir ? cursor.to : cursor.from;
+                        return change;
+                    }
+                } catch (Exception e) {
+                    MainUtil.handleError(e);
+                }
+                try {
+                    cursor.close();
+                } catch (IOException e) {
+                    MainUtil.handleError(e);
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return last != null || ((last = read()) != null);
+            }
+
+            @Override
+            public MutableBlockChange next() {
+                MutableBlockChange tmp = last;
+                if (tmp == null) {
+                    tmp = read();
+                }
+                last = null;
+                return tmp;
+            }
+
+            @Override
+            public void remove() {
+                throw new IllegalArgumentException("CANNOT REMOVE");
+            }
+        };
+    }
+
+    @Override
+    public Iterator<MutableFullBlockChange> getFullBlockIterator(BlockBag blockBag, int inventory, boolean dir) throws IOException {
+        return getFullBlockIterator(regionFilter, blockBag, inventory, dir);
+    }
+
+    /**
+     * Iterate over the block changes in chunks intersecting some regions<br>
+     * - Indexed history only decompresses the chunks which are needed
+     *
+     * @param regions   the regions, or null for all changes
+     * @param blockBag
+     * @param inventory
+     * @param dir
+     * @return
+     * @throws IOException
+     */
+    public Iterator<MutableFullBlockChange> getFullBlockIterator(Region[] regions, BlockBag blockBag, int inventory, boolean dir) throws IOException {
+        if (!IndexedBlockFile.isIndexed(bdFile)) {
+            if (!bdFile.exists()) {
+                return new ArrayList<MutableFullBlockChange>().iterator();
+            }
+            return super.getFullBlockIterator(blockBag, inventory, dir);
+        }
+        final IndexedBlockFile.Reader.Cursor cursor = new IndexedBlockFile.Reader(bdFile).cursor(regions);
+        final MutableFullBlockChange change = new MutableFullBlockChange(blockBag, inventory, dir);
+        return new Iterator<MutableFullBlockChange>() {
+            private MutableFullBlockChange last = read();
+
+            public MutableFullBlockChange read() {
+                try {
+                    if (cursor.next()) {
+                        change.x = cursor.x;
+                        change.y = cursor.y;
+                        change.z = cursor.z;
+                        change.from = cursor.from;
+                        change.to = cursor.to;
+                        return change;
+                    }
+                } catch (Exception e) {
+                    MainUtil.handleError(e);
+                }
+                try {
+                    cursor.close();
+                } catch (IOException e) {
+                    MainUtil.handleError(e);
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return last != null || ((last = read()) != null);
+            }
+
+            @Override
+            public MutableFullBlockChange next() {
+                MutableFullBlockChange tmp = last;
+                if (tmp == null) {
+                    tmp = read();
+                }
+                last = null;
+                return tmp;
+            }
+
+            @Override
+            public void remove() {
+                throw new IllegalArgumentException("CANNOT REMOVE");
+            }
+        };
+    }
+
+    private DiskStorageSummary summarizeIndexed(RegionWrapper requiredRegion, boolean shallow) throws IOException {
+        IndexedBlockFile.Reader reader = new IndexedBlockFile.Reader(bdFile);
+        int ox = reader.getOriginX();
+        int oz = reader.getOriginZ();
+        setOrigin(ox, oz);
+        DiskStorageSummary summary = new DiskStorageSummary(ox, oz);
+        if (!requiredRegion.isIn(ox, oz)) {
+            return summary;
+        }
+        // The index has the bounds of every chunk, so only the changes need to be read
+        for (int i = 0; i < reader.getEntries(); i++) {
+            int bx = reader.getChunkX(i) << 4;
+            int bz = reader.getChunkZ(i) << 4;
+            summary.minX = Math.min(summary.minX, bx);
+            summary.minZ = Math.min(summary.minZ, bz);
+            summary.maxX = Math.max(summary.maxX, bx + 15);
+            summary.maxZ = Math.max(summary.maxZ, bz + 15);
+        }
+        if (!shallow) {
+            IndexedBlockFile.Reader.Cursor cursor = reader.cursor(null);
+            int amount = (Settings.IMP.HISTORY.BUFFER_SIZE - HEADER_SIZE) / 9;
+            for (int i = 0; i < amount && cursor.next(); i++) {
+                summary.add(cursor.x, cursor.z, cursor.to);
+            }
+            cursor.close();
+        }
+        return summary;
+    }
+
     public DiskStorageSummary summarize(RegionWrapper requiredRegion, boolean shallow) {
+        if (IndexedBlockFile.isIndexed(bdFile)) {
+            int ox = getOriginX();
+            int oz = getOriginZ();
+            if ((ox != 0 || oz != 0) && !requiredRegion.isIn(ox, oz)) {
+                return new DiskStorageSummary(ox, oz);
+            }
+            try {
+                return summarizeIndexed(requiredRegion, shallow);
+            } catch (IOException e) {
+                MainUtil.handleError(e);
+            }
+            return null;
+        }
         if (bdFile.exists()) {
             int ox = getOriginX();
             int oz = getOriginZ();
@@ -424,7 +694,16 @@ public DiskStorageSummary summarize(RegionWrapper requiredRegion, boolean shallo
     public IntegerPair readHeader() {
         int ox = getOriginX();
         int oz = getOriginZ();
-        if (ox == 0 && oz == 0 && bdFile.exists()) {
+        if (ox == 0 && oz == 0 && IndexedBlockFile.isIndexed(bdFile)) {
+            try {
+                IndexedBlockFile.Reader reader = new IndexedBlockFile.Reader(bdFile);
+                ox = reader.getOriginX();
+                oz = reader.getOriginZ();
+                setOrigin(ox, oz);
+            } catch (IOException e) {
+                MainUtil.handleError(e);
+            }
+        } else if (ox == 0 && oz == 0 && bdFile.exists()) {
             try (FileInputStream fis = new FileInputStream(bdFile)) {
                 final FaweInputStream gis = MainUtil.getCompressedIS(fis);
                 // skip mode
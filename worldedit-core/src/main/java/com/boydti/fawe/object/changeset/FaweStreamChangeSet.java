@@ -235,6 +235,17 @@ public void readHeader(InputStream is) throws IOException {
         setupStreamDelegates(mode);
     }
 
+    public int getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return if the new block is stored for each change
+     */
+    public boolean isStoreRedo() {
+        return mode == 3 || mode == 4;
+    }
+
     public FaweOutputStream getCompressedOS(OutputStream os) throws IOException {
         return MainUtil.getCompressedOS(os, compression);
     }
@@ -315,15 +326,19 @@ public int getOriginZ() {
     public void add(int x, int y, int z, int combinedFrom, int combinedTo) {
         blockSize++;
         try {
-            FaweOutputStream stream = getBlockOS(x, y, z);
-            //x
-            posDel.write(stream, x - originX, y, z - originZ);
-            idDel.writeChange(stream, combinedFrom, combinedTo);
+            writeBlock(x, y, z, combinedFrom, combinedTo);
         } catch (Throwable e) {
             MainUtil.handleError(e);
         }
     }
 
+    protected void writeBlock(int x, int y, int z, int combinedFrom, int combinedTo) throws IOException {
+        FaweOutputStream stream = getBlockOS(x, y, z);
+        //x
+        posDel.write(stream, x - originX, y, z - originZ);
+        idDel.writeChange(stream, combinedFrom, combinedTo);
+    }
+
     @Override
     public void addBiomeChange(int x, int z, BaseBiome from, BaseBiome to) {
         blockSize++;
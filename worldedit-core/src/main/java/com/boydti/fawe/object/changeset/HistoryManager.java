@@ -0,0 +1,183 @@
+package com.boydti.fawe.object.changeset;
+
+import com.boydti.fawe.Fawe;
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.util.MainUtil;
+import com.boydti.fawe.util.TaskManager;
+import com.sk89q.worldedit.LocalSession;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the history held in memory across every session<br>
+ * - Each session reports how much of its history is in memory (see {@link LocalSession#getHistoryMemory()})<br>
+ * - Over the limit, the sessions which edited least recently move their {@link MemoryOptimizedHistory} to disk, in the background<br>
+ * - Moved history is deleted when it leaves the session's history, or on restart<br>
+ * - A session is no longer tracked once its player logs out (see {@link #remove(LocalSession)})
+ */
+public class HistoryManager {
+
+    public static final HistoryManager IMP = new HistoryManager();
+
+    // Access ordered, so the first session is the least recently updated
+    private final LinkedHashMap<LocalSession, Long> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private long total;
+
+    private final AtomicBoolean spilling = new AtomicBoolean();
+    private final AtomicLong spilled = new AtomicLong();
+
+    /**
+     * @return the folder history is moved to (deleted on startup)
+     */
+    public File getSpillFolder() {
+        return MainUtil.getFile(Fawe.imp().getDirectory(), Settings.IMP.PATHS.HISTORY + "-spill");
+    }
+
+    /**
+     * Change how much history a session holds in memory<br>
+     * - A session which isn't tracked starts with all of its history in memory (see {@link LocalSession#getHistoryMemory()})<br>
+     * - Starts moving history to disk if the server is over the limit
+     *
+     * @param session
+     * @param delta   the change in bytes of history in memory, already counted by the session
+     */
+    public void update(LocalSession session, long delta) {
+        synchronized (this) {
+            Long previous = sessions.get(session);
+            long memory = previous == null ? session.getHistoryMemory() : previous + delta;
+            if (memory > 0) {
+                sessions.put(session, memory);
+            } else {
+                sessions.remove(session);
+            }
+            total += memory - (previous == null ? 0 : previous);
+        }
+        if (isOverLimit() && spilling.compareAndSet(false, true)) {
+            TaskManager.IMP.async(this::spill);
+        }
+    }
+
+    /**
+     * Stop tracking a session (e.g. its player logged out), so it isn't kept from being garbage collected<br>
+     * - It's tracked again if its history changes
+     *
+     * @param session
+     */
+    public synchronized void remove(LocalSession session) {
+        Long memory = sessions.remove(session);
+        if (memory != null) {
+            total -= memory;
+        }
+    }
+
+    public boolean isOverLimit() {
+        int limitMb = Settings.IMP.HISTORY.MEMORY_LIMIT_MB;
+        return limitMb >= 0 && getTotal() > ((long) limitMb << 20);
+    }
+
+    private void spill() {
+        try {
+            while (isOverLimit()) {
+                LocalSession eldest;
+                synchronized (this) {
+                    Iterator<LocalSession> iter = sessions.keySet().iterator();
+                    if (!iter.hasNext()) {
+                        break;
+                    }
+                    eldest = iter.next();
+                }
+                if (!eldest.spillHistory()) {
+                    // Nothing it has can be moved
+                    remove(eldest);
+                }
+            }
+        } catch (Throwable e) {
+            MainUtil.handleError(e);
+        } finally {
+            spilling.set(false);
+        }
+        // A session may have been updated after the last check
+        if (isOverLimit() && spilling.compareAndSet(false, true)) {
+            TaskManager.IMP.async(this::spill);
+        }
+    }
+
+    /**
+     * Move a history to disk (the history in memory is left as is, for anything still reading it)
+     *
+     * @param memory
+     * @return the history on disk, or null if it could not be written
+     */
+    public DiskStorageHistory spill(MemoryOptimizedHistory memory) {
+        UUID id = UUID.randomUUID();
+        File folder = new File(getSpillFolder(), id.toString());
+        try {
+            DiskStorageHistory disk = memory.toDisk(folder, id, 0);
+            spilled.incrementAndGet();
+            return disk;
+        } catch (IOException e) {
+            MainUtil.handleError(e);
+            MainUtil.deleteDirectory(folder, false);
+            return null;
+        }
+    }
+
+    /**
+     * @param item an entry of a session's history
+     * @return if it's history moved by {@link #spill(MemoryOptimizedHistory)}
+     */
+    public boolean isSpilled(Object item) {
+        if (!(item instanceof DiskStorageHistory)) {
+            return false;
+        }
+        File folder = ((DiskStorageHistory) item).getBDFile().getParentFile();
+        return getSpillFolder().equals(folder.getParentFile());
+    }
+
+    /**
+     * Delete a history which is no longer in a session
+     *
+     * @param item an entry of a session's history
+     */
+    public void delete(Object item) {
+        if (isSpilled(item)) {
+            MainUtil.deleteDirectory(((DiskStorageHistory) item).getBDFile().getParentFile(), false);
+        } else if (item instanceof FaweChangeSet) {
+            ((FaweChangeSet) item).delete();
+        }
+    }
+
+    /**
+     * Delete a history which was dropped from a session (history still on disk is kept)
+     *
+     * @param item an entry of a session's history
+     */
+    public void discard(Object item) {
+        if (isSpilled(item)) {
+            delete(item);
+        }
+    }
+
+    /**
+     * @return the bytes of history in memory
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the number of histories moved to disk
+     */
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+}
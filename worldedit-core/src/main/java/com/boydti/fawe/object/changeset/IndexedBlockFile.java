@@ -0,0 +1,814 @@
+package com.boydti.fawe.object.changeset;
+
+import com.boydti.fawe.object.FaweInputStream;
+import com.boydti.fawe.object.FaweOutputStream;
+import com.boydti.fawe.object.io.ByteBufferInputStream;
+import com.boydti.fawe.object.io.FastByteArrayOutputStream;
+import com.boydti.fawe.util.MainUtil;
+import com.boydti.fawe.util.MathMan;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Block changes stored as independently compressed chunk blocks followed by an index<br>
+ * - Reading the changes for a few chunks only decompresses those chunks<br>
+ * - The file is memory mapped, so opening a large history is cheap<br>
+ * - If the index is missing (e.g. the server crashed) it is rebuilt from the block headers<br>
+ * <br>
+ * [header]<br>
+ * { int magic, byte version, byte mode, int origin x, int origin z }<br>
+ * [blocks]...<br>
+ * { int chunk x, int chunk z, int changes, int length, byte[length] compressed changes }<br>
+ * [index]<br>
+ * { int chunk x, int chunk z, int changes, long offset, int length }...<br>
+ * [footer]<br>
+ * { int entries, long index offset, int magic }<br>
+ * <br>
+ * A change is { byte (x & 15) << 4 | (z & 15), unsigned byte y, varint combinedFrom, varint combinedTo (if storing redo) }<br>
+ * <br>
+ * Version 2 stores the changes of a chunk block in columns, which compress better:<br>
+ * { varint palette size, varint combinedId (minus the previous, the palette is sorted)... , byte[changes] y, byte[changes] (x & 15) << 4 | (z & 15), from, to (if storing redo) }<br>
+ * Where from and to are palette indices, as byte[changes] if the palette has at most 256 ids, else byte[changes] high bits then byte[changes] low bits
+ */
+public final class IndexedBlockFile {
+
+    public static final int MAGIC = 0x46415749;
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 5 + FaweStreamChangeSet.HEADER_SIZE;
+
+    private static final int BLOCK_HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 24;
+    private static final int FOOTER_SIZE = 16;
+    /**
+     * Raw bytes buffered for a single chunk before it is compressed and written
+     */
+    private static final int CHUNK_BUFFER = 1 << 16;
+    /**
+     * Raw bytes buffered for all chunks before they are all written
+     */
+    private static final int MAX_BUFFERED = 1 << 23;
+    /**
+     * Changes buffered for a single chunk before it is handed to the compressor (version 2)
+     */
+    private static final int BUCKET_SIZE = 1 << 14;
+    /**
+     * Changes buffered for all chunks before they are all handed to the compressor (version 2)
+     */
+    private static final int MAX_BUFFERED_CHANGES = 1 << 19;
+
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    /**
+     * Chunk blocks being compressed before the writer waits for the oldest
+     */
+    private static final int MAX_PENDING = THREADS << 1;
+    private static final ExecutorService COMPRESSOR = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "FAWE history compressor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private IndexedBlockFile() {
+    }
+
+    /**
+     * @param file
+     * @return if the file uses this format (rather than a single compressed stream)
+     */
+    public static boolean isIndexed(File file) {
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static final class Writer implements Closeable {
+
+        private final DataOutputStream out;
+        private final int compression;
+        private final boolean storeRedo;
+        private final boolean columns;
+        private final FastByteArrayOutputStream index = new FastByteArrayOutputStream();
+        private final DataOutputStream indexOut = new DataOutputStream(index);
+        private long position;
+        private int entries;
+
+        // Version 1
+        private final Long2ObjectOpenHashMap<ChunkBuffer> chunks = new Long2ObjectOpenHashMap<>();
+        private ChunkBuffer last;
+        private int buffered;
+
+        // Version 2
+        private final Long2ObjectOpenHashMap<ChunkColumns> buckets = new Long2ObjectOpenHashMap<>();
+        private final ArrayDeque<PendingBlock> pending = new ArrayDeque<>();
+        private ChunkColumns lastBucket;
+        private int bufferedChanges;
+
+        private static final class ChunkBuffer {
+            private final int x;
+            private final int z;
+            private FastByteArrayOutputStream bytes;
+            private FaweOutputStream out;
+            private int count;
+
+            private ChunkBuffer(int x, int z) {
+                this.x = x;
+                this.z = z;
+                reset();
+            }
+
+            private void reset() {
+                bytes = new FastByteArrayOutputStream(1024);
+                out = new FaweOutputStream(bytes);
+                count = 0;
+            }
+        }
+
+        private static final class ChunkColumns {
+            private final int x;
+            private final int z;
+            private final boolean storeRedo;
+            // y << 8 | (x & 15) << 4 | (z & 15)
+            private char[] local;
+            private int[] from;
+            private int[] to;
+            private int count;
+
+            private ChunkColumns(int x, int z, boolean storeRedo) {
+                this.x = x;
+                this.z = z;
+                this.storeRedo = storeRedo;
+                reset();
+            }
+
+            private void reset() {
+                local = new char[256];
+                from = new int[256];
+                to = storeRedo ? new int[256] : null;
+                count = 0;
+            }
+
+            private void add(int localIndex, int combinedFrom, int combinedTo) {
+                if (count == local.length) {
+                    int size = Math.min(BUCKET_SIZE, count << 1);
+                    local = Arrays.copyOf(local, size);
+                    from = Arrays.copyOf(from, size);
+                    if (storeRedo) {
+                        to = Arrays.copyOf(to, size);
+                    }
+                }
+                local[count] = (char) localIndex;
+                from[count] = combinedFrom;
+                if (storeRedo) {
+                    to[count] = combinedTo;
+                }
+                count++;
+            }
+        }
+
+        private static final class PendingBlock {
+            private final int x;
+            private final int z;
+            private final int count;
+            private final Future<byte[]> data;
+
+            private PendingBlock(int x, int z, int count, Future<byte[]> data) {
+                this.x = x;
+                this.z = z;
+                this.count = count;
+                this.data = data;
+            }
+        }
+
+        /**
+         * Create the file and write the format header<br>
+         * The caller must then write the change set header to {@link #getHeaderOS()}
+         *
+         * @param file
+         * @param compression the compression level for each chunk block
+         * @param storeRedo   if the new block is stored
+         * @throws IOException
+         */
+        public Writer(File file, int compression, boolean storeRedo) throws IOException {
+            this(file, compression, storeRedo, false);
+        }
+
+        /**
+         * Create the file and write the format header<br>
+         * The caller must then write the change set header to {@link #getHeaderOS()}
+         *
+         * @param file
+         * @param compression the compression level for each chunk block
+         * @param storeRedo   if the new block is stored
+         * @param columns     if the changes are buffered in columns and compressed on background threads (version 2)
+         * @throws IOException
+         */
+        public Writer(File file, int compression, boolean storeRedo, boolean columns) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            this.compression = compression;
+            this.storeRedo = storeRedo;
+            this.columns = columns;
+            out.writeInt(MAGIC);
+            out.writeByte(columns ? VERSION : 1);
+            position = 5;
+        }
+
+        public OutputStream getHeaderOS() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    position++;
+                }
+            };
+        }
+
+        public void add(int x, int y, int z, int combinedFrom, int combinedTo) throws IOException {
+            int cx = x >> 4;
+            int cz = z >> 4;
+            if (columns) {
+                ChunkColumns bucket = lastBucket;
+                if (bucket == null || bucket.x != cx || bucket.z != cz) {
+                    long pair = MathMan.pairInt(cx, cz);
+                    bucket = buckets.get(pair);
+                    if (bucket == null) {
+                        bucket = new ChunkColumns(cx, cz, storeRedo);
+                        buckets.put(pair, bucket);
+                    }
+                    lastBucket = bucket;
+                }
+                bucket.add((y << 8) | ((x & 15) << 4) | (z & 15), combinedFrom, combinedTo);
+                bufferedChanges++;
+                if (bucket.count >= BUCKET_SIZE) {
+                    submit(bucket);
+                }
+                if (bufferedChanges >= MAX_BUFFERED_CHANGES) {
+                    submitAll();
+                }
+                return;
+            }
+            ChunkBuffer chunk = last;
+            if (chunk == null || chunk.x != cx || chunk.z != cz) {
+                long pair = MathMan.pairInt(cx, cz);
+                chunk = chunks.get(pair);
+                if (chunk == null) {
+                    chunk = new ChunkBuffer(cx, cz);
+                    chunks.put(pair, chunk);
+                }
+                last = chunk;
+            }
+            int before = chunk.bytes.getSize();
+            FaweOutputStream os = chunk.out;
+            os.write(((x & 15) << 4) | (z & 15));
+            os.write(y);
+            os.writeVarInt(combinedFrom);
+            if (storeRedo) {
+                os.writeVarInt(combinedTo);
+            }
+            chunk.count++;
+            int size = chunk.bytes.getSize();
+            buffered += size - before;
+            if (size >= CHUNK_BUFFER) {
+                writeChunk(chunk);
+            }
+            if (buffered >= MAX_BUFFERED) {
+                writeChunks();
+            }
+        }
+
+        private void writeBlock(int cx, int cz, int count, byte[] data) throws IOException {
+            out.writeInt(cx);
+            out.writeInt(cz);
+            out.writeInt(count);
+            out.writeInt(data.length);
+            out.write(data);
+            indexOut.writeInt(cx);
+            indexOut.writeInt(cz);
+            indexOut.writeInt(count);
+            indexOut.writeLong(position + BLOCK_HEADER_SIZE);
+            indexOut.writeInt(data.length);
+            position += BLOCK_HEADER_SIZE + data.length;
+            entries++;
+        }
+
+        private static byte[] compress(byte[] raw, int compression) throws IOException {
+            FastByteArrayOutputStream compressed = new FastByteArrayOutputStream(Math.max(64, raw.length >> 1));
+            try (FaweOutputStream cos = MainUtil.getCompressedOS(compressed, compression, Math.max(64, raw.length))) {
+                cos.write(raw);
+            }
+            return compressed.toByteArray();
+        }
+
+        private void writeChunk(ChunkBuffer chunk) throws IOException {
+            if (chunk.count == 0) {
+                return;
+            }
+            byte[] raw = chunk.bytes.toByteArray();
+            writeBlock(chunk.x, chunk.z, chunk.count, compress(raw, compression));
+            buffered -= raw.length;
+            chunk.reset();
+        }
+
+        private void writeChunks() throws IOException {
+            for (ChunkBuffer chunk : chunks.values()) {
+                writeChunk(chunk);
+            }
+            chunks.clear();
+            last = null;
+            buffered = 0;
+        }
+
+        /**
+         * Hand a chunk's changes to the compressor, then write any blocks which are done
+         */
+        private void submit(ChunkColumns bucket) throws IOException {
+            if (bucket.count == 0) {
+                return;
+            }
+            final char[] local = bucket.local;
+            final int[] from = bucket.from;
+            final int[] to = bucket.to;
+            final int count = bucket.count;
+            final int level = compression;
+            Future<byte[]> data = COMPRESSOR.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return compress(encode(local, from, to, count), level);
+                }
+            });
+            pending.add(new PendingBlock(bucket.x, bucket.z, count, data));
+            bufferedChanges -= count;
+            bucket.reset();
+            drain(false);
+        }
+
+        private void submitAll() throws IOException {
+            for (ChunkColumns bucket : buckets.values()) {
+                submit(bucket);
+            }
+            buckets.clear();
+            lastBucket = null;
+        }
+
+        /**
+         * Write the compressed blocks in the order they were submitted, so changes to the same chunk stay in order
+         *
+         * @param wait to wait for every block, else only for the oldest if too many are pending
+         */
+        private void drain(boolean wait) throws IOException {
+            PendingBlock head;
+            while ((head = pending.peek()) != null) {
+                if (!wait && !head.data.isDone() && pending.size() <= MAX_PENDING) {
+                    return;
+                }
+                byte[] data;
+                try {
+                    data = head.data.get();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                }
+                pending.poll();
+                writeBlock(head.x, head.z, head.count, data);
+            }
+        }
+
+        private static byte[] encode(char[] local, int[] from, int[] to, int count) throws IOException {
+            // Runs of the same id are common, so only the first of each run needs sorting
+            int[] palette = new int[to == null ? count : count << 1];
+            int size = addRuns(palette, 0, from, count);
+            if (to != null) {
+                size = addRuns(palette, size, to, count);
+            }
+            Arrays.sort(palette, 0, size);
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || palette[i] != palette[unique - 1]) {
+                    palette[unique++] = palette[i];
+                }
+            }
+            size = unique;
+            FastByteArrayOutputStream bytes = new FastByteArrayOutputStream(count * (to == null ? 3 : 4) + (size << 1) + 8);
+            FaweOutputStream os = new FaweOutputStream(bytes);
+            os.writeVarInt(size);
+            // Sorted, so each id is written as the difference from the previous one
+            for (int i = 0, previous = 0; i < size; i++) {
+                os.writeVarInt(palette[i] - previous);
+                previous = palette[i];
+            }
+            byte[] column = new byte[count];
+            for (int i = 0; i < count; i++) {
+                column[i] = (byte) (local[i] >> 8);
+            }
+            os.write(column);
+            for (int i = 0; i < count; i++) {
+                column[i] = (byte) local[i];
+            }
+            os.write(column);
+            writeIndices(os, column, palette, size, from, count);
+            if (to != null) {
+                writeIndices(os, column, palette, size, to, count);
+            }
+            os.flush();
+            return bytes.toByteArray();
+        }
+
+        private static int addRuns(int[] palette, int size, int[] ids, int count) {
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || ids[i] != ids[i - 1]) {
+                    palette[size++] = ids[i];
+                }
+            }
+            return size;
+        }
+
+        private static void writeIndices(FaweOutputStream os, byte[] column, int[] palette, int size, int[] ids, int count) throws IOException {
+            char[] indices = new char[count];
+            for (int i = 0; i < count; i++) {
+                indices[i] = i != 0 && ids[i] == ids[i - 1] ? indices[i - 1] : (char) Arrays.binarySearch(palette, 0, size, ids[i]);
+            }
+            if (size <= 256) {
+                for (int i = 0; i < count; i++) {
+                    column[i] = (byte) indices[i];
+                }
+                os.write(column);
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                column[i] = (byte) (indices[i] >> 8);
+            }
+            os.write(column);
+            for (int i = 0; i < count; i++) {
+                column[i] = (byte) indices[i];
+            }
+            os.write(column);
+        }
+
+        /**
+         * Write any buffered chunks, then the index
+         *
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException {
+            writeChunks();
+            submitAll();
+            drain(true);
+            long indexOffset = position;
+            index.writeTo(out);
+            out.writeInt(entries);
+            out.writeLong(indexOffset);
+            out.writeInt(MAGIC);
+            out.close();
+        }
+    }
+
+    public static final class Reader {
+
+        private final ByteBuffer buffer;
+        private final int version;
+        private final int mode;
+        private final int originX;
+        private final int originZ;
+
+        private int entries;
+        private int[] chunkX;
+        private int[] chunkZ;
+        private int[] counts;
+        private long[] offsets;
+        private int[] lengths;
+
+        public Reader(File file) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("History file is too large: " + file);
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            int limit = buffer.limit();
+            if (limit < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not an indexed history file: " + file);
+            }
+            version = buffer.get(4);
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported history version " + version + ": " + file);
+            }
+            mode = buffer.get(5) & 0xFF;
+            originX = buffer.getInt(6);
+            originZ = buffer.getInt(10);
+            if (!readIndex(limit)) {
+                scan(limit);
+            }
+        }
+
+        private void allocate(int size) {
+            chunkX = new int[size];
+            chunkZ = new int[size];
+            counts = new int[size];
+            offsets = new long[size];
+            lengths = new int[size];
+        }
+
+        private boolean readIndex(int limit) {
+            if (limit < HEADER_SIZE + FOOTER_SIZE || buffer.getInt(limit - 4) != MAGIC) {
+                return false;
+            }
+            int amount = buffer.getInt(limit - FOOTER_SIZE);
+            long indexOffset = buffer.getLong(limit - 12);
+            if (amount < 0 || indexOffset < HEADER_SIZE || indexOffset + (long) amount * ENTRY_SIZE != limit - FOOTER_SIZE) {
+                return false;
+            }
+            allocate(amount);
+            int pos = (int) indexOffset;
+            for (int i = 0; i < amount; i++, pos += ENTRY_SIZE) {
+                chunkX[i] = buffer.getInt(pos);
+                chunkZ[i] = buffer.getInt(pos + 4);
+                counts[i] = buffer.getInt(pos + 8);
+                offsets[i] = buffer.getLong(pos + 12);
+                lengths[i] = buffer.getInt(pos + 20);
+            }
+            entries = amount;
+            return true;
+        }
+
+        /**
+         * Rebuild the index from the block headers of an incomplete file
+         */
+        private void scan(int limit) {
+            allocate(16);
+            int pos = HEADER_SIZE;
+            while (pos + BLOCK_HEADER_SIZE <= limit) {
+                int count = buffer.getInt(pos + 8);
+                int length = buffer.getInt(pos + 12);
+                // Blocks are never empty, so this stops at the start of a partially written index
+                if (count <= 0 || length <= 0 || (long) pos + BLOCK_HEADER_SIZE + length > limit) {
+                    break;
+                }
+                if (entries == chunkX.length) {
+                    int size = entries << 1;
+                    chunkX = Arrays.copyOf(chunkX, size);
+                    chunkZ = Arrays.copyOf(chunkZ, size);
+                    counts = Arrays.copyOf(counts, size);
+                    offsets = Arrays.copyOf(offsets, size);
+                    lengths = Arrays.copyOf(lengths, size);
+                }
+                chunkX[entries] = buffer.getInt(pos);
+                chunkZ[entries] = buffer.getInt(pos + 4);
+                counts[entries] = count;
+                offsets[entries] = pos + BLOCK_HEADER_SIZE;
+                lengths[entries] = length;
+                entries++;
+                pos += BLOCK_HEADER_SIZE + length;
+            }
+        }
+
+        public int getMode() {
+            return mode;
+        }
+
+        /**
+         * @return 2 if the changes are stored in columns, else 1
+         */
+        public int getVersion() {
+            return version;
+        }
+
+        public boolean hasRedo() {
+            return mode == 3 || mode == 4;
+        }
+
+        public int getOriginX() {
+            return originX;
+        }
+
+        public int getOriginZ() {
+            return originZ;
+        }
+
+        /**
+         * @return the number of chunk blocks (a chunk may be split over multiple blocks)
+         */
+        public int getEntries() {
+            return entries;
+        }
+
+        public int getChunkX(int entry) {
+            return chunkX[entry];
+        }
+
+        public int getChunkZ(int entry) {
+            return chunkZ[entry];
+        }
+
+        public int getChangeCount(int entry) {
+            return counts[entry];
+        }
+
+        public int getChangeCount() {
+            int total = 0;
+            for (int i = 0; i < entries; i++) {
+                total += counts[i];
+            }
+            return total;
+        }
+
+        /**
+         * @param entry
+         * @return a stream of the decompressed changes for a chunk block
+         * @throws IOException
+         */
+        public FaweInputStream open(int entry) throws IOException {
+            ByteBuffer slice = buffer.duplicate();
+            slice.position((int) offsets[entry]);
+            slice.limit((int) offsets[entry] + lengths[entry]);
+            return MainUtil.getCompressedIS(new ByteBufferInputStream(slice.slice()), Math.max(64, Math.min(8192, lengths[entry])));
+        }
+
+        /**
+         * @param regions the regions to read changes for, or null for all changes
+         * @return a cursor over the changes in chunks which intersect the regions
+         */
+        public Cursor cursor(Region[] regions) {
+            return new Cursor(regions);
+        }
+
+        public final class Cursor {
+            public int x;
+            public int y;
+            public int z;
+            public int from;
+            public int to;
+
+            private final int[] bounds;
+            private final boolean redo = hasRedo();
+            private final int air = BlockTypes.AIR.getInternalId();
+            private FaweInputStream in;
+            private int entry = -1;
+            private int remaining;
+            private int baseX;
+            private int baseZ;
+
+            // The decoded columns of the current block (version 2)
+            private byte[] ys;
+            private byte[] xzs;
+            private int[] froms;
+            private int[] tos;
+            private byte[] column;
+            private int position;
+
+            private Cursor(Region[] regions) {
+                if (regions == null) {
+                    bounds = null;
+                } else {
+                    bounds = new int[regions.length << 2];
+                    for (int i = 0, j = 0; i < regions.length; i++) {
+                        Vector min = regions[i].getMinimumPoint();
+                        Vector max = regions[i].getMaximumPoint();
+                        bounds[j++] = min.getBlockX() >> 4;
+                        bounds[j++] = min.getBlockZ() >> 4;
+                        bounds[j++] = max.getBlockX() >> 4;
+                        bounds[j++] = max.getBlockZ() >> 4;
+                    }
+                }
+            }
+
+            private boolean isIn(int cx, int cz) {
+                if (bounds == null) {
+                    return true;
+                }
+                for (int i = 0; i < bounds.length; i += 4) {
+                    if (cx >= bounds[i] && cz >= bounds[i + 1] && cx <= bounds[i + 2] && cz <= bounds[i + 3]) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            /**
+             * Read the next change into the public fields
+             *
+             * @return false if there are no more changes
+             * @throws IOException
+             */
+            public boolean next() throws IOException {
+                while (remaining == 0) {
+                    close();
+                    do {
+                        if (++entry >= entries) {
+                            return false;
+                        }
+                    } while (counts[entry] == 0 || !isIn(chunkX[entry], chunkZ[entry]));
+                    in = open(entry);
+                    remaining = counts[entry];
+                    baseX = chunkX[entry] << 4;
+                    baseZ = chunkZ[entry] << 4;
+                    if (version >= 2) {
+                        readColumns(remaining);
+                    }
+                }
+                remaining--;
+                if (version >= 2) {
+                    int i = position++;
+                    int xz = xzs[i] & 0xFF;
+                    this.x = baseX + (xz >> 4);
+                    this.y = ys[i] & 0xFF;
+                    this.z = baseZ + (xz & 15);
+                    this.from = froms[i];
+                    this.to = redo ? tos[i] : air;
+                    return true;
+                }
+                int xz = in.read();
+                int y = in.read();
+                if (y == -1) {
+                    throw new EOFException();
+                }
+                this.x = baseX + (xz >> 4);
+                this.y = y;
+                this.z = baseZ + (xz & 15);
+                this.from = in.readVarInt();
+                this.to = redo ? in.readVarInt() : air;
+                return true;
+            }
+
+            private void readColumns(int count) throws IOException {
+                int size = in.readVarInt();
+                int[] palette = new int[size];
+                for (int i = 0, previous = 0; i < size; i++) {
+                    palette[i] = previous += in.readVarInt();
+                }
+                if (ys == null || ys.length < count) {
+                    ys = new byte[count];
+                    xzs = new byte[count];
+                    froms = new int[count];
+                    tos = redo ? new int[count] : null;
+                    column = new byte[count];
+                }
+                in.readFully(ys, 0, count);
+                in.readFully(xzs, 0, count);
+                readIndices(palette, froms, count);
+                if (redo) {
+                    readIndices(palette, tos, count);
+                }
+                position = 0;
+            }
+
+            private void readIndices(int[] palette, int[] ids, int count) throws IOException {
+                in.readFully(column, 0, count);
+                if (palette.length <= 256) {
+                    for (int i = 0; i < count; i++) {
+                        ids[i] = palette[column[i] & 0xFF];
+                    }
+                    return;
+                }
+                for (int i = 0; i < count; i++) {
+                    ids[i] = (column[i] & 0xFF) << 8;
+                }
+                in.readFully(column, 0, count);
+                for (int i = 0; i < count; i++) {
+                    ids[i] = palette[ids[i] | (column[i] & 0xFF)];
+                }
+            }
+
+            public void close() throws IOException {
+                if (in != null) {
+                    in.close();
+                    in = null;
+                }
+                remaining = 0;
+            }
+        }
+    }
+}
@@ -10,8 +10,10 @@
 import com.sk89q.jnbt.NBTOutputStream;
 import com.sk89q.worldedit.world.World;
 import java.io.DataOutput;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.UUID;
 
 /**
  * ChangeSet optimized for low memory usage
@@ -135,7 +137,37 @@ public int getCompressedSize() {
 
     @Override
     public long getSizeInMemory() {
-        return 92 + getCompressedSize();
+        return 92 + getCompressedSize() + getSize(biomes) + getSize(entC) + getSize(entR) + getSize(tileC) + getSize(tileR);
+    }
+
+    private static int getSize(byte[][] arrays) {
+        int count = 0;
+        if (arrays != null) {
+            for (byte[] array : arrays) {
+                count += 4 + array.length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write this history to files, read by a {@link DiskStorageHistory}<br>
+     * - Closes this history first (waiting for any changes still being written)<br>
+     * - The compressed streams are written as is
+     *
+     * @param folder the folder for the files
+     * @param uuid
+     * @param index  the index of the files in the folder
+     * @return the history on disk
+     * @throws IOException
+     */
+    public DiskStorageHistory toDisk(File folder, UUID uuid, int index) throws IOException {
+        close();
+        DiskStorageHistory disk = new DiskStorageHistory(folder, getWorldName(), uuid, index);
+        synchronized (this) {
+            disk.write(ids, biomes, entC, entR, tileC, tileR);
+        }
+        return disk;
     }
 
     @Override
@@ -0,0 +1,326 @@
+package com.boydti.fawe.object.clipboard;
+
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.jnbt.NBTStreamer;
+import com.boydti.fawe.util.MainUtil;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.entity.Entity;
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.util.Location;
+import com.sk89q.worldedit.world.block.BlockState;
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clipboards loaded from files, shared by every holder (and player) which loads the same file<br>
+ * - Keyed by the file and its last modified time, so a changed file is loaded again<br>
+ * - Bounded by the estimated heap of the clipboards (see {@link FaweClipboard#getHeapSize()})<br>
+ * - When over the limit, the least recently used clipboard is moved to a {@link DiskOptimizedClipboard}, and dropped if it's already on disk<br>
+ * - Only clipboards no holder is using are moved to disk, as a paste may be reading the old blocks<br>
+ * - A dropped clipboard is closed once no holder is using it, and its disk file (owned by the cache) is deleted
+ */
+public class ClipboardCache {
+
+    public static final ClipboardCache IMP = new ClipboardCache();
+
+    public static final class Entry {
+        private final String key;
+        private Clipboard clipboard;
+        private long weight;
+        private int uses;
+        private boolean dropped;
+
+        private Entry(String key) {
+            this.key = key;
+        }
+
+        public Clipboard getClipboard() {
+            return clipboard;
+        }
+    }
+
+    // Access ordered, so the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong demotions = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param uri
+     * @return if clipboards from this uri can be shared
+     */
+    public boolean isCacheable(URI uri) {
+        return Settings.IMP.CLIPBOARD.CACHE_SIZE_MB > 0 && uri != null && "file".equals(uri.getScheme());
+    }
+
+    /**
+     * Get the clipboard for a file, loading it if it isn't cached<br>
+     * - Each call must be matched by a call to {@link #release(Entry)}
+     *
+     * @param uri    the file
+     * @param loader loads the clipboard (only called on a miss)
+     * @return the entry holding the clipboard
+     * @throws Exception if the clipboard could not be loaded
+     */
+    public Entry acquire(URI uri, Callable<Clipboard> loader) throws Exception {
+        String key = uri + "#" + new File(uri).lastModified();
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key);
+                entries.put(key, entry);
+            }
+            entry.uses++;
+        }
+        synchronized (entry) {
+            if (entry.clipboard != null) {
+                hits.incrementAndGet();
+                return entry;
+            }
+            misses.incrementAndGet();
+            try {
+                entry.clipboard = loader.call();
+            } catch (Throwable e) {
+                synchronized (this) {
+                    entry.uses--;
+                    if (entries.get(key) == entry) {
+                        entries.remove(key);
+                    }
+                    // Anything waiting on this entry loads its own copy, which is closed once released
+                    entry.dropped = true;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                entry.weight = getWeight(entry.clipboard);
+                if (!entry.dropped) {
+                    weight += entry.weight;
+                }
+            }
+        }
+        trim();
+        return entry;
+    }
+
+    /**
+     * Stop using a clipboard from {@link #acquire(URI, Callable)}
+     *
+     * @param entry
+     */
+    public void release(Entry entry) {
+        Clipboard close = null;
+        synchronized (this) {
+            if (--entry.uses == 0 && entry.dropped) {
+                close = entry.clipboard;
+                entry.clipboard = null;
+            }
+        }
+        close(close);
+    }
+
+    private long getWeight(Clipboard clipboard) {
+        if (clipboard instanceof BlockArrayClipboard) {
+            return ((BlockArrayClipboard) clipboard).IMP.getHeapSize();
+        }
+        Vector dimensions = clipboard.getDimensions();
+        return (long) dimensions.getBlockX() * dimensions.getBlockY() * dimensions.getBlockZ() << 2;
+    }
+
+    /**
+     * Demote or drop the least recently used clipboards until the cache is under its limit
+     */
+    private void trim() {
+        long limit = (long) Settings.IMP.CLIPBOARD.CACHE_SIZE_MB << 20;
+        while (true) {
+            Entry eldest = null;
+            List<Clipboard> close = new ArrayList<>();
+            synchronized (this) {
+                if (weight <= limit) {
+                    return;
+                }
+                Iterator<Entry> iter = entries.values().iterator();
+                while (iter.hasNext()) {
+                    Entry entry = iter.next();
+                    if (entry.clipboard == null) {
+                        // Still loading
+                        continue;
+                    }
+                    if (canDemote(entry.clipboard)) {
+                        if (entry.uses > 0) {
+                            // In use, so it can't be moved to disk yet
+                            continue;
+                        }
+                        eldest = entry;
+                        break;
+                    }
+                    iter.remove();
+                    Clipboard unused = evict(entry);
+                    if (unused != null) {
+                        close.add(unused);
+                    }
+                    if (weight <= limit) {
+                        break;
+                    }
+                }
+            }
+            for (Clipboard clipboard : close) {
+                close(clipboard);
+            }
+            if (eldest == null) {
+                return;
+            }
+            synchronized (eldest) {
+                synchronized (this) {
+                    // New holders wait for the entry's lock, so it can't start being used while it's moved
+                    if (eldest.clipboard == null || eldest.uses > 0 || !canDemote(eldest.clipboard)) {
+                        continue;
+                    }
+                }
+                try {
+                    demote((BlockArrayClipboard) eldest.clipboard);
+                } catch (Throwable e) {
+                    MainUtil.handleError(e);
+                    drop(eldest);
+                    continue;
+                }
+                long newWeight = getWeight(eldest.clipboard);
+                synchronized (this) {
+                    if (!eldest.dropped) {
+                        weight += newWeight - eldest.weight;
+                    }
+                    eldest.weight = newWeight;
+                }
+                demotions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Mark an entry as dropped (the caller removes it from the map)
+     *
+     * @param entry
+     * @return the clipboard to close, if nothing is using it
+     */
+    private Clipboard evict(Entry entry) {
+        entry.dropped = true;
+        weight -= entry.weight;
+        evictions.incrementAndGet();
+        if (entry.uses == 0) {
+            Clipboard clipboard = entry.clipboard;
+            entry.clipboard = null;
+            return clipboard;
+        }
+        return null;
+    }
+
+    private void drop(Entry entry) {
+        Clipboard close = null;
+        synchronized (this) {
+            if (!entry.dropped && entries.get(entry.key) == entry) {
+                entries.remove(entry.key);
+                close = evict(entry);
+            }
+        }
+        close(close);
+    }
+
+    private boolean canDemote(Clipboard clipboard) {
+        if (!(clipboard instanceof BlockArrayClipboard)) {
+            return false;
+        }
+        FaweClipboard fc = ((BlockArrayClipboard) clipboard).IMP;
+        return !(fc instanceof DiskOptimizedClipboard) && !(fc instanceof MappedClipboard);
+    }
+
+    /**
+     * Move a clipboard's blocks to disk (the holders keep the same clipboard instance)<br>
+     * - Only called when no holder is using it
+     *
+     * @param clipboard
+     */
+    private void demote(BlockArrayClipboard clipboard) {
+        final FaweClipboard fc = clipboard.IMP;
+        Vector dimensions = fc.getDimensions();
+        final DiskOptimizedClipboard disk = new DiskOptimizedClipboard(dimensions.getBlockX(), dimensions.getBlockY(), dimensions.getBlockZ());
+        fc.forEach(new FaweClipboard.BlockReader() {
+            @Override
+            public void run(int x, int y, int z, BlockState block) {
+                disk.setBlock(x, y, z, block);
+            }
+        }, true);
+        if (fc.hasBiomes()) {
+            fc.streamBiomes(new NBTStreamer.ByteReader() {
+                @Override
+                public void run(int index, int byteValue) {
+                    disk.setBiome(index, byteValue);
+                }
+            });
+        }
+        for (Entity entity : fc.getEntities()) {
+            Location loc = entity.getLocation();
+            disk.createEntity(loc.getExtent(), loc.getX(), loc.getY(), loc.getZ(), loc.getYaw(), loc.getPitch(), entity.getState());
+        }
+        disk.setOrigin(clipboard.getOrigin().subtract(clipboard.getMinimumPoint()));
+        clipboard.IMP = disk;
+        fc.close();
+    }
+
+    private void close(Clipboard clipboard) {
+        if (clipboard instanceof BlockArrayClipboard) {
+            try {
+                FaweClipboard fc = ((BlockArrayClipboard) clipboard).IMP;
+                fc.close();
+                // Cached clipboards are loaded (or demoted) with an id the cache owns, so the file isn't anyone else's
+                if (fc instanceof DiskOptimizedClipboard) {
+                    ((DiskOptimizedClipboard) fc).getFile().delete();
+                }
+            } catch (Throwable e) {
+                MainUtil.handleError(e);
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of clipboards moved to disk
+     */
+    public long getDemotions() {
+        return demotions.get();
+    }
+
+    /**
+     * @return the number of clipboards dropped from the cache
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the estimated heap used by the cached clipboards, in bytes
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
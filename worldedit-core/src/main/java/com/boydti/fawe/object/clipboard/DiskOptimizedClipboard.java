@@ -261,6 +261,12 @@ public void flush() {
         mbb.force();
     }
 
+    @Override
+    public long getHeapSize() {
+        // Only the tiles and entities are in memory (roughly 1KB each)
+        return (long) (nbtMap.size() + entities.size()) << 10;
+    }
+
     public DiskOptimizedClipboard(int width, int height, int length) {
         this(width, height, length, MainUtil.getFile(Fawe.imp() != null ? Fawe.imp().getDirectory() : new File("."), Settings.IMP.PATHS.CLIPBOARD + File.separator + UUID.randomUUID() + ".bd"));
     }
@@ -103,6 +103,14 @@ public void run(int x, int y, int z, BlockState block) {
         return tiles;
     }
 
+    /**
+     * @return an estimate of the heap used by this clipboard, in bytes
+     */
+    public long getHeapSize() {
+        Vector dimensions = getDimensions();
+        return (long) dimensions.getBlockX() * dimensions.getBlockY() * dimensions.getBlockZ() << 2;
+    }
+
     public void close() {}
 
     public void flush() {}
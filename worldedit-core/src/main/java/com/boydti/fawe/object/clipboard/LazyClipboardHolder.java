@@ -7,6 +7,7 @@
 import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
 import com.sk89q.worldedit.extent.clipboard.io.ClipboardReader;
 import com.sk89q.worldedit.extent.clipboard.io.SchematicReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.UUID;
@@ -16,6 +17,7 @@ public class LazyClipboardHolder extends URIClipboardHolder {
     private final ClipboardFormat format;
     private final UUID uuid;
     private Clipboard clipboard;
+    private ClipboardCache.Entry cached;
 
     /**
      * Create a new instance with the given clipboard.
@@ -37,10 +39,13 @@ public boolean contains(Clipboard clipboard) {
     public synchronized Clipboard getClipboard() {
         if (clipboard == null) {
             try {
-                try (InputStream in = source.openBufferedStream()) {
-                    final ClipboardReader reader = format.getReader(in);
-                    final Clipboard clipboard;
-                    this.clipboard = reader.read(uuid);
+                URI uri = getUri();
+                if (ClipboardCache.IMP.isCacheable(uri)) {
+                    // Loaded with an id the cache owns, so the player's own clipboard file isn't reused
+                    cached = ClipboardCache.IMP.acquire(uri, () -> read(UUID.randomUUID()));
+                    this.clipboard = cached.getClipboard();
+                } else {
+                    this.clipboard = read(uuid);
                 }
             } catch (Throwable e) {
                 e.printStackTrace();
@@ -49,6 +54,14 @@ public synchronized Clipboard getClipboard() {
         return clipboard;
     }
 
+    private Clipboard read(UUID uuid) throws IOException {
+        // The mapped format needs the file's own stream, to map it
+        try (InputStream in = format == ClipboardFormat.MAPPED ? source.openStream() : source.openBufferedStream()) {
+            final ClipboardReader reader = format.getReader(in);
+            return reader.read(uuid);
+        }
+    }
+
     @Override
     public URI getURI(Clipboard clipboard) {
         return (this.clipboard == clipboard) ? getUri() : null;
@@ -56,7 +69,11 @@ public URI getURI(Clipboard clipboard) {
 
     @Override
     public synchronized void close() {
-        if (clipboard instanceof BlockArrayClipboard) {
+        if (cached != null) {
+            // Other holders may be using it
+            ClipboardCache.IMP.release(cached);
+            cached = null;
+        } else if (clipboard instanceof BlockArrayClipboard) {
             ((BlockArrayClipboard) clipboard).close();
         }
         clipboard = null;
@@ -0,0 +1,621 @@
+package com.boydti.fawe.object.clipboard;
+
+import com.boydti.fawe.Fawe;
+import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.jnbt.NBTStreamer;
+import com.boydti.fawe.object.io.FastByteArrayOutputStream;
+import com.boydti.fawe.util.MainUtil;
+import com.sk89q.jnbt.CompoundTag;
+import com.sk89q.jnbt.NBTConstants;
+import com.sk89q.jnbt.NBTInputStream;
+import com.sk89q.jnbt.NBTOutputStream;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.entity.BaseEntity;
+import com.sk89q.worldedit.entity.Entity;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.util.Location;
+import com.sk89q.worldedit.world.biome.BaseBiome;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockStateHolder;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import com.sk89q.worldedit.world.entity.EntityType;
+import com.sk89q.worldedit.world.entity.EntityTypes;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A clipboard read straight from a (usually memory mapped) buffer in the MAPPED clipboard format<br>
+ * - Blocks are stored as a char palette index each, in the same order as {@link DiskOptimizedClipboard}<br>
+ * - The palette is stored by block state id, so a file survives registry changes<br>
+ * - Tiles are indexed by block index, and are only parsed when that block is read<br>
+ * - Nothing is written back to the buffer: the first change copies the blocks (or biomes) to the heap
+ * <p>
+ * Layout (big endian):<br>
+ * - Header: magic, version, width, height, length, min x/y/z, origin x/y/z, flags, then the offsets of the blocks, biomes, tiles and entities<br>
+ * - Palette: count, then each block state id (modified UTF-8)<br>
+ * - Blocks: volume chars<br>
+ * - Biomes: area bytes (if {@link #FLAG_BIOMES} is set)<br>
+ * - Tiles: count, the block index of each tile (ascending), count + 1 offsets into the data, then each tile's NBT payload<br>
+ * - Entities: count, then x/y/z, yaw/pitch, type id and the NBT payload of each entity
+ */
+public class MappedClipboard extends FaweClipboard {
+
+    public static final int MAGIC = 0x46415745; // FAWE
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 80;
+    public static final int FLAG_BIOMES = 1;
+
+    private final int width;
+    private final int height;
+    private final int length;
+    private final int area;
+    private final int volume;
+    private final Vector minimum;
+    private final Vector origin;
+
+    private BlockState[] palette;
+    private int paletteSize;
+    // Block ordinal -> palette index (only built once a block is set)
+    private char[] paletteLookup;
+
+    private CharBuffer blocks;
+    private ByteBuffer biomes;
+
+    private final ByteBuffer tileData;
+    private final int[] tileIndexes;
+    private final int[] tileOffsets;
+    // Tiles which were set or removed after loading (a null value is a removed tile)
+    private Int2ObjectOpenHashMap<CompoundTag> tileChanges;
+
+    private final HashSet<ClipboardEntity> entities = new HashSet<>();
+    // Entities need the clipboard they are in, so are only read by readEntities
+    private ByteBuffer entityBuffer;
+
+    /**
+     * @param buffer the whole file (it is not modified)
+     * @throws IOException if the buffer isn't in the MAPPED format
+     */
+    public MappedClipboard(ByteBuffer buffer) throws IOException {
+        ByteBuffer header = buffer.duplicate();
+        if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a mapped clipboard");
+        }
+        int version = header.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported mapped clipboard version: " + version);
+        }
+        this.width = header.getInt(8);
+        this.height = header.getInt(12);
+        this.length = header.getInt(16);
+        this.area = width * length;
+        this.volume = area * height;
+        this.minimum = new Vector(header.getInt(20), header.getInt(24), header.getInt(28));
+        this.origin = new Vector(header.getInt(32), header.getInt(36), header.getInt(40));
+        int flags = header.getInt(44);
+        int blocksOffset = (int) header.getLong(48);
+        int biomesOffset = (int) header.getLong(56);
+        int tilesOffset = (int) header.getLong(64);
+        int entitiesOffset = (int) header.getLong(72);
+
+        byte[] paletteBytes = new byte[blocksOffset - HEADER_SIZE];
+        slice(buffer, HEADER_SIZE, paletteBytes.length).get(paletteBytes);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(paletteBytes));
+        this.paletteSize = in.readInt();
+        this.palette = new BlockState[Math.max(16, paletteSize)];
+        for (int i = 0; i < paletteSize; i++) {
+            String id = in.readUTF();
+            try {
+                palette[i] = BlockState.get(id);
+            } catch (Throwable e) {
+                Fawe.debug("Unknown block " + id + " in mapped clipboard (replaced with air)");
+                palette[i] = BlockTypes.AIR.getDefaultState();
+            }
+        }
+
+        this.blocks = slice(buffer, blocksOffset, volume << 1).asCharBuffer();
+        if ((flags & FLAG_BIOMES) != 0) {
+            this.biomes = slice(buffer, biomesOffset, area);
+        }
+
+        ByteBuffer tiles = slice(buffer, tilesOffset, entitiesOffset - tilesOffset);
+        int numTiles = tiles.getInt(0);
+        this.tileIndexes = new int[numTiles];
+        this.tileOffsets = new int[numTiles + 1];
+        int pos = 4;
+        for (int i = 0; i < numTiles; i++, pos += 4) {
+            tileIndexes[i] = tiles.getInt(pos);
+        }
+        for (int i = 0; i <= numTiles; i++, pos += 4) {
+            tileOffsets[i] = tiles.getInt(pos);
+        }
+        tiles.position(pos);
+        this.tileData = tiles.slice();
+        this.entityBuffer = slice(buffer, entitiesOffset, buffer.limit() - entitiesOffset);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+            throw new IOException("Corrupt mapped clipboard");
+        }
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(offset);
+        dup.limit(offset + length);
+        return dup.slice();
+    }
+
+    /**
+     * Create the entities stored in the file
+     *
+     * @param world the clipboard they are in
+     * @throws IOException
+     */
+    public void readEntities(Extent world) throws IOException {
+        if (entityBuffer == null) {
+            return;
+        }
+        ByteBuffer buffer = entityBuffer;
+        entityBuffer = null;
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        try (NBTInputStream in = new NBTInputStream(new DataInputStream(new ByteArrayInputStream(bytes)))) {
+            DataInputStream data = in.getInputStream();
+            int count = data.readInt();
+            for (int i = 0; i < count; i++) {
+                double x = data.readDouble();
+                double y = data.readDouble();
+                double z = data.readDouble();
+                float yaw = data.readFloat();
+                float pitch = data.readFloat();
+                String id = data.readUTF();
+                CompoundTag nbt = (CompoundTag) in.readTagPayload(NBTConstants.TYPE_COMPOUND, 0);
+                EntityType type = EntityTypes.parse(id);
+                if (type != null) {
+                    createEntity(world, x, y, z, yaw, pitch, new BaseEntity(type, nbt));
+                } else {
+                    Fawe.debug("Invalid entity: " + id);
+                }
+            }
+        }
+    }
+
+    public Vector getMinimumPoint() {
+        return minimum;
+    }
+
+    public Vector getOrigin() {
+        return origin;
+    }
+
+    private int getIndex(int x, int y, int z) {
+        return x + y * area + z * width;
+    }
+
+    private BlockState withTile(int index, BlockState state) {
+        if (state.getBlockType().getMaterial().hasContainer()) {
+            CompoundTag nbt = getTile(index);
+            if (nbt != null) {
+                return new BaseBlock(state, nbt);
+            }
+        }
+        return state;
+    }
+
+    private CompoundTag getTile(int index) {
+        if (tileChanges != null && tileChanges.containsKey(index)) {
+            return tileChanges.get(index);
+        }
+        int i = tileIndexes.length == 0 ? -1 : Arrays.binarySearch(tileIndexes, index);
+        if (i < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[tileOffsets[i + 1] - tileOffsets[i]];
+        ByteBuffer data = tileData.duplicate();
+        data.position(tileOffsets[i]);
+        data.get(bytes);
+        try (NBTInputStream in = new NBTInputStream(new DataInputStream(new ByteArrayInputStream(bytes)))) {
+            return (CompoundTag) in.readTagPayload(NBTConstants.TYPE_COMPOUND, 0);
+        } catch (IOException e) {
+            MainUtil.handleError(e);
+            return null;
+        }
+    }
+
+    @Override
+    public BlockState getBlock(int x, int y, int z) {
+        return getBlock(getIndex(x, y, z));
+    }
+
+    @Override
+    public BlockState getBlock(int index) {
+        if (index < 0 || index >= volume) {
+            return EditSession.nullBlock;
+        }
+        return withTile(index, palette[blocks.get(index)]);
+    }
+
+    private synchronized char getPaletteIndex(BlockStateHolder block) {
+        int ordinal = block.getOrdinal();
+        if (paletteLookup == null) {
+            paletteLookup = new char[BlockTypes.states.length];
+            Arrays.fill(paletteLookup, Character.MAX_VALUE);
+            for (int i = paletteSize - 1; i >= 0; i--) {
+                paletteLookup[palette[i].getOrdinal()] = (char) i;
+            }
+        }
+        char value = paletteLookup[ordinal];
+        if (value == Character.MAX_VALUE) {
+            if (paletteSize == palette.length) {
+                palette = Arrays.copyOf(palette, paletteSize << 1);
+            }
+            palette[paletteSize] = BlockTypes.states[ordinal];
+            paletteLookup[ordinal] = value = (char) paletteSize++;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean setBlock(int x, int y, int z, BlockStateHolder block) {
+        return setBlock(getIndex(x, y, z), block);
+    }
+
+    @Override
+    public boolean setBlock(int index, BlockStateHolder block) {
+        if (index < 0 || index >= volume) {
+            return false;
+        }
+        char value = getPaletteIndex(block);
+        if (blocks.isReadOnly()) {
+            synchronized (this) {
+                if (blocks.isReadOnly()) {
+                    CharBuffer copy = CharBuffer.allocate(volume);
+                    copy.put(blocks.duplicate());
+                    blocks = copy;
+                }
+            }
+        }
+        blocks.put(index, value);
+        CompoundTag tile = block.getNbtData();
+        if (tile != null || getTile(index) != null) {
+            synchronized (this) {
+                if (tileChanges == null) {
+                    tileChanges = new Int2ObjectOpenHashMap<>();
+                }
+                tileChanges.put(index, tile);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean setTile(int x, int y, int z, CompoundTag tag) {
+        int index = getIndex(x, y, z);
+        synchronized (this) {
+            if (tileChanges == null) {
+                tileChanges = new Int2ObjectOpenHashMap<>();
+            }
+            tileChanges.put(index, tag);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean hasBiomes() {
+        return biomes != null;
+    }
+
+    @Override
+    public boolean setBiome(int x, int z, int biome) {
+        setBiome(x + z * width, biome);
+        return true;
+    }
+
+    @Override
+    public synchronized void setBiome(int index, int biome) {
+        if (biomes == null || biomes.isReadOnly()) {
+            ByteBuffer copy = ByteBuffer.allocate(area);
+            if (biomes != null) {
+                copy.put(biomes.duplicate());
+            }
+            biomes = copy;
+        }
+        biomes.put(index, (byte) biome);
+    }
+
+    @Override
+    public BaseBiome getBiome(int x, int z) {
+        return getBiome(x + z * width);
+    }
+
+    @Override
+    public BaseBiome getBiome(int index) {
+        if (biomes == null) {
+            return EditSession.nullBiome;
+        }
+        return FaweCache.CACHE_BIOME[biomes.get(index) & 0xFF];
+    }
+
+    @Override
+    public void streamBiomes(NBTStreamer.ByteReader task) {
+        if (biomes == null) return;
+        for (int index = 0; index < area; index++) {
+            task.run(index, biomes.get(index) & 0xFF);
+        }
+    }
+
+    @Override
+    public void streamCombinedIds(NBTStreamer.ByteReader task) {
+        for (int index = 0; index < volume; index++) {
+            task.run(index, palette[blocks.get(index)].getInternalId());
+        }
+    }
+
+    @Override
+    public void forEach(BlockReader task, boolean air) {
+        boolean hasTiles = tileIndexes.length != 0 || tileChanges != null;
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            for (int z = 0; z < length; z++) {
+                for (int x = 0; x < width; x++, index++) {
+                    BlockState state = palette[blocks.get(index)];
+                    if (!air) {
+                        switch (state.getBlockType()) {
+                            case AIR:
+                            case CAVE_AIR:
+                            case VOID_AIR:
+                                continue;
+                        }
+                    }
+                    task.run(x, y, z, hasTiles ? withTile(index, state) : state);
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<CompoundTag> getTileEntities() {
+        List<CompoundTag> tiles = new ArrayList<>(tileIndexes.length);
+        for (int index : tileIndexes) {
+            if (tileChanges == null || !tileChanges.containsKey(index)) {
+                tiles.add(getTile(index));
+            }
+        }
+        if (tileChanges != null) {
+            for (CompoundTag tile : tileChanges.values()) {
+                if (tile != null) {
+                    tiles.add(tile);
+                }
+            }
+        }
+        return tiles;
+    }
+
+    @Override
+    public void setDimensions(Vector dimensions) {
+        if (dimensions.getBlockX() != width || dimensions.getBlockY() != height || dimensions.getBlockZ() != length) {
+            throw new UnsupportedOperationException("A mapped clipboard cannot be resized");
+        }
+    }
+
+    @Override
+    public Vector getDimensions() {
+        return new Vector(width, height, length);
+    }
+
+    @Override
+    public long getHeapSize() {
+        // The mapped file is in the page cache, not the heap
+        long size = (long) (entities.size() + (tileChanges != null ? tileChanges.size() : 0)) << 10;
+        if (!blocks.isReadOnly()) {
+            size += (long) volume << 1;
+        }
+        if (biomes != null && !biomes.isReadOnly()) {
+            size += area;
+        }
+        return size;
+    }
+
+    @Override
+    public Entity createEntity(Extent world, double x, double y, double z, float yaw, float pitch, BaseEntity entity) {
+        FaweClipboard.ClipboardEntity ret = new ClipboardEntity(world, x, y, z, yaw, pitch, entity);
+        entities.add(ret);
+        return ret;
+    }
+
+    @Override
+    public List<? extends Entity> getEntities() {
+        return new ArrayList<>(entities);
+    }
+
+    @Override
+    public boolean remove(ClipboardEntity clipboardEntity) {
+        return entities.remove(clipboardEntity);
+    }
+
+    @Override
+    public void close() {
+        // The buffer is unmapped once it is no longer referenced (unmapping it here could crash a paste still using it)
+        blocks = CharBuffer.allocate(0);
+        biomes = null;
+        entities.clear();
+    }
+
+    /**
+     * Write a clipboard in the MAPPED format
+     *
+     * @param clipboard
+     * @param out
+     * @throws IOException
+     */
+    public static void write(Clipboard clipboard, DataOutputStream out) throws IOException {
+        Region region = clipboard.getRegion();
+        Vector min = region.getMinimumPoint();
+        Vector origin = clipboard.getOrigin();
+        int width = region.getWidth();
+        int height = region.getHeight();
+        int length = region.getLength();
+        long volumeL = (long) width * height * length;
+        if (volumeL << 1 > Integer.MAX_VALUE - (1 << 20)) {
+            throw new IllegalArgumentException("Region too large for a mapped clipboard");
+        }
+        int area = width * length;
+        int volume = (int) volumeL;
+
+        char[] blocks = new char[volume];
+        char[] paletteLookup = new char[BlockTypes.states.length];
+        Arrays.fill(paletteLookup, Character.MAX_VALUE);
+        List<BlockState> palette = new ArrayList<>();
+        Int2ObjectOpenHashMap<byte[]> tiles = new Int2ObjectOpenHashMap<>();
+
+        FaweClipboard.BlockReader reader = new FaweClipboard.BlockReader() {
+            @Override
+            public void run(int x, int y, int z, BlockState block) {
+                int index = x + z * width + y * area;
+                int ordinal = block.getOrdinal();
+                char value = paletteLookup[ordinal];
+                if (value == Character.MAX_VALUE) {
+                    paletteLookup[ordinal] = value = (char) palette.size();
+                    palette.add(BlockTypes.states[ordinal]);
+                }
+                blocks[index] = value;
+                CompoundTag tile = block.getNbtData();
+                if (tile != null) {
+                    try {
+                        FastByteArrayOutputStream tileBytes = new FastByteArrayOutputStream();
+                        new NBTOutputStream(tileBytes).writeTagPayload(tile);
+                        tiles.put(index, tileBytes.toByteArray());
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        };
+        boolean hasBiomes = false;
+        if (clipboard instanceof BlockArrayClipboard) {
+            FaweClipboard fc = ((BlockArrayClipboard) clipboard).IMP;
+            fc.forEach(reader, true);
+            hasBiomes = fc.hasBiomes();
+        } else {
+            for (Vector pt : region) {
+                reader.run(pt.getBlockX() - min.getBlockX(), pt.getBlockY() - min.getBlockY(), pt.getBlockZ() - min.getBlockZ(), clipboard.getBlock(pt));
+            }
+        }
+        int[] tileIndexes = tiles.keySet().toIntArray();
+        Arrays.sort(tileIndexes);
+        int tileBytes = 0;
+        for (byte[] tile : tiles.values()) {
+            tileBytes += tile.length;
+        }
+
+        FastByteArrayOutputStream paletteBytes = new FastByteArrayOutputStream();
+        DataOutputStream paletteOut = new DataOutputStream(paletteBytes);
+        paletteOut.writeInt(palette.size());
+        for (BlockState state : palette) {
+            paletteOut.writeUTF(state.getAsString());
+        }
+
+        FastByteArrayOutputStream entityBytes = new FastByteArrayOutputStream();
+        try (NBTOutputStream entitiesOut = new NBTOutputStream(entityBytes)) {
+            DataOutput data = entitiesOut.getOutputStream();
+            List<? extends Entity> entities = clipboard.getEntities();
+            List<Entity> valid = new ArrayList<>(entities.size());
+            for (Entity entity : entities) {
+                if (entity.getState() != null) {
+                    valid.add(entity);
+                }
+            }
+            data.writeInt(valid.size());
+            for (Entity entity : valid) {
+                Location loc = entity.getLocation();
+                BaseEntity state = entity.getState();
+                data.writeDouble(loc.getX());
+                data.writeDouble(loc.getY());
+                data.writeDouble(loc.getZ());
+                data.writeFloat(loc.getYaw());
+                data.writeFloat(loc.getPitch());
+                data.writeUTF(state.getType().getId());
+                CompoundTag nbt = state.getNbtData();
+                entitiesOut.writeTagPayload(nbt != null ? nbt : new CompoundTag(new HashMap<>()));
+            }
+        }
+
+        long blocksOffset = align(HEADER_SIZE + paletteBytes.getSize());
+        long biomesOffset = blocksOffset + ((long) volume << 1);
+        long tilesOffset = align(biomesOffset + (hasBiomes ? area : 0));
+        long entitiesOffset = tilesOffset + 4 + (tileIndexes.length << 3) + 4 + tileBytes;
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(length);
+        out.writeInt(min.getBlockX());
+        out.writeInt(min.getBlockY());
+        out.writeInt(min.getBlockZ());
+        out.writeInt(origin.getBlockX());
+        out.writeInt(origin.getBlockY());
+        out.writeInt(origin.getBlockZ());
+        out.writeInt(hasBiomes ? FLAG_BIOMES : 0);
+        out.writeLong(blocksOffset);
+        out.writeLong(biomesOffset);
+        out.writeLong(tilesOffset);
+        out.writeLong(entitiesOffset);
+        paletteBytes.writeTo(out);
+        pad(out, blocksOffset - HEADER_SIZE - paletteBytes.getSize());
+        for (char block : blocks) {
+            out.writeChar(block);
+        }
+        if (hasBiomes) {
+            FaweClipboard fc = ((BlockArrayClipboard) clipboard).IMP;
+            byte[] biomes = new byte[area];
+            fc.streamBiomes(new NBTStreamer.ByteReader() {
+                @Override
+                public void run(int index, int byteValue) {
+                    biomes[index] = (byte) byteValue;
+                }
+            });
+            out.write(biomes);
+        }
+        pad(out, tilesOffset - biomesOffset - (hasBiomes ? area : 0));
+        out.writeInt(tileIndexes.length);
+        for (int index : tileIndexes) {
+            out.writeInt(index);
+        }
+        int tileOffset = 0;
+        for (int index : tileIndexes) {
+            out.writeInt(tileOffset);
+            tileOffset += tiles.get(index).length;
+        }
+        out.writeInt(tileOffset);
+        for (int index : tileIndexes) {
+            out.write(tiles.get(index));
+        }
+        entityBytes.writeTo(out);
+        out.flush();
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    private static void pad(DataOutputStream out, long amount) throws IOException {
+        for (long i = 0; i < amount; i++) {
+            out.write(0);
+        }
+    }
+}
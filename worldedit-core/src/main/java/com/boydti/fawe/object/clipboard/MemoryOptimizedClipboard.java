@@ -178,6 +178,17 @@ public Vector getDimensions() {
         return new Vector(width, height, length);
     }
 
+    @Override
+    public long getHeapSize() {
+        long size = biomes != null ? biomes.length : 0;
+        for (byte[] array : states) {
+            if (array != null) {
+                size += array.length;
+            }
+        }
+        return size + ((long) (nbtMapLoc.size() + nbtMapIndex.size() + entities.size()) << 10);
+    }
+
     private int lastI;
     private int lastIMin;
     private int lastIMax;
@@ -0,0 +1,77 @@
+package com.boydti.fawe.object.collection;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A FIFO queue of primitive longs backed by a ring buffer<br>
+ * - The capacity is a power of two, and doubles when full<br>
+ * - Not thread safe
+ */
+public class LongRingQueue {
+
+    private long[] values;
+    private int mask;
+    private int head;
+    private int tail;
+
+    public LongRingQueue() {
+        this(1024);
+    }
+
+    /**
+     * @param capacity the initial capacity (rounded up to a power of two)
+     */
+    public LongRingQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(16, capacity - 1) << 1);
+        this.values = new long[size];
+        this.mask = size - 1;
+    }
+
+    public void add(long value) {
+        values[tail] = value;
+        tail = (tail + 1) & mask;
+        if (tail == head) {
+            grow();
+        }
+    }
+
+    /**
+     * @return the oldest value
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public long poll() {
+        if (head == tail) {
+            throw new NoSuchElementException();
+        }
+        long value = values[head];
+        head = (head + 1) & mask;
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    public int size() {
+        return (tail - head) & mask;
+    }
+
+    public void clear() {
+        head = 0;
+        tail = 0;
+    }
+
+    private void grow() {
+        // The buffer is full (head == tail), so unroll it into one twice the size
+        long[] old = values;
+        int length = old.length;
+        long[] grown = new long[length << 1];
+        int first = length - head;
+        System.arraycopy(old, head, grown, 0, first);
+        System.arraycopy(old, 0, grown, first, head);
+        values = grown;
+        mask = grown.length - 1;
+        head = 0;
+        tail = length;
+    }
+}
@@ -0,0 +1,253 @@
+package com.boydti.fawe.object.collection;
+
+import java.util.Arrays;
+
+/**
+ * A 16x16x16 section of combined ids, stored as<br>
+ * - A single value (no index array)<br>
+ * - A palette with 1, 2, 4 or 8 bit indexes packed into longs<br>
+ * Once a section needs more than {@link #MAX_PALETTE} distinct values, {@link #set(int, int)} returns false and the
+ * caller should expand it into a raw int[4096] (see {@link #toArray(int[])})
+ */
+public final class PalettedSection {
+
+    public static final int SIZE = 4096;
+    public static final int MAX_BITS = 8;
+    public static final int MAX_PALETTE = 1 << MAX_BITS;
+
+    private int[] palette;
+    private int paletteSize;
+    private int bits;
+    private long[] data;
+
+    /**
+     * A section with every position set to a single value
+     *
+     * @param value
+     */
+    public PalettedSection(int value) {
+        this.palette = new int[]{value};
+        this.paletteSize = 1;
+    }
+
+    private PalettedSection(PalettedSection other) {
+        this.palette = other.palette.clone();
+        this.paletteSize = other.paletteSize;
+        this.bits = other.bits;
+        this.data = other.data != null ? other.data.clone() : null;
+    }
+
+    public PalettedSection copy() {
+        return new PalettedSection(this);
+    }
+
+    public static PalettedSection[] copy(PalettedSection[] sections) {
+        PalettedSection[] copy = new PalettedSection[sections.length];
+        for (int i = 0; i < sections.length; i++) {
+            if (sections[i] != null) {
+                copy[i] = sections[i].copy();
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return if every position has the same value
+     */
+    public boolean isSingleValue() {
+        return bits == 0;
+    }
+
+    public int getPaletteSize() {
+        return paletteSize;
+    }
+
+    /**
+     * @param paletteIndex
+     * @return the value for a palette entry
+     */
+    public int getPalette(int paletteIndex) {
+        return palette[paletteIndex];
+    }
+
+    /**
+     * @param index the position (y << 8 | z << 4 | x)
+     * @return the palette entry for a position
+     */
+    public int getPaletteIndex(int index) {
+        if (bits == 0) {
+            return 0;
+        }
+        int bitIndex = index * bits;
+        return (int) (data[bitIndex >> 6] >>> (bitIndex & 63)) & ((1 << bits) - 1);
+    }
+
+    /**
+     * @param index the position (y << 8 | z << 4 | x)
+     * @return the value at a position
+     */
+    public int get(int index) {
+        return palette[getPaletteIndex(index)];
+    }
+
+    /**
+     * @param value
+     * @return if any position has this value
+     */
+    public boolean contains(int value) {
+        for (int i = 0; i < paletteSize; i++) {
+            if (palette[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replace a value everywhere in the section
+     *
+     * @param from
+     * @param to
+     */
+    public void replace(int from, int to) {
+        int toIndex = -1;
+        for (int i = 0; i < paletteSize; i++) {
+            if (palette[i] == to) {
+                toIndex = i;
+                break;
+            }
+        }
+        for (int i = 0; i < paletteSize; i++) {
+            if (palette[i] == from) {
+                if (toIndex == -1) {
+                    palette[i] = to;
+                } else if (i != toIndex) {
+                    // Both are in the palette, remap the indexes
+                    for (int j = 0; j < SIZE; j++) {
+                        if (getPaletteIndex(j) == i) {
+                            setPaletteIndex(j, toIndex);
+                        }
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Set the value at a position
+     *
+     * @param index the position (y << 8 | z << 4 | x)
+     * @param value
+     * @return false if the palette is full, in which case nothing is changed
+     */
+    public boolean set(int index, int value) {
+        int paletteIndex = -1;
+        for (int i = 0; i < paletteSize; i++) {
+            if (palette[i] == value) {
+                paletteIndex = i;
+                break;
+            }
+        }
+        if (paletteIndex == -1) {
+            if (paletteSize == MAX_PALETTE) {
+                return false;
+            }
+            if (paletteSize == palette.length) {
+                palette = Arrays.copyOf(palette, Math.min(MAX_PALETTE, palette.length << 1));
+            }
+            paletteIndex = paletteSize++;
+            palette[paletteIndex] = value;
+            if (paletteSize > (1 << bits)) {
+                resize(bits == 0 ? 1 : bits << 1);
+            }
+        }
+        if (bits != 0) {
+            setPaletteIndex(index, paletteIndex);
+        }
+        return true;
+    }
+
+    private void setPaletteIndex(int index, int paletteIndex) {
+        int bitIndex = index * bits;
+        int shift = bitIndex & 63;
+        int i = bitIndex >> 6;
+        long mask = (long) ((1 << bits) - 1) << shift;
+        data[i] = (data[i] & ~mask) | ((long) paletteIndex << shift);
+    }
+
+    private void resize(int newBits) {
+        long[] newData = new long[(SIZE * newBits) >> 6];
+        int oldBits = bits;
+        long[] oldData = data;
+        bits = newBits;
+        data = newData;
+        if (oldBits != 0) {
+            int oldMask = (1 << oldBits) - 1;
+            for (int index = 0, bitIndex = 0; index < SIZE; index++, bitIndex += oldBits) {
+                int paletteIndex = (int) (oldData[bitIndex >> 6] >>> (bitIndex & 63)) & oldMask;
+                if (paletteIndex != 0) {
+                    setPaletteIndex(index, paletteIndex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Set a range of positions to a value
+     *
+     * @param from  the first position (inclusive)
+     * @param to    the last position (exclusive)
+     * @param value
+     * @return false if the palette is full, in which case nothing is changed
+     */
+    public boolean fill(int from, int to, int value) {
+        if (from == 0 && to == SIZE) {
+            palette = new int[]{value};
+            paletteSize = 1;
+            bits = 0;
+            data = null;
+            return true;
+        }
+        if (!set(from, value)) {
+            return false;
+        }
+        for (int i = from + 1; i < to; i++) {
+            set(i, value);
+        }
+        return true;
+    }
+
+    /**
+     * Expand this section
+     *
+     * @param buffer the array to use, or null
+     * @return the values as an int[4096]
+     */
+    public int[] toArray(int[] buffer) {
+        if (buffer == null) {
+            buffer = new int[SIZE];
+        }
+        if (bits == 0) {
+            Arrays.fill(buffer, palette[0]);
+            return buffer;
+        }
+        int mask = (1 << bits) - 1;
+        int perLong = 64 / bits;
+        int index = 0;
+        for (long value : data) {
+            for (int j = 0; j < perLong; j++, index++) {
+                buffer[index] = palette[(int) value & mask];
+                value >>>= bits;
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * @return the approximate number of bytes used by this section
+     */
+    public int getSizeInBytes() {
+        return 32 + (palette.length << 2) + (data != null ? data.length << 3 : 0);
+    }
+}
@@ -1,57 +1,94 @@
 package com.boydti.fawe.object.extent;
 
+import com.boydti.fawe.util.MathMan;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.extent.AbstractDelegateExtent;
 import com.sk89q.worldedit.extent.Extent;
-import java.util.Arrays;
+import com.sk89q.worldedit.world.block.BlockStateHolder;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
+/**
+ * Caches the surface height of each column from {@link #getNearestSurfaceTerrainBlock(int, int, int, int, int)}<br>
+ * - Heights are stored per chunk column, so moving around doesn't clear what was already looked up<br>
+ * - Setting a block through this extent (or {@link #invalidate(int, int)}) forgets the height of that column
+ */
 public class ExtentHeightCacher extends AbstractDelegateExtent {
 
+    // Bounds the cache to ~2MB
+    private static final int MAX_CHUNKS = 4096;
+
     public ExtentHeightCacher(Extent extent) {
         super(extent);
     }
 
     public void reset() {
-        cacheBotX = Integer.MIN_VALUE;
-        cacheBotZ = Integer.MIN_VALUE;
-        if (cacheHeights != null) {
-            Arrays.fill(cacheHeights, (byte) 0);
-        }
+        cache.clear();
+        lastPair = Long.MIN_VALUE;
+        lastHeights = null;
+        foundY = false;
     }
 
-    private transient int cacheCenX;
-    private transient int cacheCenZ;
-    private transient int cacheBotX = Integer.MIN_VALUE;
-    private transient int cacheBotZ = Integer.MIN_VALUE;
-    private transient int cacheCenterZ;
-    private transient byte[] cacheHeights;
+    // The height + 2 of each column in a chunk (0 is not cached)
+    private final transient Long2ObjectOpenHashMap<char[]> cache = new Long2ObjectOpenHashMap<>();
+    private transient long lastPair = Long.MIN_VALUE;
+    private transient char[] lastHeights;
     private transient int lastY;
     private transient boolean foundY;
-    private transient boolean lastValue;
+
+    /**
+     * Forget the cached surface height of a column
+     *
+     * @param x
+     * @param z
+     */
+    public void invalidate(int x, int z) {
+        char[] heights = cache.get(MathMan.pairInt(x >> 4, z >> 4));
+        if (heights != null) {
+            heights[(x & 15) + ((z & 15) << 4)] = 0;
+        }
+    }
 
     @Override
     public int getNearestSurfaceTerrainBlock(int x, int z, int y, int minY, int maxY) {
-        int rx = x - cacheBotX + 16;
-        int rz = z - cacheBotZ + 16;
-        int index;
-        if (((rx & 0xFF) != rx || (rz & 0xFF) != rz)) {
-            cacheBotX = x - 16;
-            cacheBotZ = z - 16;
-            lastY = y;
-            rx = x - cacheBotX + 16;
-            rz = z - cacheBotZ + 16;
-            index = rx + (rz << 8);
-            if (cacheHeights == null) {
-                cacheHeights = new byte[65536];
-            } else {
-                Arrays.fill(cacheHeights, (byte) 0);
+        long pair = MathMan.pairInt(x >> 4, z >> 4);
+        char[] heights = lastHeights;
+        if (pair != lastPair) {
+            heights = cache.get(pair);
+            if (heights == null) {
+                if (cache.size() >= MAX_CHUNKS) {
+                    cache.clear();
+                }
+                cache.put(pair, heights = new char[256]);
             }
-        } else {
-            index = rx + (rz << 8);
+            lastPair = pair;
+            lastHeights = heights;
         }
-        int result = cacheHeights[index] & 0xFF;
-        if (result == 0) {
-            cacheHeights[index] = (byte) (result = lastY = super.getNearestSurfaceTerrainBlock(x, z, lastY, minY, maxY));
+        int index = (x & 15) + ((z & 15) << 4);
+        int cached = heights[index];
+        if (cached != 0) {
+            return cached - 2;
+        }
+        if (!foundY) {
+            lastY = y;
+            foundY = true;
+        }
+        int result = lastY = super.getNearestSurfaceTerrainBlock(x, z, lastY, minY, maxY);
+        if (result >= -1 && result < Character.MAX_VALUE - 1) {
+            heights[index] = (char) (result + 2);
         }
         return result;
     }
+
+    @Override
+    public boolean setBlock(int x, int y, int z, BlockStateHolder block) throws WorldEditException {
+        invalidate(x, z);
+        return super.setBlock(x, y, z, block);
+    }
+
+    @Override
+    public boolean setBlock(Vector location, BlockStateHolder block) throws WorldEditException {
+        invalidate(location.getBlockX(), location.getBlockZ());
+        return super.setBlock(location, block);
+    }
 }
@@ -62,6 +62,15 @@ public List<? extends Entity> getEntities(final Region region) {
         return super.getEntities(region);
     }
 
+    /**
+     * Use up a check for a position tested without reading its block (e.g. a whole section was checked at once)
+     */
+    public void check() {
+        if (!limit.MAX_CHECKS()) {
+            WEManager.IMP.cancelEditSafe(this, BBC.WORLDEDIT_CANCEL_REASON_MAX_CHECKS);
+        }
+    }
+
     @Override
     public BlockState getLazyBlock(int x, int y, int z) {
         if (!limit.MAX_CHECKS()) {
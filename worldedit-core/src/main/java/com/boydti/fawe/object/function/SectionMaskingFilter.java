@@ -0,0 +1,160 @@
+package com.boydti.fawe.object.function;
+
+import com.boydti.fawe.example.MappedFaweQueue;
+import com.boydti.fawe.object.extent.FaweRegionExtent;
+import com.boydti.fawe.object.extent.ProcessedWEExtent;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.function.RegionFunction;
+import com.sk89q.worldedit.function.mask.BlockMask;
+import com.sk89q.worldedit.function.mask.BlockMaskBuilder;
+import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.function.mask.SingleBlockStateMask;
+import com.sk89q.worldedit.function.mask.SingleBlockTypeMask;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.block.BlockState;
+import javax.annotation.Nullable;
+
+/**
+ * Same as {@link com.sk89q.worldedit.function.RegionMaskingFilter}, for a mask which only depends on the block at each position<br>
+ * - The first position visited in a 16^3 section checks the section's states (see {@link MappedFaweQueue#getSectionStates(int, int, int)})<br>
+ * - If no state matches, the section is skipped. If every state matches, the function is applied without testing the mask<br>
+ * - Otherwise (or if the chunk couldn't be loaded, or the section isn't wholly inside the edit's allowed region) each position is tested as usual<br>
+ * - A skipped (or not tested) position still uses up a check of the edit's limit, as testing it would have
+ */
+public class SectionMaskingFilter implements RegionFunction {
+
+    private static final int TEST = 0;
+    private static final int NONE = 1;
+    private static final int ALL = 2;
+
+    private final MappedFaweQueue queue;
+    private final Mask mask;
+    private final BlockMask states;
+    private final RegionFunction function;
+    private final ProcessedWEExtent checks;
+    private final FaweRegionExtent allowed;
+
+    // The last section visited by each thread, and what to do in it
+    private final ThreadLocal<int[]> lastSection = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[] {Integer.MIN_VALUE, 0, 0, TEST};
+        }
+    };
+
+    /**
+     * @param queue    the queue the mask reads from
+     * @param mask     the mask to test each position with
+     * @param states   matches the same blocks as the mask (see {@link #getStateMask(Mask, Extent)})
+     * @param function the function
+     * @param checks   charged a check for each position not tested, or null if the edit has no limit
+     * @param allowed  the edit's allowed region, or null if it can edit anywhere
+     */
+    public SectionMaskingFilter(MappedFaweQueue queue, Mask mask, BlockMask states, RegionFunction function, @Nullable ProcessedWEExtent checks, @Nullable FaweRegionExtent allowed) {
+        this.queue = queue;
+        this.mask = mask;
+        this.states = states;
+        this.function = function;
+        this.checks = checks;
+        this.allowed = allowed;
+    }
+
+    /**
+     * @param mask
+     * @param extent the extent being edited
+     * @return a mask of the states the mask matches, or null if it depends on more than the block at each position of the extent
+     */
+    @Nullable
+    public static BlockMask getStateMask(Mask mask, Extent extent) {
+        if (mask instanceof BlockMask) {
+            return ((BlockMask) mask).getExtent() == extent ? (BlockMask) mask : null;
+        }
+        if (mask instanceof SingleBlockTypeMask) {
+            SingleBlockTypeMask single = (SingleBlockTypeMask) mask;
+            return single.getExtent() == extent ? new BlockMaskBuilder().add(single.getBlockType()).build(extent) : null;
+        }
+        if (mask instanceof SingleBlockStateMask) {
+            SingleBlockStateMask single = (SingleBlockStateMask) mask;
+            return single.getExtent() == extent ? new BlockMaskBuilder().add(single.getBlockState()).build(extent) : null;
+        }
+        return null;
+    }
+
+    /**
+     * @return if every position of the section is inside the allowed region<br>
+     * - Positions outside it must be read as usual, so the edit's fails are charged
+     */
+    private boolean isAllowed(int cx, int cy, int cz) {
+        if (allowed == null) {
+            return true;
+        }
+        int bx = cx << 4;
+        int by = cy << 4;
+        int bz = cz << 4;
+        for (Region region : allowed.getRegions()) {
+            if (region instanceof CuboidRegion) {
+                Vector min = region.getMinimumPoint();
+                Vector max = region.getMaximumPoint();
+                if (min.getBlockX() <= bx && min.getBlockY() <= by && min.getBlockZ() <= bz
+                        && max.getBlockX() >= bx + 15 && max.getBlockY() >= by + 15 && max.getBlockZ() >= bz + 15) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private int check(int cx, int cy, int cz) {
+        if (!isAllowed(cx, cy, cz)) {
+            return TEST;
+        }
+        int[] section = queue.getSectionStates(cx, cy, cz);
+        if (section == null) {
+            return TEST;
+        }
+        boolean any = false;
+        boolean all = true;
+        for (int combined : section) {
+            if (states.test(BlockState.getFromInternalId(combined))) {
+                any = true;
+            } else {
+                all = false;
+            }
+            if (any && !all) {
+                return TEST;
+            }
+        }
+        return any ? ALL : NONE;
+    }
+
+    @Override
+    public boolean apply(Vector position) throws WorldEditException {
+        int cx = position.getBlockX() >> 4;
+        int cy = position.getBlockY() >> 4;
+        int cz = position.getBlockZ() >> 4;
+        int[] last = lastSection.get();
+        if (last[0] != cx || last[1] != cy || last[2] != cz) {
+            last[0] = cx;
+            last[1] = cy;
+            last[2] = cz;
+            last[3] = check(cx, cy, cz);
+        }
+        switch (last[3]) {
+            case NONE:
+                if (checks != null) {
+                    checks.check();
+                }
+                return false;
+            case ALL:
+                if (checks != null) {
+                    checks.check();
+                }
+                return function.apply(position);
+            default:
+                return mask.test(position) && function.apply(position);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.boydti.fawe.object.function;
 
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.sk89q.worldedit.MutableBlockVector;
 import com.sk89q.worldedit.Vector2D;
 import com.sk89q.worldedit.WorldEditException;
@@ -7,7 +8,7 @@
 import com.sk89q.worldedit.function.FlatRegionFunction;
 import com.sk89q.worldedit.function.RegionFunction;
 
-public class SurfaceRegionFunction implements FlatRegionFunction {
+public class SurfaceRegionFunction implements FlatRegionFunction, ThreadUnsafe {
     private final Extent extent;
     private final RegionFunction function;
     private final int minY;
@@ -1,12 +1,16 @@
 package com.boydti.fawe.object.io;
 
 import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
 
 public class PGZIPBlock implements Callable<byte[]> {
     public PGZIPBlock(final PGZIPOutputStream parent) {
         STATE = new PGZIPThreadLocal(parent);
+        this.parent = parent;
     }
 
+    private final PGZIPOutputStream parent;
+
     /**
      * This ThreadLocal avoids the recycling of a lot of memory, causing lumpy performance.
      */
@@ -31,6 +35,24 @@ public byte[] call() throws Exception {
         // DeflaterOutputStream def = newDeflaterOutputStream(buf);
         state.def.reset();
         state.buf.reset();
+        if (parent.isMultiMember()) {
+            state.buf.write(PGZIPOutputStream.MEMBER_HEADER);
+            state.str.write(in, 0, in_length);
+            state.str.finish();
+            CRC32 crc = new CRC32();
+            crc.update(in, 0, in_length);
+            writeInt(state, (int) crc.getValue());
+            writeInt(state, in_length);
+            byte[] bytes = state.buf.toByteArray();
+            // The size of the whole member, so readers can find the next one without inflating this one
+            int size = bytes.length;
+            int offset = PGZIPOutputStream.MEMBER_SIZE_OFFSET;
+            bytes[offset] = (byte) size;
+            bytes[offset + 1] = (byte) (size >> 8);
+            bytes[offset + 2] = (byte) (size >> 16);
+            bytes[offset + 3] = (byte) (size >> 24);
+            return bytes;
+        }
         state.str.write(in, 0, in_length);
         state.str.flush();
 
@@ -38,6 +60,13 @@ public byte[] call() throws Exception {
         return state.buf.toByteArray();
     }
 
+    private static void writeInt(PGZIPState state, int value) {
+        state.buf.write(value);
+        state.buf.write(value >> 8);
+        state.buf.write(value >> 16);
+        state.buf.write(value >> 24);
+    }
+
     @Override
     public String toString() {
         return "Block" /* + index */ + "(" + in_length + "/" + in.length + " bytes)";
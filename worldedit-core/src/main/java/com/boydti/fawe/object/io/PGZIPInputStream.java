@@ -0,0 +1,242 @@
+package com.boydti.fawe.object.io;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * A multi-threaded version of {@link GZIPInputStream}, for files written by {@link PGZIPOutputStream#setMultiMember(boolean)}<br>
+ * - Each member's header holds its size, so members are read on this thread and inflated on others<br>
+ * - Members are returned in order, with at most `nthreads` being inflated ahead of the reader<br>
+ * - Any other gzip file (e.g. from another program, or a member without a size) is read with a {@link GZIPInputStream}
+ */
+public class PGZIPInputStream extends InputStream {
+
+    // The largest member this will inflate (PGZIPOutputStream writes 64KB members)
+    private static final int MAX_MEMBER = 1 << 24;
+
+    private final InputStream in;
+    private final ExecutorService executor;
+    private final int nthreads;
+    private final ArrayDeque<Future<byte[]>> pending;
+
+    // Set once a member without a size is found
+    private InputStream sequential;
+    private boolean eof;
+
+    private byte[] buffer = new byte[0];
+    private int position;
+
+    public PGZIPInputStream(@Nonnull InputStream in, @Nonnull ExecutorService executor, @Nonnegative int nthreads) throws IOException {
+        this.in = in.markSupported() ? in : new BufferedInputStream(in);
+        this.executor = executor;
+        this.nthreads = Math.max(1, nthreads);
+        this.pending = new ArrayDeque<>(this.nthreads);
+        byte[] header = readMemberHeader(true);
+        if (header != null) {
+            submit(header);
+        }
+    }
+
+    /**
+     * Creates a PGZIPInputStream
+     * using {@link PGZIPOutputStream#getSharedThreadPool()}
+     * and {@link Runtime#availableProcessors()}.
+     *
+     * @param in the compressed data
+     * @throws IOException if it isn't gzip
+     */
+    public PGZIPInputStream(@Nonnull InputStream in) throws IOException {
+        this(in, PGZIPOutputStream.getSharedThreadPool(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Read the header of the next member
+     *
+     * @param first if this is the start of the stream
+     * @return the header, or null at the end of the stream (or if this member has no size, after switching to sequential reading)
+     * @throws IOException
+     */
+    private byte[] readMemberHeader(boolean first) throws IOException {
+        byte[] header = new byte[PGZIPOutputStream.MEMBER_HEADER.length];
+        in.mark(header.length);
+        int read = readFully(header, 0, header.length);
+        if (read < 2 || header[0] != (byte) 0x1f || header[1] != (byte) 0x8b) {
+            if (first) {
+                throw read == 0 ? new EOFException() : new IOException("Not in GZIP format");
+            }
+            // Trailing data (ignored, like GZIPInputStream)
+            return null;
+        }
+        boolean sized = read == header.length;
+        for (int i = 0; i < PGZIPOutputStream.MEMBER_SIZE_OFFSET && sized; i++) {
+            // MTIME, XFL and OS can be anything
+            if ((i < 4 || i > 9) && header[i] != PGZIPOutputStream.MEMBER_HEADER[i]) {
+                sized = false;
+            }
+        }
+        if (!sized) {
+            in.reset();
+            sequential = new GZIPInputStream(in);
+            return null;
+        }
+        return header;
+    }
+
+    private int readFully(byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int read = in.read(b, off + total, len - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private void submit(byte[] header) throws IOException {
+        int offset = PGZIPOutputStream.MEMBER_SIZE_OFFSET;
+        int size = (header[offset] & 0xFF) | (header[offset + 1] & 0xFF) << 8 | (header[offset + 2] & 0xFF) << 16 | (header[offset + 3] & 0xFF) << 24;
+        int headerSize = header.length;
+        if (size < headerSize + 10 || size > MAX_MEMBER) {
+            throw new IOException("Corrupt GZIP member size: " + size);
+        }
+        final byte[] member = new byte[size - headerSize];
+        if (readFully(member, 0, member.length) != member.length) {
+            throw new EOFException("Unexpected end of GZIP member");
+        }
+        pending.add(executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return inflate(member);
+            }
+        }));
+    }
+
+    /**
+     * @param member the deflated data and the trailer
+     * @return the inflated data
+     */
+    private static byte[] inflate(byte[] member) throws IOException {
+        int trailer = member.length - 8;
+        int crcValue = (member[trailer] & 0xFF) | (member[trailer + 1] & 0xFF) << 8 | (member[trailer + 2] & 0xFF) << 16 | (member[trailer + 3] & 0xFF) << 24;
+        int length = (member[trailer + 4] & 0xFF) | (member[trailer + 5] & 0xFF) << 8 | (member[trailer + 6] & 0xFF) << 16 | (member[trailer + 7] & 0xFF) << 24;
+        if (length < 0 || length > MAX_MEMBER) {
+            throw new IOException("Corrupt GZIP trailer");
+        }
+        byte[] data = new byte[length];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(member, 0, trailer);
+            int total = 0;
+            while (total < length && !inflater.finished()) {
+                int inflated = inflater.inflate(data, total, length - total);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                total += inflated;
+            }
+            if (total != length) {
+                throw new IOException("Corrupt GZIP member (expected " + length + " bytes, got " + total + ")");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        if ((int) crc.getValue() != crcValue) {
+            throw new IOException("Corrupt GZIP trailer");
+        }
+        return data;
+    }
+
+    /**
+     * Move on to the next member with any data
+     *
+     * @return false at the end of the stream
+     */
+    private boolean next() throws IOException {
+        while (position >= buffer.length) {
+            // Keep every thread busy
+            while (!eof && sequential == null && pending.size() < nthreads) {
+                byte[] header = readMemberHeader(false);
+                if (header == null) {
+                    eof = sequential == null;
+                    break;
+                }
+                submit(header);
+            }
+            Future<byte[]> future = pending.poll();
+            if (future == null) {
+                return false;
+            }
+            try {
+                buffer = future.get();
+                position = 0;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position < buffer.length || next()) {
+            return buffer[position++] & 0xFF;
+        }
+        return sequential != null ? sequential.read() : -1;
+    }
+
+    @Override
+    public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position < buffer.length || next()) {
+            int amount = Math.min(len, buffer.length - position);
+            System.arraycopy(buffer, position, b, off, amount);
+            position += amount;
+            return amount;
+        }
+        return sequential != null ? sequential.read(b, off, len) : -1;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return buffer.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        buffer = new byte[0];
+        if (sequential != null) {
+            sequential.close();
+        } else {
+            in.close();
+        }
+    }
+}
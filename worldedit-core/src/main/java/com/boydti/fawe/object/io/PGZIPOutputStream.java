@@ -37,6 +37,24 @@ public static ExecutorService getSharedThreadPool() {
     // private static final Logger LOG = LoggerFactory.getLogger(PGZIPOutputStream.class);
     private final static int GZIP_MAGIC = 0x8b1f;
 
+    /**
+     * The header of each member when {@link #setMultiMember(boolean)} is used<br>
+     * - FEXTRA holds one subfield (`FM`) with the size of the whole member (little-endian int)
+     */
+    static final byte[] MEMBER_HEADER = new byte[]{
+            (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), // ID1, ID2
+            Deflater.DEFLATED, // CM
+            4, // FLG: FEXTRA
+            0, 0, 0, 0, // MTIME
+            0, // XFL
+            3, // OS
+            8, 0, // XLEN
+            'F', 'M', // SI1, SI2
+            4, 0, // LEN
+            0, 0, 0, 0 // The member size (filled in per member)
+    };
+    static final int MEMBER_SIZE_OFFSET = 16;
+
     // todo: remove after block guessing is implemented
     // array list that contains the block sizes
     ArrayList<Integer> blockSizes = new ArrayList<Integer>();
@@ -74,6 +92,8 @@ protected static DeflaterOutputStream newDeflaterOutputStream(@Nonnull OutputStr
      * Used as a sentinel for 'closed'.
      */
     private int bytesWritten = 0;
+    private boolean multiMember;
+    private boolean started;
 
     // Master thread only
     public PGZIPOutputStream(@Nonnull OutputStream out, @Nonnull ExecutorService executor, @Nonnegative int nthreads) throws IOException {
@@ -81,7 +101,24 @@ public PGZIPOutputStream(@Nonnull OutputStream out, @Nonnull ExecutorService exe
         this.executor = executor;
         this.nthreads = nthreads;
         this.emitQueue = new ArrayBlockingQueue<Future<byte[]>>(nthreads);
-        writeHeader();
+    }
+
+    /**
+     * Write each block as its own gzip member (instead of one member with a deflate stream per block)<br>
+     * - Any gzip reader can read it, and {@link PGZIPInputStream} can inflate the members in parallel<br>
+     * - Must be called before anything is written
+     *
+     * @param multiMember
+     */
+    public void setMultiMember(boolean multiMember) {
+        if (started || bytesWritten != 0) {
+            throw new IllegalStateException("Data has already been written");
+        }
+        this.multiMember = multiMember;
+    }
+
+    public boolean isMultiMember() {
+        return multiMember;
     }
 
     /**
@@ -111,6 +148,13 @@ public PGZIPOutputStream(@Nonnull OutputStream out) throws IOException {
      * @see http://www.gzip.org/zlib/rfc-gzip.html#file-format
      */
     private void writeHeader() throws IOException {
+        if (started) {
+            return;
+        }
+        started = true;
+        if (multiMember) {
+            return;
+        }
         out.write(new byte[]{
                 (byte) GZIP_MAGIC, // ID1: Magic number (little-endian short)
                 (byte) (GZIP_MAGIC >> 8), // ID2: Magic number (little-endian short)
@@ -139,7 +183,9 @@ public void write(@Nonnull byte[] b) throws IOException {
     // Master thread only
     @Override
     public void write(@Nonnull byte[] b, int off, int len) throws IOException {
-        crc.update(b, off, len);
+        if (!multiMember) {
+            crc.update(b, off, len);
+        }
         bytesWritten += len;
         while (len > 0) {
             // assert block.in_length < block.in.length
@@ -162,6 +208,7 @@ public void write(@Nonnull byte[] b, int off, int len) throws IOException {
 
     // Master thread only
     private void submit() throws IOException {
+        writeHeader();
         emitUntil(nthreads - 1);
         emitQueue.add(executor.submit(block));
         block = new PGZIPBlock(this/* block.index + 1 */);
@@ -226,6 +273,18 @@ public void flush() throws IOException {
     public void close() throws IOException {
         // LOG.info("Closing: bytesWritten=" + bytesWritten);
         if (bytesWritten >= 0) {
+            if (multiMember) {
+                if (!started) {
+                    // An empty member, so the output is still a valid gzip file
+                    submit();
+                }
+                flush();
+                out.flush();
+                out.close();
+                bytesWritten = Integer.MIN_VALUE;
+                return;
+            }
+            writeHeader();
             flush();
 
             newDeflaterOutputStream(out, newDeflater()).finish();
@@ -1,5 +1,6 @@
 package com.boydti.fawe.object.mask;
 
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.boydti.fawe.object.extent.LightingExtent;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.extent.Extent;
@@ -7,7 +8,7 @@
 import com.sk89q.worldedit.function.mask.Mask2D;
 import javax.annotation.Nullable;
 
-public class LightMask extends AbstractExtentMask {
+public class LightMask extends AbstractExtentMask implements ThreadUnsafe {
 
     private final int min, max;
 
@@ -1,5 +1,6 @@
 package com.boydti.fawe.object.pattern;
 
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.sk89q.worldedit.MutableBlockVector2D;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.WorldEditException;
@@ -9,7 +10,7 @@
 import com.sk89q.worldedit.world.biome.BaseBiome;
 import java.io.IOException;
 
-public class BiomePattern extends ExistingPattern {
+public class BiomePattern extends ExistingPattern implements ThreadUnsafe {
     private transient MutableBlockVector2D mutable = new MutableBlockVector2D();
     private final BaseBiome biome;
 
@@ -1,5 +1,6 @@
 package com.boydti.fawe.object.pattern;
 
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.world.block.BlockState;
@@ -21,7 +22,7 @@
  * <p>Expressions are evaluated as {@code true} if they return a value
  * greater than {@code 0}.</p>
  */
-public class ExpressionPattern extends AbstractPattern {
+public class ExpressionPattern extends AbstractPattern implements ThreadUnsafe {
 
     public String input;
     private transient Expression expression;
@@ -1,5 +1,6 @@
 package com.boydti.fawe.object.pattern;
 
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.sk89q.worldedit.MutableBlockVector;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.WorldEditException;
@@ -20,7 +21,7 @@
 /**
  * A pattern that reads from {@link Clipboard}.
  */
-public class FullClipboardPattern extends AbstractExtentPattern {
+public class FullClipboardPattern extends AbstractExtentPattern implements ThreadUnsafe {
     private final Clipboard clipboard;
     private final MutableBlockVector mutable = new MutableBlockVector();
 
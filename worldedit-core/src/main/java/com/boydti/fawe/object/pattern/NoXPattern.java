@@ -1,5 +1,6 @@
 package com.boydti.fawe.object.pattern;
 
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.sk89q.worldedit.MutableBlockVector;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.WorldEditException;
@@ -12,7 +13,7 @@
 
 import java.io.IOException;
 
-public class NoXPattern extends AbstractPattern {
+public class NoXPattern extends AbstractPattern implements ThreadUnsafe {
 
     private final Pattern pattern;
     private transient MutableBlockVector mutable = new MutableBlockVector();
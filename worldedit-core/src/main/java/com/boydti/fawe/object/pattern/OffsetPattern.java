@@ -1,5 +1,6 @@
 package com.boydti.fawe.object.pattern;
 
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.sk89q.worldedit.MutableBlockVector;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.WorldEditException;
@@ -12,7 +13,7 @@
 
 import java.io.IOException;
 
-public class OffsetPattern extends AbstractPattern {
+public class OffsetPattern extends AbstractPattern implements ThreadUnsafe {
 
     private final int dx, dy, dz;
     private transient MutableBlockVector mutable = new MutableBlockVector();
@@ -1,10 +1,19 @@
 package com.boydti.fawe.object.pattern;
 
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.boydti.fawe.object.mask.ResettableMask;
 import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.function.FlatRegionFunction;
+import com.sk89q.worldedit.function.RegionFunction;
+import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.function.mask.Mask2D;
 import com.sk89q.worldedit.function.pattern.Pattern;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 public class PatternTraverser {
     private final Object pattern;
@@ -17,6 +26,61 @@ public void reset(Extent newExtent) {
         reset(pattern, newExtent);
     }
 
+    /**
+     * Check if the pattern (and every mask, pattern or function it uses) can be used by several threads at once
+     *
+     * @return false if anything reachable is {@link ThreadUnsafe} or resettable
+     */
+    public boolean isThreadSafe() {
+        return isThreadSafe(pattern, Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+    }
+
+    private boolean isThreadSafe(Object value, Set<Object> visited) {
+        if (value == null || !visited.add(value)) {
+            return true;
+        }
+        if (value instanceof ThreadUnsafe || value instanceof ResettablePattern || value instanceof ResettableMask) {
+            return false;
+        }
+        if (value instanceof Collection) {
+            for (Object next : (Collection) value) {
+                if (!isThreadSafe(next, visited)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (value instanceof Object[]) {
+            for (Object next : (Object[]) value) {
+                if (!isThreadSafe(next, visited)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (!(value instanceof Pattern || value instanceof Mask || value instanceof Mask2D || value instanceof RegionFunction || value instanceof FlatRegionFunction)) {
+            // e.g. the extent being edited
+            return true;
+        }
+        Class<?> current = value.getClass();
+        while (current.getSuperclass() != null) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                    continue;
+                }
+                try {
+                    field.setAccessible(true);
+                    if (!isThreadSafe(field.get(value), visited)) {
+                        return false;
+                    }
+                } catch (IllegalAccessException | RuntimeException ignore) {
+                }
+            }
+            current = current.getSuperclass();
+        }
+        return true;
+    }
+
     private void reset(Object pattern, Extent newExtent) {
         if (pattern == null) {
             return;
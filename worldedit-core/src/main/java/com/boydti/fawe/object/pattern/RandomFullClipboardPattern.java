@@ -1,6 +1,7 @@
 package com.boydti.fawe.object.pattern;
 
 import com.boydti.fawe.object.PseudoRandom;
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.boydti.fawe.object.schematic.Schematic;
 import com.sk89q.worldedit.MutableBlockVector;
 import com.sk89q.worldedit.Vector;
@@ -20,7 +21,7 @@
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-public class RandomFullClipboardPattern extends AbstractPattern {
+public class RandomFullClipboardPattern extends AbstractPattern implements ThreadUnsafe {
     private final Extent extent;
     private final MutableBlockVector mutable = new MutableBlockVector();
     private final List<ClipboardHolder> clipboards;
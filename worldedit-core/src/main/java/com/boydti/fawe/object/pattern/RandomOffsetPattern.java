@@ -1,5 +1,6 @@
 package com.boydti.fawe.object.pattern;
 
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.sk89q.worldedit.MutableBlockVector;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.WorldEditException;
@@ -13,7 +14,7 @@
 import java.io.IOException;
 import java.util.SplittableRandom;
 
-public class RandomOffsetPattern extends AbstractPattern {
+public class RandomOffsetPattern extends AbstractPattern implements ThreadUnsafe {
     private final int dx, dy, dz;
     private final Pattern pattern;
 
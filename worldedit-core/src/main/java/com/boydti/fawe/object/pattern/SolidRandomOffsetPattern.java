@@ -1,6 +1,7 @@
 package com.boydti.fawe.object.pattern;
 
 import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.sk89q.worldedit.MutableBlockVector;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.WorldEditException;
@@ -16,7 +17,7 @@
 import java.io.IOException;
 import java.util.SplittableRandom;
 
-public class SolidRandomOffsetPattern extends AbstractPattern {
+public class SolidRandomOffsetPattern extends AbstractPattern implements ThreadUnsafe {
     private final int dx, dy, dz;
     private final Pattern pattern;
 
@@ -2,6 +2,7 @@
 
 import com.boydti.fawe.FaweCache;
 import com.boydti.fawe.object.PseudoRandom;
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.sk89q.worldedit.MutableBlockVector;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.blocks.BaseBlock;
@@ -13,7 +14,7 @@
 
 import java.io.IOException;
 
-public class SurfaceRandomOffsetPattern extends AbstractPattern {
+public class SurfaceRandomOffsetPattern extends AbstractPattern implements ThreadUnsafe {
     private final Pattern pattern;
     private int moves;
 
@@ -115,6 +115,16 @@ default void optimize() {
         getQueue().optimize();
     }
 
+    @Override
+    default void prefetch(int minCX, int minCZ, int maxCX, int maxCZ) {
+        getQueue().prefetch(minCX, minCZ, maxCX, maxCZ);
+    }
+
+    @Override
+    default void unpin(int minCX, int minCZ, int maxCX, int maxCZ) {
+        getQueue().unpin(minCX, minCZ, maxCX, maxCZ);
+    }
+
     @Override
     default int setBlocks(CuboidRegion cuboid, int combinedId) {
         return getQueue().setBlocks(cuboid, combinedId);
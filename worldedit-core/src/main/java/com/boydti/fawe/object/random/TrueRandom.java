@@ -1,21 +1,20 @@
 package com.boydti.fawe.object.random;
 
-import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * A random source that ignores the position<br>
+ * - Uses the calling thread's generator, so a pattern can be applied by several threads at once
+ */
 public class TrueRandom implements SimpleRandom {
-    private final SplittableRandom r;
-
-    public TrueRandom() {
-        this.r = new SplittableRandom();
-    }
 
     @Override
     public double nextDouble(int x, int y, int z) {
-        return r.nextDouble();
+        return ThreadLocalRandom.current().nextDouble();
     }
 
     @Override
     public int nextInt(int x, int y, int z, int len) {
-        return r.nextInt(len);
+        return ThreadLocalRandom.current().nextInt(len);
     }
 }
@@ -0,0 +1,83 @@
+package com.boydti.fawe.object.schematic;
+
+import com.boydti.fawe.object.clipboard.MappedClipboard;
+import com.boydti.fawe.object.io.FastByteArrayOutputStream;
+import com.boydti.fawe.util.IOUtil;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardReader;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardWriter;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+
+/**
+ * Reads and writes clipboards in the layout of {@link MappedClipboard}<br>
+ * - A file is memory mapped and pasted without being decoded (other streams are read into the heap first)
+ */
+public class MappedFormat implements ClipboardReader, ClipboardWriter {
+
+    private InputStream in;
+    private DataOutputStream out;
+
+    public MappedFormat(InputStream in) {
+        this.in = in;
+    }
+
+    public MappedFormat(OutputStream out) {
+        this.out = out instanceof DataOutputStream ? (DataOutputStream) out : new DataOutputStream(out);
+    }
+
+    @Override
+    public Clipboard read() throws IOException {
+        return read(UUID.randomUUID());
+    }
+
+    @Override
+    public Clipboard read(UUID clipboardId) throws IOException {
+        ByteBuffer buffer;
+        if (in instanceof FileInputStream) {
+            // The mapping stays valid after the stream is closed
+            FileChannel channel = ((FileInputStream) in).getChannel();
+            long position = channel.position();
+            long size = channel.size() - position;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Mapped clipboard is too large: " + size);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        } else {
+            FastByteArrayOutputStream bytes = new FastByteArrayOutputStream();
+            IOUtil.copy(in, bytes);
+            buffer = ByteBuffer.wrap(bytes.toByteArray());
+        }
+        MappedClipboard fc = new MappedClipboard(buffer);
+        Vector min = fc.getMinimumPoint();
+        CuboidRegion region = new CuboidRegion(min, min.add(fc.getDimensions()).subtract(Vector.ONE));
+        BlockArrayClipboard clipboard = new BlockArrayClipboard(region, fc);
+        clipboard.setOrigin(fc.getOrigin());
+        fc.readEntities(clipboard);
+        return clipboard;
+    }
+
+    @Override
+    public void write(Clipboard clipboard) throws IOException {
+        MappedClipboard.write(clipboard, out);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+        if (out != null) {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.boydti.fawe.object.visitor;
+
+import com.boydti.fawe.Fawe;
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.example.ConcurrentFaweQueueMap;
+import com.boydti.fawe.example.MappedFaweQueue;
+import com.boydti.fawe.object.FaweLimit;
+import com.boydti.fawe.object.HistoryExtent;
+import com.boydti.fawe.object.RegionWrapper;
+import com.boydti.fawe.object.changeset.BlockBagChangeSet;
+import com.boydti.fawe.object.changeset.BufferedChangeSet;
+import com.boydti.fawe.object.extent.FastWorldEditExtent;
+import com.boydti.fawe.object.extent.HeightBoundExtent;
+import com.boydti.fawe.object.extent.ProcessedWEExtent;
+import com.boydti.fawe.object.extent.SingleRegionExtent;
+import com.boydti.fawe.object.pattern.PatternTraverser;
+import com.boydti.fawe.util.ExtentTraverser;
+import com.boydti.fawe.util.TaskManager;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.Vector2D;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.extent.AbstractDelegateExtent;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.extent.MaskingExtent;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.biome.BaseBiome;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockStateHolder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+
+/**
+ * Applies a function to a region on several threads, one chunk column at a time<br>
+ * - Each column is only written by one thread, so its FaweChunk is never shared<br>
+ * - Each thread gets its own copy of the EditSession's extents, with history buffered per thread<br>
+ * - Only used for unlimited edits where every extent, mask and pattern is known to be thread safe
+ */
+public class ParallelChunkEdit {
+
+    public interface ColumnFunction {
+        /**
+         * @param chunkX
+         * @param chunkZ
+         * @return the number of blocks affected
+         * @throws WorldEditException
+         */
+        int apply(int chunkX, int chunkZ) throws WorldEditException;
+    }
+
+    private final EditSession session;
+    private final MappedFaweQueue queue;
+    private final FastWorldEditExtent base;
+    // The extents above the base (outermost first)
+    private final List<AbstractDelegateExtent> chain;
+    private final int threads;
+
+    private ParallelChunkEdit(EditSession session, MappedFaweQueue queue, FastWorldEditExtent base, List<AbstractDelegateExtent> chain, int threads) {
+        this.session = session;
+        this.queue = queue;
+        this.base = base;
+        this.chain = chain;
+        this.threads = threads;
+    }
+
+    /**
+     * @param session  the EditSession being edited
+     * @param function the function, mask or pattern which will be applied
+     * @return a parallel edit, or null if the edit should stay on the current thread
+     */
+    @Nullable
+    public static ParallelChunkEdit get(@Nullable EditSession session, Object function) {
+        int threads = Settings.IMP.QUEUE.REGION_THREADS;
+        if (threads <= 1 || session == null || Fawe.isMainThread()) {
+            return null;
+        }
+        if (!(session.getQueue() instanceof MappedFaweQueue)) {
+            return null;
+        }
+        MappedFaweQueue queue = (MappedFaweQueue) session.getQueue();
+        if (!(queue.getFaweQueueMap() instanceof ConcurrentFaweQueueMap)) {
+            return null;
+        }
+        if (!session.getLimit().isUnlimited() || !new PatternTraverser(function).isThreadSafe()) {
+            return null;
+        }
+        List<AbstractDelegateExtent> chain = new ArrayList<>();
+        ExtentTraverser<Extent> traverser = new ExtentTraverser<>(session.getExtent());
+        while (traverser != null) {
+            Extent extent = traverser.get();
+            if (extent instanceof FastWorldEditExtent) {
+                return new ParallelChunkEdit(session, queue, (FastWorldEditExtent) extent, chain, threads);
+            }
+            Class<?> clazz = extent == null ? null : extent.getClass();
+            if (clazz == HistoryExtent.class) {
+                if (((HistoryExtent) extent).getChangeSet() instanceof BlockBagChangeSet) {
+                    return null;
+                }
+            } else if (clazz == MaskingExtent.class) {
+                if (!new PatternTraverser(((MaskingExtent) extent).getMask()).isThreadSafe()) {
+                    return null;
+                }
+            } else if (clazz != ProcessedWEExtent.class && clazz != SingleRegionExtent.class && clazz != HeightBoundExtent.class) {
+                return null;
+            }
+            chain.add((AbstractDelegateExtent) extent);
+            traverser = traverser.next();
+        }
+        return null;
+    }
+
+    /**
+     * @param region
+     * @return the chunk columns overlapping a region's bounding box (x, z pairs)
+     */
+    public static int[] getColumns(Region region) {
+        Vector min = region.getMinimumPoint();
+        Vector max = region.getMaximumPoint();
+        int minX = min.getBlockX() >> 4;
+        int minZ = min.getBlockZ() >> 4;
+        int maxX = max.getBlockX() >> 4;
+        int maxZ = max.getBlockZ() >> 4;
+        int[] columns = new int[((maxX - minX + 1) * (maxZ - minZ + 1)) << 1];
+        int i = 0;
+        for (int cz = minZ; cz <= maxZ; cz++) {
+            for (int cx = minX; cx <= maxX; cx++) {
+                columns[i++] = cx;
+                columns[i++] = cz;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Copy the extents above the base for one thread
+     *
+     * @param changeSet the buffer for this thread
+     * @return the outermost extent
+     */
+    private Extent createChain(BufferedChangeSet changeSet) {
+        Extent below = base;
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            AbstractDelegateExtent extent = chain.get(i);
+            if (extent instanceof HistoryExtent) {
+                below = new HistoryExtent(session, below, changeSet, queue);
+            } else if (extent instanceof ProcessedWEExtent) {
+                below = new ProcessedWEExtent(below, FaweLimit.MAX);
+            } else if (extent instanceof SingleRegionExtent) {
+                below = new SingleRegionExtent(below, FaweLimit.MAX, ((SingleRegionExtent) extent).getRegions().iterator().next());
+            } else if (extent instanceof HeightBoundExtent) {
+                RegionWrapper bounds = (RegionWrapper) ((HeightBoundExtent) extent).getRegions().iterator().next();
+                below = new HeightBoundExtent(below, FaweLimit.MAX, bounds.minY, bounds.maxY);
+            } else if (extent instanceof MaskingExtent) {
+                below = new MaskingExtent(below, ((MaskingExtent) extent).getMask());
+            }
+        }
+        return below;
+    }
+
+    private HistoryExtent getHistory() {
+        for (AbstractDelegateExtent extent : chain) {
+            if (extent instanceof HistoryExtent) {
+                return (HistoryExtent) extent;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Apply a function to each column<br>
+     * - The EditSession's extent is swapped for one which sends each thread to its own copy until this returns
+     *
+     * @param columns  the chunk columns (x, z pairs)
+     * @param function
+     * @return the number of blocks affected
+     * @throws WorldEditException
+     */
+    public int run(final int[] columns, final ColumnFunction function) throws WorldEditException {
+        final int count = columns.length >> 1;
+        final int preload = Settings.IMP.QUEUE.PRELOAD_CHUNKS;
+        for (int i = 0; i < Math.min(count, preload); i++) {
+            queue.queueChunkLoad(columns[i << 1], columns[(i << 1) + 1]);
+        }
+        final HistoryExtent history = getHistory();
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger affected = new AtomicInteger();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final ThreadLocal<Extent> local = new ThreadLocal<>();
+        AbstractDelegateExtent original = (AbstractDelegateExtent) session.getExtent();
+        Router router = new Router(original, local);
+
+        List<Runnable> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            workers.add(new Runnable() {
+                @Override
+                public void run() {
+                    BufferedChangeSet changeSet = history != null ? new BufferedChangeSet(history.getChangeSet()) : null;
+                    local.set(createChain(changeSet));
+                    try {
+                        int index;
+                        while (error.get() == null && (index = next.getAndIncrement()) < count) {
+                            if (preload > 1 && index + preload < count) {
+                                int ahead = (index + preload) << 1;
+                                queue.queueChunkLoad(columns[ahead], columns[ahead + 1]);
+                            }
+                            affected.addAndGet(function.apply(columns[index << 1], columns[(index << 1) + 1]));
+                            if (changeSet != null) {
+                                changeSet.flush();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        if (changeSet != null) {
+                            changeSet.flush();
+                        }
+                        local.remove();
+                    }
+                }
+            });
+        }
+        queue.setParallel(true);
+        session.setExtent(router);
+        try {
+            TaskManager.IMP.parallel(workers, threads);
+        } finally {
+            session.setExtent(original);
+            queue.setParallel(false);
+        }
+        Throwable e = error.get();
+        if (e != null) {
+            if (e instanceof WorldEditException) {
+                throw (WorldEditException) e;
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new RuntimeException(e);
+        }
+        return affected.get();
+    }
+
+    /**
+     * Sends block and biome calls to the calling thread's copy of the extents
+     */
+    private static class Router extends AbstractDelegateExtent {
+        private final ThreadLocal<Extent> local;
+
+        private Router(Extent original, ThreadLocal<Extent> local) {
+            super(original);
+            this.local = local;
+        }
+
+        private Extent get() {
+            Extent extent = local.get();
+            return extent != null ? extent : getExtent();
+        }
+
+        @Override
+        public BlockState getLazyBlock(Vector position) {
+            return get().getLazyBlock(position);
+        }
+
+        @Override
+        public BlockState getLazyBlock(int x, int y, int z) {
+            return get().getLazyBlock(x, y, z);
+        }
+
+        @Override
+        public BlockState getBlock(Vector position) {
+            return get().getBlock(position);
+        }
+
+        @Override
+        public boolean setBlock(Vector location, BlockStateHolder block) throws WorldEditException {
+            return get().setBlock(location, block);
+        }
+
+        @Override
+        public boolean setBlock(int x, int y, int z, BlockStateHolder block) throws WorldEditException {
+            return get().setBlock(x, y, z, block);
+        }
+
+        @Override
+        public BaseBiome getBiome(Vector2D position) {
+            return get().getBiome(position);
+        }
+
+        @Override
+        public boolean setBiome(Vector2D position, BaseBiome biome) {
+            return get().setBiome(position, biome);
+        }
+
+        @Override
+        public boolean setBiome(int x, int y, int z, BaseBiome biome) {
+            return get().setBiome(x, y, z, biome);
+        }
+    }
+}
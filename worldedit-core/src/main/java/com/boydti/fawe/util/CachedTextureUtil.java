@@ -1,62 +1,88 @@
 package com.boydti.fawe.util;
 
-import com.boydti.fawe.FaweCache;
-import com.sk89q.worldedit.blocks.BaseBlock;
-import com.sk89q.worldedit.world.block.BlockState;
-import com.sk89q.worldedit.world.block.BlockType;
 import com.sk89q.worldedit.world.block.BlockTypes;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import java.io.FileNotFoundException;
 
+/**
+ * Caches the nearest block, layer and biome of recent colors<br>
+ * - Each cache is a fixed array of slots, picked by the color quantized to 16 bits (RGB565)<br>
+ * - A slot holds the exact color and its result in one long, so a hit is always exact and a collision just replaces the slot<br>
+ * - Bounded, at 8 bytes per slot
+ */
 public class CachedTextureUtil extends DelegateTextureUtil {
+    private static final int SLOTS = 1 << 16;
+
     private final TextureUtil parent;
-    private transient Int2ObjectOpenHashMap<BlockTypes> colorBlockMap;
-    private transient Int2ObjectOpenHashMap<Integer> colorBiomeMap;
-    private transient Int2ObjectOpenHashMap<BlockTypes[]> colorLayerMap;
+    // color << 32 | result + 1 (0 is an empty slot)
+    private final long[] colorBlockMap;
+    private final long[] colorBiomeMap;
+    private final long[] colorLayerMap;
 
     public CachedTextureUtil(TextureUtil parent) throws FileNotFoundException {
         super(parent);
         this.parent = parent;
-        this.colorBlockMap = new Int2ObjectOpenHashMap<>();
-        this.colorLayerMap = new Int2ObjectOpenHashMap<>();
-        this.colorBiomeMap = new Int2ObjectOpenHashMap<>();
+        this.colorBlockMap = new long[SLOTS];
+        this.colorLayerMap = new long[SLOTS];
+        this.colorBiomeMap = new long[SLOTS];
+    }
+
+    private static int getSlot(int color) {
+        int quantized = ((color >> 8) & 0xF800) | ((color >> 5) & 0x07E0) | ((color >> 3) & 0x001F);
+        // Different alphas of the same color go in different slots
+        return (quantized ^ ((color >>> 24) * 0x9E37)) & (SLOTS - 1);
+    }
+
+    private static int get(long[] cache, int slot, int color) {
+        long value = cache[slot];
+        if ((int) (value >>> 32) == color) {
+            return (int) value;
+        }
+        return 0;
+    }
+
+    private static void put(long[] cache, int slot, int color, int value) {
+        cache[slot] = ((long) color << 32) | (value & 0xFFFFFFFFL);
     }
 
     @Override
     public BlockTypes[] getNearestLayer(int color) {
-        BlockTypes[] closest = colorLayerMap.get(color);
-        if (closest != null) {
-            return closest;
+        int slot = getSlot(color);
+        int cached = get(colorLayerMap, slot, color);
+        if (cached != 0) {
+            return new BlockTypes[]{BlockTypes.get((cached & 0xFFFF) - 1), BlockTypes.get((cached >>> 16) - 1)};
         }
-        closest = parent.getNearestLayer(color);
+        BlockTypes[] closest = parent.getNearestLayer(color);
         if (closest != null) {
-            colorLayerMap.put(color, closest.clone());
+            put(colorLayerMap, slot, color, (closest[0].getInternalId() + 1) | ((closest[1].getInternalId() + 1) << 16));
+            closest = closest.clone();
         }
         return closest;
     }
 
     @Override
     public BiomeColor getNearestBiome(int color) {
-        Integer value = colorBiomeMap.get(color);
-        if (value != null) {
-            return getBiome(value);
+        int slot = getSlot(color);
+        int cached = get(colorBiomeMap, slot, color);
+        if (cached != 0) {
+            return getBiome(cached - 1);
         }
         BiomeColor result = parent.getNearestBiome(color);
         if (result != null) {
-            colorBiomeMap.put((int) color, (Integer) result.id);
+            put(colorBiomeMap, slot, color, result.id + 1);
         }
         return result;
     }
 
     @Override
     public BlockTypes getNearestBlock(int color) {
-        BlockTypes value = colorBlockMap.get(color);
-        if (value != null) {
-            return value;
+        int slot = getSlot(color);
+        int cached = get(colorBlockMap, slot, color);
+        if (cached != 0) {
+            return BlockTypes.get(cached - 1);
         }
         BlockTypes result = parent.getNearestBlock(color);
         if (result != null) {
-            colorBlockMap.put((int) color, result);
+            put(colorBlockMap, slot, color, result.getInternalId() + 1);
         }
         return result;
     }
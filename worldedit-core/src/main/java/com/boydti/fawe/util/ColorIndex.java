@@ -0,0 +1,190 @@
+package com.boydti.fawe.util;
+
+import java.util.Arrays;
+
+/**
+ * A k-d tree over colors, for finding the nearest color by {@link TextureUtil#colorDistance(int, int, int, int)}<br>
+ * - The distance is at least 2r^2 + 4g^2 + 2b^2 (the hue term is never negative), so a branch is skipped when the split alone is further than the best match<br>
+ * - Returns the same match as a linear scan, including the lowest index on ties<br>
+ * - Immutable once built, so it can be queried from any thread
+ */
+public final class ColorIndex {
+
+    // The smallest weight of each channel's squared difference (red, green, blue)
+    private static final int[] WEIGHTS = {2, 4, 2};
+    private static final int[] SHIFTS = {16, 8, 0};
+
+    private final TextureUtil util;
+    private final Object source;
+    // A tree per alpha value, or just one (see matchAlpha)
+    private final Tree[] trees;
+    private final boolean matchAlpha;
+
+    /**
+     * @param util       provides the distance
+     * @param source     the array the colors were taken from (see {@link #isFor(Object)})
+     * @param colors     the colors to index
+     * @param matchAlpha if only colors with the same alpha as the query should match
+     */
+    public ColorIndex(TextureUtil util, Object source, int[] colors, boolean matchAlpha) {
+        this.util = util;
+        this.source = source;
+        this.matchAlpha = matchAlpha;
+        if (matchAlpha) {
+            int[] counts = new int[256];
+            for (int color : colors) {
+                counts[color >>> 24]++;
+            }
+            int[][] buckets = new int[256][];
+            for (int alpha = 0; alpha < 256; alpha++) {
+                if (counts[alpha] != 0) {
+                    buckets[alpha] = new int[counts[alpha]];
+                }
+            }
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < colors.length; i++) {
+                int alpha = colors[i] >>> 24;
+                buckets[alpha][counts[alpha]++] = i;
+            }
+            this.trees = new Tree[256];
+            for (int alpha = 0; alpha < 256; alpha++) {
+                if (buckets[alpha] != null) {
+                    trees[alpha] = new Tree(colors, buckets[alpha]);
+                }
+            }
+        } else {
+            int[] all = new int[colors.length];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            this.trees = new Tree[]{new Tree(colors, all)};
+        }
+    }
+
+    /**
+     * @param source
+     * @return if this index was built from that array
+     */
+    public boolean isFor(Object source) {
+        return this.source == source;
+    }
+
+    /**
+     * @param color       the color to match
+     * @param excludeSame if colors equal to the query should be skipped
+     * @return the index of the nearest color, or -1 if there is none
+     */
+    public int getNearest(int color, boolean excludeSame) {
+        Tree tree = matchAlpha ? trees[color >>> 24] : trees[0];
+        if (tree == null) {
+            return -1;
+        }
+        Search search = new Search(color, excludeSame);
+        tree.search(search, 0, tree.colors.length);
+        return search.index;
+    }
+
+    private final class Search {
+        private final int color;
+        private final int[] channels;
+        private final boolean excludeSame;
+        private long distance = Long.MAX_VALUE;
+        private int index = -1;
+
+        private Search(int color, boolean excludeSame) {
+            this.color = color;
+            this.channels = new int[]{(color >> 16) & 0xFF, (color >> 8) & 0xFF, color & 0xFF};
+            this.excludeSame = excludeSame;
+        }
+    }
+
+    private final class Tree {
+        // Balanced tree in array order: the node of [lo, hi) is at the middle, its children on either side
+        private final int[] colors;
+        private final int[] indexes;
+        private final byte[] axes;
+
+        private Tree(int[] source, int[] members) {
+            int size = members.length;
+            this.colors = new int[size];
+            this.indexes = members.clone();
+            this.axes = new byte[size];
+            for (int i = 0; i < size; i++) {
+                colors[i] = source[indexes[i]];
+            }
+            build(0, size, new long[size]);
+        }
+
+        private void build(int lo, int hi, long[] buffer) {
+            if (hi - lo <= 1) {
+                return;
+            }
+            // Split on the channel with the widest range
+            int axis = 0;
+            int widest = -1;
+            for (int a = 0; a < 3; a++) {
+                int min = 255;
+                int max = 0;
+                for (int i = lo; i < hi; i++) {
+                    int value = (colors[i] >> SHIFTS[a]) & 0xFF;
+                    if (value < min) min = value;
+                    if (value > max) max = value;
+                }
+                if (max - min > widest) {
+                    widest = max - min;
+                    axis = a;
+                }
+            }
+            int shift = SHIFTS[axis];
+            for (int i = lo; i < hi; i++) {
+                buffer[i] = ((long) ((colors[i] >> shift) & 0xFF) << 32) | (i - lo);
+            }
+            Arrays.sort(buffer, lo, hi);
+            int[] sortedColors = new int[hi - lo];
+            int[] sortedIndexes = new int[hi - lo];
+            for (int i = lo; i < hi; i++) {
+                int from = lo + (int) buffer[i];
+                sortedColors[i - lo] = colors[from];
+                sortedIndexes[i - lo] = indexes[from];
+            }
+            System.arraycopy(sortedColors, 0, colors, lo, hi - lo);
+            System.arraycopy(sortedIndexes, 0, indexes, lo, hi - lo);
+            int mid = (lo + hi) >>> 1;
+            axes[mid] = (byte) axis;
+            build(lo, mid, buffer);
+            build(mid + 1, hi, buffer);
+        }
+
+        private void search(Search search, int lo, int hi) {
+            if (lo >= hi) {
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            int other = colors[mid];
+            if (!search.excludeSame || other != search.color) {
+                long distance = util.colorDistance(search.channels[0], search.channels[1], search.channels[2], other);
+                if (distance < search.distance || (distance == search.distance && indexes[mid] < search.index)) {
+                    search.distance = distance;
+                    search.index = indexes[mid];
+                }
+            }
+            if (hi - lo == 1) {
+                return;
+            }
+            int axis = axes[mid];
+            int diff = search.channels[axis] - ((other >> SHIFTS[axis]) & 0xFF);
+            if (diff < 0) {
+                search(search, lo, mid);
+                // Ties must still be checked, for the lowest index
+                if ((long) WEIGHTS[axis] * diff * diff <= search.distance) {
+                    search(search, mid + 1, hi);
+                }
+            } else {
+                search(search, mid + 1, hi);
+                if ((long) WEIGHTS[axis] * diff * diff <= search.distance) {
+                    search(search, lo, mid);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.boydti.fawe.util;
+
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.FawePlayer;
+import com.boydti.fawe.object.FaweQueue;
+import com.sk89q.worldedit.EditSession;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deficit round robin scheduler<br>
+ * - Each player (and the console) has its own time budget, so one large edit can't starve everyone else<br>
+ * - A player's smallest queue is dispatched first<br>
+ * - Queues waiting longer than their latency target are dispatched ahead of their fair share<br>
+ * - Budgets are charged with the wall time of a dispatch, so this stays fair with multiple PARALLEL_THREADS
+ */
+public class FairQueueScheduler implements QueueScheduler {
+
+    /**
+     * Owner of queues which don't belong to a player
+     */
+    public static final UUID CONSOLE = new UUID(0, 0);
+
+    /**
+     * The budget (ms) a backlogged owner receives each round
+     */
+    private static final double QUANTUM = 10;
+    private static final long MIN_SLICE = 2;
+
+    private final Map<UUID, Owner> owners = new HashMap<>();
+    private final Map<FaweQueue, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<UUID, Double> weights = new ConcurrentHashMap<>();
+    private int backlogged;
+
+    private static final class Owner {
+        private double deficit;
+        private FaweQueue smallest;
+        private int smallestSize;
+        private long backlog;
+    }
+
+    private static final class Entry {
+        private long enqueued;
+        private long lastServed;
+        private long latencyTarget = -1;
+        private volatile long maxLatency;
+    }
+
+    /**
+     * Set the share a player receives relative to other players (default 1)
+     *
+     * @param uuid   the player, or {@link #CONSOLE}
+     * @param weight
+     */
+    public void setWeight(UUID uuid, double weight) {
+        if (weight <= 0) {
+            weights.remove(uuid);
+        } else {
+            weights.put(uuid, weight);
+        }
+    }
+
+    public double getWeight(UUID uuid) {
+        Double weight = weights.get(uuid);
+        return weight == null ? 1 : weight;
+    }
+
+    /**
+     * Set the maximum time (ms) a queue should wait between dispatches
+     *
+     * @param queue
+     * @param latencyMs the target, or -1 to use the configured default
+     */
+    public void setLatencyTarget(FaweQueue queue, long latencyMs) {
+        getEntry(queue, System.currentTimeMillis()).latencyTarget = latencyMs;
+    }
+
+    public long getLatencyTarget(FaweQueue queue) {
+        Entry entry = entries.get(queue);
+        return entry == null || entry.latencyTarget < 0 ? Settings.IMP.QUEUE.TARGET_LATENCY_MS : entry.latencyTarget;
+    }
+
+    /**
+     * @param queue
+     * @return the longest time (ms) the queue has waited between dispatches, or -1 if it isn't scheduled
+     */
+    public long getMaxLatency(FaweQueue queue) {
+        Entry entry = entries.get(queue);
+        return entry == null ? -1 : entry.maxLatency;
+    }
+
+    /**
+     * @param queue
+     * @return the time (ms) since the queue was enqueued, or -1 if it isn't scheduled
+     */
+    public long getAge(FaweQueue queue) {
+        Entry entry = entries.get(queue);
+        return entry == null ? -1 : System.currentTimeMillis() - entry.enqueued;
+    }
+
+    public static UUID getOwner(FaweQueue queue) {
+        Collection<EditSession> sessions = queue.getEditSessions();
+        for (EditSession session : sessions) {
+            FawePlayer player = session.getPlayer();
+            if (player != null) {
+                return player.getUUID();
+            }
+        }
+        return CONSOLE;
+    }
+
+    private Entry getEntry(FaweQueue queue, long now) {
+        Entry entry = entries.get(queue);
+        if (entry == null) {
+            entry = new Entry();
+            entry.enqueued = entry.lastServed = now;
+            Entry previous = entries.putIfAbsent(queue, entry);
+            if (previous != null) {
+                return previous;
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public void onEnqueue(FaweQueue queue) {
+        getEntry(queue, System.currentTimeMillis());
+    }
+
+    @Override
+    public void onDequeue(FaweQueue queue) {
+        entries.remove(queue);
+    }
+
+    @Override
+    public synchronized FaweQueue select(Collection<FaweQueue> active, long now) {
+        FaweQueue late = null;
+        long lateBy = 0;
+        for (Owner owner : owners.values()) {
+            owner.smallest = null;
+            owner.backlog = 0;
+        }
+        for (FaweQueue queue : active) {
+            int size = queue.size();
+            if (size <= 0) {
+                continue;
+            }
+            Entry entry = getEntry(queue, now);
+            long target = entry.latencyTarget < 0 ? Settings.IMP.QUEUE.TARGET_LATENCY_MS : entry.latencyTarget;
+            long over = now - entry.lastServed - target;
+            if (target >= 0 && over > lateBy) {
+                lateBy = over;
+                late = queue;
+            }
+            UUID uuid = getOwner(queue);
+            Owner owner = owners.get(uuid);
+            if (owner == null) {
+                owners.put(uuid, owner = new Owner());
+            }
+            owner.backlog += size;
+            if (owner.smallest == null || size < owner.smallestSize) {
+                owner.smallest = queue;
+                owner.smallestSize = size;
+            }
+        }
+        backlogged = 0;
+        Iterator<Map.Entry<UUID, Owner>> iter = owners.entrySet().iterator();
+        while (iter.hasNext()) {
+            Owner owner = iter.next().getValue();
+            if (owner.smallest == null) {
+                // Idle owners don't accumulate credit
+                iter.remove();
+            } else {
+                backlogged++;
+            }
+        }
+        if (late != null) {
+            return late;
+        }
+        if (backlogged == 0) {
+            return null;
+        }
+        Owner best = null;
+        for (Owner owner : owners.values()) {
+            if (best == null || owner.deficit > best.deficit || (owner.deficit == best.deficit && owner.backlog < best.backlog)) {
+                best = owner;
+            }
+        }
+        if (best.deficit <= 0) {
+            // Start a new round, giving every backlogged owner enough credit for at least one to dispatch
+            long rounds = Long.MAX_VALUE;
+            for (Map.Entry<UUID, Owner> entry : owners.entrySet()) {
+                double quantum = QUANTUM * getWeight(entry.getKey());
+                rounds = Math.min(rounds, (long) (-entry.getValue().deficit / quantum) + 1);
+            }
+            best = null;
+            for (Map.Entry<UUID, Owner> entry : owners.entrySet()) {
+                Owner owner = entry.getValue();
+                double quantum = QUANTUM * getWeight(entry.getKey());
+                owner.deficit = Math.min(owner.deficit + rounds * quantum, quantum);
+                if (best == null || owner.deficit > best.deficit || (owner.deficit == best.deficit && owner.backlog < best.backlog)) {
+                    best = owner;
+                }
+            }
+        }
+        return best.smallest;
+    }
+
+    @Override
+    public synchronized long getSlice(FaweQueue queue, long remaining) {
+        if (backlogged <= 1) {
+            return remaining;
+        }
+        Owner owner = owners.get(getOwner(queue));
+        long share = owner == null ? MIN_SLICE : (long) Math.ceil(owner.deficit);
+        return Math.max(MIN_SLICE, Math.min(remaining, share));
+    }
+
+    @Override
+    public synchronized void charge(FaweQueue queue, long elapsed) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(queue);
+        if (entry != null) {
+            long waited = now - elapsed - entry.lastServed;
+            if (waited > entry.maxLatency) {
+                entry.maxLatency = waited;
+            }
+            entry.lastServed = now;
+        }
+        Owner owner = owners.get(getOwner(queue));
+        if (owner != null) {
+            owner.deficit -= Math.max(1, elapsed);
+        }
+    }
+
+    @Override
+    public boolean isPreemptive() {
+        return true;
+    }
+}
@@ -0,0 +1,16 @@
+package com.boydti.fawe.util;
+
+import com.boydti.fawe.object.FaweQueue;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Dispatches the oldest queue until it is finished (the legacy behavior)
+ */
+public class FifoQueueScheduler implements QueueScheduler {
+    @Override
+    public FaweQueue select(Collection<FaweQueue> active, long now) {
+        Iterator<FaweQueue> iter = active.iterator();
+        return iter.hasNext() ? iter.next() : null;
+    }
+}
@@ -0,0 +1,73 @@
+package com.boydti.fawe.util;
+
+import com.boydti.fawe.object.FaweQueue;
+import java.util.Collection;
+
+/**
+ * Decides which active {@link FaweQueue} the {@link SetQueue} dispatches next, and for how long
+ */
+public interface QueueScheduler {
+
+    /**
+     * Called when a queue becomes active
+     *
+     * @param queue
+     */
+    default void onEnqueue(FaweQueue queue) {
+    }
+
+    /**
+     * Called when a queue is finished or removed
+     *
+     * @param queue
+     */
+    default void onDequeue(FaweQueue queue) {
+    }
+
+    /**
+     * Select the next queue to dispatch
+     *
+     * @param active the non empty active queues (in the order they were enqueued)
+     * @param now    the current time (ms)
+     * @return the queue to dispatch, or null
+     */
+    FaweQueue select(Collection<FaweQueue> active, long now);
+
+    /**
+     * Get the time (ms) a queue may use for this dispatch
+     *
+     * @param queue     the selected queue
+     * @param remaining the time remaining this tick (ms)
+     * @return
+     */
+    default long getSlice(FaweQueue queue, long remaining) {
+        return remaining;
+    }
+
+    /**
+     * Called after a queue was dispatched
+     *
+     * @param queue
+     * @param elapsed the wall time the dispatch took (ms)
+     */
+    default void charge(FaweQueue queue, long elapsed) {
+    }
+
+    /**
+     * @return if more than one queue may be dispatched per tick
+     */
+    default boolean isPreemptive() {
+        return false;
+    }
+
+    static QueueScheduler create(String name) {
+        if (name != null) {
+            switch (name.toLowerCase()) {
+                case "fifo":
+                case "legacy":
+                    return new FifoQueueScheduler();
+            }
+        }
+        return new FairQueueScheduler();
+    }
+}
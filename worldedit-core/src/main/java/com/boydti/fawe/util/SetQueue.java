@@ -15,6 +15,8 @@
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 public class SetQueue {
 
     /**
@@ -46,6 +48,11 @@ public enum QueueStage {
     private ForkJoinPool pool = new ForkJoinPool();
     private ExecutorCompletionService completer = new ExecutorCompletionService(pool);
 
+    /**
+     * Decides which active queue is dispatched each tick (created from the config on first use)
+     */
+    private volatile QueueScheduler scheduler;
+
     /**
      * @return ForkJoinPool
      * @see TaskManager#getPublicForkJoinPool()
@@ -60,6 +67,28 @@ public ForkJoinPool getForkJoinPool() {
         return pool;
     }
 
+    public QueueScheduler getScheduler() {
+        QueueScheduler tmp = scheduler;
+        if (tmp == null) {
+            synchronized (this) {
+                tmp = scheduler;
+                if (tmp == null) {
+                    scheduler = tmp = QueueScheduler.create(Settings.IMP.QUEUE.SCHEDULER);
+                }
+            }
+        }
+        return tmp;
+    }
+
+    public synchronized void setScheduler(QueueScheduler scheduler) {
+        checkNotNull(scheduler);
+        for (FaweQueue queue : activeQueues) {
+            getScheduler().onDequeue(queue);
+            scheduler.onEnqueue(queue);
+        }
+        this.scheduler = scheduler;
+    }
+
     public void runMiscTasks() {
         while (Fawe.get().getTimer().isAbove(targetTPS)) {
             Runnable task = tasks.poll();
@@ -152,38 +181,34 @@ public void run() {
                         }
                     }
 
-                    FaweQueue queue = getNextQueue();
-                    if (queue == null) {
-                        return;
-                    }
-
-                    long time = (long) Settings.IMP.QUEUE.EXTRA_TIME_MS + currentAllocate - System.currentTimeMillis() + now;
+                    long deadline = (long) Settings.IMP.QUEUE.EXTRA_TIME_MS + currentAllocate + now;
                     // Disable the async catcher as it can't discern async vs parallel
                     boolean parallel = Settings.IMP.QUEUE.PARALLEL_THREADS > 1;
-                    queue.startSet(parallel);
-                    try {
-                        if (!queue.next(Settings.IMP.QUEUE.PARALLEL_THREADS, time) && queue.getStage() == QueueStage.ACTIVE) {
-                            queue.setStage(QueueStage.NONE);
-                            queue.runTasks();
+                    FaweQueue queue;
+                    while ((queue = getNextQueue()) != null) {
+                        long start = System.currentTimeMillis();
+                        long time = getScheduler().getSlice(queue, deadline - start);
+                        queue.startSet(parallel);
+                        try {
+                            if (!queue.next(Settings.IMP.QUEUE.PARALLEL_THREADS, time) && queue.getStage() == QueueStage.ACTIVE) {
+                                queue.setStage(QueueStage.NONE);
+                                queue.runTasks();
+                            }
+                        } catch (Throwable e) {
+                            pool.awaitQuiescence(Settings.IMP.QUEUE.DISCARD_AFTER_MS, TimeUnit.MILLISECONDS);
+                            completer = new ExecutorCompletionService(pool);
+                            e.printStackTrace();
                         }
-                    } catch (Throwable e) {
-                        pool.awaitQuiescence(Settings.IMP.QUEUE.DISCARD_AFTER_MS, TimeUnit.MILLISECONDS);
-                        completer = new ExecutorCompletionService(pool);
-                        e.printStackTrace();
-                    }
-                    if (pool.getQueuedSubmissionCount() != 0 || pool.getRunningThreadCount() != 0 || pool.getQueuedTaskCount() != 0) {
-//                        if (Fawe.get().isJava8())
-                        {
+                        if (pool.getQueuedSubmissionCount() != 0 || pool.getRunningThreadCount() != 0 || pool.getQueuedTaskCount() != 0) {
                             pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
                         }
-//                        else {
-//                            pool.shutdown();
-//                            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-//                            pool = new ForkJoinPool();
-//                            completer = new ExecutorCompletionService(pool);
-//                        }
+                        queue.endSet(parallel);
+                        long end = System.currentTimeMillis();
+                        getScheduler().charge(queue, end - start);
+                        if (!getScheduler().isPreemptive() || end >= deadline) {
+                            break;
+                        }
                     }
-                    queue.endSet(parallel);
                 } catch (Throwable e) {
                     e.printStackTrace();
                 }
@@ -213,6 +238,7 @@ public boolean enqueue(FaweQueue queue) {
         if (queue.size() > 0) {
             if (!activeQueues.contains(queue)) {
                 queue.optimize();
+                getScheduler().onEnqueue(queue);
                 activeQueues.add(queue);
             }
             return true;
@@ -224,6 +250,7 @@ public void dequeue(FaweQueue queue) {
         queue.setStage(QueueStage.NONE);
         inactiveQueues.remove(queue);
         activeQueues.remove(queue);
+        getScheduler().onDequeue(queue);
         queue.runTasks();
     }
 
@@ -289,15 +316,21 @@ public void flush(FaweQueue queue) {
 
     public FaweQueue getNextQueue() {
         long now = System.currentTimeMillis();
-        while (!activeQueues.isEmpty()) {
-            FaweQueue queue = activeQueues.peek();
-            if (queue != null && queue.size() > 0) {
-                queue.setModified(now);
-                return queue;
-            } else {
+        Iterator<FaweQueue> active = activeQueues.iterator();
+        while (active.hasNext()) {
+            FaweQueue queue = active.next();
+            if (queue.size() <= 0) {
                 queue.setStage(QueueStage.NONE);
                 queue.runTasks();
-                activeQueues.poll();
+                getScheduler().onDequeue(queue);
+                active.remove();
+            }
+        }
+        if (!activeQueues.isEmpty()) {
+            FaweQueue queue = getScheduler().select(activeQueues, now);
+            if (queue != null) {
+                queue.setModified(now);
+                return queue;
             }
         }
         int size = inactiveQueues.size();
@@ -372,25 +372,53 @@ public TextureUtil(File folder) throws FileNotFoundException {
         }
     }
 
-    public BlockTypes getNearestBlock(int color) {
-        long min = Long.MAX_VALUE;
-        int closest = 0;
-        int red1 = (color >> 16) & 0xFF;
-        int green1 = (color >> 8) & 0xFF;
-        int blue1 = (color >> 0) & 0xFF;
-        int alpha = (color >> 24) & 0xFF;
-        for (int i = 0; i < validColors.length; i++) {
-            int other = validColors[i];
-            if (((other >> 24) & 0xFF) == alpha) {
-                long distance = colorDistance(red1, green1, blue1, other);
-                if (distance < min) {
-                    min = distance;
-                    closest = validBlockIds[i];
-                }
+    // Built on first use, and again if the colors are replaced
+    private volatile ColorIndex blockIndex;
+    private volatile ColorIndex layerIndex;
+    private volatile ColorIndex mixBiomeIndex;
+    private volatile ColorIndex biomeIndex;
+
+    private ColorIndex getBlockIndex() {
+        ColorIndex index = blockIndex;
+        if (index == null || !index.isFor(validColors)) {
+            blockIndex = index = new ColorIndex(this, validColors, validColors, true);
+        }
+        return index;
+    }
+
+    private ColorIndex getLayerIndex() {
+        ColorIndex index = layerIndex;
+        if (index == null || !index.isFor(validLayerColors)) {
+            layerIndex = index = new ColorIndex(this, validLayerColors, validLayerColors, true);
+        }
+        return index;
+    }
+
+    private ColorIndex getMixBiomeIndex() {
+        ColorIndex index = mixBiomeIndex;
+        if (index == null || !index.isFor(validMixBiomeColors)) {
+            mixBiomeIndex = index = new ColorIndex(this, validMixBiomeColors, validMixBiomeColors, true);
+        }
+        return index;
+    }
+
+    private ColorIndex getBiomeIndex() {
+        ColorIndex index = biomeIndex;
+        BiomeColor[] biomes = validBiomes;
+        if (index == null || !index.isFor(biomes)) {
+            int[] colors = new int[biomes.length];
+            for (int i = 0; i < biomes.length; i++) {
+                colors[i] = biomes[i].grassCombined;
             }
+            biomeIndex = index = new ColorIndex(this, biomes, colors, false);
         }
-        if (min == Long.MAX_VALUE) return null;
-        return BlockTypes.get(closest);
+        return index;
+    }
+
+    public BlockTypes getNearestBlock(int color) {
+        int index = getBlockIndex().getNearest(color, false);
+        if (index == -1) return null;
+        return BlockTypes.get(validBlockIds[index]);
     }
 
     public BlockType getNearestBlock(BlockType block) {
@@ -400,24 +428,9 @@ public BlockType getNearestBlock(BlockType block) {
     }
 
     public BlockType getNextNearestBlock(int color) {
-        long min = Long.MAX_VALUE;
-        int closest = 0;
-        int red1 = (color >> 16) & 0xFF;
-        int green1 = (color >> 8) & 0xFF;
-        int blue1 = (color >> 0) & 0xFF;
-        int alpha = (color >> 24) & 0xFF;
-        for (int i = 0; i < validColors.length; i++) {
-            int other = validColors[i];
-            if (other != color && ((other >> 24) & 0xFF) == alpha) {
-                long distance = colorDistance(red1, green1, blue1, other);
-                if (distance < min) {
-                    min = distance;
-                    closest = validBlockIds[i];
-                }
-            }
-        }
-        if (min == Long.MAX_VALUE) return null;
-        return BlockTypes.get(closest);
+        int index = getBlockIndex().getNearest(color, true);
+        if (index == -1) return null;
+        return BlockTypes.get(validBlockIds[index]);
     }
 
     private BlockTypes[] layerBuffer = new BlockTypes[2];
@@ -429,22 +442,9 @@ public BlockType getNextNearestBlock(int color) {
      * @return
      */
     public BlockTypes[] getNearestLayer(int color) {
-        int[] closest = null;
-        long min = Long.MAX_VALUE;
-        int red1 = (color >> 16) & 0xFF;
-        int green1 = (color >> 8) & 0xFF;
-        int blue1 = (color >> 0) & 0xFF;
-        int alpha = (color >> 24) & 0xFF;
-        for (int i = 0; i < validLayerColors.length; i++) {
-            int other = validLayerColors[i];
-            if (((other >> 24) & 0xFF) == alpha) {
-                long distance = colorDistance(red1, green1, blue1, other);
-                if (distance < min) {
-                    min = distance;
-                    closest = validLayerBlocks[i];
-                }
-            }
-        }
+        int index = getLayerIndex().getNearest(color, false);
+        if (index == -1) return null;
+        int[] closest = validLayerBlocks[index];
         layerBuffer[0] = BlockTypes.get(closest[0]);
         layerBuffer[1] = BlockTypes.get(closest[1]);
         return layerBuffer;
@@ -481,21 +481,10 @@ public boolean getIsBlockCloserThanBiome(int[] blockAndBiomeIdOutput, int color,
     public int getBiomeMix(int[] biomeIdsOutput, int color) {
         long closest = Long.MAX_VALUE;
         int closestAverage = Integer.MAX_VALUE;
-        long min = Long.MAX_VALUE;
-        int red1 = (color >> 16) & 0xFF;
-        int green1 = (color >> 8) & 0xFF;
-        int blue1 = (color >> 0) & 0xFF;
-        int alpha = (color >> 24) & 0xFF;
-        for (int i = 0; i < validMixBiomeColors.length; i++) {
-            int other = validMixBiomeColors[i];
-            if (((other >> 24) & 0xFF) == alpha) {
-                long distance = colorDistance(red1, green1, blue1, other);
-                if (distance < min) {
-                    min = distance;
-                    closest = validMixBiomeIds[i];
-                    closestAverage = other;
-                }
-            }
+        int index = getMixBiomeIndex().getNearest(color, false);
+        if (index != -1) {
+            closest = validMixBiomeIds[index];
+            closestAverage = validMixBiomeColors[index];
         }
         biomeIdsOutput[0] = (int) ((closest >> 0) & 0xFF);
         biomeIdsOutput[1] = (int) ((closest >> 8) & 0xFF);
@@ -508,20 +497,8 @@ public BiomeColor getNearestBiome(int color) {
         if (grass == 0) {
             return null;
         }
-        BiomeColor closest = null;
-        long min = Long.MAX_VALUE;
-        int red = (color >> 16) & 0xFF;
-        int green = (color >> 8) & 0xFF;
-        int blue = (color >> 0) & 0xFF;
-        for (int i = 0; i < validBiomes.length; i++) {
-            BiomeColor biome = validBiomes[i];
-            long distance = colorDistance(red, green, blue, biome.grassCombined);
-            if (distance < min) {
-                min = distance;
-                closest = biome;
-            }
-        }
-        return closest;
+        int index = getBiomeIndex().getNearest(color, false);
+        return index == -1 ? null : validBiomes[index];
     }
 
     public File getFolder() {
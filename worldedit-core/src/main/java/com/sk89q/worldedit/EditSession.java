@@ -34,6 +34,7 @@
 import com.boydti.fawe.object.collection.LocalBlockVectorSet;
 import com.boydti.fawe.object.exception.FaweException;
 import com.boydti.fawe.object.extent.*;
+import com.boydti.fawe.object.function.SectionMaskingFilter;
 import com.boydti.fawe.object.function.SurfaceRegionFunction;
 import com.boydti.fawe.object.mask.ResettableMask;
 import com.boydti.fawe.object.pattern.ExistingPattern;
@@ -1329,10 +1330,32 @@ public boolean apply(Vector position) throws WorldEditException {
                 return mask.test(position);
             }
         }, this);
-        Operations.completeBlindly(visitor);
+        prefetch(region);
+        try {
+            Operations.completeBlindly(visitor);
+        } finally {
+            unpin(region);
+        }
         return visitor.getAffected();
     }
 
+    /**
+     * Start reading the chunks of a region in the background (see {@link FaweQueue#prefetch(int, int, int, int)})
+     *
+     * @param region
+     */
+    private void prefetch(Region region) {
+        Vector min = region.getMinimumPoint();
+        Vector max = region.getMaximumPoint();
+        queue.prefetch(min.getBlockX() >> 4, min.getBlockZ() >> 4, max.getBlockX() >> 4, max.getBlockZ() >> 4);
+    }
+
+    private void unpin(Region region) {
+        Vector min = region.getMinimumPoint();
+        Vector max = region.getMaximumPoint();
+        queue.unpin(min.getBlockX() >> 4, min.getBlockZ() >> 4, max.getBlockX() >> 4, max.getBlockZ() >> 4);
+    }
+
     public int fall(final Region region, boolean fullHeight, final BlockStateHolder replace) {
         FlatRegion flat = asFlatRegion(region);
         final int startPerformY = region.getMinimumPoint().getBlockY();
@@ -1569,9 +1592,11 @@ public int setBlocks(final Region region, final BlockStateHolder block) {
         }
         try {
             if (hasExtraExtents()) {
-                RegionVisitor visitor = new RegionVisitor(region, new BlockReplace(extent, (block)), this);
+                int changesBefore = changes;
+                RegionVisitor visitor = new RegionVisitor(region, new BlockReplace(this, (block)), this);
+                visitor.setParallel(true);
                 Operations.completeBlindly(visitor);
-                this.changes += visitor.getAffected();
+                this.changes = changesBefore + visitor.getAffected();
             } else {
                 Iterator<BlockVector> iter = region.iterator();
                 while (iter.hasNext()) {
@@ -1605,7 +1630,8 @@ public int setBlocks(final Region region, final Pattern pattern) {
             return setBlocks(region, (BlockStateHolder) pattern);
         }
         final BlockReplace replace = new BlockReplace(EditSession.this, pattern);
-        final RegionVisitor visitor = new RegionVisitor(region, replace, queue instanceof MappedFaweQueue ? (MappedFaweQueue) queue : null);
+        final RegionVisitor visitor = new RegionVisitor(region, replace, this);
+        visitor.setParallel(true);
         Operations.completeBlindly(visitor);
         return this.changes = visitor.getAffected();
     }
@@ -1655,8 +1681,17 @@ public int replaceBlocks(final Region region, final Mask mask, final Pattern pat
         checkNotNull(mask);
         checkNotNull(pattern);
         final BlockReplace replace = new BlockReplace(EditSession.this, pattern);
-        final RegionMaskingFilter filter = new RegionMaskingFilter(mask, replace);
-        final RegionVisitor visitor = new RegionVisitor(region, filter, queue instanceof MappedFaweQueue ? (MappedFaweQueue) queue : null);
+        final RegionFunction filter;
+        BlockMask states = SectionMaskingFilter.getStateMask(mask, this);
+        if (states != null && queue instanceof MappedFaweQueue) {
+            // Skips sections with nothing to replace
+            ExtentTraverser<ProcessedWEExtent> checks = new ExtentTraverser(extent).find(ProcessedWEExtent.class);
+            filter = new SectionMaskingFilter((MappedFaweQueue) queue, mask, states, replace, checks != null ? checks.get() : null, getRegionExtent());
+        } else {
+            filter = new RegionMaskingFilter(mask, replace);
+        }
+        final RegionVisitor visitor = new RegionVisitor(region, filter, this);
+        visitor.setParallel(true);
         Operations.completeBlindly(visitor);
         return this.changes = visitor.getAffected();
     }
@@ -2645,32 +2680,46 @@ public int makeForest(final Vector basePosition, final int size, final double de
     public List<Countable<BlockType>> getBlockDistribution(final Region region) {
         int[] counter = new int[BlockTypes.size()];
 
-        if (region instanceof CuboidRegion) {
-            // Doing this for speed
-            final Vector min = region.getMinimumPoint();
-            final Vector max = region.getMaximumPoint();
-
-            final int minX = min.getBlockX();
-            final int minY = min.getBlockY();
-            final int minZ = min.getBlockZ();
-            final int maxX = max.getBlockX();
-            final int maxY = max.getBlockY();
-            final int maxZ = max.getBlockZ();
-
-            MutableBlockVector mutable = new MutableBlockVector(minX, minY, minZ);
-            for (int x = minX; x <= maxX; ++x) {
-                for (int y = minY; y <= maxY; ++y) {
-                    for (int z = minZ; z <= maxZ; ++z) {
-                        BlockType type = getBlockType(x, y, z);
-                        counter[type.getInternalId()]++;
+        prefetch(region);
+        try {
+            if (region instanceof CuboidRegion) {
+                // Doing this for speed
+                final Vector min = region.getMinimumPoint();
+                final Vector max = region.getMaximumPoint();
+
+                final int minX = min.getBlockX();
+                final int minY = min.getBlockY();
+                final int minZ = min.getBlockZ();
+                final int maxX = max.getBlockX();
+                final int maxY = max.getBlockY();
+                final int maxZ = max.getBlockZ();
+
+                MutableBlockVector mutable = new MutableBlockVector(minX, minY, minZ);
+                // Chunk by chunk, in the order the chunks are prefetched
+                for (int cz = minZ >> 4; cz <= maxZ >> 4; cz++) {
+                    int bz = Math.max(minZ, cz << 4);
+                    int tz = Math.min(maxZ, (cz << 4) + 15);
+                    for (int cx = minX >> 4; cx <= maxX >> 4; cx++) {
+                        int bx = Math.max(minX, cx << 4);
+                        int tx = Math.min(maxX, (cx << 4) + 15);
+                        for (int y = minY; y <= maxY; ++y) {
+                            for (int z = bz; z <= tz; ++z) {
+                                for (int x = bx; x <= tx; ++x) {
+                                    BlockType type = getBlockType(x, y, z);
+                                    counter[type.getInternalId()]++;
+                                }
+                            }
+                        }
                     }
                 }
+            } else {
+                for (final Vector pt : region) {
+                    BlockType type = getBlockType(pt);
+                    counter[type.getInternalId()]++;
+                }
             }
-        } else {
-            for (final Vector pt : region) {
-                BlockType type = getBlockType(pt);
-                counter[type.getInternalId()]++;
-            }
+        } finally {
+            unpin(region);
         }
         List<Countable<BlockType>> distribution = new ArrayList<>();
         for (int i = 0; i < counter.length; i++) {
@@ -2692,41 +2741,55 @@ public List<Countable<BlockType>> getBlockDistribution(final Region region) {
     public List<Countable<BlockStateHolder>> getBlockDistributionWithData(final Region region) {
         int[][] counter = new int[BlockTypes.size()][];
 
-        if (region instanceof CuboidRegion) {
-            // Doing this for speed
-            final Vector min = region.getMinimumPoint();
-            final Vector max = region.getMaximumPoint();
-
-            final int minX = min.getBlockX();
-            final int minY = min.getBlockY();
-            final int minZ = min.getBlockZ();
-            final int maxX = max.getBlockX();
-            final int maxY = max.getBlockY();
-            final int maxZ = max.getBlockZ();
-
-            for (int x = minX; x <= maxX; ++x) {
-                for (int y = minY; y <= maxY; ++y) {
-                    for (int z = minZ; z <= maxZ; ++z) {
-                        BlockStateHolder blk = getBlock(x, y, z);
-                        BlockType type = blk.getBlockType();
-                        int[] stateCounter = counter[type.getInternalId()];
-                        if (stateCounter == null) {
-                            counter[type.getInternalId()] = stateCounter = new int[type.getMaxStateId() + 1];
+        prefetch(region);
+        try {
+            if (region instanceof CuboidRegion) {
+                // Doing this for speed
+                final Vector min = region.getMinimumPoint();
+                final Vector max = region.getMaximumPoint();
+
+                final int minX = min.getBlockX();
+                final int minY = min.getBlockY();
+                final int minZ = min.getBlockZ();
+                final int maxX = max.getBlockX();
+                final int maxY = max.getBlockY();
+                final int maxZ = max.getBlockZ();
+
+                // Chunk by chunk, in the order the chunks are prefetched
+                for (int cz = minZ >> 4; cz <= maxZ >> 4; cz++) {
+                    int bz = Math.max(minZ, cz << 4);
+                    int tz = Math.min(maxZ, (cz << 4) + 15);
+                    for (int cx = minX >> 4; cx <= maxX >> 4; cx++) {
+                        int bx = Math.max(minX, cx << 4);
+                        int tx = Math.min(maxX, (cx << 4) + 15);
+                        for (int y = minY; y <= maxY; ++y) {
+                            for (int z = bz; z <= tz; ++z) {
+                                for (int x = bx; x <= tx; ++x) {
+                                    BlockStateHolder blk = getBlock(x, y, z);
+                                    BlockType type = blk.getBlockType();
+                                    int[] stateCounter = counter[type.getInternalId()];
+                                    if (stateCounter == null) {
+                                        counter[type.getInternalId()] = stateCounter = new int[type.getMaxStateId() + 1];
+                                    }
+                                    stateCounter[blk.getInternalPropertiesId()]++;
+                                }
+                            }
                         }
-                        stateCounter[blk.getInternalPropertiesId()]++;
                     }
                 }
-            }
-        } else {
-            for (final Vector pt : region) {
-                BlockStateHolder blk = this.getBlock(pt);
-                BlockType type = blk.getBlockType();
-                int[] stateCounter = counter[type.getInternalId()];
-                if (stateCounter == null) {
-                    counter[type.getInternalId()] = stateCounter = new int[type.getMaxStateId() + 1];
+            } else {
+                for (final Vector pt : region) {
+                    BlockStateHolder blk = this.getBlock(pt);
+                    BlockType type = blk.getBlockType();
+                    int[] stateCounter = counter[type.getInternalId()];
+                    if (stateCounter == null) {
+                        counter[type.getInternalId()] = stateCounter = new int[type.getMaxStateId() + 1];
+                    }
+                    stateCounter[blk.getInternalPropertiesId()]++;
                 }
-                stateCounter[blk.getInternalPropertiesId()]++;
             }
+        } finally {
+            unpin(region);
         }
         List<Countable<BlockStateHolder>> distribution = new ArrayList<>();
         for (int typeId = 0; typeId < counter.length; typeId++) {
@@ -30,6 +30,8 @@
 import com.boydti.fawe.object.changeset.AnvilHistory;
 import com.boydti.fawe.object.changeset.DiskStorageHistory;
 import com.boydti.fawe.object.changeset.FaweChangeSet;
+import com.boydti.fawe.object.changeset.HistoryManager;
+import com.boydti.fawe.object.changeset.MemoryOptimizedHistory;
 import com.boydti.fawe.object.clipboard.MultiClipboardHolder;
 import com.boydti.fawe.object.collection.SparseBitSet;
 import com.boydti.fawe.object.extent.ResettableExtent;
@@ -132,6 +134,9 @@ public Object remove(int index) {
     private transient World currentWorld;
     private transient UUID uuid;
     private transient volatile long historySize = 0;
+    // The bytes each history in memory was counted as, guarded by the history lock
+    private transient Map<MemoryOptimizedHistory, Long> historyMemory = new IdentityHashMap<>();
+    private transient volatile long historyMemoryTotal = 0;
 
     private transient VirtualWorld virtual;
 
@@ -193,7 +198,7 @@ public boolean loadSessionHistoryFromDisk(UUID uuid, World world) {
             this.uuid = uuid;
             // Save history
             saveHistoryNegativeIndex(uuid, currentWorld);
-            history.clear();
+            discardHistory();
             currentWorld = world;
             // Load history
             if (loadHistoryChangeSets(uuid, currentWorld)) {
@@ -207,6 +212,7 @@ public boolean loadSessionHistoryFromDisk(UUID uuid, World world) {
 
     private boolean loadHistoryChangeSets(UUID uuid, World world) {
         SparseBitSet set = new SparseBitSet();
+        long[] size = new long[1];
         final File folder = MainUtil.getFile(Fawe.imp().getDirectory(), Settings.IMP.PATHS.HISTORY + File.separator + Fawe.imp().getWorldName(world) + File.separator + uuid);
         if (folder.isDirectory()) {
             folder.listFiles(new FileFilter() {
@@ -216,10 +222,18 @@ public boolean accept(File pathname) {
                     Integer val = null;
                     if (pathname.isDirectory()) {
                         val = StringMan.toInteger(name, 0, name.length());
-
+                        if (val != null) {
+                            File[] files = pathname.listFiles();
+                            if (files != null) {
+                                for (File file : files) {
+                                    size[0] += file.length();
+                                }
+                            }
+                        }
                     } else {
                         int i = name.lastIndexOf('.');
                         if (i != -1) val = StringMan.toInteger(name, 0, i);
+                        if (val != null) size[0] += pathname.length();
                     }
                     if (val != null) set.set(val);
                     return false;
@@ -227,7 +241,7 @@ public boolean accept(File pathname) {
             });
         }
         if (!set.isEmpty()) {
-            historySize = MainUtil.getTotalSize(folder.toPath());
+            historySize = size[0];
             for (int index = set.nextSetBit(0); index != -1; index = set.nextSetBit(index + 1)) {
                 history.add(index);
             }
@@ -350,12 +364,105 @@ public void setTimezone(TimeZone timezone) {
      * Clear history.
      */
     public void clearHistory() {
-        history.clear();
+        discardHistory();
         historyNegativeIndex = 0;
         historySize = 0;
         currentWorld = null;
     }
 
+    private void discardHistory() {
+        synchronized (history) {
+            for (Object item : history) {
+                HistoryManager.IMP.discard(item);
+            }
+            history.clear();
+            historyMemory.clear();
+            updateHistoryMemory(-historyMemoryTotal);
+        }
+    }
+
+    /**
+     * @return the estimated bytes of this session's history held in memory
+     */
+    public long getHistoryMemory() {
+        return historyMemoryTotal;
+    }
+
+    private void addHistoryMemory(Object item) {
+        if (item instanceof MemoryOptimizedHistory) {
+            synchronized (history) {
+                long size = MainUtil.getSize((MemoryOptimizedHistory) item);
+                Long previous = historyMemory.put((MemoryOptimizedHistory) item, size);
+                updateHistoryMemory(size - (previous == null ? 0 : previous));
+            }
+        }
+    }
+
+    private void removeHistoryMemory(Object item) {
+        if (item instanceof MemoryOptimizedHistory) {
+            synchronized (history) {
+                Long size = historyMemory.remove(item);
+                if (size != null) {
+                    updateHistoryMemory(-size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called with the history lock held, so the manager sees the changes in order
+     */
+    private void updateHistoryMemory(long delta) {
+        if (delta != 0) {
+            historyMemoryTotal += delta;
+            HistoryManager.IMP.update(this, delta);
+        }
+    }
+
+    /**
+     * Move this session's history from memory to disk, oldest first, while the server is over its history memory limit
+     *
+     * @return if any history was moved
+     * @see HistoryManager
+     */
+    public boolean spillHistory() {
+        List<MemoryOptimizedHistory> inMemory = new ArrayList<>();
+        synchronized (history) {
+            for (Object item : history) {
+                if (item instanceof MemoryOptimizedHistory) {
+                    inMemory.add((MemoryOptimizedHistory) item);
+                }
+            }
+        }
+        boolean moved = false;
+        for (MemoryOptimizedHistory memory : inMemory) {
+            if (!HistoryManager.IMP.isOverLimit()) {
+                break;
+            }
+            // Written outside the lock, as it waits for the history to finish closing
+            DiskStorageHistory disk = HistoryManager.IMP.spill(memory);
+            if (disk == null) {
+                continue;
+            }
+            synchronized (this) {
+                // The history lock as well, as clearHistory() only holds that
+                synchronized (history) {
+                    int index = history.indexOf(memory);
+                    if (index == -1) {
+                        // No longer in the history
+                        HistoryManager.IMP.delete(disk);
+                        continue;
+                    }
+                    historySize += MainUtil.getSize(disk) - MainUtil.getSize(memory);
+                    history.set(index, disk);
+                    removeHistoryMemory(memory);
+                    moved = true;
+                }
+            }
+        }
+        return moved;
+    }
+
     /**
      * Remember an edit session for the undo history. If the history maximum
      * size is reached, old edit sessions will be discarded.
@@ -410,11 +517,14 @@ public synchronized void remember(Player player, World world, ChangeSet changeSe
                     }
                     historySize -= MainUtil.getSize(oldChangeSet);
                     iter.remove();
+                    removeHistoryMemory(oldChangeSet);
+                    HistoryManager.IMP.discard(oldChangeSet);
                 }
             }
         }
         historySize += MainUtil.getSize(changeSet);
         history.add(changeSet);
+        addHistoryMemory(changeSet);
         if (getHistoryNegativeIndex() != 0) {
             setDirty();
             historyNegativeIndex = 0;
@@ -423,7 +533,8 @@ public synchronized void remember(Player player, World world, ChangeSet changeSe
             int limitMb = limit.MAX_HISTORY;
             while (((!Settings.IMP.HISTORY.USE_DISK && history.size() > MAX_HISTORY_SIZE) || (historySize >> 20) > limitMb) && history.size() > 1) {
                 FaweChangeSet item = (FaweChangeSet) history.remove(0);
-                item.delete();
+                removeHistoryMemory(item);
+                HistoryManager.IMP.delete(item);
                 long size = MainUtil.getSize(item);
                 historySize -= size;
             }
@@ -469,6 +580,8 @@ public synchronized void remember(final EditSession editSession, final boolean a
                     }
                     historySize -= MainUtil.getSize(oldChangeSet);
                     iter.remove();
+                    removeHistoryMemory(oldChangeSet);
+                    HistoryManager.IMP.discard(oldChangeSet);
                 }
             }
         }
@@ -483,9 +596,11 @@ public synchronized void remember(final EditSession editSession, final boolean a
         } else {
             history.add(0, changeSet);
         }
+        addHistoryMemory(changeSet);
         while (((!Settings.IMP.HISTORY.USE_DISK && history.size() > MAX_HISTORY_SIZE) || (historySize >> 20) > limitMb) && history.size() > 1) {
             FaweChangeSet item = (FaweChangeSet) history.remove(0);
-            item.delete();
+            removeHistoryMemory(item);
+            HistoryManager.IMP.delete(item);
             long size = MainUtil.getSize(item);
             historySize -= size;
         }
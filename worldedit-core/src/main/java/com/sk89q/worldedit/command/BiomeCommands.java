@@ -228,7 +228,8 @@ public void setBiome(Player player, LocalSession session, EditSession editSessio
         if (mask2d != null) {
             replace = new FlatRegionMaskingFilter(mask2d, replace);
         }
-        FlatRegionVisitor visitor = new FlatRegionVisitor(Regions.asFlatRegion(region), replace);
+        FlatRegionVisitor visitor = new FlatRegionVisitor(Regions.asFlatRegion(region), replace, editSession);
+        visitor.setParallel(true);
         Operations.completeLegacy(visitor);
 
         BBC.BIOME_CHANGED.send(player, visitor.getAffected());
@@ -3,6 +3,7 @@
 import com.boydti.fawe.Fawe;
 import com.boydti.fawe.FaweCache;
 import com.boydti.fawe.config.BBC;
+import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.object.FawePlayer;
 import com.boydti.fawe.object.RunnableVal;
 import com.boydti.fawe.object.brush.BrushSettings;
@@ -628,12 +629,11 @@ public synchronized void visualize(BrushTool.BrushAction action, Player player)
                 }
             }
         }
-        if (visualExtent != null) {
-            // clear old data
-            visualExtent.clear(newVisualExtent, fp);
+        // Send only what changed since the last visualization
+        if (!newVisualExtent.update(visualExtent, Settings.IMP.EXPERIMENTAL.VISUALIZATION_BLOCKS, fp)) {
+            queueVisualization(fp);
         }
         visualExtent = newVisualExtent;
-        newVisualExtent.visualize(fp);
     }
 
     public void clear(Player player) {
@@ -27,6 +27,7 @@ public class BuiltInClipboardFormat {
     public static final ClipboardFormat MCEDIT_SCHEMATIC = ClipboardFormat.SCHEMATIC;
     public static final ClipboardFormat SPONGE_SCHEMATIC = ClipboardFormat.SPONGE_SCHEMATIC;
     public static final ClipboardFormat STRUCTURE = ClipboardFormat.STRUCTURE;
+    public static final ClipboardFormat MAPPED = ClipboardFormat.MAPPED;
     public static final ClipboardFormat PNG = ClipboardFormat.PNG;
 
     @Deprecated
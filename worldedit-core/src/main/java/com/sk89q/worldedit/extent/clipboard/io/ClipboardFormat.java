@@ -25,8 +25,10 @@
 import com.boydti.fawe.object.RunnableVal;
 import com.boydti.fawe.object.clipboard.*;
 import com.boydti.fawe.object.io.FastByteArrayOutputStream;
+import com.boydti.fawe.object.io.PGZIPInputStream;
 import com.boydti.fawe.object.io.PGZIPOutputStream;
 import com.boydti.fawe.object.io.ResettableFileInputStream;
+import com.boydti.fawe.object.schematic.MappedFormat;
 import com.boydti.fawe.object.schematic.PNGWriter;
 import com.boydti.fawe.object.schematic.Schematic;
 import com.boydti.fawe.object.schematic.StructureFormat;
@@ -82,7 +84,7 @@ public ClipboardReader getReader(InputStream inputStream) throws IOException {
                 inputStream = new ResettableFileInputStream((FileInputStream) inputStream);
             }
             BufferedInputStream buffered = new BufferedInputStream(inputStream);
-            NBTInputStream nbtStream = new NBTInputStream(new BufferedInputStream(new GZIPInputStream(buffered)));
+            NBTInputStream nbtStream = new NBTInputStream(new BufferedInputStream(new PGZIPInputStream(buffered)));
             SchematicReader input = new SchematicReader(nbtStream);
             input.setUnderlyingStream(inputStream);
             return input;
@@ -132,7 +134,7 @@ public ClipboardReader getReader(InputStream inputStream) throws IOException {
                 inputStream = new ResettableFileInputStream((FileInputStream) inputStream);
             }
             BufferedInputStream buffered = new BufferedInputStream(inputStream);
-            NBTInputStream nbtStream = new NBTInputStream(new BufferedInputStream(new GZIPInputStream(buffered)));
+            NBTInputStream nbtStream = new NBTInputStream(new BufferedInputStream(new PGZIPInputStream(buffered)));
             SpongeSchematicReader input = new SpongeSchematicReader(nbtStream);
             return input;
         }
@@ -145,6 +147,8 @@ public ClipboardWriter getWriter(OutputStream outputStream) throws IOException {
             } else {
                 outputStream = new BufferedOutputStream(outputStream);
                 PGZIPOutputStream pigz = new PGZIPOutputStream(outputStream);
+                // So PGZIPInputStream can read it on several threads
+                pigz.setMultiMember(true);
                 gzip = pigz;
             }
             NBTOutputStream nbtStream = new NBTOutputStream(new BufferedOutputStream(gzip));
@@ -219,6 +223,36 @@ public String getExtension() {
         }
     }),
 
+    /**
+     * A palette and raw block array which is memory mapped instead of decoded (see {@link MappedClipboard})
+     */
+    MAPPED(new AbstractClipboardFormat("MAPPED", "mapped", "mmap", "fawe") {
+        @Override
+        public ClipboardReader getReader(InputStream inputStream) throws IOException {
+            return new MappedFormat(inputStream);
+        }
+
+        @Override
+        public ClipboardWriter getWriter(OutputStream outputStream) throws IOException {
+            return new MappedFormat(new BufferedOutputStream(outputStream));
+        }
+
+        @Override
+        public boolean isFormat(File file) {
+            if (!file.getName().toLowerCase().endsWith(".fawe")) return false;
+            try (DataInputStream str = new DataInputStream(new FileInputStream(file))) {
+                return str.readInt() == MappedClipboard.MAGIC;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public String getExtension() {
+            return "fawe";
+        }
+    }),
+
     /**
      * Isometric PNG writer
      */
@@ -19,6 +19,7 @@
 
 package com.sk89q.worldedit.function.mask;
 
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.internal.expression.Expression;
 import com.sk89q.worldedit.internal.expression.ExpressionException;
@@ -35,7 +36,7 @@
  * <p>Expressions are evaluated as {@code true} if they return a value
  * greater than {@code 0}.</p>
  */
-public class ExpressionMask extends AbstractMask {
+public class ExpressionMask extends AbstractMask implements ThreadUnsafe {
 
     private final Expression expression;
 
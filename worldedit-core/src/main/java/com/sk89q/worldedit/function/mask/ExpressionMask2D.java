@@ -19,6 +19,7 @@
 
 package com.sk89q.worldedit.function.mask;
 
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.sk89q.worldedit.Vector2D;
 import com.sk89q.worldedit.internal.expression.Expression;
 import com.sk89q.worldedit.internal.expression.ExpressionException;
@@ -26,7 +27,7 @@
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-public class ExpressionMask2D extends AbstractMask2D {
+public class ExpressionMask2D extends AbstractMask2D implements ThreadUnsafe {
 
     private final Expression expression;
 
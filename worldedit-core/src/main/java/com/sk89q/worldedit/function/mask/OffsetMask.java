@@ -1,5 +1,6 @@
 package com.sk89q.worldedit.function.mask;
 
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.sk89q.worldedit.MutableBlockVector;
 import com.sk89q.worldedit.Vector;
 import javax.annotation.Nullable;
@@ -11,7 +12,7 @@
  * Checks whether another mask tests true for a position that is offset
  * a given vector.
  */
-public class OffsetMask extends AbstractMask {
+public class OffsetMask extends AbstractMask implements ThreadUnsafe {
 
     private Mask mask;
     private Vector offset;
@@ -0,0 +1,181 @@
+package com.sk89q.worldedit.function.operation;
+
+import com.boydti.fawe.config.BBC;
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.example.MappedFaweQueue;
+import com.boydti.fawe.util.MathMan;
+import com.sk89q.worldedit.MutableBlockVector;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.function.RegionFunction;
+import com.sk89q.worldedit.math.transform.Transform;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import java.util.List;
+
+/**
+ * Applies a function to each source position of a transformed copy, grouped by the destination chunk it is written to<br>
+ * - A position is written to round(transform(position - origin) + origin) + translation (see {@link com.boydti.fawe.object.extent.PositionTransformExtent})<br>
+ * - Every destination chunk is finished before moving to the next, so a rotated or flipped paste doesn't scatter writes across the queue<br>
+ * - Only for transforms which map blocks to blocks (an on axis {@link com.sk89q.worldedit.math.transform.AffineTransform})
+ */
+public class ChunkOrderedBlockCopy implements Operation {
+    private final Region region;
+    private final RegionFunction function;
+    private final Vector origin;
+    private final Vector translation;
+    private final MappedFaweQueue queue;
+    private Transform transform;
+
+    private final MutableBlockVector mutable = new MutableBlockVector();
+    private int affected;
+    private int chunks;
+    private int chunksTotal;
+
+    /**
+     * @param region      the source region
+     * @param function    the function to apply to each source position
+     * @param origin      the origin of the transform
+     * @param translation the offset added after the transform
+     * @param transform   the transform
+     * @param queue       the destination queue to preload chunks from (or null)
+     */
+    public ChunkOrderedBlockCopy(Region region, RegionFunction function, Vector origin, Vector translation, Transform transform, MappedFaweQueue queue) {
+        this.region = region;
+        this.function = function;
+        this.origin = origin;
+        this.translation = translation;
+        this.transform = transform;
+        this.queue = queue;
+    }
+
+    /**
+     * Set the transform used by the next {@link #resume(RunContext)} (e.g. for the next repetition)
+     *
+     * @param transform
+     */
+    public void setTransform(Transform transform) {
+        this.transform = transform;
+    }
+
+    @Override
+    public Operation resume(RunContext run) throws WorldEditException {
+        Transform inverse = transform.inverse();
+        Vector min = region.getMinimumPoint();
+        Vector max = region.getMaximumPoint();
+        boolean cuboid = region instanceof CuboidRegion;
+
+        int tx = translation.getBlockX();
+        int ty = translation.getBlockY();
+        int tz = translation.getBlockZ();
+
+        CuboidRegion destRegion = getBounds(transform, min, max);
+        Vector destMin = destRegion.getMinimumPoint();
+        Vector destMax = destRegion.getMaximumPoint();
+        int minY = destMin.getBlockY() + ty;
+        int maxY = destMax.getBlockY() + ty;
+        int minCX = (destMin.getBlockX() + tx) >> 4;
+        int minCZ = (destMin.getBlockZ() + tz) >> 4;
+        int maxCX = (destMax.getBlockX() + tx) >> 4;
+        int maxCZ = (destMax.getBlockZ() + tz) >> 4;
+        int width = maxCX - minCX + 1;
+
+        chunks = 0;
+        chunksTotal = width * (maxCZ - minCZ + 1);
+        int preload = queue != null ? Math.max(0, Settings.IMP.QUEUE.PRELOAD_CHUNKS) : 0;
+        for (int i = 0; i < preload && i < chunksTotal; i++) {
+            queue.queueChunkLoad(minCX + i % width, minCZ + i / width);
+        }
+
+        for (int i = 0; i < chunksTotal; i++, chunks++) {
+            if (i + preload < chunksTotal && preload != 0) {
+                queue.queueChunkLoad(minCX + (i + preload) % width, minCZ + (i + preload) / width);
+            }
+            int cx = minCX + i % width;
+            int cz = minCZ + i / width;
+            // The source positions which can land in this chunk
+            Vector chunkMin = new Vector(Math.max(cx << 4, destMin.getBlockX() + tx) - tx, minY - ty, Math.max(cz << 4, destMin.getBlockZ() + tz) - tz);
+            Vector chunkMax = new Vector(Math.min((cx << 4) + 15, destMax.getBlockX() + tx) - tx, maxY - ty, Math.min((cz << 4) + 15, destMax.getBlockZ() + tz) - tz);
+            CuboidRegion sourceBox = getBounds(inverse, chunkMin, chunkMax);
+            Vector boxMin = sourceBox.getMinimumPoint();
+            Vector boxMax = sourceBox.getMaximumPoint();
+            // Widened by a block in case of rounding, the exact chunk is checked below
+            int x1 = Math.max(min.getBlockX(), boxMin.getBlockX() - 1);
+            int y1 = Math.max(min.getBlockY(), boxMin.getBlockY() - 1);
+            int z1 = Math.max(min.getBlockZ(), boxMin.getBlockZ() - 1);
+            int x2 = Math.min(max.getBlockX(), boxMax.getBlockX() + 1);
+            int y2 = Math.min(max.getBlockY(), boxMax.getBlockY() + 1);
+            int z2 = Math.min(max.getBlockZ(), boxMax.getBlockZ() + 1);
+            for (int y = y1; y <= y2; y++) {
+                for (int z = z1; z <= z2; z++) {
+                    for (int x = x1; x <= x2; x++) {
+                        if (!cuboid && !region.contains(x, y, z)) {
+                            continue;
+                        }
+                        Vector dest = apply(transform, x, y, z);
+                        if (((dest.getBlockX() + tx) >> 4) != cx || ((dest.getBlockZ() + tz) >> 4) != cz) {
+                            continue;
+                        }
+                        mutable.setComponents(x, y, z);
+                        if (function.apply(mutable)) {
+                            affected++;
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private Vector apply(Transform transform, double x, double y, double z) {
+        Vector tmp = transform.apply(new Vector(x - origin.getX(), y - origin.getY(), z - origin.getZ()));
+        return new Vector(MathMan.roundInt(tmp.getX() + origin.getX()), MathMan.roundInt(tmp.getY() + origin.getY()), MathMan.roundInt(tmp.getZ() + origin.getZ()));
+    }
+
+    private CuboidRegion getBounds(Transform transform, Vector pos1, Vector pos2) {
+        Vector min = null;
+        Vector max = null;
+        for (int x : new int[]{pos1.getBlockX(), pos2.getBlockX()}) {
+            for (int y : new int[]{pos1.getBlockY(), pos2.getBlockY()}) {
+                for (int z : new int[]{pos1.getBlockZ(), pos2.getBlockZ()}) {
+                    Vector pt = apply(transform, x, y, z);
+                    min = min == null ? pt : Vector.getMinimum(min, pt);
+                    max = max == null ? pt : Vector.getMaximum(max, pt);
+                }
+            }
+        }
+        return new CuboidRegion(min, max);
+    }
+
+    /**
+     * @return the number of source positions the function returned true for
+     */
+    public int getAffected() {
+        return affected;
+    }
+
+    /**
+     * @return the number of destination chunks finished so far
+     */
+    public int getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return the number of destination chunks which can be written to
+     */
+    public int getChunksTotal() {
+        return chunksTotal;
+    }
+
+    @Override
+    public void cancel() {
+
+    }
+
+    @Override
+    public void addStatusMessages(List<String> messages) {
+        messages.add(BBC.VISITOR_CHUNK.format(chunks, chunksTotal));
+        messages.add(BBC.VISITOR_BLOCK.format(getAffected()));
+    }
+}
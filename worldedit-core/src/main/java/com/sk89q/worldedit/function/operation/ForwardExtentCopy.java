@@ -344,7 +344,13 @@ public Operation resume(RunContext run) throws WorldEditException {
             if (copyBiomes && (!(source instanceof BlockArrayClipboard) || ((BlockArrayClipboard) source).IMP.hasBiomes())) {
                 copy = CombinedRegionFunction.combine(copy, new BiomeCopy(source, finalDest));
             }
-            blockCopy = new RegionVisitor(region, copy, queue instanceof MappedFaweQueue ? (MappedFaweQueue) queue : null);
+            MappedFaweQueue mappedQueue = queue instanceof MappedFaweQueue ? (MappedFaweQueue) queue : null;
+            if (transExt != null) {
+                // Rotated or flipped, so visit the source by the chunk it's pasted to
+                blockCopy = new ChunkOrderedBlockCopy(region, copy, from, translation, currentTransform, mappedQueue);
+            } else {
+                blockCopy = new RegionVisitor(region, copy, mappedQueue);
+            }
         }
 
         List<? extends Entity> entities = isCopyingEntities() ? source.getEntities(region) : new ArrayList<>();
@@ -362,6 +368,9 @@ public Operation resume(RunContext run) throws WorldEditException {
             if (transExt != null) {
                 currentTransform = currentTransform.combine(transform);
                 transExt.setTransform(currentTransform);
+                if (blockCopy instanceof ChunkOrderedBlockCopy) {
+                    ((ChunkOrderedBlockCopy) blockCopy).setTransform(currentTransform);
+                }
             }
 
         }
@@ -1,5 +1,6 @@
 package com.sk89q.worldedit.function.pattern;
 
+import com.boydti.fawe.object.ThreadUnsafe;
 import com.sk89q.worldedit.MutableBlockVector;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.blocks.BaseBlock;
@@ -13,7 +14,7 @@
 /**
  * A pattern that reads from {@link Clipboard}.
  */
-public class ClipboardPattern extends AbstractPattern {
+public class ClipboardPattern extends AbstractPattern implements ThreadUnsafe {
 
     private final Clipboard clipboard;
     private final int sx, sy, sz;
@@ -23,7 +23,12 @@
 import com.boydti.fawe.example.MappedFaweQueue;
 import com.boydti.fawe.object.FaweQueue;
 import com.boydti.fawe.object.HasFaweQueue;
+import com.boydti.fawe.object.exception.FaweException;
 import com.boydti.fawe.object.visitor.Fast2DIterator;
+import com.boydti.fawe.object.visitor.ParallelChunkEdit;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.MutableBlockVector2D;
+import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.Vector2D;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.function.FlatRegionFunction;
@@ -45,6 +50,9 @@ public class FlatRegionVisitor implements Operation {
     private MappedFaweQueue queue;
     private int affected = 0;
     private final Iterable<Vector2D> iterator;
+    private final FlatRegion flatRegion;
+    private EditSession editSession;
+    private boolean parallel;
 
     /**
      * Create a new visitor.
@@ -57,6 +65,7 @@ public FlatRegionVisitor(final FlatRegion flatRegion, final FlatRegionFunction f
         checkNotNull(function);
         this.function = function;
         this.iterator = flatRegion.asFlatRegion();
+        this.flatRegion = flatRegion;
     }
 
     public FlatRegionVisitor(final FlatRegion flatRegion, final FlatRegionFunction function, HasFaweQueue hasFaweQueue) {
@@ -64,6 +73,8 @@ public FlatRegionVisitor(final FlatRegion flatRegion, final FlatRegionFunction f
         checkNotNull(function);
         this.function = function;
         this.iterator = flatRegion.asFlatRegion();
+        this.flatRegion = flatRegion;
+        this.editSession = hasFaweQueue instanceof EditSession ? (EditSession) hasFaweQueue : null;
         FaweQueue queue = hasFaweQueue.getQueue();
         this.queue = (MappedFaweQueue) (queue instanceof MappedFaweQueue ? queue : null);
     }
@@ -77,8 +88,54 @@ public int getAffected() {
         return this.affected;
     }
 
+    /**
+     * Allow the region to be split between several threads by chunk column (see {@link RegionVisitor#setParallel(boolean)})
+     *
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
     @Override
     public Operation resume(final RunContext run) throws WorldEditException {
+        if (parallel) {
+            ParallelChunkEdit edit = ParallelChunkEdit.get(editSession, function);
+            if (edit != null) {
+                affected += edit.run(ParallelChunkEdit.getColumns(flatRegion), new ParallelChunkEdit.ColumnFunction() {
+                    private final Vector min = flatRegion.getMinimumPoint();
+                    private final Vector max = flatRegion.getMaximumPoint();
+
+                    @Override
+                    public int apply(int chunkX, int chunkZ) throws WorldEditException {
+                        int minX = Math.max(min.getBlockX(), chunkX << 4);
+                        int minZ = Math.max(min.getBlockZ(), chunkZ << 4);
+                        int maxX = Math.min(max.getBlockX(), (chunkX << 4) + 15);
+                        int maxZ = Math.min(max.getBlockZ(), (chunkZ << 4) + 15);
+                        int y = min.getBlockY();
+                        // Called by several threads at once
+                        MutableBlockVector2D mutable = new MutableBlockVector2D();
+                        int count = 0;
+                        try {
+                            for (int z = minZ; z <= maxZ; z++) {
+                                for (int x = minX; x <= maxX; x++) {
+                                    if (flatRegion.contains(x, y, z)) {
+                                        mutable.setComponents(x, z);
+                                        if (function.apply(mutable)) {
+                                            count++;
+                                        }
+                                    }
+                                }
+                            }
+                        } catch (FaweException e) {
+                            throw new RuntimeException(e);
+                        }
+                        return count;
+                    }
+                });
+                return null;
+            }
+        }
         if (this.queue != null) {
             for (final Vector2D pt : new Fast2DIterator(this.iterator, queue)) {
                 if (this.function.apply(pt)) affected++;
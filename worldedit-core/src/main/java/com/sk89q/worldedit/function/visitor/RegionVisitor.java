@@ -25,14 +25,17 @@
 import com.boydti.fawe.object.FaweQueue;
 import com.boydti.fawe.object.HasFaweQueue;
 import com.boydti.fawe.object.exception.FaweException;
+import com.boydti.fawe.object.visitor.ParallelChunkEdit;
 import com.sk89q.worldedit.BlockVector;
 import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.MutableBlockVector;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.function.RegionFunction;
 import com.sk89q.worldedit.function.operation.Operation;
 import com.sk89q.worldedit.function.operation.Operations;
 import com.sk89q.worldedit.function.operation.RunContext;
+import com.sk89q.worldedit.regions.CuboidRegion;
 import com.sk89q.worldedit.regions.Region;
 import java.util.Iterator;
 import java.util.List;
@@ -46,7 +49,9 @@ public class RegionVisitor implements Operation {
     public final Iterable<? extends Vector> iterable;
     public final RegionFunction function;
     private final MappedFaweQueue queue;
+    private final EditSession editSession;
     private boolean useCuboidIterator = false;
+    private boolean parallel;
     public int affected = 0;
 
     /**
@@ -61,7 +66,7 @@ public RegionVisitor(Region region, RegionFunction function) {
     }
 
     public RegionVisitor(Region region, RegionFunction function, EditSession editSession) {
-        this(region, function, editSession != null ? editSession.getQueue() : null);
+        this((Iterable<BlockVector>) region, function, (HasFaweQueue) editSession);
     }
 
     public RegionVisitor(Region region, RegionFunction function, FaweQueue queue) {
@@ -73,6 +78,18 @@ public RegionVisitor(Iterable<? extends Vector> iterable, RegionFunction functio
         this.iterable = iterable;
         this.function = function;
         this.queue = hasQueue != null && hasQueue.getQueue() instanceof MappedFaweQueue ? (MappedFaweQueue) hasQueue.getQueue() : null;
+        this.editSession = hasQueue instanceof EditSession ? (EditSession) hasQueue : null;
+    }
+
+    /**
+     * Allow the region to be split between several threads by chunk column<br>
+     * - Only used if the EditSession and function are thread safe (see {@link ParallelChunkEdit})<br>
+     * - The function must not depend on the order blocks are visited in
+     *
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
     }
 
     /**
@@ -86,6 +103,45 @@ public int getAffected() {
 
     @Override
     public Operation resume(final RunContext run) throws WorldEditException {
+        if (parallel && region != null) {
+            ParallelChunkEdit edit = ParallelChunkEdit.get(editSession, function);
+            if (edit != null) {
+                affected += edit.run(ParallelChunkEdit.getColumns(region), new ParallelChunkEdit.ColumnFunction() {
+                    private final Vector min = region.getMinimumPoint();
+                    private final Vector max = region.getMaximumPoint();
+                    private final boolean cuboid = region instanceof CuboidRegion;
+
+                    @Override
+                    public int apply(int chunkX, int chunkZ) throws WorldEditException {
+                        int minX = Math.max(min.getBlockX(), chunkX << 4);
+                        int minZ = Math.max(min.getBlockZ(), chunkZ << 4);
+                        int maxX = Math.min(max.getBlockX(), (chunkX << 4) + 15);
+                        int maxZ = Math.min(max.getBlockZ(), (chunkZ << 4) + 15);
+                        // Called by several threads at once
+                        MutableBlockVector mutable = new MutableBlockVector();
+                        int count = 0;
+                        try {
+                            for (int y = min.getBlockY(); y <= max.getBlockY(); y++) {
+                                for (int z = minZ; z <= maxZ; z++) {
+                                    for (int x = minX; x <= maxX; x++) {
+                                        if (cuboid || region.contains(x, y, z)) {
+                                            mutable.setComponents(x, y, z);
+                                            if (function.apply(mutable)) {
+                                                count++;
+                                            }
+                                        }
+                                    }
+                                }
+                            }
+                        } catch (FaweException e) {
+                            throw new RuntimeException(e);
+                        }
+                        return count;
+                    }
+                });
+                return null;
+            }
+        }
         if (queue != null && Settings.IMP.QUEUE.PRELOAD_CHUNKS > 1) {
             /*
              * The following is done to reduce iteration cost
@@ -19,11 +19,14 @@
 
 package com.sk89q.worldedit.internal.expression;
 
+import com.boydti.fawe.Fawe;
+import com.boydti.fawe.config.Settings;
 import com.sk89q.worldedit.internal.expression.lexer.Lexer;
 import com.sk89q.worldedit.internal.expression.lexer.tokens.Token;
 import com.sk89q.worldedit.internal.expression.parser.Parser;
 import com.sk89q.worldedit.internal.expression.runtime.Constant;
 import com.sk89q.worldedit.internal.expression.runtime.EvaluationException;
+import com.sk89q.worldedit.internal.expression.runtime.ExpressionCompiler;
 import com.sk89q.worldedit.internal.expression.runtime.ExpressionEnvironment;
 import com.sk89q.worldedit.internal.expression.runtime.Functions;
 import com.sk89q.worldedit.internal.expression.runtime.RValue;
@@ -64,6 +67,9 @@
  * <p>
  * <p>Variables are also supported and can be set either by passing values
  * to {@link #evaluate(double...)}.</p>
+ * <p>
+ * <p>An expression which is evaluated many times is compiled (see
+ * {@link ExpressionCompiler}). If compiling fails, it keeps being interpreted.</p>
  */
 public class Expression {
 
@@ -75,6 +81,9 @@ public class Expression {
     private RValue root;
     private final Functions functions = new Functions();
     private ExpressionEnvironment environment;
+    // The compiled root (null until it has been evaluated enough times)
+    private RValue compiled;
+    private int evaluations;
 
     public static Expression compile(String expression, String... variableNames) throws ExpressionException {
         return new Expression(expression, variableNames);
@@ -120,7 +129,13 @@ public double evaluate(double... values) throws EvaluationException {
         }
         pushInstance();
         try {
-            return root.getValue();
+            RValue compiled = this.compiled;
+            if (compiled == null) {
+                if (!shouldCompile() || (compiled = compileRoot()) == null) {
+                    return root.getValue();
+                }
+            }
+            return compiled.getValue();
         } catch (ReturnException e) {
             return e.getValue();
         } finally {
@@ -128,8 +143,45 @@ public double evaluate(double... values) throws EvaluationException {
         }
     }
 
+    /**
+     * Count an evaluation, and check whether the expression should now be compiled (only tried once)
+     */
+    private boolean shouldCompile() {
+        int threshold = Settings.IMP.EXPERIMENTAL.COMPILE_EXPRESSIONS;
+        if (threshold == -1 || evaluations == -1) {
+            return false;
+        }
+        if (++evaluations < threshold) {
+            return false;
+        }
+        evaluations = -1;
+        return true;
+    }
+
+    private RValue compileRoot() {
+        if (!ExpressionCompiler.isAvailable()) {
+            return null;
+        }
+        try {
+            return compiled = ExpressionCompiler.compile(root.optimize());
+        } catch (Throwable e) {
+            // Keep using the interpreter
+            Fawe.debug("Failed to compile expression " + root + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * @return if the expression is being evaluated from bytecode
+     */
+    boolean isCompiled() {
+        return compiled != null;
+    }
+
     public void optimize() throws EvaluationException {
         root = root.optimize();
+        compiled = null;
+        evaluations = 0;
     }
 
     public RValue getRoot() {
@@ -0,0 +1,610 @@
+/*
+ * WorldEdit, a Minecraft world manipulation toolkit
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) WorldEdit team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sk89q.worldedit.internal.expression.runtime;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.mozilla.classfile.ByteCode;
+import org.mozilla.classfile.ClassFileWriter;
+
+/**
+ * Compiles an expression tree into a JVM class.
+ *
+ * <p>Constants, variables, operators, the pure math functions, conditionals
+ * and sequences are turned into bytecode, so evaluating them doesn't go
+ * through reflection or boxing. Operators and functions are calls to the
+ * static methods in {@link Ops}, which the JIT inlines.</p>
+ *
+ * <p>Any other node (loops, functions with side effects, switch statements)
+ * is kept and called by the generated code, with its children compiled
+ * separately. Loops therefore keep the interpreter's iteration limit and
+ * interrupt checks (used to enforce the expression timeout).</p>
+ *
+ * <p>The bytecode is written with Rhino's class file writer, so this is only
+ * available when Rhino (the CraftScript engine) is installed.</p>
+ */
+public final class ExpressionCompiler {
+
+    private static final String PREFIX = ExpressionCompiler.class.getPackage().getName() + ".CompiledExpression";
+    private static final String COMPILED = Compiled.class.getName();
+    private static final String OPS = Ops.class.getName();
+    private static final String RVALUE = RValue.class.getName();
+    private static final String VARIABLE = Variable.class.getName();
+    private static final String CONSTRUCTOR = "(IL" + slashed(RVALUE) + ";[L" + slashed(RVALUE) + ";[L" + slashed(VARIABLE) + ";)V";
+
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    private static final boolean AVAILABLE;
+
+    static {
+        boolean available;
+        try {
+            Class.forName("org.mozilla.classfile.ClassFileWriter");
+            available = true;
+        } catch (ClassNotFoundException ignore) {
+            available = false;
+        }
+        AVAILABLE = available;
+    }
+
+    private final ClassFileWriter cfw;
+    private final List<RValue> nodes = new ArrayList<>();
+    private final Map<Variable, Integer> variables = new IdentityHashMap<>();
+
+    private ExpressionCompiler(String className) {
+        this.cfw = new ClassFileWriter(className, COMPILED, "<expression>");
+    }
+
+    /**
+     * @return if Rhino is installed
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Compile an expression tree
+     *
+     * @param root the (optimized) root node
+     * @return an equivalent node
+     * @throws ReflectiveOperationException if the class couldn't be loaded
+     */
+    public static RValue compile(RValue root) throws ReflectiveOperationException {
+        if (root instanceof Constant || root instanceof Variable) {
+            return root;
+        }
+        String className = PREFIX + COUNT.incrementAndGet();
+        ExpressionCompiler compiler = new ExpressionCompiler(className);
+        return compiler.generate(root, className);
+    }
+
+    private RValue generate(RValue root, String className) throws ReflectiveOperationException {
+        cfw.startMethod("<init>", CONSTRUCTOR, ClassFileWriter.ACC_PUBLIC);
+        cfw.addLoadThis();
+        cfw.addILoad(1);
+        cfw.addALoad(2);
+        cfw.addALoad(3);
+        cfw.addALoad(4);
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, COMPILED, "<init>", CONSTRUCTOR);
+        cfw.add(ByteCode.RETURN);
+        cfw.stopMethod((short) 5);
+
+        cfw.startMethod("getValue", "()D", ClassFileWriter.ACC_PUBLIC);
+        emit(root);
+        cfw.add(ByteCode.DRETURN);
+        cfw.stopMethod((short) 1);
+
+        byte[] bytes = cfw.toByteArray();
+        Class<?> clazz = new Loader(ExpressionCompiler.class.getClassLoader()).define(className, bytes);
+        Variable[] variableArray = new Variable[variables.size()];
+        for (Map.Entry<Variable, Integer> entry : variables.entrySet()) {
+            variableArray[entry.getValue()] = entry.getKey();
+        }
+        return (RValue) clazz.getConstructor(int.class, RValue.class, RValue[].class, Variable[].class)
+                .newInstance(root.getPosition(), root, nodes.toArray(new RValue[nodes.size()]), variableArray);
+    }
+
+    /**
+     * Write the code to push the value of a node
+     */
+    private void emit(RValue node) throws ReflectiveOperationException {
+        if (node instanceof Constant) {
+            cfw.addPush(((Constant) node).getValue());
+        } else if (node instanceof Variable) {
+            loadVariable((Variable) node);
+            cfw.add(ByteCode.GETFIELD, VARIABLE, "value", "D");
+        } else if (node instanceof Sequence) {
+            RValue[] sequence = ((Sequence) node).sequence;
+            if (sequence.length == 0) {
+                cfw.addPush(0.0);
+            }
+            for (int i = 0; i < sequence.length; i++) {
+                emit(sequence[i]);
+                if (i != sequence.length - 1) {
+                    cfw.add(ByteCode.POP2);
+                }
+            }
+        } else if (node instanceof Conditional) {
+            Conditional conditional = (Conditional) node;
+            emitConditional(conditional.condition, conditional.truePart, conditional.falsePart);
+        } else if (node instanceof Return) {
+            emit(((Return) node).value);
+            cfw.addInvoke(ByteCode.INVOKESTATIC, OPS, "returnValue", "(D)D");
+        } else if (node instanceof Break) {
+            cfw.addPush(((Break) node).doContinue);
+            cfw.addInvoke(ByteCode.INVOKESTATIC, OPS, "breakLoop", "(Z)D");
+        } else if (node instanceof Function && !(node instanceof LValueFunction)) {
+            emitFunction((Function) node);
+        } else {
+            emitNode(lower(node));
+        }
+    }
+
+    /**
+     * Push (condition ? truePart : falsePart), or 0 if falsePart is null
+     */
+    private void emitConditional(RValue condition, RValue truePart, RValue falsePart) throws ReflectiveOperationException {
+        int falseLabel = cfw.acquireLabel();
+        int endLabel = cfw.acquireLabel();
+        short stackTop = cfw.getStackTop();
+        emitTest(condition);
+        cfw.add(ByteCode.IFEQ, falseLabel);
+        emit(truePart);
+        cfw.add(ByteCode.GOTO, endLabel);
+        cfw.markLabel(falseLabel, stackTop);
+        if (falsePart == null) {
+            cfw.addPush(0.0);
+        } else {
+            emit(falsePart);
+        }
+        cfw.markLabel(endLabel, (short) (stackTop + 2));
+    }
+
+    /**
+     * Push if a value is positive (as an int)
+     */
+    private void emitTest(RValue node) throws ReflectiveOperationException {
+        emit(node);
+        cfw.addInvoke(ByteCode.INVOKESTATIC, OPS, "isTrue", "(D)Z");
+    }
+
+    private void emitFunction(Function function) throws ReflectiveOperationException {
+        Method method = function.method;
+        RValue[] args = function.args;
+        Class<?> declaring = method.getDeclaringClass();
+        if (declaring == Operators.class && args.length == 2) {
+            // Short circuiting
+            switch (method.getName()) {
+                case "and":
+                    int falseLabel = cfw.acquireLabel();
+                    int endLabel = cfw.acquireLabel();
+                    short stackTop = cfw.getStackTop();
+                    emitTest(args[0]);
+                    cfw.add(ByteCode.IFEQ, falseLabel);
+                    emit(args[1]);
+                    cfw.addInvoke(ByteCode.INVOKESTATIC, OPS, "truth", "(D)D");
+                    cfw.add(ByteCode.GOTO, endLabel);
+                    cfw.markLabel(falseLabel, stackTop);
+                    cfw.addPush(0.0);
+                    cfw.markLabel(endLabel, (short) (stackTop + 2));
+                    return;
+                case "or":
+                    int secondLabel = cfw.acquireLabel();
+                    int orEndLabel = cfw.acquireLabel();
+                    short orStackTop = cfw.getStackTop();
+                    emitTest(args[0]);
+                    cfw.add(ByteCode.IFEQ, secondLabel);
+                    cfw.addPush(1.0);
+                    cfw.add(ByteCode.GOTO, orEndLabel);
+                    cfw.markLabel(secondLabel, orStackTop);
+                    emit(args[1]);
+                    cfw.addInvoke(ByteCode.INVOKESTATIC, OPS, "truth", "(D)D");
+                    cfw.markLabel(orEndLabel, (short) (orStackTop + 2));
+                    return;
+            }
+        }
+        Class<?>[] types = declaring == Operators.class || declaring == Functions.class ? getDirect(method, args) : null;
+        if (types == null) {
+            emitNode(lower(function));
+            return;
+        }
+        StringBuilder descriptor = new StringBuilder("(");
+        for (int i = 0; i < args.length; i++) {
+            if (types[i] == Variable.class) {
+                loadVariable((Variable) args[i]);
+                descriptor.append('L').append(slashed(VARIABLE)).append(';');
+            } else {
+                emit(args[i]);
+                descriptor.append('D');
+            }
+        }
+        cfw.addInvoke(ByteCode.INVOKESTATIC, OPS, method.getName(), descriptor.append(")D").toString());
+    }
+
+    /**
+     * Find the {@link Ops} equivalent of an operator or function<br>
+     * - Values are passed as doubles and variables being assigned to as {@link Variable}
+     *
+     * @return the parameter types, or null
+     */
+    private static Class<?>[] getDirect(Method method, RValue[] args) {
+        Class<?>[] parameters = method.getParameterTypes();
+        if (parameters.length != args.length) {
+            return null;
+        }
+        Class<?>[] types = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            if (LValue.class.isAssignableFrom(parameters[i])) {
+                if (!(args[i] instanceof Variable)) {
+                    return null;
+                }
+                types[i] = Variable.class;
+            } else {
+                types[i] = double.class;
+            }
+        }
+        try {
+            return Ops.class.getMethod(method.getName(), types).getReturnType() == double.class ? types : null;
+        } catch (NoSuchMethodException ignore) {
+            return null;
+        }
+    }
+
+    /**
+     * Rebuild a node which isn't turned into bytecode, with its children compiled
+     */
+    private static RValue lower(RValue node) throws ReflectiveOperationException {
+        if (node instanceof While) {
+            While loop = (While) node;
+            return new While(loop.getPosition(), compile(loop.condition), compile(loop.body), loop.footChecked);
+        }
+        if (node instanceof For) {
+            For loop = (For) node;
+            return new For(loop.getPosition(), compile(loop.init), compile(loop.condition), compile(loop.increment), compile(loop.body));
+        }
+        if (node instanceof SimpleFor) {
+            SimpleFor loop = (SimpleFor) node;
+            return new SimpleFor(loop.getPosition(), loop.counter, compile(loop.first), compile(loop.last), compile(loop.body));
+        }
+        if (node instanceof Function && !(node instanceof LValueFunction)) {
+            Function function = (Function) node;
+            Class<?>[] parameters = function.method.getParameterTypes();
+            RValue[] args = new RValue[function.args.length];
+            for (int i = 0; i < args.length; i++) {
+                RValue arg = function.args[i];
+                // The function may assign to (or check for) an lvalue
+                boolean keep = arg instanceof LValue || LValue.class.isAssignableFrom(parameters[i]);
+                args[i] = keep ? arg : compile(arg);
+            }
+            return new Function(function.getPosition(), function.method, args);
+        }
+        // Interpreted as is
+        return node;
+    }
+
+    private void loadVariable(Variable variable) {
+        Integer index = variables.get(variable);
+        if (index == null) {
+            variables.put(variable, index = variables.size());
+        }
+        cfw.addLoadThis();
+        cfw.add(ByteCode.GETFIELD, COMPILED, "variables", "[L" + slashed(VARIABLE) + ";");
+        cfw.addPush(index);
+        cfw.add(ByteCode.AALOAD);
+    }
+
+    private void emitNode(RValue node) {
+        int index = nodes.size();
+        nodes.add(node);
+        cfw.addLoadThis();
+        cfw.add(ByteCode.GETFIELD, COMPILED, "nodes", "[L" + slashed(RVALUE) + ";");
+        cfw.addPush(index);
+        cfw.add(ByteCode.AALOAD);
+        cfw.addInvoke(ByteCode.INVOKEINTERFACE, RVALUE, "getValue", "()D");
+    }
+
+    private static String slashed(String className) {
+        return className.replace('.', '/');
+    }
+
+    /**
+     * Loads each compiled expression, so it can be unloaded with the expression
+     */
+    private static final class Loader extends ClassLoader {
+        private Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * The super class of a compiled expression
+     */
+    public abstract static class Compiled extends Node {
+        private final RValue source;
+        public final RValue[] nodes;
+        public final Variable[] variables;
+
+        public Compiled(int position, RValue source, RValue[] nodes, Variable[] variables) {
+            super(position);
+            this.source = source;
+            this.nodes = nodes;
+            this.variables = variables;
+        }
+
+        @Override
+        public char id() {
+            return source.id();
+        }
+
+        @Override
+        public String toString() {
+            return source.toString();
+        }
+    }
+
+    /**
+     * Operators and functions taking doubles, called by compiled expressions<br>
+     * - Same names and behavior as in {@link Operators} and {@link Functions}
+     */
+    public static final class Ops {
+
+        private Ops() {
+        }
+
+        public static boolean isTrue(double value) {
+            return value > 0.0;
+        }
+
+        public static double truth(double value) {
+            return value > 0.0 ? 1.0 : 0.0;
+        }
+
+        public static double add(double lhs, double rhs) {
+            return lhs + rhs;
+        }
+
+        public static double sub(double lhs, double rhs) {
+            return lhs - rhs;
+        }
+
+        public static double mul(double lhs, double rhs) {
+            return lhs * rhs;
+        }
+
+        public static double div(double lhs, double rhs) {
+            return lhs / rhs;
+        }
+
+        public static double mod(double lhs, double rhs) {
+            return lhs % rhs;
+        }
+
+        public static double pow(double lhs, double rhs) {
+            return Math.pow(lhs, rhs);
+        }
+
+        public static double neg(double x) {
+            return -x;
+        }
+
+        public static double not(double x) {
+            return x > 0.0 ? 0.0 : 1.0;
+        }
+
+        public static double inv(double x) {
+            return ~(long) x;
+        }
+
+        public static double lth(double lhs, double rhs) {
+            return lhs < rhs ? 1.0 : 0.0;
+        }
+
+        public static double gth(double lhs, double rhs) {
+            return lhs > rhs ? 1.0 : 0.0;
+        }
+
+        public static double leq(double lhs, double rhs) {
+            return lhs <= rhs ? 1.0 : 0.0;
+        }
+
+        public static double geq(double lhs, double rhs) {
+            return lhs >= rhs ? 1.0 : 0.0;
+        }
+
+        public static double equ(double lhs, double rhs) {
+            return lhs == rhs ? 1.0 : 0.0;
+        }
+
+        public static double neq(double lhs, double rhs) {
+            return lhs != rhs ? 1.0 : 0.0;
+        }
+
+        public static double shl(double lhs, double rhs) {
+            return (long) lhs << (long) rhs;
+        }
+
+        public static double shr(double lhs, double rhs) {
+            return (long) lhs >> (long) rhs;
+        }
+
+        public static double ass(Variable lhs, double rhs) {
+            return lhs.value = rhs;
+        }
+
+        public static double aadd(Variable lhs, double rhs) {
+            return lhs.value = lhs.value + rhs;
+        }
+
+        public static double asub(Variable lhs, double rhs) {
+            return lhs.value = lhs.value - rhs;
+        }
+
+        public static double amul(Variable lhs, double rhs) {
+            return lhs.value = lhs.value * rhs;
+        }
+
+        public static double adiv(Variable lhs, double rhs) {
+            return lhs.value = lhs.value / rhs;
+        }
+
+        public static double amod(Variable lhs, double rhs) {
+            return lhs.value = lhs.value % rhs;
+        }
+
+        public static double aexp(Variable lhs, double rhs) {
+            return lhs.value = Math.pow(lhs.value, rhs);
+        }
+
+        public static double inc(Variable x) {
+            return x.value = x.value + 1;
+        }
+
+        public static double dec(Variable x) {
+            return x.value = x.value - 1;
+        }
+
+        public static double postinc(Variable x) {
+            double oldValue = x.value;
+            x.value = oldValue + 1;
+            return oldValue;
+        }
+
+        public static double postdec(Variable x) {
+            double oldValue = x.value;
+            x.value = oldValue - 1;
+            return oldValue;
+        }
+
+        public static double sin(double x) {
+            return Math.sin(x);
+        }
+
+        public static double cos(double x) {
+            return Math.cos(x);
+        }
+
+        public static double tan(double x) {
+            return Math.tan(x);
+        }
+
+        public static double asin(double x) {
+            return Math.asin(x);
+        }
+
+        public static double acos(double x) {
+            return Math.acos(x);
+        }
+
+        public static double atan(double x) {
+            return Math.atan(x);
+        }
+
+        public static double atan2(double y, double x) {
+            return Math.atan2(y, x);
+        }
+
+        public static double sinh(double x) {
+            return Math.sinh(x);
+        }
+
+        public static double cosh(double x) {
+            return Math.cosh(x);
+        }
+
+        public static double tanh(double x) {
+            return Math.tanh(x);
+        }
+
+        public static double sqrt(double x) {
+            return Math.sqrt(x);
+        }
+
+        public static double cbrt(double x) {
+            return Math.cbrt(x);
+        }
+
+        public static double abs(double x) {
+            return Math.abs(x);
+        }
+
+        public static double min(double a, double b) {
+            return Math.min(a, b);
+        }
+
+        public static double min(double a, double b, double c) {
+            return Math.min(a, Math.min(b, c));
+        }
+
+        public static double max(double a, double b) {
+            return Math.max(a, b);
+        }
+
+        public static double max(double a, double b, double c) {
+            return Math.max(a, Math.max(b, c));
+        }
+
+        public static double ceil(double x) {
+            return Math.ceil(x);
+        }
+
+        public static double floor(double x) {
+            return Math.floor(x);
+        }
+
+        public static double rint(double x) {
+            return Math.rint(x);
+        }
+
+        public static double round(double x) {
+            return Math.round(x);
+        }
+
+        public static double exp(double x) {
+            return Math.exp(x);
+        }
+
+        public static double ln(double x) {
+            return Math.log(x);
+        }
+
+        public static double log(double x) {
+            return Math.log(x);
+        }
+
+        public static double log10(double x) {
+            return Math.log10(x);
+        }
+
+        public static double breakLoop(boolean doContinue) throws EvaluationException {
+            throw new BreakException(doContinue);
+        }
+
+        public static double returnValue(double value) throws EvaluationException {
+            throw new ReturnException(value);
+        }
+    }
+}
@@ -21,6 +21,8 @@
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.Arrays;
+
 /**
  * Allows applications of Kernels onto the region's height map.
  *
@@ -73,6 +75,11 @@ public void setKernel(Kernel kernel) {
     /**
      * Filter with a 2D kernel
      *
+     * <p>Each row is accumulated one kernel weight at a time, so the inner
+     * loops run over whole rows of primitive arrays (which the JIT can
+     * vectorize). The weights are added to each value in the same order as
+     * a per value loop, so the result is the same.</p>
+     *
      * @param inData the data
      * @param width the width
      * @param height the height
@@ -82,9 +89,9 @@ public void setKernel(Kernel kernel) {
     public int[] filter(int[] inData, int width, int height) {
         checkNotNull(inData);
 
-        int index = 0;
         float[] matrix = kernel.getKernelData(null);
         int[] outData = new int[inData.length];
+        float[] row = new float[width];
 
         int kh = kernel.getHeight();
         int kw = kernel.getWidth();
@@ -92,33 +99,40 @@ public int[] filter(int[] inData, int width, int height) {
         int koy = kernel.getYOrigin();
 
         for (int y = 0; y < height; ++y) {
-            for (int x = 0; x < width; ++x) {
-                float z = 0;
-
-                for (int ky = 0; ky < kh; ++ky) {
-                    int offsetY = y + ky - koy;
-                    // Clamp coordinates inside data
-                    if (offsetY < 0 || offsetY >= height) {
-                        offsetY = y;
-                    }
-
-                    offsetY *= width;
+            Arrays.fill(row, 0);
+            for (int ky = 0; ky < kh; ++ky) {
+                int offsetY = y + ky - koy;
+                // Clamp coordinates inside data
+                if (offsetY < 0 || offsetY >= height) {
+                    offsetY = y;
+                }
 
-                    int matrixOffset = ky * kw;
-                    for (int kx = 0; kx < kw; ++kx) {
-                        float f = matrix[matrixOffset + kx];
-                        if (f == 0) continue;
+                offsetY *= width;
 
-                        int offsetX = x + kx - kox;
-                        // Clamp coordinates inside data
-                        if (offsetX < 0 || offsetX >= width) {
-                            offsetX = x;
-                        }
+                int matrixOffset = ky * kw;
+                for (int kx = 0; kx < kw; ++kx) {
+                    float f = matrix[matrixOffset + kx];
+                    if (f == 0) continue;
 
-                        z += f * inData[offsetY + offsetX];
+                    int shift = kx - kox;
+                    // Values whose offset is outside the data are clamped to their own column
+                    int start = Math.min(width, Math.max(0, -shift));
+                    int end = Math.max(start, Math.min(width, width - shift));
+                    for (int x = 0; x < start; ++x) {
+                        row[x] += f * inData[offsetY + x];
+                    }
+                    int offset = offsetY + shift;
+                    for (int x = start; x < end; ++x) {
+                        row[x] += f * inData[offset + x];
+                    }
+                    for (int x = end; x < width; ++x) {
+                        row[x] += f * inData[offsetY + x];
                     }
                 }
-                outData[index++] = (int) (z + 0.5);
+            }
+            int index = y * width;
+            for (int x = 0; x < width; ++x) {
+                outData[index + x] = (int) (row[x] + 0.5);
             }
         }
         return outData;
@@ -42,6 +42,7 @@
 import com.sk89q.worldedit.world.item.ItemTypes;
 import com.sk89q.worldedit.world.registry.BundledBlockData;
 import com.sk89q.worldedit.world.registry.LegacyMapper;
+import com.sk89q.worldedit.world.registry.RegistrySnapshot;
 import it.unimi.dsi.fastutil.ints.IntCollections;
 
 import javax.annotation.Nullable;
@@ -680,7 +681,7 @@ private final static class Settings {
         private final int permutations;
         private int[] stateOrdinals;
 
-        Settings(BlockTypes type, String id, int internalId, List<BlockState> states) {
+        Settings(BlockTypes type, String id, int internalId, List<BlockState> states, Map<String, ? extends Property> properties) {
             this.internalId = internalId;
             String propertyString = null;
             int propI = id.indexOf('[');
@@ -689,7 +690,6 @@ private final static class Settings {
             }
 
             int maxInternalStateId = 0;
-            Map<String, ? extends Property> properties = WorldEdit.getInstance().getPlatformManager().queryCapability(Capability.GAME_HOOKS).getRegistries().getBlockRegistry().getProperties(type);
             if (!properties.isEmpty()) {
                 // Ensure the properties are registered
                 int maxOrdinal = 0;
@@ -766,13 +766,13 @@ private int parseProperties(String properties, Map<String, AbstractProperty> pro
         settings = null;
     }
 
-    private void init(String id, int internalId, List<BlockState> states) {
+    private void init(String id, int internalId, List<BlockState> states, Map<String, ? extends Property> properties) {
         try {
             if (getId() == null) {
                 String name = (name().indexOf(':') == -1 ? "minecraft:" : "") + name().toLowerCase();
                 ReflectionUtils.setFailsafeFieldValue(BlockTypes.class.getDeclaredField("id"), this, name);
             }
-            Settings settings = new Settings(this, id, internalId, states);
+            Settings settings = new Settings(this, id, internalId, states, properties);
             ReflectionUtils.setFailsafeFieldValue(BlockTypes.class.getDeclaredField("settings"), this, settings);
         } catch (Throwable e) {
             e.printStackTrace();
@@ -1014,7 +1014,7 @@ public String toString() {
             int size = blockMap.size();
             for (BlockTypes type : oldValues) {
                 if (!blockMap.containsKey(type.getId())) {
-                    type.init(type.getId(), 0, new ArrayList<>());
+                    type.init(type.getId(), 0, new ArrayList<>(), getPlatformProperties(type));
                     if (type != __RESERVED__) Fawe.debug("Invalid block registered " + type.getId());
                     size++;
                 }
@@ -1028,9 +1028,13 @@ public String toString() {
 
             LinkedHashSet<BlockTypes> newValues = new LinkedHashSet<>(Arrays.asList(oldValues));
             ArrayList<BlockState> stateList = new ArrayList<>();
-            for (String block : blocks) {
-                BlockTypes registered = register(block, stateList);
-                if (!newValues.contains(registered)) newValues.add(registered);
+            // The properties are read from the snapshot if it matches the platform, else it's written afterwards
+            try (RegistrySnapshot snapshot = RegistrySnapshot.open(blocks)) {
+                int index = 0;
+                for (String block : blocks) {
+                    BlockTypes registered = register(block, stateList, snapshot, index++);
+                    if (!newValues.contains(registered)) newValues.add(registered);
+                }
             }
             // Cache the values
             values = newValues.toArray(new BlockTypes[newValues.size()]);
@@ -1062,7 +1066,11 @@ public static BlockTypes parse(final String type) throws InputParseException {
         );
     }
 
-    private static BlockTypes register(final String id, List<BlockState> states) {
+    private static Map<String, ? extends Property> getPlatformProperties(BlockTypes type) {
+        return WorldEdit.getInstance().getPlatformManager().queryCapability(Capability.GAME_HOOKS).getRegistries().getBlockRegistry().getProperties(type);
+    }
+
+    private static BlockTypes register(final String id, List<BlockState> states, RegistrySnapshot snapshot, int index) {
         // Get the enum name (remove namespace if minecraft:)
         int propStart = id.indexOf('[');
         String typeName = id.substring(0, propStart == -1 ? id.length() : propStart);
@@ -1080,7 +1088,8 @@ private static BlockTypes register(final String id, List<BlockState> states) {
         if (internalId == 0 && existing != __RESERVED__) {
             internalId = $LENGTH++;
         }
-        existing.init(id, internalId, states);
+        final BlockTypes type = existing;
+        existing.init(id, internalId, states, snapshot.getProperties(index, () -> getPlatformProperties(type)));
         // register states
         if (typeName.startsWith("minecraft:")) $REGISTRY.put(typeName.substring(10), existing);
         $REGISTRY.put(typeName, existing);
@@ -0,0 +1,328 @@
+package com.sk89q.worldedit.world.registry;
+
+import com.boydti.fawe.Fawe;
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.io.FastByteArrayOutputStream;
+import com.boydti.fawe.util.MainUtil;
+import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.extension.platform.Capability;
+import com.sk89q.worldedit.extension.platform.Platform;
+import com.sk89q.worldedit.registry.state.BooleanProperty;
+import com.sk89q.worldedit.registry.state.DirectionalProperty;
+import com.sk89q.worldedit.registry.state.EnumProperty;
+import com.sk89q.worldedit.registry.state.IntegerProperty;
+import com.sk89q.worldedit.registry.state.Property;
+import com.sk89q.worldedit.util.Direction;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * A binary cache of the block properties read from the platform when {@link com.sk89q.worldedit.world.block.BlockTypes} is initialized<br>
+ * - Keyed by the platform version and a hash of the registered blocks<br>
+ * - Written once every block's properties have been read from the platform, then memory mapped on later startups<br>
+ * - If the key doesn't match (or the file can't be read), the properties are read from the platform and the file is replaced<br>
+ * <br>
+ * [header]<br>
+ * { int magic, byte version, utf platform, long hash, int blocks }<br>
+ * [offsets]<br>
+ * { int offset }... (one per block, from the start of the file)<br>
+ * [blocks]...<br>
+ * { byte properties, { byte kind, utf name, short values, value... }... }<br>
+ * <br>
+ * A value is a byte (boolean), an int (integer) or a utf (enum, direction)<br>
+ * A utf is { unsigned short length, byte[length] UTF-8 }
+ */
+public final class RegistrySnapshot implements Closeable {
+
+    public static final int MAGIC = 0x46415752;
+    public static final int VERSION = 1;
+
+    private static final int BOOLEAN = 0;
+    private static final int INTEGER = 1;
+    private static final int ENUM = 2;
+    private static final int DIRECTION = 3;
+
+    private final File file;
+    private final String platform;
+    private final long hash;
+    private final Map<String, ? extends Property>[] properties;
+    private ByteBuffer buffer;
+    // The position of the offsets in the buffer
+    private int table;
+    private boolean dirty;
+
+    /**
+     * @param file     the snapshot file, or null to always read from the platform
+     * @param platform the platform version (see {@link #getPlatformVersion()})
+     * @param blocks   the blocks registered by the platform
+     */
+    public RegistrySnapshot(@Nullable File file, String platform, Collection<String> blocks) {
+        this.file = file;
+        this.platform = platform;
+        this.hash = hash(blocks);
+        this.properties = new Map[blocks.size()];
+        if (file != null && file.exists()) {
+            try {
+                buffer = load();
+            } catch (Throwable e) {
+                Fawe.debug("Failed to read the registry snapshot: " + e);
+            }
+        }
+    }
+
+    /**
+     * Open the snapshot for the current platform
+     *
+     * @param blocks the blocks registered by the platform
+     * @return the snapshot (which only reads from the platform if snapshots are disabled)
+     */
+    public static RegistrySnapshot open(Collection<String> blocks) {
+        File file = null;
+        if (Fawe.get() != null && Settings.IMP.EXPERIMENTAL.REGISTRY_SNAPSHOT) {
+            file = MainUtil.getFile(Fawe.imp().getDirectory(), "registry.bin");
+        }
+        return new RegistrySnapshot(file, getPlatformVersion(), blocks);
+    }
+
+    public static String getPlatformVersion() {
+        Platform platform = WorldEdit.getInstance().getPlatformManager().queryCapability(Capability.GAME_HOOKS);
+        return platform.getPlatformName() + ";" + platform.getPlatformVersion() + ";" + platform.getVersion();
+    }
+
+    /**
+     * @param blocks
+     * @return a 64 bit FNV-1a hash of the block ids (with their default properties), in order
+     */
+    public static long hash(Collection<String> blocks) {
+        long hash = 0xcbf29ce484222325L;
+        for (String block : blocks) {
+            for (int i = 0; i < block.length(); i++) {
+                hash = (hash ^ block.charAt(i)) * 0x100000001b3L;
+            }
+            hash = (hash ^ ';') * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @return if the snapshot matched the platform and is being read from
+     */
+    public boolean isLoaded() {
+        return buffer != null;
+    }
+
+    private ByteBuffer load() throws IOException {
+        ByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mapped.getInt() != MAGIC || mapped.get() != VERSION) {
+            return null;
+        }
+        if (!platform.equals(readString(mapped)) || mapped.getLong() != hash || mapped.getInt() != properties.length) {
+            return null;
+        }
+        table = mapped.position();
+        return mapped;
+    }
+
+    /**
+     * Get the properties of a registered block from the snapshot, or the platform if the snapshot doesn't match
+     *
+     * @param index    the index of the block in the registered blocks
+     * @param fallback reads the properties from the platform
+     * @return the properties, in order
+     */
+    public Map<String, ? extends Property> getProperties(int index, Supplier<Map<String, ? extends Property>> fallback) {
+        Map<String, ? extends Property> result = null;
+        if (buffer != null) {
+            try {
+                result = read(index);
+            } catch (RuntimeException e) {
+                Fawe.debug("Invalid registry snapshot, reading the properties from the platform: " + e);
+                buffer = null;
+            }
+        }
+        if (result == null) {
+            result = fallback.get();
+            dirty = true;
+        }
+        properties[index] = result;
+        return result;
+    }
+
+    private Map<String, ? extends Property> read(int index) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(in.getInt(table + (index << 2)));
+        int amount = in.get() & 0xFF;
+        if (amount == 0) {
+            return Collections.emptyMap();
+        }
+        Map<String, Property> result = new LinkedHashMap<>();
+        for (int i = 0; i < amount; i++) {
+            int kind = in.get();
+            String name = readString(in);
+            int size = in.getShort() & 0xFFFF;
+            Property property;
+            switch (kind) {
+                case BOOLEAN: {
+                    List<Boolean> values = new ArrayList<>(size);
+                    for (int j = 0; j < size; j++) {
+                        values.add(in.get() != 0);
+                    }
+                    property = new BooleanProperty(name, Collections.unmodifiableList(values));
+                    break;
+                }
+                case INTEGER: {
+                    List<Integer> values = new ArrayList<>(size);
+                    for (int j = 0; j < size; j++) {
+                        values.add(in.getInt());
+                    }
+                    property = new IntegerProperty(name, Collections.unmodifiableList(values));
+                    break;
+                }
+                case ENUM: {
+                    List<String> values = new ArrayList<>(size);
+                    for (int j = 0; j < size; j++) {
+                        values.add(readString(in));
+                    }
+                    property = new EnumProperty(name, Collections.unmodifiableList(values));
+                    break;
+                }
+                case DIRECTION: {
+                    List<Direction> values = new ArrayList<>(size);
+                    for (int j = 0; j < size; j++) {
+                        values.add(Direction.valueOf(readString(in)));
+                    }
+                    property = new DirectionalProperty(name, Collections.unmodifiableList(values));
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown property kind " + kind);
+            }
+            result.put(name, property);
+        }
+        return result;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Write the snapshot if any properties were read from the platform
+     */
+    @Override
+    public void close() {
+        if (file == null || !dirty) {
+            return;
+        }
+        buffer = null;
+        try {
+            write();
+        } catch (Throwable e) {
+            Fawe.debug("Failed to write the registry snapshot: " + e);
+        }
+    }
+
+    private void write() throws IOException {
+        byte[] platformBytes = platform.getBytes(StandardCharsets.UTF_8);
+        int offset = 4 + 1 + 2 + platformBytes.length + 8 + 4 + (properties.length << 2);
+        int[] offsets = new int[properties.length];
+        // Encode the blocks first, so the offsets are known
+        FastByteArrayOutputStream bytes = new FastByteArrayOutputStream();
+        DataOutputStream blocks = new DataOutputStream(bytes);
+        for (int i = 0; i < properties.length; i++) {
+            Map<String, ? extends Property> map = properties[i];
+            if (map == null || map.size() > 255) {
+                return;
+            }
+            offsets[i] = offset + bytes.getSize();
+            blocks.writeByte(map.size());
+            for (Property<?> property : map.values()) {
+                List<?> values = property.getValues();
+                int kind;
+                if (property instanceof BooleanProperty) {
+                    kind = BOOLEAN;
+                } else if (property instanceof IntegerProperty) {
+                    kind = INTEGER;
+                } else if (property instanceof EnumProperty) {
+                    kind = ENUM;
+                } else if (property instanceof DirectionalProperty) {
+                    kind = DIRECTION;
+                } else {
+                    // Can't be restored
+                    return;
+                }
+                blocks.writeByte(kind);
+                writeString(blocks, property.getName());
+                blocks.writeShort(values.size());
+                for (Object value : values) {
+                    switch (kind) {
+                        case BOOLEAN:
+                            blocks.writeByte((Boolean) value ? 1 : 0);
+                            break;
+                        case INTEGER:
+                            blocks.writeInt((Integer) value);
+                            break;
+                        case ENUM:
+                            writeString(blocks, (String) value);
+                            break;
+                        case DIRECTION:
+                            writeString(blocks, ((Direction) value).name());
+                            break;
+                    }
+                }
+            }
+        }
+        blocks.flush();
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        File tmp = File.createTempFile("registry", ".tmp", parent);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeShort(platformBytes.length);
+            out.write(platformBytes);
+            out.writeLong(hash);
+            out.writeInt(properties.length);
+            for (int value : offsets) {
+                out.writeInt(value);
+            }
+            bytes.writeTo(out);
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.boydti.fawe;
+
+import com.google.common.io.Resources;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.sk89q.worldedit.LocalConfiguration;
+import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.entity.Player;
+import com.sk89q.worldedit.extension.platform.AbstractPlatform;
+import com.sk89q.worldedit.extension.platform.Capability;
+import com.sk89q.worldedit.extension.platform.Preference;
+import com.sk89q.worldedit.util.command.Dispatcher;
+import com.sk89q.worldedit.world.World;
+import com.sk89q.worldedit.world.registry.BlockRegistry;
+import com.sk89q.worldedit.world.registry.BundledBlockData;
+import com.sk89q.worldedit.world.registry.BundledBlockRegistry;
+import com.sk89q.worldedit.world.registry.BundledRegistries;
+import com.sk89q.worldedit.world.registry.Registries;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A platform without a server, so BlockTypes can be initialized in tests and benchmark forks<br>
+ * - Registers the blocks bundled with WorldEdit (blocks.json), without properties<br>
+ * - Call {@link #register()} before anything touches BlockTypes
+ */
+public class HeadlessPlatform extends AbstractPlatform {
+
+    private static boolean registered;
+
+    private final Registries registries = new BundledRegistries() {
+        private final BlockRegistry blockRegistry = new BundledBlockRegistry() {
+            @Override
+            public Collection<String> registerBlocks() {
+                return getBundledBlocks();
+            }
+        };
+
+        @Override
+        public BlockRegistry getBlockRegistry() {
+            return blockRegistry;
+        }
+    };
+
+    /**
+     * Register the platform with WorldEdit (once per JVM)
+     */
+    public static synchronized void register() {
+        if (!registered) {
+            WorldEdit.getInstance().getPlatformManager().register(new HeadlessPlatform());
+            registered = true;
+        }
+    }
+
+    private static List<String> getBundledBlocks() {
+        URL url = BundledBlockData.class.getResource("blocks.json");
+        if (url == null) {
+            throw new IllegalStateException("Could not find blocks.json");
+        }
+        List<String> blocks = new ArrayList<>();
+        try {
+            for (JsonElement entry : new JsonParser().parse(Resources.toString(url, StandardCharsets.UTF_8)).getAsJsonArray()) {
+                blocks.add(entry.getAsJsonObject().get("id").getAsString());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return blocks;
+    }
+
+    @Override
+    public Registries getRegistries() {
+        return registries;
+    }
+
+    @Override
+    public boolean isValidMobType(String type) {
+        return false;
+    }
+
+    @Override
+    public void reload() {
+    }
+
+    @Nullable
+    @Override
+    public Player matchPlayer(Player player) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public World matchWorld(World world) {
+        return null;
+    }
+
+    @Override
+    public void registerCommands(Dispatcher dispatcher) {
+    }
+
+    @Override
+    public void registerGameHooks() {
+    }
+
+    @Override
+    public LocalConfiguration getConfiguration() {
+        return new LocalConfiguration() {
+            @Override
+            public void load() {
+            }
+        };
+    }
+
+    @Override
+    public String getVersion() {
+        return "benchmark";
+    }
+
+    @Override
+    public String getPlatformName() {
+        return "Headless";
+    }
+
+    @Override
+    public String getPlatformVersion() {
+        return "benchmark";
+    }
+
+    @Override
+    public Map<Capability, Preference> getCapabilities() {
+        Map<Capability, Preference> capabilities = new EnumMap<>(Capability.class);
+        for (Capability capability : Capability.values()) {
+            capabilities.put(capability, Preference.NORMAL);
+        }
+        return capabilities;
+    }
+}
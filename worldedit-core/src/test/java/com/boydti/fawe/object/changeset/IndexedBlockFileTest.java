@@ -0,0 +1,187 @@
+package com.boydti.fawe.object.changeset;
+
+import com.boydti.fawe.HeadlessPlatform;
+import com.boydti.fawe.util.MathMan;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedBlockFileTest {
+
+    /**
+     * Enough changes to pass MAX_BUFFERED (version 1) and MAX_BUFFERED_CHANGES (version 2) several times
+     */
+    private static final int CHANGES = 2_000_000;
+    /**
+     * The chunk most changes go to, so its buffer passes CHUNK_BUFFER (version 1) and BUCKET_SIZE (version 2)
+     */
+    private static final long HOT_CHUNK = MathMan.pairInt(0, 0);
+    private static final int ORIGIN_X = 123;
+    private static final int ORIGIN_Z = -456;
+
+    private static int[] xs = new int[CHANGES];
+    private static int[] ys = new int[CHANGES];
+    private static int[] zs = new int[CHANGES];
+    private static int[] froms = new int[CHANGES];
+    private static int[] tos = new int[CHANGES];
+    // The changes to each chunk, in the order they were made
+    private static Long2ObjectOpenHashMap<IntArrayList> byChunk = new Long2ObjectOpenHashMap<>();
+
+    @BeforeClass
+    public static void setup() {
+        HeadlessPlatform.register();
+        Random random = new Random(0);
+        for (int i = 0; i < CHANGES; i++) {
+            int cx;
+            int cz;
+            int from;
+            if (random.nextInt(4) == 0) {
+                cx = 0;
+                cz = 0;
+                // More than 256 ids, so the palette indices use two columns
+                from = random.nextInt(5000);
+            } else {
+                cx = random.nextInt(16) - 8;
+                cz = random.nextInt(16) - 8;
+                // Runs of the same id
+                from = i != 0 && random.nextBoolean() ? froms[i - 1] : random.nextInt(100) << 4;
+            }
+            xs[i] = (cx << 4) + random.nextInt(16);
+            ys[i] = random.nextInt(256);
+            zs[i] = (cz << 4) + random.nextInt(16);
+            froms[i] = from;
+            tos[i] = random.nextInt(1 << 20);
+            long pair = MathMan.pairInt(cx, cz);
+            IntArrayList changes = byChunk.get(pair);
+            if (changes == null) {
+                byChunk.put(pair, changes = new IntArrayList());
+            }
+            changes.add(i);
+        }
+        assertTrue(byChunk.get(HOT_CHUNK).size() > CHANGES / 5);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        xs = ys = zs = froms = tos = null;
+        byChunk = null;
+    }
+
+    @Test
+    public void testVersion1() throws IOException {
+        test(false, false);
+    }
+
+    @Test
+    public void testVersion1Redo() throws IOException {
+        test(true, false);
+    }
+
+    @Test
+    public void testVersion2() throws IOException {
+        test(false, true);
+    }
+
+    @Test
+    public void testVersion2Redo() throws IOException {
+        test(true, true);
+    }
+
+    private void test(boolean redo, boolean columns) throws IOException {
+        File file = File.createTempFile("history", ".bd");
+        try {
+            IndexedBlockFile.Writer writer = columns ? new IndexedBlockFile.Writer(file, 1, redo, true) : new IndexedBlockFile.Writer(file, 1, redo);
+            try {
+                DataOutputStream header = new DataOutputStream(writer.getHeaderOS());
+                header.write(redo ? 3 : 2);
+                header.writeInt(ORIGIN_X);
+                header.writeInt(ORIGIN_Z);
+                for (int i = 0; i < CHANGES; i++) {
+                    writer.add(xs[i], ys[i], zs[i], froms[i], tos[i]);
+                }
+            } finally {
+                writer.close();
+            }
+            assertTrue(IndexedBlockFile.isIndexed(file));
+
+            IndexedBlockFile.Reader reader = new IndexedBlockFile.Reader(file);
+            assertEquals(columns ? 2 : 1, reader.getVersion());
+            assertEquals(redo, reader.hasRedo());
+            assertEquals(ORIGIN_X, reader.getOriginX());
+            assertEquals(ORIGIN_Z, reader.getOriginZ());
+            assertEquals(CHANGES, reader.getChangeCount());
+            // The hot chunk was flushed more than once
+            int hotBlocks = 0;
+            for (int i = 0; i < reader.getEntries(); i++) {
+                if (MathMan.pairInt(reader.getChunkX(i), reader.getChunkZ(i)) == HOT_CHUNK) {
+                    hotBlocks++;
+                }
+            }
+            assertTrue(hotBlocks > 1);
+
+            assertEquals(CHANGES, read(reader.cursor(null), redo, -8, -8, 7, 7));
+
+            // Whole chunks are read if they intersect a region
+            Region region = new CuboidRegion(new Vector(-20, 0, 5), new Vector(20, 255, 60));
+            int expected = 0;
+            for (int cx = -2; cx <= 1; cx++) {
+                for (int cz = 0; cz <= 3; cz++) {
+                    expected += byChunk.get(MathMan.pairInt(cx, cz)).size();
+                }
+            }
+            assertEquals(expected, read(reader.cursor(new Region[]{region}), redo, -2, 0, 1, 3));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Check a cursor reads every change to the chunks in the bounds, in the order they were made for each chunk
+     *
+     * @return the number of changes read
+     */
+    private int read(IndexedBlockFile.Reader.Cursor cursor, boolean redo, int minCX, int minCZ, int maxCX, int maxCZ) throws IOException {
+        int air = BlockTypes.AIR.getInternalId();
+        Long2IntOpenHashMap positions = new Long2IntOpenHashMap();
+        int read = 0;
+        try {
+            while (cursor.next()) {
+                int cx = cursor.x >> 4;
+                int cz = cursor.z >> 4;
+                assertTrue(cx >= minCX && cx <= maxCX && cz >= minCZ && cz <= maxCZ);
+                long pair = MathMan.pairInt(cx, cz);
+                int position = positions.get(pair);
+                positions.put(pair, position + 1);
+                int i = byChunk.get(pair).getInt(position);
+                assertEquals(xs[i], cursor.x);
+                assertEquals(ys[i], cursor.y);
+                assertEquals(zs[i], cursor.z);
+                assertEquals(froms[i], cursor.from);
+                assertEquals(redo ? tos[i] : air, cursor.to);
+                read++;
+            }
+        } finally {
+            cursor.close();
+        }
+        assertFalse(cursor.next());
+        for (Long2IntOpenHashMap.Entry entry : positions.long2IntEntrySet()) {
+            assertEquals(byChunk.get(entry.getLongKey()).size(), entry.getIntValue());
+        }
+        return read;
+    }
+}
@@ -0,0 +1,172 @@
+package com.boydti.fawe.object.collection;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PalettedSectionTest {
+
+    @Test
+    public void testSingleValue() {
+        PalettedSection section = new PalettedSection(7);
+        assertTrue(section.isSingleValue());
+        assertEquals(1, section.getPaletteSize());
+        for (int i = 0; i < PalettedSection.SIZE; i++) {
+            assertEquals(7, section.get(i));
+        }
+        // Setting the same value doesn't need indexes
+        assertTrue(section.set(100, 7));
+        assertTrue(section.isSingleValue());
+
+        assertTrue(section.set(100, 8));
+        assertFalse(section.isSingleValue());
+        assertEquals(8, section.get(100));
+        assertEquals(7, section.get(99));
+        assertEquals(7, section.get(101));
+    }
+
+    @Test
+    public void testPaletteGrowth() {
+        Random random = new Random(0);
+        int[] expected = new int[PalettedSection.SIZE];
+        PalettedSection section = new PalettedSection(0);
+        // Each new value may resize the indexes (1, 2, 4 then 8 bits), which must keep every position
+        for (int value = 1; value < PalettedSection.MAX_PALETTE; value++) {
+            for (int j = 0; j < 16; j++) {
+                int index = random.nextInt(PalettedSection.SIZE);
+                assertTrue(section.set(index, value));
+                expected[index] = value;
+                // Also set positions to values already in the palette
+                index = random.nextInt(PalettedSection.SIZE);
+                int existing = random.nextInt(value + 1);
+                assertTrue(section.set(index, existing));
+                expected[index] = existing;
+            }
+            assertEquals(value + 1, section.getPaletteSize());
+            if (Integer.bitCount(value) == 1 || value == PalettedSection.MAX_PALETTE - 1) {
+                assertContents(expected, section);
+            }
+        }
+
+        // The palette is full, so a new value isn't set
+        assertFalse(section.set(0, PalettedSection.MAX_PALETTE));
+        assertEquals(PalettedSection.MAX_PALETTE, section.getPaletteSize());
+        assertContents(expected, section);
+        assertTrue(section.set(0, 5));
+        expected[0] = 5;
+        assertContents(expected, section);
+    }
+
+    @Test
+    public void testFill() {
+        int[] expected = new int[PalettedSection.SIZE];
+        PalettedSection section = new PalettedSection(0);
+        assertTrue(section.fill(256, 512, 3));
+        Arrays.fill(expected, 256, 512, 3);
+        assertContents(expected, section);
+        assertFalse(section.isSingleValue());
+
+        assertTrue(section.fill(4000, PalettedSection.SIZE, 4));
+        Arrays.fill(expected, 4000, PalettedSection.SIZE, 4);
+        assertContents(expected, section);
+
+        // Filling everything goes back to a single value
+        assertTrue(section.fill(0, PalettedSection.SIZE, 9));
+        assertTrue(section.isSingleValue());
+        assertEquals(1, section.getPaletteSize());
+        Arrays.fill(expected, 9);
+        assertContents(expected, section);
+
+        // A fill which needs a new value when the palette is full changes nothing
+        for (int value = 0; value < PalettedSection.MAX_PALETTE; value++) {
+            assertTrue(section.set(value, value));
+            expected[value] = value;
+        }
+        assertFalse(section.fill(1000, 2000, PalettedSection.MAX_PALETTE));
+        assertContents(expected, section);
+    }
+
+    @Test
+    public void testReplace() {
+        int[] expected = new int[PalettedSection.SIZE];
+        PalettedSection section = new PalettedSection(0);
+        for (int i = 0; i < PalettedSection.SIZE; i += 3) {
+            section.set(i, 1);
+            expected[i] = 1;
+        }
+        for (int i = 1; i < PalettedSection.SIZE; i += 5) {
+            section.set(i, 2);
+            expected[i] = 2;
+        }
+        // Not in the palette, so only the palette changes
+        section.replace(1, 3);
+        replace(expected, 1, 3);
+        assertContents(expected, section);
+        assertFalse(section.contains(1));
+        assertTrue(section.contains(3));
+
+        // Both in the palette
+        section.replace(3, 2);
+        replace(expected, 3, 2);
+        assertContents(expected, section);
+
+        // Not in the section
+        section.replace(42, 0);
+        assertContents(expected, section);
+    }
+
+    @Test
+    public void testToArray() {
+        PalettedSection section = new PalettedSection(6);
+        int[] buffer = new int[PalettedSection.SIZE];
+        assertSame(buffer, section.toArray(buffer));
+        int[] expected = new int[PalettedSection.SIZE];
+        Arrays.fill(expected, 6);
+        assertArrayEquals(expected, buffer);
+
+        for (int bits = 1, value = 7; bits <= PalettedSection.MAX_BITS; bits <<= 1) {
+            // Enough values for the indexes to use this many bits
+            while (section.getPaletteSize() <= 1 << (bits - 1)) {
+                section.set(value * 13, value);
+                expected[value * 13] = value;
+                value++;
+            }
+            assertArrayEquals(expected, section.toArray(null));
+            assertArrayEquals(expected, section.toArray(buffer));
+        }
+    }
+
+    @Test
+    public void testCopy() {
+        PalettedSection section = new PalettedSection(1);
+        section.set(10, 2);
+        PalettedSection copy = section.copy();
+        copy.set(10, 3);
+        copy.set(11, 4);
+        assertEquals(2, section.get(10));
+        assertEquals(1, section.get(11));
+        assertEquals(3, copy.get(10));
+        assertEquals(4, copy.get(11));
+    }
+
+    private static void replace(int[] values, int from, int to) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == from) {
+                values[i] = to;
+            }
+        }
+    }
+
+    private static void assertContents(int[] expected, PalettedSection section) {
+        for (int i = 0; i < PalettedSection.SIZE; i++) {
+            assertEquals("index " + i, expected[i], section.get(i));
+        }
+        assertArrayEquals(expected, section.toArray(null));
+    }
+}
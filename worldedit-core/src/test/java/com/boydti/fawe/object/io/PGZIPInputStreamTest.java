@@ -0,0 +1,157 @@
+package com.boydti.fawe.object.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PGZIPInputStreamTest {
+
+    @Test
+    public void testSingleMember() throws IOException {
+        byte[] data = data(PGZIPBlock.SIZE / 2);
+        byte[] compressed = compress(data, true);
+        assertEquals(1, countMembers(compressed));
+        assertArrayEquals(data, read(new PGZIPInputStream(new ByteArrayInputStream(compressed))));
+        assertArrayEquals(data, readBytes(new PGZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        byte[] compressed = compress(new byte[0], true);
+        assertArrayEquals(new byte[0], read(new PGZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void testMultiMember() throws IOException {
+        // Not a multiple of the block size, so the last member is smaller
+        byte[] data = data(PGZIPBlock.SIZE * 20 + 1234);
+        byte[] compressed = compress(data, true);
+        assertEquals(21, countMembers(compressed));
+        assertArrayEquals(data, read(new PGZIPInputStream(new ByteArrayInputStream(compressed))));
+        assertArrayEquals(data, readBytes(new PGZIPInputStream(new ByteArrayInputStream(compressed))));
+        // Fewer threads than members
+        assertArrayEquals(data, read(new PGZIPInputStream(new ByteArrayInputStream(compressed), PGZIPOutputStream.getSharedThreadPool(), 2)));
+        // Still readable as a normal gzip file
+        assertArrayEquals(data, read(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void testGZIPOutputStream() throws IOException {
+        byte[] data = data(PGZIPBlock.SIZE * 3 + 17);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        assertArrayEquals(data, read(new PGZIPInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+        assertArrayEquals(data, readBytes(new PGZIPInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    public void testSingleStream() throws IOException {
+        // Without multiple members, there's one member with a deflate stream per block
+        byte[] data = data(PGZIPBlock.SIZE * 5 + 99);
+        byte[] compressed = compress(data, false);
+        assertArrayEquals(data, read(new PGZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void testCorruptMember() throws IOException {
+        byte[] data = data(PGZIPBlock.SIZE * 4);
+        byte[] compressed = compress(data, true);
+        // The CRC of the last member
+        compressed[compressed.length - 8] ^= 1;
+        try {
+            read(new PGZIPInputStream(new ByteArrayInputStream(compressed)));
+            fail("Error expected");
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void testNotGZIP() throws IOException {
+        try {
+            new PGZIPInputStream(new ByteArrayInputStream(new byte[]{1, 2, 3, 4}));
+            fail("Error expected");
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Compressible data, which isn't just a repeating pattern
+     */
+    private static byte[] data(int length) {
+        Random random = new Random(length);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (random.nextInt(16) + (i >> 12));
+        }
+        return data;
+    }
+
+    private static byte[] compress(byte[] data, boolean multiMember) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PGZIPOutputStream out = new PGZIPOutputStream(bytes);
+        out.setMultiMember(multiMember);
+        // Uneven writes, so blocks are filled from several of them
+        for (int i = 0; i < data.length; i += 10000) {
+            out.write(data, i, Math.min(10000, data.length - i));
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Walk the member sizes in the FM subfields
+     */
+    private static int countMembers(byte[] compressed) {
+        int members = 0;
+        int offset = PGZIPOutputStream.MEMBER_SIZE_OFFSET;
+        for (int pos = 0; pos < compressed.length; members++) {
+            assertEquals((byte) 0x1f, compressed[pos]);
+            assertEquals((byte) 0x8b, compressed[pos + 1]);
+            assertEquals('F', compressed[pos + 12]);
+            assertEquals('M', compressed[pos + 13]);
+            int size = (compressed[pos + offset] & 0xFF) | (compressed[pos + offset + 1] & 0xFF) << 8 | (compressed[pos + offset + 2] & 0xFF) << 16 | (compressed[pos + offset + 3] & 0xFF) << 24;
+            assertTrue(size > 0);
+            pos += size;
+        }
+        return members;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[777];
+            int read;
+            while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            int value;
+            while ((value = in.read()) != -1) {
+                bytes.write(value);
+            }
+        } finally {
+            in.close();
+        }
+        return bytes.toByteArray();
+    }
+}
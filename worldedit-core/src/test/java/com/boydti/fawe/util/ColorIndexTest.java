@@ -0,0 +1,87 @@
+package com.boydti.fawe.util;
+
+import com.boydti.fawe.HeadlessPlatform;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ColorIndexTest {
+
+    private TextureUtil util;
+
+    @Before
+    public void setup() throws FileNotFoundException {
+        HeadlessPlatform.register();
+        util = new TextureUtil(new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    @Test
+    public void testLowestIndex() {
+        int red = 0xFFFF0000;
+        int green = 0xFF00FF00;
+        int blue = 0xFF0000FF;
+        int[] colors = {red, blue, red, green, blue, green};
+        ColorIndex index = new ColorIndex(util, colors, colors, false);
+        assertEquals(0, index.getNearest(red, false));
+        assertEquals(1, index.getNearest(blue, false));
+        assertEquals(3, index.getNearest(green, false));
+        assertEquals(0, index.getNearest(0xFFF00000, false));
+        assertEquals(-1, new ColorIndex(util, colors, new int[]{red, red}, false).getNearest(red, true));
+    }
+
+    @Test
+    public void testMatchesLinearSearch() {
+        Random random = new Random(0);
+        int[] alphas = {0, 128, 255};
+        for (int size : new int[]{1, 2, 7, 100, 2000}) {
+            int[] colors = new int[size];
+            for (int i = 0; i < size; i++) {
+                if (i != 0 && random.nextInt(4) == 0) {
+                    // Duplicates, so there are ties
+                    colors[i] = colors[random.nextInt(i)];
+                } else {
+                    colors[i] = alphas[random.nextInt(alphas.length)] << 24 | random.nextInt(1 << 24);
+                }
+            }
+            for (boolean matchAlpha : new boolean[]{false, true}) {
+                ColorIndex index = new ColorIndex(util, colors, colors, matchAlpha);
+                for (int i = 0; i < 2000; i++) {
+                    int color;
+                    if (random.nextBoolean()) {
+                        color = colors[random.nextInt(size)];
+                    } else {
+                        color = alphas[random.nextInt(alphas.length)] << 24 | random.nextInt(1 << 24);
+                    }
+                    for (boolean excludeSame : new boolean[]{false, true}) {
+                        String message = Integer.toHexString(color) + " size=" + size + " matchAlpha=" + matchAlpha + " excludeSame=" + excludeSame;
+                        assertEquals(message, getNearest(colors, color, matchAlpha, excludeSame), index.getNearest(color, excludeSame));
+                    }
+                }
+            }
+        }
+    }
+
+    private int getNearest(int[] colors, int color, boolean matchAlpha, boolean excludeSame) {
+        int red = (color >> 16) & 0xFF;
+        int green = (color >> 8) & 0xFF;
+        int blue = color & 0xFF;
+        long min = Long.MAX_VALUE;
+        int nearest = -1;
+        for (int i = 0; i < colors.length; i++) {
+            int other = colors[i];
+            if ((matchAlpha && other >>> 24 != color >>> 24) || (excludeSame && other == color)) {
+                continue;
+            }
+            long distance = util.colorDistance(red, green, blue, other);
+            if (distance < min) {
+                min = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+}
@@ -19,15 +19,19 @@
 
 package com.sk89q.worldedit.internal.expression;
 
+import com.boydti.fawe.config.Settings;
 import com.sk89q.worldedit.internal.expression.lexer.LexerException;
 import com.sk89q.worldedit.internal.expression.parser.ParserException;
 import com.sk89q.worldedit.internal.expression.runtime.EvaluationException;
 import com.sk89q.worldedit.internal.expression.runtime.ExpressionEnvironment;
+import java.util.Arrays;
 import org.junit.Test;
 
 import static java.lang.Math.atan2;
 import static java.lang.Math.sin;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class ExpressionTest {
@@ -162,6 +166,97 @@ public void testQuery() throws Exception {
         assertEquals(1, simpleEval("!queryRel(3,4,5,100,200)"), 0);
     }
 
+    @Test
+    public void testCompileThreshold() throws ExpressionException {
+        int threshold = Settings.IMP.EXPERIMENTAL.COMPILE_EXPRESSIONS;
+        try {
+            Settings.IMP.EXPERIMENTAL.COMPILE_EXPRESSIONS = -1;
+            Expression never = compile("x * 2", "x");
+            for (int i = 0; i < 10; i++) {
+                never.evaluate(i);
+            }
+            assertFalse(never.isCompiled());
+
+            Settings.IMP.EXPERIMENTAL.COMPILE_EXPRESSIONS = 0;
+            Expression first = compile("x * 2", "x");
+            assertEquals(6, first.evaluate(3), 0);
+            assertTrue(first.isCompiled());
+
+            Settings.IMP.EXPERIMENTAL.COMPILE_EXPRESSIONS = 3;
+            Expression third = compile("x * 2", "x");
+            third.evaluate(1);
+            third.evaluate(2);
+            assertFalse(third.isCompiled());
+            assertEquals(6, third.evaluate(3), 0);
+            assertTrue(third.isCompiled());
+        } finally {
+            Settings.IMP.EXPERIMENTAL.COMPILE_EXPRESSIONS = threshold;
+        }
+    }
+
+    @Test
+    public void testCompiledMatchesInterpreted() throws ExpressionException {
+        String[] expressions = {
+                // operators
+                "x + y * z - x / (y + 10) % 3 ^ 2",
+                "x ** 2 + -y + +z",
+                "(x << 2) + (y >> 1) * z",
+                "(x < y) * 1 + (y <= z) * 2 + (x == z) * 4 + (x != y) * 8 + (x >= z) * 16 + (x > y) * 32",
+                "(x ~= y) + !x * 2 + ~y * 4",
+                "(x > y ? x : z) * 10 + (y ? 1 : 2)",
+                "a = x; a += y; a -= z; a *= 2; a /= 3; a %= 5; a ^= 2; a",
+                "a = x; b = (a++) + (++a); c = (a--) - (--a); a * 100 + b * 10 + c",
+                // short-circuiting
+                "a = 0; (x > 0) || (a = 1); (x > 0) && (a += 2); a",
+                "a = 0; b = (y < 1 && (a = 5)) + (z > 0 || (a += 3)); a * 10 + b",
+                // loops
+                "a = 0; while (a < abs(x) * 3) ++a; a",
+                "a = 0; do { a += y + 1; } while (a < 10 && a > -10); a",
+                "s = 0; for (i = 0; i < 10; ++i) { if (i == z) break; if (i % 2) continue; s += i; } s",
+                "s = 0; for (i = x, x + 4) { s = s * 2 + i; } s",
+                "s = 0; i = 0; while (i < 8) { ++i; if (i == 3) continue; if (i == y + 5) break; s += i; } s",
+                "switch (x) { case 0: a = 1; break; case 1: a = 2; case 5: a += 3; break; default: a = y; } a",
+                // return
+                "if (x > y) return x - y; z",
+                "for (i = 0; i < 5; ++i) { if (i > z) return i * 10; } -1",
+                // functions
+                "sin(x) + cos(y) * tan(z) + atan2(y, x) + sqrt(abs(z)) + cbrt(x)",
+                "min(x, y) + max(x, y, z) + floor(y) + ceil(z) + round(x / 3) + rint(y) + abs(x)",
+                "exp(y) + log(abs(x) + 1) + log10(abs(z) + 1) + ln(2)",
+                "a = x; b = y; swap(a, b); a * 10 + b",
+                "a = x; b = y; rotate(a, b, z); a + b",
+                // variables
+                "n = n + x; m = m * 2 + y; n * m",
+                "{ a = x; { b = a * 2; } } a + b + z",
+        };
+        double[][] inputs = {
+                {0, 0, 0},
+                {1, 2, 3},
+                {-4, 0.5, 7},
+                {5, -3, -1.5},
+                {9, 9, 2},
+                {2, 1, 0},
+        };
+        int threshold = Settings.IMP.EXPERIMENTAL.COMPILE_EXPRESSIONS;
+        try {
+            for (String expression : expressions) {
+                Expression interpreted = compile(expression, "x", "y", "z");
+                Expression compiled = compile(expression, "x", "y", "z");
+                for (double[] input : inputs) {
+                    Settings.IMP.EXPERIMENTAL.COMPILE_EXPRESSIONS = -1;
+                    double expected = interpreted.evaluate(input);
+                    Settings.IMP.EXPERIMENTAL.COMPILE_EXPRESSIONS = 0;
+                    double actual = compiled.evaluate(input);
+                    assertTrue(expression, compiled.isCompiled());
+                    assertFalse(expression, interpreted.isCompiled());
+                    assertEquals(expression + " " + Arrays.toString(input), expected, actual, 0);
+                }
+            }
+        } finally {
+            Settings.IMP.EXPERIMENTAL.COMPILE_EXPRESSIONS = threshold;
+        }
+    }
+
     private double simpleEval(String expressionString) throws ExpressionException {
         final Expression expression = compile(expressionString);
 